@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.vizor.unreal.provider.ProtoTypesProvider;
+import com.vizor.unreal.provider.TypesProvider;
+import com.vizor.unreal.provider.UnrealTypesProvider;
+import com.vizor.unreal.tree.CppField;
+import com.vizor.unreal.tree.CppNamespace;
+import com.vizor.unreal.tree.CppStruct;
+import com.vizor.unreal.tree.CppType;
+import com.vizor.unreal.util.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.vizor.unreal.tree.CppType.Kind.Struct;
+import static com.vizor.unreal.tree.CppType.plain;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Casts of wide messages, each field gets a cast statement in both directions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CastGeneratorBenchmark
+{
+    private static final String[] fieldTypes = {"int32", "string", "bool", "float", "int64"};
+
+    @Param({"8", "64", "512"})
+    private int numFields;
+
+    private List<Tuple<CppStruct, CppStruct>> structures;
+
+    @Setup
+    public void setUp()
+    {
+        final CppStruct protoStruct = newStruct(new ProtoTypesProvider(), plain("Wide", Struct));
+        final CppStruct ueStruct = newStruct(new UnrealTypesProvider(), plain("FGame_Wide", Struct));
+
+        structures = singletonList(Tuple.of(protoStruct, ueStruct));
+    }
+
+    // Plain fields, repeated fields and maps in turn
+    private CppStruct newStruct(final TypesProvider provider, final CppType type)
+    {
+        final List<CppField> fields = new ArrayList<>();
+        for (int i = 0; i < numFields; i++)
+        {
+            final CppType fieldType = provider.get(fieldTypes[i % fieldTypes.length]);
+            final String name = provider.fixFieldName("field_" + i, fieldType.isA(boolean.class));
+
+            if (i % 7 == 3)
+                fields.add(new CppField(provider.arrayOf(fieldType), name));
+            else if (i % 7 == 5)
+                fields.add(new CppField(provider.get("map<string, " + fieldTypes[i % fieldTypes.length] + ">"), name));
+            else
+                fields.add(new CppField(fieldType, name));
+        }
+
+        return new CppStruct(type, fields);
+    }
+
+    @Benchmark
+    public CppNamespace genCasts()
+    {
+        return new CastGenerator().genCasts(structures);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.util.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.Paths.get;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Converts a single in-memory proto file, which is parsed in advance: type gathering, casts, the client, and
+ * printing of all generated files. Generated files are consumed by a black hole.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtoProcessorBenchmark
+{
+    private static final GenerationContext context = GenerationContext.builder()
+        .setModuleName("Bench")
+        .setCompanyName("Vizor")
+        .setThreads(1)
+        .build();
+
+    @Param({"4", "64"})
+    private int numMessages;
+
+    private ProtoRegistry registry;
+    private List<ProtoProcessorArgs> args;
+
+    @Setup
+    public void setUp()
+    {
+        final Map<String, String> sources = new HashMap<>();
+        sources.put("common/types.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package common;",
+            "message Point { int32 x = 1; int32 y = 2; }",
+            "enum Team { RED = 0; BLUE = 1; }"
+        ));
+        sources.put("game/lobby.proto", getLobby());
+
+        final InMemoryProtoSource source = new InMemoryProtoSource(sources);
+        final List<Tuple<Path, DestinationConfig>> paths = source.getPaths().stream()
+            .map(p -> Tuple.of(p, context.getDstPath()))
+            .collect(toList());
+
+        // An unbounded registry retains parsed files, so only the conversion itself is measured
+        registry = new ProtoRegistry(source.getRoot(), paths, source, 0);
+        args = registry.get(get("game/lobby.proto"));
+    }
+
+    private String getLobby()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("syntax = \"proto3\";\n");
+        sb.append("package game.lobby;\n");
+        sb.append("import \"common/types.proto\";\n");
+
+        for (int i = 0; i < numMessages; i++)
+        {
+            sb.append("// Message number ").append(i).append('\n');
+            sb.append("message Message").append(i).append(" {\n");
+            sb.append("  int32 id = 1;\n");
+            sb.append("  string name = 2;\n");
+            sb.append("  repeated common.Point points = 3;\n");
+            sb.append("  map<string, int64> scores = 4;\n");
+            sb.append("  common.Team team = 5;\n");
+            sb.append("  bool is_ready = 6;\n");
+
+            if (i > 0)
+                sb.append("  Message").append(i - 1).append(" previous = 7;\n");
+
+            sb.append("}\n");
+        }
+
+        sb.append("service Lobby {\n");
+        for (int i = 0; i < numMessages; i++)
+            sb.append("  rpc Call").append(i).append(" (Message").append(i).append(") returns (common.Point);\n");
+        sb.append("}\n");
+
+        return sb.toString();
+    }
+
+    @Benchmark
+    public void run(final Blackhole blackhole)
+    {
+        args.forEach(a -> new ProtoProcessor(a, registry, context, (path, content) -> blackhole.consume(content)).run());
+    }
+}
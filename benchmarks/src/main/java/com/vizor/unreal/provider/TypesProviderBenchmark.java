@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.provider;
+
+import com.vizor.unreal.tree.CppType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.vizor.unreal.tree.CppType.Kind.Struct;
+import static com.vizor.unreal.tree.CppType.plain;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Type lookups, done for every field of every message. A provider of a large file (or a file with many imports)
+ * holds hundreds of types, and a short name, which isn't registered as is, is matched against all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypesProviderBenchmark
+{
+    @Param({"10", "100", "1000"})
+    private int numTypes;
+
+    private TypesProvider provider;
+
+    private String shortName;
+    private String fullName;
+
+    @Setup
+    public void setUp()
+    {
+        provider = new UnrealTypesProvider();
+        for (int i = 0; i < numTypes; i++)
+            provider.register("game.lobby.Message" + i, plain("FGame_Lobby_Message" + i, Struct));
+
+        shortName = "Message" + (numTypes / 2);
+        fullName = "game.lobby." + shortName;
+    }
+
+    @Benchmark
+    public CppType getBuiltIn()
+    {
+        return provider.get("int32");
+    }
+
+    @Benchmark
+    public CppType getGeneric()
+    {
+        return provider.get("map<string, int32>");
+    }
+
+    @Benchmark
+    public CppType getFullName()
+    {
+        return provider.get(fullName);
+    }
+
+    // Falls back to getBestType(), which matches the name against every registered type
+    @Benchmark
+    public CppType getShortName()
+    {
+        return provider.get(shortName);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.vizor.unreal.tree.CppType.Kind.Primitive;
+import static com.vizor.unreal.tree.CppType.Kind.Struct;
+import static com.vizor.unreal.tree.CppType.plain;
+import static com.vizor.unreal.tree.CppType.wildcardGeneric;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Types are compared and hashed whenever they're looked up in maps or sets, e.g. while ordering structures and
+ * collecting includes. Equal, but distinct instances are compared, just like types of different providers are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CppTypeBenchmark
+{
+    private CppType plain;
+    private CppType plainCopy;
+
+    private CppType nested;
+    private CppType nestedCopy;
+
+    private CppType other;
+
+    @Setup
+    public void setUp()
+    {
+        plain = newPlain();
+        plainCopy = newPlain();
+
+        nested = newNested();
+        nestedCopy = newNested();
+
+        other = plain("int32", Primitive);
+    }
+
+    private static CppType newPlain()
+    {
+        return plain("FGame_Lobby_Player", Struct);
+    }
+
+    // TMap<FString, TArray<FGame_Lobby_Player>>
+    private static CppType newNested()
+    {
+        final CppType array = wildcardGeneric("TArray", Struct, 1).makeGeneric(newPlain());
+        return wildcardGeneric("TMap", Struct, 2).makeGeneric(plain("FString", Struct), array);
+    }
+
+    @Benchmark
+    public boolean equalsPlain()
+    {
+        return plain.equals(plainCopy);
+    }
+
+    @Benchmark
+    public boolean equalsNested()
+    {
+        return nested.equals(nestedCopy);
+    }
+
+    @Benchmark
+    public boolean equalsDifferent()
+    {
+        return nested.equals(other);
+    }
+
+    @Benchmark
+    public int hashCodePlain()
+    {
+        return plainCopy.hashCode();
+    }
+
+    @Benchmark
+    public int hashCodeNested()
+    {
+        return nestedCopy.hashCode();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * String helpers, called for every field, type and file name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MiscBenchmark
+{
+    private String fieldName = "player_inventory_slot_count";
+    private String booleanFieldName = "is_matchmaking_enabled";
+    private String generic = "TMap<FString, TArray<TMap<int32, FGame_Lobby_Player>>>";
+
+    @Benchmark
+    public String sanitizeVarName()
+    {
+        return Misc.sanitizeVarName(fieldName, false);
+    }
+
+    @Benchmark
+    public String sanitizeBooleanVarName()
+    {
+        return Misc.sanitizeVarName(booleanFieldName, true);
+    }
+
+    @Benchmark
+    public String snakeCaseToCamelCase()
+    {
+        return Misc.snakeCaseToCamelCase(fieldName);
+    }
+
+    @Benchmark
+    public List<String> splitGeneric()
+    {
+        return Misc.splitGeneric(generic.substring(generic.indexOf('<') + 1, generic.length() - 1));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.convert.Converter;
+import com.vizor.unreal.convert.InMemoryProtoSource;
+import com.vizor.unreal.util.Tuple;
+import com.vizor.unreal.writer.InMemorySink;
+import com.vizor.unreal.writer.OutputSink;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An entry point for embedding the converter into another JVM process, e.g. a long-living build daemon.
+ *
+ * Nothing is read from the file system and nothing is read from the 'config.yml', all settings are taken from a
+ * given {@link GenerationContext}.
+ */
+public final class Cornerstone
+{
+    private Cornerstone()
+    {
+    }
+
+    /**
+     * Converts proto files, held in memory.
+     *
+     * @param context Settings of the conversion.
+     * @param sources Contents of proto files by their relative paths, e.g. 'game/player.proto'.
+     *
+     * @return Contents of the generated files by their paths (with forward slashes), sorted by path. The paths start
+     *         with the destination paths of the context.
+     */
+    public static Map<String, String> generate(final GenerationContext context, final Map<String, String> sources)
+    {
+        return generate(singletonList(context), sources);
+    }
+
+    /**
+     * Converts proto files, held in memory, for several modules at once. The files are parsed only once.
+     *
+     * @param contexts Settings of the modules, their destination paths must differ.
+     * @param sources Contents of proto files by their relative paths, e.g. 'game/player.proto'.
+     *
+     * @return Contents of the generated files of all modules by their paths (with forward slashes), sorted by path.
+     */
+    public static Map<String, String> generate(final List<GenerationContext> contexts,
+                                               final Map<String, String> sources)
+    {
+        final InMemorySink sink = new InMemorySink();
+        generate(contexts, sources, emptyList(), sink);
+
+        return sink.getContents();
+    }
+
+    /**
+     * Converts some of proto files, held in memory. Types are still resolved from all the files.
+     *
+     * @param context Settings of the conversion.
+     * @param sources Contents of proto files by their relative paths, e.g. 'game/player.proto'.
+     * @param targets Relative paths of the files to be converted, empty to convert every file.
+     * @param sink Receives the generated files.
+     */
+    public static void generate(final GenerationContext context, final Map<String, String> sources,
+                                final List<String> targets, final OutputSink sink)
+    {
+        generate(singletonList(context), sources, targets, sink);
+    }
+
+    /**
+     * Converts some of proto files, held in memory, for several modules at once. Types are still resolved from all
+     * the files, which are parsed only once.
+     *
+     * @param contexts Settings of the modules, their destination paths must differ.
+     * @param sources Contents of proto files by their relative paths, e.g. 'game/player.proto'.
+     * @param targets Relative paths of the files to be converted, empty to convert every file.
+     * @param sink Receives the generated files.
+     */
+    public static void generate(final List<GenerationContext> contexts, final Map<String, String> sources,
+                                final List<String> targets, final OutputSink sink)
+    {
+        if (contexts.isEmpty())
+            throw new IllegalArgumentException("At least one context is required");
+
+        final InMemoryProtoSource source = new InMemoryProtoSource(sources);
+        final Path root = source.getRoot();
+        final DestinationConfig dstPath = contexts.get(0).getDstPath();
+
+        final List<Tuple<Path, DestinationConfig>> paths = source.getPaths().stream()
+            .map(p -> Tuple.of(p, dstPath))
+            .collect(toList());
+
+        final List<Tuple<Path, DestinationConfig>> selected;
+        if (!targets.isEmpty())
+        {
+            final List<Path> targetPaths = targets.stream()
+                .map(t -> root.resolve(t).normalize())
+                .collect(toList());
+
+            targetPaths.stream()
+                .filter(t -> paths.stream().noneMatch(p -> p.first().equals(t)))
+                .findFirst()
+                .ifPresent(t -> {
+                    throw new IllegalArgumentException("Target '" + root.relativize(t) + "' isn't among the sources");
+                });
+
+            selected = paths.stream()
+                .filter(p -> targetPaths.contains(p.first()))
+                .collect(toList());
+        }
+        else
+        {
+            selected = paths;
+        }
+
+        new Converter(contexts, source, sink).convert(root, paths, selected);
+    }
+}
@@ -17,22 +17,46 @@ package com.vizor.unreal;
 
 import com.vizor.unreal.config.Config;
 import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.convert.ArchiveProtoSource;
 import com.vizor.unreal.convert.Converter;
+import com.vizor.unreal.convert.DependencyGraphs;
+import com.vizor.unreal.convert.ProtoSource;
+import com.vizor.unreal.convert.Shard;
+import com.vizor.unreal.profile.Phase;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.protoc.DescriptorSource;
 import com.vizor.unreal.util.CliHandler;
 import com.vizor.unreal.util.CliHandler.Parse;
 import com.vizor.unreal.util.Tuple;
+import com.vizor.unreal.writer.CheckingSink;
+import com.vizor.unreal.writer.FileSystemSink;
+import com.vizor.unreal.writer.OutputSink;
+import com.vizor.unreal.writer.SizeReport;
+import com.vizor.unreal.writer.ZipSink;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 import static com.vizor.unreal.util.Misc.findFilesRecursively;
 import static com.vizor.unreal.util.Misc.stringIsNullOrEmpty;
+import static java.lang.Integer.parseInt;
 import static java.lang.Math.round;
 import static java.lang.Runtime.getRuntime;
+import static java.lang.System.exit;
 import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.write;
 import static java.nio.file.Paths.get;
+import static java.util.Collections.singletonList;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.stream.Collectors.toList;
 import static org.apache.logging.log4j.LogManager.getLogger;
 import static org.apache.logging.log4j.core.config.Configurator.setLevel;
 
@@ -76,19 +100,16 @@ public class Main
         final Path srcPath = get(config.getSrcPath());
         final DestinationConfig dstPath = config.getDstPath();
 
-        final Converter converter = new Converter(config.getModuleName());
+        // Archives are read in place, 'protos.zip' or 'protos.jar!/proto' is never a folder to be created
+        final boolean fromArchive = ArchiveProtoSource.isArchive(config.getSrcPath());
 
-        if (!srcPath.toFile().isDirectory())
+        if (stringIsNullOrEmpty(cliParse.getDescriptorSet()) && !fromArchive && !srcPath.toFile().isDirectory())
             if(!srcPath.toFile().mkdirs())
                 throw new IllegalArgumentException("Source folder '" + srcPath + "' does not exist, or isn't a directory");
 
-        if (!dstPath.pathPublic.toFile().isDirectory())
-            if(!dstPath.pathPublic.toFile().mkdirs())
-                throw new IllegalArgumentException("Destination Public folder '" + dstPath.pathPublic + "' does not exist, or isn't a directory");
-
-        if (!dstPath.pathPrivate.toFile().isDirectory())
-            if(!dstPath.pathPrivate.toFile().mkdirs())
-                throw new IllegalArgumentException("Destination Private folder '" + dstPath.pathPrivate + "' does not exist, or isn't a directory");
+        // Nothing is written when checking, missing destinations just make every file stale
+        if (!cliParse.isCheck())
+            createDestinations(dstPath);
 
         log.info("Running cornerstone...");
         log.info("Logging level: {}", log.getLevel().toString());
@@ -108,20 +129,330 @@ public class Main
         log.info("Company name: {}", config.getCompanyName());
         log.info("Wrappers path: %INCLUDE_DIR%/{}", config.getWrappersPath());
 
-        launchSingle(srcPath, dstPath, converter);
+        final GenerationContext context = GenerationContext.fromConfig(config);
+
+        if (!fromArchive)
+        {
+            run(cliParse, config, srcPath, ProtoSource.fileSystem, context);
+            return;
+        }
+
+        try (final ArchiveProtoSource archive = ArchiveProtoSource.open(config.getSrcPath()))
+        {
+            // Entries of the archive can't be prerequisites of a depfile, the archive itself is
+            final List<Path> dependencies = new ArrayList<>(context.getDependencies());
+            dependencies.add(archive.getArchive());
+
+            log.info("Reading proto-files from '{}' within '{}'", archive.getRoot(), archive.getArchive());
+            run(cliParse, config, archive.getRoot(), archive, context.toBuilder().setDependencies(dependencies).build());
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
     }
 
-    private static void launchSingle(final Path srcPath, final DestinationConfig dstPath, final Converter converter)
+    private static void run(final Parse cliParse, final Config config, final Path srcPath, final ProtoSource fileSource,
+                            final GenerationContext context)
     {
+        final DestinationConfig dstPath = config.getDstPath();
+
+        final Shard shard = !stringIsNullOrEmpty(config.getShard()) ? Shard.parse(config.getShard()) : null;
         final long start = nanoTime();
+        final boolean trace = !stringIsNullOrEmpty(cliParse.getTrace());
+        final Profiler profiler = (cliParse.isProfile() || trace || Profiler.isFlightRecording()) ?
+                new Profiler(trace) : Profiler.none;
+
+        final Path protoRoot;
+        final ProtoSource source;
+        final List<Tuple<Path, DestinationConfig>> paths;
+        final Function<Path, String> packageOf;
+
+        final Profiler.Scope discovery = profiler.start(null, Phase.Discovery);
+        if (!stringIsNullOrEmpty(cliParse.getDescriptorSet()))
+        {
+            // Protoc has already parsed and linked the files, 'src_path' isn't needed at all
+            final DescriptorSource descriptors = DescriptorSource.fromDescriptorSet(get(cliParse.getDescriptorSet()));
+
+            protoRoot = descriptors.getRoot();
+            source = descriptors;
+            paths = descriptors.getPaths().stream().map(p -> Tuple.of(p, dstPath)).collect(toList());
+            packageOf = p -> {
+                try
+                {
+                    final String packageName = descriptors.getPackageName(p);
+                    return nonNull(packageName) ? packageName : "";
+                }
+                catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            };
+
+            log.info("Loaded {} proto-files from '{}' in {} seconds", paths.size(), cliParse.getDescriptorSet(),
+                    secondsSince(start));
+        }
+        else
+        {
+            protoRoot = srcPath;
+            source = fileSource;
+            paths = findFilesRecursively(srcPath, dstPath, "proto", config.getInclude(), config.getExclude());
+            packageOf = null;
+
+            log.info("Found {} proto-files in {} seconds", paths.size(), secondsSince(start));
+        }
+        discovery.close();
+
+        if (!stringIsNullOrEmpty(cliParse.getVerifyShards()))
+        {
+            // Shards are verified against the very files, they have been given to convert
+            verifyShards(protoRoot, selectTargets(protoRoot, paths, packageOf, cliParse.getTargets()), dstPath,
+                    parseInt(cliParse.getVerifyShards()));
+            return;
+        }
+
+        if (cliParse.isCheck())
+        {
+            if (!stringIsNullOrEmpty(config.getOutputArchive()))
+                log.warn("Generated files are checked against the destination folders, 'output_archive' is ignored");
+
+            final boolean upToDate = check(protoRoot, source, paths, packageOf, dstPath, context, profiler, shard,
+                    cliParse.getTargets(), start);
+
+            reportProfile(profiler, cliParse);
+            if (!upToDate)
+                exit(1);
+
+            return;
+        }
+
+        final OutputSink output = createSink(dstPath, config);
+        final SizeReport sizeReport = !stringIsNullOrEmpty(cliParse.getSizeReport()) ?
+                new SizeReport(output, dstPath) : null;
+        final DependencyGraphs graphs = !stringIsNullOrEmpty(cliParse.getGraphs()) ? new DependencyGraphs() : null;
+
+        try (final OutputSink sink = nonNull(sizeReport) ? sizeReport : output)
+        {
+            final Converter converter = new Converter(singletonList(context), source, sink, profiler, graphs);
+            launchSingle(protoRoot, source, paths, packageOf, dstPath, converter, shard, cliParse.getTargets(), start,
+                    true);
+        }
+
+        reportProfile(profiler, cliParse);
+
+        if (nonNull(sizeReport))
+        {
+            sizeReport.logSummary(!stringIsNullOrEmpty(cliParse.getTop()) ? parseInt(cliParse.getTop()) : 10);
+
+            final Path sizeReportPath = get(cliParse.getSizeReport());
+            writeReport(sizeReportPath, sizeReport.toJson());
+
+            log.info("Size report is written to '{}'", sizeReportPath);
+        }
+
+        if (nonNull(graphs))
+        {
+            graphs.logSummary(!stringIsNullOrEmpty(cliParse.getTop()) ? parseInt(cliParse.getTop()) : 10);
+
+            final Path graphsPath = get(cliParse.getGraphs());
+            writeReport(graphsPath, graphsPath.toString().toLowerCase().endsWith(".dot") ? graphs.toDot() :
+                    graphs.toJson());
+
+            log.info("Dependency graphs are written to '{}'", graphsPath);
+        }
+    }
+
+    private static void reportProfile(final Profiler profiler, final Parse cliParse)
+    {
+        if (cliParse.isProfile())
+            profiler.logSummary(!stringIsNullOrEmpty(cliParse.getSlowest()) ? parseInt(cliParse.getSlowest()) : 10);
+
+        if (!stringIsNullOrEmpty(cliParse.getProfileJson()))
+        {
+            final Path profileJson = get(cliParse.getProfileJson());
+            writeReport(profileJson, profiler.toJson());
+
+            log.info("Profile is written to '{}'", profileJson);
+        }
+
+        if (!stringIsNullOrEmpty(cliParse.getTrace()))
+        {
+            final Path trace = get(cliParse.getTrace());
+            writeReport(trace, profiler.toTrace());
+
+            log.info("Trace is written to '{}'", trace);
+        }
+    }
+
+    private static void writeReport(final Path path, final String contents)
+    {
+        try
+        {
+            write(path, contents.getBytes(UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void createDestinations(final DestinationConfig dstPath)
+    {
+        if (!dstPath.pathPublic.toFile().isDirectory())
+            if(!dstPath.pathPublic.toFile().mkdirs())
+                throw new IllegalArgumentException("Destination Public folder '" + dstPath.pathPublic + "' does not exist, or isn't a directory");
+
+        if (!dstPath.pathPrivate.toFile().isDirectory())
+            if(!dstPath.pathPrivate.toFile().mkdirs())
+                throw new IllegalArgumentException("Destination Private folder '" + dstPath.pathPrivate + "' does not exist, or isn't a directory");
+    }
+
+    /**
+     * @return True if all generated files are up to date.
+     */
+    private static boolean check(final Path srcPath, final ProtoSource source,
+                                 final List<Tuple<Path, DestinationConfig>> paths,
+                                 final Function<Path, String> packageOf, final DestinationConfig dstPath,
+                                 final GenerationContext context, final Profiler profiler, final Shard shard,
+                                 final List<String> targetNames, final long start)
+    {
+        // Neither the output cache nor the timings file may be touched
+        final GenerationContext readOnly = context.toBuilder()
+            .setCacheDir(null)
+            .setTimingsFile(null)
+            .build();
+
+        final CheckingSink sink = new CheckingSink();
+        final Converter converter = new Converter(singletonList(readOnly), source, sink, profiler);
+
+        // Shard manifests are outputs too, but writing them would touch the destination
+        launchSingle(srcPath, source, paths, packageOf, dstPath, converter, shard, targetNames, start, false);
+
+        final List<Path> stale = sink.getStale();
+        if (!stale.isEmpty())
+        {
+            stale.forEach(p -> log.error("'{}' is stale: {}", p, sink.getReason(p)));
+            log.fatal("{} of {} generated files are stale", stale.size(), sink.getDigests().size());
+            return false;
+        }
+
+        log.info("All of {} generated files are up to date", sink.getDigests().size());
+        return true;
+    }
+
+    private static OutputSink createSink(final DestinationConfig dstPath, final Config config)
+    {
+        if (stringIsNullOrEmpty(config.getOutputArchive()))
+            return new FileSystemSink();
+
+        final Path archive = get(config.getOutputArchive());
+        final Path root = getCommonParent(dstPath.pathPublic, dstPath.pathPrivate);
+
+        log.info("Generated files will be packed into '{}', relative to '{}'", archive, root);
+        return new ZipSink(archive, root);
+    }
+
+    private static Path getCommonParent(final Path first, final Path second)
+    {
+        final Path normalizedSecond = second.toAbsolutePath().normalize();
+
+        Path parent = first.toAbsolutePath().normalize();
+        while (nonNull(parent) && !normalizedSecond.startsWith(parent))
+            parent = parent.getParent();
+
+        if (isNull(parent))
+            throw new RuntimeException("'" + first + "' and '" + second + "' have no common parent");
 
-        final List<Tuple<Path, DestinationConfig>> paths = findFilesRecursively(srcPath, dstPath, "proto");
+        return parent;
+    }
+
+    private static void launchSingle(final Path srcPath, final ProtoSource source,
+                                     final List<Tuple<Path, DestinationConfig>> paths,
+                                     final Function<Path, String> packageOf, final DestinationConfig dstPath,
+                                     final Converter converter, final Shard shard, final List<String> targetNames,
+                                     final long start, final boolean writeManifest)
+    {
+        // Types are still resolved from the whole tree, but only the targets are converted
+        final List<Tuple<Path, DestinationConfig>> targets = selectTargets(srcPath, paths, packageOf, targetNames);
+
+        if (nonNull(shard))
+        {
+            final List<Tuple<Path, DestinationConfig>> owned = shard.select(targets,
+                p -> srcPath.relativize(p.first()).toString().replace('\\', '/'), p -> sizeOf(source, p.first()));
 
-        // Display how many proto file(s) pending processed
-        log.info("Running converter, {} proto-files pending processed.", paths.size());
-        converter.convert(srcPath, paths);
+            log.info("Running converter as shard {}, {} of {} proto-files pending processed.", shard, owned.size(),
+                    targets.size());
+            converter.convert(srcPath, paths, owned);
+
+            if (writeManifest)
+            {
+                shard.writeManifest(dstPath.pathPrivate, owned.stream()
+                    .map(p -> srcPath.relativize(p.first()))
+                    .collect(toList()));
+            }
+        }
+        else
+        {
+            // Display how many proto file(s) pending processed
+            log.info("Running converter, {} proto-files pending processed.", targets.size());
+            converter.convert(srcPath, paths, targets);
+        }
+
+        log.info("All done in {} seconds. Shutting converter down...", secondsSince(start));
+    }
+
+    /**
+     * @return Files, matching the targets, or all of the files if no targets are given.
+     */
+    private static List<Tuple<Path, DestinationConfig>> selectTargets(final Path srcPath,
+                                                                      final List<Tuple<Path, DestinationConfig>> paths,
+                                                                      final Function<Path, String> packageOf,
+                                                                      final List<String> targetNames)
+    {
+        if (targetNames.isEmpty())
+            return paths;
+
+        final List<Tuple<Path, DestinationConfig>> targets = nonNull(packageOf) ?
+                Converter.selectTargets(srcPath, paths, targetNames, packageOf) :
+                Converter.selectTargets(srcPath, paths, targetNames);
+
+        log.info("{} proto-files match targets {}", targets.size(), targetNames);
+        return targets;
+    }
+
+    private static long sizeOf(final ProtoSource source, final Path path)
+    {
+        try
+        {
+            return source.size(path);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static float secondsSince(final long start)
+    {
+        return (float) round((double) (nanoTime() - start) / 1000000.0) / 1000.0f;
+    }
+
+    private static void verifyShards(final Path srcPath, final List<Tuple<Path, DestinationConfig>> targets,
+                                     final DestinationConfig dstPath, final int numShards)
+    {
+        final List<Path> paths = targets.stream()
+            .map(p -> srcPath.relativize(p.first()))
+            .collect(toList());
+
+        final List<String> problems = Shard.verify(dstPath.pathPrivate, numShards, paths);
+
+        if (!problems.isEmpty())
+        {
+            problems.forEach(p -> log.error(p));
+            log.fatal("{} shards don't cover {} proto-files exactly once", numShards, paths.size());
+            exit(1);
+        }
 
-        final float elapsed = (float) round((double) (nanoTime() - start) / 1000000.0) / 1000.0f;
-        log.info("All done in {} seconds. Shutting converter down...", elapsed);
+        log.info("{} shards cover all of {} proto-files exactly once", numShards, paths.size());
     }
 }
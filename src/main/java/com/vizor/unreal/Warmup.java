@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.Config;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.util.CliHandler;
+import com.vizor.unreal.writer.HashingSink;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.lang.String.join;
+import static java.util.Collections.emptyList;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * A training run, which loads (almost) every class a real run does, without touching the file system. Used to dump
+ * an AppCDS archive (see the 'appcds' profile in pom.xml), so that the classes needn't be loaded and verified
+ * again on each start.
+ */
+public final class Warmup
+{
+    private static final Logger log = getLogger(Warmup.class);
+
+    private Warmup()
+    {
+    }
+
+    public static void main(final String[] args)
+    {
+        new CliHandler("--src_path", "protos", "--shard", "1/1").getParse();
+        Config.read(Warmup.class.getResourceAsStream("/config.yml")).validate();
+
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("warmup/common.proto", join("\n",
+            "syntax = \"proto3\";",
+            "package warmup;",
+            "enum Kind { UNKNOWN = 0; FIRST = 1; }",
+            "message Item {",
+            "  message Inner { repeated string tags = 1; }",
+            "  Kind kind = 1;",
+            "  map<string, int64> counters = 2;",
+            "  oneof value { float real = 3; bytes raw = 4; }",
+            "  Inner inner = 5;",
+            "}"
+        ));
+
+        sources.put("warmup/service.proto", join("\n",
+            "syntax = \"proto3\";",
+            "package warmup.service;",
+            "import \"warmup/common.proto\";",
+            "message Request { repeated warmup.Item items = 1; bool flag = 2; }",
+            "service Store { rpc Put (Request) returns (warmup.Item); }"
+        ));
+
+        final GenerationContext context = GenerationContext.builder()
+            .setModuleName("Warmup")
+            .setCompanyName("Warmup")
+            .setThreads(1)
+            .build();
+
+        final HashingSink sink = new HashingSink();
+        Cornerstone.generate(context, sources, emptyList(), sink);
+
+        log.info("Warmup done, {} files generated", sink.getDigests().size());
+    }
+}
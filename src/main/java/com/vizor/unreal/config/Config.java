@@ -15,6 +15,7 @@
  */
 package com.vizor.unreal.config;
 
+import com.vizor.unreal.convert.Shard;
 import com.vizor.unreal.util.CliHandler.Parse;
 import com.vizor.unreal.util.Misc;
 import org.apache.logging.log4j.Level;
@@ -22,37 +23,32 @@ import org.apache.logging.log4j.Logger;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.DumperOptions.FlowStyle;
 import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.constructor.Constructor;
-import org.yaml.snakeyaml.introspector.Property;
-import org.yaml.snakeyaml.introspector.PropertyUtils;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.lang.annotation.ElementType;
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-import java.lang.annotation.Target;
-import java.lang.reflect.Field;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.CodeSource;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
-import static com.vizor.unreal.util.Misc.snakeCaseToCamelCase;
 import static com.vizor.unreal.util.Misc.stringIsNullOrEmpty;
 import static java.lang.Character.isDigit;
 import static java.lang.Character.isLetter;
 import static java.lang.String.valueOf;
 import static java.lang.Thread.currentThread;
 import static java.util.Arrays.stream;
+import static java.util.Collections.emptyList;
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
-import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 import static org.apache.logging.log4j.LogManager.getLogger;
 import static org.apache.logging.log4j.LogManager.getRootLogger;
 
@@ -60,42 +56,51 @@ import static org.apache.logging.log4j.LogManager.getRootLogger;
 @SuppressWarnings("unused")
 public final class Config
 {
-    @Target(ElementType.FIELD)
-    @Retention(RetentionPolicy.RUNTIME)
-    private @interface ConfigField {}
-
     private static final Logger log = getLogger(Config.class);
     private static final String configFileName = "config.yml";
+    private static final String nativeImageProperty = "org.graalvm.nativeimage.imagecode";
 
-    private static Config config = null;
-
-    @ConfigField
     private String srcPath;
 
-    @ConfigField
     private String dstPublicPath;
 
-    @ConfigField
     private String dstPrivatePath;
 
-    @ConfigField
     private String moduleName;
 
-    @ConfigField
     private String precompiledHeader;
 
-    @ConfigField
     private String wrappersPath;
 
-    @ConfigField
     private String companyName;
 
-    @ConfigField
     private String logLevel;
 
-    @ConfigField
     private boolean noFork;
 
+    private int protoCacheSize;
+
+    private String shard;
+
+    private int threads;
+
+    private String timingsFile;
+
+    private List<String> include;
+
+    private List<String> exclude;
+
+    private String outputArchive;
+
+    private boolean depfiles;
+
+    private String cacheDir;
+
+    private int cacheSize;
+
+    // Where the config was loaded from, not an option itself
+    private Path configFile;
+
 
     public final String getSrcPath()
     {
@@ -187,15 +192,151 @@ public final class Config
         this.noFork = noFork;
     }
 
+    public int getProtoCacheSize()
+    {
+        return protoCacheSize;
+    }
+
+    public void setProtoCacheSize(int protoCacheSize)
+    {
+        this.protoCacheSize = protoCacheSize;
+    }
+
+    public String getShard()
+    {
+        return shard;
+    }
+
+    public void setShard(String shard)
+    {
+        this.shard = shard;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    public String getTimingsFile()
+    {
+        return timingsFile;
+    }
+
+    public void setTimingsFile(String timingsFile)
+    {
+        this.timingsFile = timingsFile;
+    }
+
+    public List<String> getInclude()
+    {
+        return nonNull(include) ? include : emptyList();
+    }
+
+    public void setInclude(List<String> include)
+    {
+        this.include = include;
+    }
+
+    public List<String> getExclude()
+    {
+        return nonNull(exclude) ? exclude : emptyList();
+    }
+
+    public void setExclude(List<String> exclude)
+    {
+        this.exclude = exclude;
+    }
+
+    public String getOutputArchive()
+    {
+        return outputArchive;
+    }
+
+    public void setOutputArchive(String outputArchive)
+    {
+        this.outputArchive = outputArchive;
+    }
+
+    public boolean isDepfiles()
+    {
+        return depfiles;
+    }
+
+    public void setDepfiles(boolean depfiles)
+    {
+        this.depfiles = depfiles;
+    }
+
+    public String getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    public void setCacheDir(String cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    public int getCacheSize()
+    {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize)
+    {
+        this.cacheSize = cacheSize;
+    }
+
     /**
-     * If we're not in jar -> loads the config ONLY from the 'resources' directory.
-     * If we're in jar -> try to load config from the file near the jar.
+     * @return The file the config was loaded from, or null if it wasn't loaded from a plain file (e.g. from within
+     *         a jar).
+     */
+    public Path getConfigFile()
+    {
+        return configFile;
+    }
+
+    /**
+     * Locates the config file, see {@link #getConfigStream()}.
      *
-     * @return Opened {@link InputStream to the config file}
+     * @return Path to the config file or null, if the config can only be read as a stream.
      */
-    private static InputStream getConfigStream()
+    private static Path getConfigPath()
+    {
+        final Path overridePath = getOverrideConfigPath();
+        if (nonNull(overridePath))
+            return overridePath;
+
+        final URL resource = currentThread().getContextClassLoader().getResource(configFileName);
+        if (isNull(resource) || !"file".equals(resource.getProtocol()))
+            return null;
+
+        try
+        {
+            return Paths.get(resource.toURI());
+        }
+        catch (URISyntaxException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return Path to the config near the jar (or the executable), or null if the config must be taken from the
+     *         resources.
+     */
+    private static Path getOverrideConfigPath()
     {
-        String pathToJar = Config.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+        // There's no code source within a native image, the config is then searched in the working directory
+        final CodeSource codeSource = Config.class.getProtectionDomain().getCodeSource();
+        final boolean isNativeImage = nonNull(System.getProperty(nativeImageProperty)) || isNull(codeSource);
+
+        String pathToJar = !isNativeImage ? codeSource.getLocation().getPath() : "";
 
         // Cut first slash - need on Windows
         if (System.getProperty("os.name").toLowerCase().contains("windows"))
@@ -206,18 +347,34 @@ public final class Config
         // Only excelsior jet is now supported
         final boolean isJetCompiled = nonNull(System.getProperty("jet.exe.dir"));
 
-        if (isInJar || isJetCompiled)
-        {
-            // If integrally compiled  -> the config must be loaded
-            final Path configSearchFolder;
+        if (!isInJar && !isJetCompiled && !isNativeImage)
+            return null;
 
-            if (isInJar)
-                configSearchFolder = Paths.get(pathToJar).getParent();
-            else
-                configSearchFolder = Paths.get(System.getProperty("jet.exe.dir"));
+        // If integrally compiled  -> the config must be loaded
+        final Path configSearchFolder;
 
-            final Path pathToConfig = requireNonNull(configSearchFolder).resolve(configFileName);
+        if (isInJar)
+            configSearchFolder = Paths.get(pathToJar).getParent();
+        else if (isJetCompiled)
+            configSearchFolder = Paths.get(System.getProperty("jet.exe.dir"));
+        else
+            configSearchFolder = Paths.get("").toAbsolutePath();
+
+        return requireNonNull(configSearchFolder).resolve(configFileName);
+    }
+
+    /**
+     * If we're not in jar -> loads the config ONLY from the 'resources' directory.
+     * If we're in jar -> try to load config from the file near the jar.
+     *
+     * @return Opened {@link InputStream to the config file}
+     */
+    private static InputStream getConfigStream()
+    {
+        final Path pathToConfig = getOverrideConfigPath();
 
+        if (nonNull(pathToConfig))
+        {
             try
             {
                 final FileInputStream fs = new FileInputStream(pathToConfig.toString());
@@ -228,7 +385,7 @@ public final class Config
             catch (FileNotFoundException t)
             {
                 // Override config is mandatory if cornerstone is compiled into an executable
-                log.fatal("Please, put your {} into {}", configFileName, configSearchFolder);
+                log.fatal("Please, put your {} into {}", configFileName, pathToConfig.getParent());
                 System.exit(1);
             }
         }
@@ -242,25 +399,175 @@ public final class Config
         return rs;
     }
 
+    /**
+     * Returns the process-wide config, loading it on the first call. Safe to be called from any thread.
+     *
+     * NOTE: The config is only read by the command line launcher. The converter itself takes its settings from a
+     * {@link GenerationContext}, so several different runs may coexist within a single JVM.
+     *
+     * @return The loaded config.
+     */
     public static Config get()
     {
-        if (isNull(config))
+        return Holder.config;
+    }
+
+    // Initialization-on-demand holder, the JVM guarantees the config is loaded exactly once and safely published
+    private static final class Holder
+    {
+        private static final Config config = load();
+    }
+
+    private static Config load()
+    {
+        final Config config = read(getConfigStream());
+        config.configFile = getConfigPath();
+
+        return config;
+    }
+
+    /**
+     * Reads a config from YAML. Options are bound by hand (see {@link #bind}) rather than through bean
+     * introspection, which is noticeably cheaper at startup and doesn't require any reflection metadata within
+     * a native image.
+     *
+     * @param stream A stream to read YAML from, closed afterwards.
+     * @return A new config.
+     */
+    public static Config read(final InputStream stream)
+    {
+        final Object document;
+        try (final InputStream is = stream)
+        {
+            document = new Yaml(new SafeConstructor()).load(is);
+        }
+        catch (IOException e)
         {
-            final Constructor constructor = new Constructor(Config.class);
-            constructor.setPropertyUtils(new PropertyUtils(){
-                @Override
-                public Property getProperty(Class<?> type, String name)
-                {
-                    return super.getProperty(type, snakeCaseToCamelCase(name, false));
-                }
-            });
-
-            config = new Yaml(constructor).loadAs(getConfigStream(), Config.class);
+            throw new RuntimeException(e);
         }
 
+        final Config config = new Config();
+
+        if (document instanceof Map)
+            ((Map<?, ?>) document).forEach((option, value) -> config.bind(valueOf(option), value));
+        else if (nonNull(document))
+            throw new RuntimeException(configFileName + " must be a mapping of options, got " + document + " instead");
+
         return config;
     }
 
+    private void bind(final String option, final Object value)
+    {
+        switch (option)
+        {
+            case "src_path":
+                srcPath = asString(option, value);
+                break;
+            case "dst_public_path":
+                dstPublicPath = asString(option, value);
+                break;
+            case "dst_private_path":
+                dstPrivatePath = asString(option, value);
+                break;
+            case "module_name":
+                moduleName = asString(option, value);
+                break;
+            case "precompiled_header":
+                precompiledHeader = asString(option, value);
+                break;
+            case "wrappers_path":
+                wrappersPath = asString(option, value);
+                break;
+            case "company_name":
+                companyName = asString(option, value);
+                break;
+            case "log_level":
+                logLevel = asString(option, value);
+                break;
+            case "no_fork":
+                noFork = asBoolean(option, value);
+                break;
+            case "proto_cache_size":
+                protoCacheSize = asInt(option, value);
+                break;
+            case "shard":
+                shard = asString(option, value);
+                break;
+            case "threads":
+                threads = asInt(option, value);
+                break;
+            case "timings_file":
+                timingsFile = asString(option, value);
+                break;
+            case "include":
+                include = asStringList(option, value);
+                break;
+            case "exclude":
+                exclude = asStringList(option, value);
+                break;
+            case "output_archive":
+                outputArchive = asString(option, value);
+                break;
+            case "depfiles":
+                depfiles = asBoolean(option, value);
+                break;
+            case "cache_dir":
+                cacheDir = asString(option, value);
+                break;
+            case "cache_size":
+                cacheSize = asInt(option, value);
+                break;
+            default:
+                throw new RuntimeException("Unknown option '" + option + "' in " + configFileName);
+        }
+    }
+
+    private static String asString(final String option, final Object value)
+    {
+        if (isNull(value) || (value instanceof String))
+            return (String) value;
+
+        if ((value instanceof Number) || (value instanceof Boolean))
+            return valueOf(value);
+
+        throw new RuntimeException(option + " must be a string, got " + value + " instead");
+    }
+
+    private static boolean asBoolean(final String option, final Object value)
+    {
+        if (isNull(value))
+            return false;
+
+        if (value instanceof Boolean)
+            return (Boolean) value;
+
+        throw new RuntimeException(option + " must be either 'yes' or 'no', got " + value + " instead");
+    }
+
+    private static int asInt(final String option, final Object value)
+    {
+        if (isNull(value))
+            return 0;
+
+        if (value instanceof Integer)
+            return (Integer) value;
+
+        throw new RuntimeException(option + " must be an integer, got " + value + " instead");
+    }
+
+    private static List<String> asStringList(final String option, final Object value)
+    {
+        if (isNull(value))
+            return null;
+
+        if (!(value instanceof List))
+            throw new RuntimeException(option + " must be a list, got " + value + " instead");
+
+        return ((List<?>) value).stream()
+            .map(v -> asString(option, v))
+            .collect(toList());
+    }
+
     @Override
     public String toString()
     {
@@ -324,67 +631,40 @@ public final class Config
                 throw new RuntimeException("Selected option '" + logLevel + "' not found among available options: " +
                     availableOptions.toString());
         }
+
+        if (protoCacheSize < 0)
+            throw new RuntimeException("proto_cache_size, which is " + protoCacheSize + " mustn't be negative");
+
+        if (!stringIsNullOrEmpty(shard))
+            Shard.parse(shard);
+
+        if (threads < 0)
+            throw new RuntimeException("threads, which is " + threads + " mustn't be negative");
+
+        if (cacheSize < 0)
+            throw new RuntimeException("cache_size, which is " + cacheSize + " mustn't be negative");
     }
 
     public final void patchWithCliOptions(final Parse cliParse)
     {
-        final Class<?> cliParseClass = cliParse.getClass();
-        final Class<?> configClass = getClass();
-
-        final Field[] declaredFields = cliParseClass.getDeclaredFields();
-        final Map<String, Field> cliFields = stream(declaredFields).collect(toMap(Field::getName, identity()));
+        // NOTE: dst_path isn't patched, the config has distinct public and private paths instead
+        srcPath = patch("src_path", srcPath, cliParse.getSrcPath());
+        moduleName = patch("module_name", moduleName, cliParse.getModuleName());
+        logLevel = patch("log_level", logLevel, cliParse.getLogLevel());
+        shard = patch("shard", shard, cliParse.getShard());
+        outputArchive = patch("output_archive", outputArchive, cliParse.getOutputArchive());
+    }
 
-        for (final Field configField : configClass.getDeclaredFields())
+    private static String patch(final String option, final String configValue, final String cliValue)
+    {
+        // Don't replace if replacement value is null or values are equal.
+        if (nonNull(cliValue) && !Objects.equals(cliValue, configValue))
         {
-            // Skip fields not annotated as json props
-            if (!configField.isAnnotationPresent(ConfigField.class))
-                continue;
-
-            final Field cliField = cliFields.get(configField.getName());
-
-            // If field was found
-            if (nonNull(cliField))
-            {
-                final boolean configFieldWasAccessible = configField.isAccessible();
-                if (!configFieldWasAccessible)
-                    configField.setAccessible(true);
-
-                final boolean cliFieldWasAccessible = cliField.isAccessible();
-                if (!cliFieldWasAccessible)
-                    cliField.setAccessible(true);
-
-                try
-                {
-                    final Object cliValue = cliField.get(cliParse);
-                    final Object configValue = configField.get(Config.this);
-
-                    // Don't replace if replacement value is null or values are equal.
-                    if (nonNull(cliValue) && !Objects.equals(cliValue, configValue))
-                    {
-                        log.info("Replacing '{}.{} = {}' with '{}.{} = {}'",
-                                configClass.getName(), configField.getName(), valueOf(configValue),
-                                cliParseClass.getName(), cliField.getName(), valueOf(cliValue));
-
-                        configField.set(this, cliValue);
-                    }
-                }
-                catch (IllegalAccessException e)
-                {
-                    throw new RuntimeException(e);
-                }
-
-                if (!configFieldWasAccessible)
-                    configField.setAccessible(false);
-
-                if (!cliFieldWasAccessible)
-                    cliField.setAccessible(false);
-            }
-            else
-            {
-                log.debug("Field named '{}' wasn't found among {}", configField.getName(),
-                        stream(declaredFields).map(df -> "'" + df.getName() + "'").collect(toList()));
-            }
+            log.info("Replacing '{} = {}' with '{}' from the command line", option, valueOf(configValue), cliValue);
+            return cliValue;
         }
+
+        return configValue;
     }
 
     public DestinationConfig getDstPath() {
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.config;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.vizor.unreal.util.Misc.stringIsNullOrEmpty;
+import static java.nio.file.Paths.get;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable settings of a single generation run.
+ *
+ * Unlike {@link Config}, which is a process-wide singleton loaded from 'config.yml', a context is passed explicitly
+ * to the converter, so that several runs with different settings may coexist within a single JVM.
+ */
+public final class GenerationContext
+{
+    private static final long bytesPerMegabyte = 1024 * 1024;
+
+    private final String moduleName;
+    private final Path dstPublicPath;
+    private final Path dstPrivatePath;
+    private final String wrappersPath;
+    private final String companyName;
+    private final String precompiledHeader;
+
+    private final int threads;
+    private final int protoCacheSize;
+    private final Path timingsFile;
+
+    private final boolean depfiles;
+    private final List<Path> dependencies;
+
+    private final Path cacheDir;
+    private final long cacheSize;
+
+    private GenerationContext(final Builder builder)
+    {
+        this.moduleName = builder.moduleName;
+        this.dstPublicPath = builder.dstPublicPath;
+        this.dstPrivatePath = builder.dstPrivatePath;
+        this.wrappersPath = builder.wrappersPath;
+        this.companyName = builder.companyName;
+        this.precompiledHeader = builder.precompiledHeader;
+
+        this.threads = builder.threads;
+        this.protoCacheSize = builder.protoCacheSize;
+        this.timingsFile = builder.timingsFile;
+
+        this.depfiles = builder.depfiles;
+        this.dependencies = unmodifiableList(new ArrayList<>(builder.dependencies));
+
+        this.cacheDir = builder.cacheDir;
+        this.cacheSize = builder.cacheSize;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Creates a context from the settings of a loaded (and already patched with CLI options) config.
+     *
+     * @param config A config to take settings from.
+     * @return A new context.
+     */
+    public static GenerationContext fromConfig(final Config config)
+    {
+        final DestinationConfig dstPath = config.getDstPath();
+        final String timingsFile = config.getTimingsFile();
+        final String cacheDir = config.getCacheDir();
+
+        return builder()
+            .setModuleName(config.getModuleName())
+            .setDstPath(dstPath)
+            .setWrappersPath(config.getWrappersPath())
+            .setCompanyName(config.getCompanyName())
+            .setPrecompiledHeader(config.getPrecompiledHeader())
+            .setThreads(config.isNoFork() ? 1 : config.getThreads())
+            .setProtoCacheSize(config.getProtoCacheSize())
+            .setTimingsFile(stringIsNullOrEmpty(timingsFile) ? null : get(timingsFile))
+            .setDepfiles(config.isDepfiles())
+            .setDependencies(nonNull(config.getConfigFile()) ? singletonList(config.getConfigFile()) : emptyList())
+            .setCacheDir(stringIsNullOrEmpty(cacheDir) ? null : get(cacheDir))
+            .setCacheSize(config.getCacheSize() * bytesPerMegabyte)
+            .build();
+    }
+
+    /**
+     * @return A builder, initialized with settings of this context.
+     */
+    public final Builder toBuilder()
+    {
+        return builder()
+            .setModuleName(moduleName)
+            .setDstPath(getDstPath())
+            .setWrappersPath(wrappersPath)
+            .setCompanyName(companyName)
+            .setPrecompiledHeader(precompiledHeader)
+            .setThreads(threads)
+            .setProtoCacheSize(protoCacheSize)
+            .setTimingsFile(timingsFile)
+            .setDepfiles(depfiles)
+            .setDependencies(dependencies)
+            .setCacheDir(cacheDir)
+            .setCacheSize(cacheSize);
+    }
+
+    public final String getModuleName()
+    {
+        return moduleName;
+    }
+
+    public final DestinationConfig getDstPath()
+    {
+        // DestinationConfig is mutable, so a copy is returned
+        return new DestinationConfig(dstPublicPath, dstPrivatePath);
+    }
+
+    public final String getWrappersPath()
+    {
+        return wrappersPath;
+    }
+
+    public final String getCompanyName()
+    {
+        return companyName;
+    }
+
+    public final String getPrecompiledHeader()
+    {
+        return precompiledHeader;
+    }
+
+    /**
+     * @return Number of threads to convert files with, 0 means 'as many as there are available processors'.
+     */
+    public final int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * @return Maximum number of parsed proto files to be kept in memory simultaneously, 0 means 'no limit'.
+     */
+    public final int getProtoCacheSize()
+    {
+        return protoCacheSize;
+    }
+
+    /**
+     * @return A file to persist conversion timings into, or null if timings shouldn't be persisted.
+     */
+    public final Path getTimingsFile()
+    {
+        return timingsFile;
+    }
+
+    /**
+     * @return True if a Make-style depfile should be written next to the generated files of each proto file.
+     */
+    public final boolean isDepfiles()
+    {
+        return depfiles;
+    }
+
+    /**
+     * @return Files, every generated file depends on besides the proto files (e.g. the config).
+     */
+    public final List<Path> getDependencies()
+    {
+        return dependencies;
+    }
+
+    /**
+     * @return A directory of the shared output cache, or null if generated files shouldn't be cached.
+     */
+    public final Path getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    /**
+     * @return Maximum size of the output cache in bytes, 0 means 'no limit'.
+     */
+    public final long getCacheSize()
+    {
+        return cacheSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GenerationContext{moduleName='" + moduleName + "', dstPath=" + dstPublicPath + " | " +
+                dstPrivatePath + ", wrappersPath='" + wrappersPath + "', companyName='" + companyName +
+                "', precompiledHeader='" + precompiledHeader + "', threads=" + threads + ", protoCacheSize=" +
+                protoCacheSize + ", timingsFile=" + timingsFile + ", depfiles=" + depfiles + ", dependencies=" +
+                dependencies + ", cacheDir=" + cacheDir + ", cacheSize=" + cacheSize + "}";
+    }
+
+    public static final class Builder
+    {
+        private String moduleName = "";
+        private Path dstPublicPath = get("Public");
+        private Path dstPrivatePath = get("Private");
+        private String wrappersPath = "Wrappers";
+        private String companyName = null;
+        private String precompiledHeader = "";
+
+        private int threads = 0;
+        private int protoCacheSize = 0;
+        private Path timingsFile = null;
+
+        private boolean depfiles = false;
+        private List<Path> dependencies = emptyList();
+
+        private Path cacheDir = null;
+        private long cacheSize = 0;
+
+        private Builder()
+        {
+        }
+
+        public final Builder setModuleName(final String moduleName)
+        {
+            this.moduleName = nonNull(moduleName) ? moduleName : "";
+            return this;
+        }
+
+        public final Builder setDstPath(final DestinationConfig dstPath)
+        {
+            this.dstPublicPath = requireNonNull(dstPath.pathPublic);
+            this.dstPrivatePath = requireNonNull(dstPath.pathPrivate);
+            return this;
+        }
+
+        public final Builder setWrappersPath(final String wrappersPath)
+        {
+            this.wrappersPath = wrappersPath;
+            return this;
+        }
+
+        public final Builder setCompanyName(final String companyName)
+        {
+            this.companyName = companyName;
+            return this;
+        }
+
+        public final Builder setPrecompiledHeader(final String precompiledHeader)
+        {
+            this.precompiledHeader = nonNull(precompiledHeader) ? precompiledHeader : "";
+            return this;
+        }
+
+        public final Builder setThreads(final int threads)
+        {
+            this.threads = threads;
+            return this;
+        }
+
+        public final Builder setProtoCacheSize(final int protoCacheSize)
+        {
+            this.protoCacheSize = protoCacheSize;
+            return this;
+        }
+
+        public final Builder setTimingsFile(final Path timingsFile)
+        {
+            this.timingsFile = timingsFile;
+            return this;
+        }
+
+        public final Builder setDepfiles(final boolean depfiles)
+        {
+            this.depfiles = depfiles;
+            return this;
+        }
+
+        public final Builder setDependencies(final List<Path> dependencies)
+        {
+            this.dependencies = requireNonNull(dependencies);
+            return this;
+        }
+
+        public final Builder setCacheDir(final Path cacheDir)
+        {
+            this.cacheDir = cacheDir;
+            return this;
+        }
+
+        public final Builder setCacheSize(final long cacheSize)
+        {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public final GenerationContext build()
+        {
+            for (int i = 0; i < moduleName.length(); i++)
+            {
+                if (!Character.isLetterOrDigit(moduleName.charAt(i)))
+                    throw new RuntimeException("moduleName, which is '" + moduleName +
+                            "' must contain only digits or letters");
+            }
+
+            if (stringIsNullOrEmpty(wrappersPath))
+                throw new RuntimeException("wrappersPath must not be null or empty");
+
+            if (stringIsNullOrEmpty(companyName))
+                throw new RuntimeException("companyName must not be null or empty");
+
+            if (companyName.indexOf('|') >= 0)
+                throw new RuntimeException("companyName, which is '" + companyName + "' mustn't contain '|'");
+
+            if (threads < 0)
+                throw new RuntimeException("threads, which is " + threads + " mustn't be negative");
+
+            if (protoCacheSize < 0)
+                throw new RuntimeException("protoCacheSize, which is " + protoCacheSize + " mustn't be negative");
+
+            if (cacheSize < 0)
+                throw new RuntimeException("cacheSize, which is " + cacheSize + " mustn't be negative");
+
+            return new GenerationContext(this);
+        }
+    }
+}
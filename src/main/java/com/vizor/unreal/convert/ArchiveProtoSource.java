@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+
+import static java.nio.file.FileSystems.newFileSystem;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Paths.get;
+
+/**
+ * Reads proto files directly from a zip or jar archive through the zip file system, nothing is extracted.
+ *
+ * An archive is given as 'protos.zip', or as 'protos.jar!/proto' if proto files reside in a directory within the
+ * archive. Paths of the files are paths within the archive's file system, so they can be walked, relativized and
+ * resolved just like paths on disk.
+ */
+public class ArchiveProtoSource extends FileProtoSource implements AutoCloseable
+{
+    private static final String entrySeparator = "!/";
+    private static final String[] extensions = {".zip", ".jar"};
+
+    private final Path archive;
+    private final FileSystem fileSystem;
+    private final Path root;
+
+    private ArchiveProtoSource(final Path archive, final String directory) throws IOException
+    {
+        this.archive = archive;
+        this.fileSystem = newFileSystem(archive, (ClassLoader) null);
+        this.root = fileSystem.getPath("/").resolve(directory).normalize();
+
+        if (!isDirectory(root))
+        {
+            fileSystem.close();
+            throw new IOException("'" + directory + "' isn't a directory within " + archive);
+        }
+    }
+
+    /**
+     * @param srcPath A source path from the config or the command line.
+     * @return True if the path refers to an archive (or a directory within it) rather than a directory.
+     */
+    public static boolean isArchive(final String srcPath)
+    {
+        final String archive = getArchivePart(srcPath);
+        for (final String e : extensions)
+        {
+            if (archive.regionMatches(true, archive.length() - e.length(), e, 0, e.length()))
+                return isRegularFile(get(archive));
+        }
+
+        return false;
+    }
+
+    /**
+     * Opens an archive. The archive is kept open until the source is closed.
+     *
+     * @param srcPath Path to the archive, optionally followed by '!/' and a directory within the archive.
+     * @return A new source.
+     * @throws IOException If the archive couldn't be opened or has no such directory.
+     */
+    public static ArchiveProtoSource open(final String srcPath) throws IOException
+    {
+        final int separatorIndex = srcPath.indexOf(entrySeparator);
+        final String directory = (separatorIndex >= 0) ?
+                srcPath.substring(separatorIndex + entrySeparator.length()) : "";
+
+        return new ArchiveProtoSource(get(getArchivePart(srcPath)), directory);
+    }
+
+    /**
+     * @return The archive file itself.
+     */
+    public final Path getArchive()
+    {
+        return archive;
+    }
+
+    /**
+     * @return Root of the proto tree within the archive.
+     */
+    public final Path getRoot()
+    {
+        return root;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        fileSystem.close();
+    }
+
+    private static String getArchivePart(final String srcPath)
+    {
+        final int separatorIndex = srcPath.indexOf(entrySeparator);
+        return (separatorIndex >= 0) ? srcPath.substring(0, separatorIndex) : srcPath;
+    }
+}
@@ -17,7 +17,6 @@ package com.vizor.unreal.convert;
 
 import com.squareup.wire.schema.internal.parser.RpcElement;
 import com.squareup.wire.schema.internal.parser.ServiceElement;
-import com.vizor.unreal.config.Config;
 import com.vizor.unreal.provider.TypesProvider;
 import com.vizor.unreal.tree.CppArgument;
 import com.vizor.unreal.tree.CppClass;
@@ -28,7 +27,7 @@ import com.vizor.unreal.tree.CppType;
 import com.vizor.unreal.util.Tuple;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -47,14 +46,12 @@ import static java.util.stream.Collectors.toList;
 
 class ClientGenerator
 {
-    private static final String companyName = Config.get().getCompanyName();
-
     // URpcDispatcher is a parent type for all dispatchers
     private static final CppType parentType = plain("URpcClient", Class);
 
     // Frequently used string literals:
-    private static final String rpcRequestsCategory = companyName + "|RPC Requests|";
-    private static final String rpcResponsesCategory = companyName + "|RPC Responses|";
+    private static final String rpcRequestsCategorySuffix = "|RPC Requests|";
+    private static final String rpcResponsesCategorySuffix = "|RPC Responses|";
     private static final String dispatcherPrefix = "RpcClient";
     private static final String eventPrefix = "Event";
     private static final String eventTypePrefix = "F" + eventPrefix;
@@ -70,6 +67,8 @@ class ClientGenerator
     static final CppArgument contextArg = new CppArgument(plain("FGrpcClientContext", Struct).makeRef(), "Context");
 
     private final ServiceElement service;
+    private final String rpcRequestsCategory;
+    private final String rpcResponsesCategory;
     private final CppType boolType;
     private final CppType voidType;
 
@@ -81,10 +80,14 @@ class ClientGenerator
     private final List<CppField> conduits;
     private final List<Tuple<CppDelegate, CppField>> delegates;
 
-    ClientGenerator(final ServiceElement service, final TypesProvider provider, final CppType clientType)
+    ClientGenerator(final ServiceElement service, final TypesProvider provider, final CppType clientType,
+                    final String companyName)
     {
         this.service = service;
 
+        this.rpcRequestsCategory = companyName + rpcRequestsCategorySuffix;
+        this.rpcResponsesCategory = companyName + rpcResponsesCategorySuffix;
+
         boolType = provider.getNative(boolean.class);
         voidType = provider.getNative(void.class);
 
@@ -93,7 +96,9 @@ class ClientGenerator
 
         final List<RpcElement> rpcs = service.rpcs();
 
-        requestsResponses = new HashMap<>(rpcs.size());
+        // Conduits, delegates and procedures are generated separately, but go in the same (declaration) order, so the
+        // i-th conduit is paired with the i-th delegate and the output doesn't depend on hashes of RPC names
+        requestsResponses = new LinkedHashMap<>(rpcs.size());
         rpcs.forEach(r -> requestsResponses.put(r.name(),
             Tuple.of(
                 provider.get(r.requestType()),
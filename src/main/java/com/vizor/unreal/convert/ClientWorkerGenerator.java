@@ -252,7 +252,7 @@ class ClientWorkerGenerator
 
     private String getPackageNamespaceString()
     {
-        return parse.packageName() != null ? parse.packageName() + "::" : "";
+        return parse.packageName() != null ? parse.packageName().replace(".", "::") + "::" : "";
     }
 
 }
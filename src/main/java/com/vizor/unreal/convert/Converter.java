@@ -15,123 +15,462 @@
  */
 package com.vizor.unreal.convert;
 
-import com.squareup.wire.ProtoAdapter;
-import com.squareup.wire.schema.internal.parser.ProtoFileElement;
-import com.vizor.unreal.config.Config;
 import com.vizor.unreal.config.DestinationConfig;
-import com.vizor.unreal.preprocess.NestedTypesRemover;
-import com.vizor.unreal.preprocess.Preprocessor;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.profile.Profiler;
 import com.vizor.unreal.util.Tuple;
+import com.vizor.unreal.writer.FileSystemSink;
+import com.vizor.unreal.writer.OutputSink;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static com.squareup.wire.schema.Location.get;
-import static com.squareup.wire.schema.internal.parser.ProtoParser.parse;
-import static java.lang.String.join;
-import static java.lang.System.lineSeparator;
-import static java.nio.file.Files.readAllLines;
-import static java.util.Arrays.asList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.lang.Math.max;
+import static java.lang.Math.round;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.FileSystems.getDefault;
+import static java.nio.file.Files.readAllBytes;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Comparator.comparingInt;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+import static java.util.regex.Pattern.MULTILINE;
+import static java.util.regex.Pattern.compile;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static org.apache.logging.log4j.LogManager.getLogger;
 
 public class Converter
 {
     private static final Logger log = getLogger(Converter.class);
 
-    @SuppressWarnings("ArraysAsListWithZeroOrOneArgument")
-    private static final List<Class<? extends Preprocessor>> preprocessorClasses = asList(
-        NestedTypesRemover.class
+    private static final String protoExtension = ".proto";
+    private static final Pattern packagePattern = compile("^\\s*package\\s+([\\w.]+)\\s*;", MULTILINE);
 
-        // Add new ones if you want to...
-    );
+    private final List<GenerationContext> contexts;
+    private final ProtoSource source;
+    private final OutputSink sink;
+    private final Profiler profiler;
+    private final DependencyGraphs graphs;
 
-    private final String moduleName;
+    /**
+     * Creates a converter, reading proto files from and writing generated files to the file system.
+     *
+     * @param context Settings of the conversion.
+     */
+    public Converter(final GenerationContext context)
+    {
+        this(context, ProtoSource.fileSystem, new FileSystemSink());
+    }
 
-    public Converter(final String moduleName)
+    /**
+     * @param context Settings of the conversion.
+     * @param source Provides contents of the proto files.
+     * @param sink Receives the generated files.
+     */
+    public Converter(final GenerationContext context, final ProtoSource source, final OutputSink sink)
     {
-        this.moduleName = moduleName;
+        this(singletonList(requireNonNull(context)), source, sink);
+    }
+
+    /**
+     * Creates a converter, generating several modules at once. Each file is parsed once and then converted for
+     * every module, thus modules must have distinct destination paths.
+     *
+     * Settings of the run itself (number of threads, proto cache size and the timings file) are taken from the
+     * first context.
+     *
+     * @param contexts Settings of the modules, at least one.
+     * @param source Provides contents of the proto files.
+     * @param sink Receives the generated files.
+     */
+    public Converter(final List<GenerationContext> contexts, final ProtoSource source, final OutputSink sink)
+    {
+        this(contexts, source, sink, Profiler.none);
+    }
+
+    /**
+     * Creates a converter, measuring phases of every file.
+     *
+     * @param contexts Settings of the modules, at least one.
+     * @param source Provides contents of the proto files.
+     * @param sink Receives the generated files.
+     * @param profiler Measures phases of the files, {@link Profiler#none} to measure nothing.
+     */
+    public Converter(final List<GenerationContext> contexts, final ProtoSource source, final OutputSink sink,
+                     final Profiler profiler)
+    {
+        this(contexts, source, sink, profiler, null);
+    }
+
+    /**
+     * Creates a converter, also recording the import graph and type-reference graphs of the converted files.
+     *
+     * @param contexts Settings of the modules, at least one.
+     * @param source Provides contents of the proto files.
+     * @param sink Receives the generated files.
+     * @param profiler Measures phases of the files, {@link Profiler#none} to measure nothing.
+     * @param graphs Receives the graphs, null to record nothing.
+     */
+    public Converter(final List<GenerationContext> contexts, final ProtoSource source, final OutputSink sink,
+                     final Profiler profiler, final DependencyGraphs graphs)
+    {
+        if (contexts.isEmpty())
+            throw new IllegalArgumentException("At least one context is required");
+
+        this.contexts = unmodifiableList(new ArrayList<>(contexts));
+        this.source = requireNonNull(source);
+        this.sink = requireNonNull(sink);
+        this.profiler = requireNonNull(profiler);
+        this.graphs = graphs;
     }
 
     public void convert(final Path srcPath, final List<Tuple<Path, DestinationConfig>> paths)
     {
-        List<ProtoProcessorArgs> args = new ArrayList<>();
+        convert(srcPath, paths, paths);
+    }
+
+    /**
+     * Converts only some of the files, still resolving types from all of them.
+     *
+     * @param srcPath Root of the proto tree.
+     * @param paths All proto files of the tree, paired with their destinations.
+     * @param targets Files to be converted, must be a subset of 'paths'.
+     */
+    public void convert(final Path srcPath, final List<Tuple<Path, DestinationConfig>> paths,
+                        final List<Tuple<Path, DestinationConfig>> targets)
+    {
+        final GenerationContext context = contexts.get(0);
+        final ProtoRegistry registry = new ProtoRegistry(srcPath, paths, source, context.getProtoCacheSize(),
+                profiler);
+
+        final Set<Path> targetPaths = targets.stream()
+            .map(t -> srcPath.relativize(t.first()))
+            .collect(toSet());
+
+        final int parallelism = (context.getThreads() > 0) ? context.getThreads() : getRuntime().availableProcessors();
+        final CostModel costModel = new CostModel(context.getTimingsFile());
+
+        // Files, restored from the cache aren't processed at all, so their type graphs would be missing
+        final OutputCache cache = (nonNull(context.getCacheDir()) && isNull(graphs)) ?
+                new OutputCache(context.getCacheDir(), context.getCacheSize(), srcPath, registry, source) : null;
+
+        final List<Path> targetList = registry.getPaths().stream()
+            .filter(targetPaths::contains)
+            .collect(toList());
+
+        final Map<Path, List<String>> keys = new ConcurrentHashMap<>();
+        final Map<Path, Long> estimates = new ConcurrentHashMap<>();
+
+        // Keys don't require parsing, so they are computed first: files, restored from the cache cost next to
+        // nothing, thus they are neither parsed in advance nor scheduled as expensive ones. The rest is estimated
+        // on the same workers as the conversion itself, so 'threads' and 'no_fork' hold for it as well
+        execute(targetList, parallelism, p -> {
+            if (nonNull(cache))
+            {
+                final List<String> pathKeys = contexts.stream().map(c -> cache.keyOf(p, c)).collect(toList());
+                keys.put(p, pathKeys);
+
+                if (pathKeys.stream().allMatch(cache::contains))
+                    return;
+            }
 
-        Stream<Tuple<Path, DestinationConfig>> pathsStream = paths.stream();
+            // A bounded registry doesn't retain parsed files, parsing everything once more just to estimate costs
+            // would be too expensive, so sizes are used instead
+            estimates.put(p, registry.isBounded() ? max(1, registry.sizeOf(p)) : CostModel.estimate(registry.get(p)));
+        });
+
+        final Map<Path, Long> costs = new HashMap<>(costModel.getCosts(estimates));
+        targetList.forEach(p -> costs.putIfAbsent(p, 1L));
+
+        final List<Path> schedule;
+        if (registry.isBounded())
+        {
+            // A bounded cache is only efficient if files, sharing imports are processed next to each other
+            schedule = registry.getLocalityOrder(targetPaths);
+        }
+        else
+        {
+            // The most expensive files go first, so that they won't dominate the makespan being started last
+            final Comparator<Path> byCost = Comparator.comparingLong(costs::get);
+            schedule = targetList.stream()
+                .sorted(byCost.reversed().thenComparing(comparingInt(registry::indexOf)))
+                .collect(toList());
+        }
 
-        pathsStream.forEach(pathPair -> {
-            final Path pathToProto = pathPair.first();
-            final DestinationConfig pathToConverted = pathPair.second();
-            
-            String fileContent = null;
-            
-            try 
+        final long totalCost = costs.values().stream().mapToLong(Long::longValue).sum();
+        final AtomicLong remainingCost = new AtomicLong(totalCost);
+        final AtomicInteger counter = new AtomicInteger();
+
+        log.info("Converting {} proto-files for {} module(s) using {} thread(s), the most expensive ones first",
+                schedule.size(), contexts.size(), parallelism);
+
+        execute(schedule, parallelism, path -> {
+            final int number = counter.incrementAndGet();
+            final long remaining = remainingCost.get();
+
+            if (costModel.isCalibrated())
             {
-                fileContent = join(lineSeparator(), readAllLines(pathPair.first()));
+                log.info("Converting {} ({}/{}, ~{}% or ~{} s of work left)", path, number, schedule.size(),
+                        percent(remaining, totalCost), (float) round((double) remaining / parallelism / 1.0e8) / 10.0f);
             }
-            catch (IOException ex)
+            else
             {
-                throw new RuntimeException(ex);
+                log.info("Converting {} ({}/{}, ~{}% of work left)", path, number, schedule.size(),
+                        percent(remaining, totalCost));
             }
 
-            final List<ProtoProcessorArgs> protoArgs = preProcess(parse(get(pathToProto.toString()), fileContent))
-                .stream()
-                .map(
-                    protoFile -> 
-                    {
-                        final Path relativePath = srcPath.relativize(pathToProto); 
-                        return new ProtoProcessorArgs(protoFile, relativePath, pathToConverted, moduleName);
-                    })
-                .collect(Collectors.toList());
+            final long start = nanoTime();
 
-            args.addAll(protoArgs);
+            boolean generated = false;
+            for (int i = 0; i < contexts.size(); i++)
+            {
+                generated |= generate(path, contexts.get(i), registry, cache,
+                        nonNull(cache) ? keys.get(path).get(i) : null);
+            }
+
+            // Restoring from the cache tells nothing about the cost of the file
+            if (generated)
+                costModel.record(path, nanoTime() - start);
+
+            remainingCost.addAndGet(-costs.get(path));
         });
 
-        Stream<ProtoProcessorArgs> argsStream = args.stream();
+        if (nonNull(graphs))
+            graphs.addImports(registry, schedule);
+
+        registry.logStatistics();
+        costModel.save();
 
-        if (!Config.get().isNoFork())
+        if (nonNull(cache))
         {
-            argsStream = argsStream.parallel();
+            cache.logStatistics();
+            cache.evict();
         }
+    }
 
-        argsStream.forEach(arg -> {
-            log.info("Converting {}", arg.pathToProto);
-            new ProtoProcessor(arg, args).run();
-        });
+    /**
+     * Generates files of a single proto file for a single module, restoring them from the cache if possible.
+     *
+     * @param key Key of the files in the cache, null if there is no cache.
+     * @return True if the files were actually generated, false if they were restored from the cache.
+     */
+    private boolean generate(final Path path, final GenerationContext context, final ProtoRegistry registry,
+                             final OutputCache cache, final String key)
+    {
+        final DepfileRecorder recorder = context.isDepfiles() ? new DepfileRecorder(sink) : null;
+        final OutputSink target = nonNull(recorder) ? recorder : sink;
+
+        final boolean generated = isNull(key) || !cache.restore(key, context.getDstPath(), target);
+
+        if (generated)
+        {
+            final OutputCache.Entry entry = nonNull(key) ? cache.newEntry(key, context.getDstPath(), target) : null;
+            final OutputSink output = nonNull(entry) ? entry : target;
+
+            registry.get(path).forEach(a -> new ProtoProcessor(a, registry, context, output, profiler, graphs).run());
+
+            if (nonNull(entry))
+                entry.commit();
+        }
+
+        if (nonNull(recorder))
+            writeDepfile(recorder, registry, path, context);
+
+        return generated;
     }
 
-    private List<ProtoFileElement> preProcess(ProtoFileElement element)
+    /**
+     * Selects files, matching any of the targets. A target is either a path to a proto file (relative to the source
+     * root or absolute) or a proto package. A package matches its files and files of its subpackages.
+     *
+     * @param srcPath Root of the proto tree.
+     * @param paths All proto files of the tree, paired with their destinations.
+     * @param targetNames Names of the targets.
+     *
+     * @return Files, matching the targets, in the same order as they were given.
+     */
+    public static List<Tuple<Path, DestinationConfig>> selectTargets(final Path srcPath,
+                                                                     final List<Tuple<Path, DestinationConfig>> paths,
+                                                                     final List<String> targetNames)
     {
-        final List<ProtoFileElement> elements = new ArrayList<>();
-        elements.add(element);
+        return selectTargets(srcPath, paths, targetNames, Converter::readPackageName);
+    }
 
-        try
+    /**
+     * Selects files, matching any of the targets, taking packages of the files from a given function.
+     *
+     * @param srcPath Root of the proto tree.
+     * @param paths All proto files of the tree, paired with their destinations.
+     * @param targetNames Names of the targets.
+     * @param packageOf Returns a package of a file by its absolute path, an empty string if it has none.
+     *
+     * @return Files, matching the targets, in the same order as they were given.
+     */
+    public static List<Tuple<Path, DestinationConfig>> selectTargets(final Path srcPath,
+                                                                     final List<Tuple<Path, DestinationConfig>> paths,
+                                                                     final List<String> targetNames,
+                                                                     final Function<Path, String> packageOf)
+    {
+        final Set<Path> files = new HashSet<>();
+        final Set<String> packages = new HashSet<>();
+
+        // Neither the source root (e.g. './protos') nor the targets are required to be normalized or absolute
+        final Set<Path> knownFiles = paths.stream()
+            .map(p -> p.first().toAbsolutePath().normalize())
+            .collect(toSet());
+
+        for (final String name : targetNames)
         {
-            for (final Class<? extends Preprocessor> c : preprocessorClasses)
+            if (name.toLowerCase().endsWith(protoExtension))
             {
-                final Preprocessor p = c.cast(c.newInstance());
+                final Path file = srcPath.resolve(name).toAbsolutePath().normalize();
 
-                // note that each processor outputs a set of ProtoFileElements's
-                // which should be processed independent of each other.
-                final List<ProtoFileElement> processed = elements.stream()
-                    .peek(e -> log.debug("Processing '{}' with '{}'", e.packageName(), p.getClass().getSimpleName()))
-                    .map(p::process)
-                    .collect(toList());
+                if (!knownFiles.contains(file))
+                    throw new IllegalArgumentException("Target '" + name + "' isn't a proto file within " + srcPath);
 
-                elements.clear();
-                elements.addAll(processed);
+                files.add(file);
             }
+            else
+            {
+                packages.add(name);
+            }
+        }
+
+        // Matching packages requires reading the files, but a full parse isn't needed to find the package statement
+        final Map<Path, String> packageNames = packages.isEmpty() ? emptyMap() : paths.parallelStream()
+            .collect(toMap(Tuple::first, p -> packageOf.apply(p.first())));
+
+        final Set<String> matchedPackages = new HashSet<>();
+        final List<Tuple<Path, DestinationConfig>> selected = paths.stream()
+            .filter(p -> {
+                if (files.contains(p.first().toAbsolutePath().normalize()))
+                    return true;
+
+                final String packageName = packageNames.get(p.first());
+                for (final String target : packages)
+                {
+                    if (nonNull(packageName) && (packageName.equals(target) || packageName.startsWith(target + '.')))
+                    {
+                        matchedPackages.add(target);
+                        return true;
+                    }
+                }
+
+                return false;
+            })
+            .collect(toList());
+
+        packages.stream()
+            .filter(p -> !matchedPackages.contains(p))
+            .findFirst()
+            .ifPresent(p -> {
+                throw new IllegalArgumentException("Target '" + p + "' matches no proto file within " + srcPath);
+            });
+
+        return selected;
+    }
+
+    private static void writeDepfile(final DepfileRecorder recorder, final ProtoRegistry registry,
+                                     final Path relativePath, final GenerationContext context)
+    {
+        final List<Path> prerequisites = new ArrayList<>();
+        prerequisites.add(registry.getAbsolutePath(relativePath));
+
+        registry.getImportClosure(relativePath).forEach(i -> prerequisites.add(registry.getAbsolutePath(i)));
+
+        // Make can't see files within archives, the archive itself is expected among the dependencies instead
+        prerequisites.removeIf(p -> p.getFileSystem() != getDefault());
+        prerequisites.addAll(context.getDependencies());
+
+        recorder.writeDepfile(context.getDstPath(), relativePath, prerequisites);
+    }
+
+    private static String readPackageName(final Path pathToProto)
+    {
+        try
+        {
+            final Matcher matcher = packagePattern.matcher(new String(readAllBytes(pathToProto), UTF_8));
+            return matcher.find() ? matcher.group(1) : "";
         }
-        catch (Throwable e)
+        catch (IOException e)
         {
             throw new RuntimeException(e);
         }
+    }
+
+    private static long percent(final long part, final long total)
+    {
+        return (total > 0) ? (100 * part / total) : 0;
+    }
 
-        return elements;
+    /**
+     * Runs the tasks strictly in the given order of starting. Unlike parallel streams, which split the input into
+     * chunks, a FIFO queue of a fixed thread pool guarantees that the first items are started first.
+     */
+    private static void execute(final List<Path> schedule, final int parallelism, final Consumer<Path> task)
+    {
+        if (parallelism <= 1)
+        {
+            schedule.forEach(task);
+            return;
+        }
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final ExecutorService executor = newFixedThreadPool(parallelism, r -> {
+            final Thread thread = new Thread(r, "cornerstone-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        try
+        {
+            final List<Future<?>> futures = schedule.stream()
+                .map(p -> executor.submit(() -> task.accept(p)))
+                .collect(toList());
+
+            for (final Future<?> f : futures)
+                f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            throw (cause instanceof RuntimeException) ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
     }
 }
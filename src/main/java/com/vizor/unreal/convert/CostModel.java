@@ -0,0 +1,252 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.squareup.wire.schema.internal.parser.MessageElement;
+import com.squareup.wire.schema.internal.parser.ProtoFileElement;
+import com.squareup.wire.schema.internal.parser.ServiceElement;
+import com.squareup.wire.schema.internal.parser.TypeElement;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.Long.parseLong;
+import static java.lang.Math.max;
+import static java.lang.Math.round;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.toList;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Estimates how expensive it is to convert a proto file.
+ *
+ * An initial estimate is computed from the number of messages, fields, enums and RPCs of the file. If the timings
+ * of previous runs are available, a file's cost is its last measured time, while the estimates of files without
+ * timings are scaled to nanoseconds using the ratio between measured and estimated costs of all other files.
+ */
+class CostModel
+{
+    private static final Logger log = getLogger(CostModel.class);
+
+    // Relative weights of the elements, a field is a unit
+    private static final long fileWeight = 20;
+    private static final long messageWeight = 8;
+    private static final long fieldWeight = 1;
+    private static final long enumWeight = 2;
+    private static final long rpcWeight = 16;
+
+    private static final char separator = '\t';
+
+    private final Path timingsFile;
+
+    // Normalized relative path -> nanoseconds, measured previously or during this run
+    private final Map<String, Long> previousTimings = new ConcurrentHashMap<>();
+    private final Map<String, Long> timings = new ConcurrentHashMap<>();
+
+    private double nanosPerUnit = 0.0;
+
+    /**
+     * @param timingsFile A file, where timings of previous runs are persisted. May be null to not persist timings.
+     */
+    CostModel(final Path timingsFile)
+    {
+        this.timingsFile = timingsFile;
+
+        if (nonNull(timingsFile))
+            previousTimings.putAll(readTimings(timingsFile));
+    }
+
+    /**
+     * Estimates the cost of a file by counting its elements.
+     *
+     * @param args Processor arguments of the file.
+     * @return An estimated cost in abstract units.
+     */
+    static long estimate(final List<ProtoProcessorArgs> args)
+    {
+        long cost = fileWeight;
+
+        for (final ProtoProcessorArgs a : args)
+        {
+            final ProtoFileElement parse = a.parse;
+
+            for (final TypeElement t : parse.types())
+            {
+                if (t instanceof MessageElement)
+                {
+                    final MessageElement me = (MessageElement) t;
+
+                    cost += messageWeight + fieldWeight * me.fields().size();
+                    cost += me.oneOfs().stream().mapToLong(o -> fieldWeight * o.fields().size()).sum();
+                }
+                else
+                {
+                    cost += enumWeight;
+                }
+            }
+
+            for (final ServiceElement s : parse.services())
+                cost += rpcWeight * s.rpcs().size();
+        }
+
+        return cost;
+    }
+
+    /**
+     * Computes costs of the files, preferring the measured timings over the estimates.
+     *
+     * @param estimates Estimated costs (in abstract units) of the files.
+     * @return Costs of the files in nanoseconds if any timings are known, in abstract units otherwise.
+     */
+    final Map<Path, Long> getCosts(final Map<Path, Long> estimates)
+    {
+        long measuredNanos = 0;
+        long measuredUnits = 0;
+
+        for (final Map.Entry<Path, Long> e : estimates.entrySet())
+        {
+            final Long previous = previousTimings.get(normalize(e.getKey()));
+            if (nonNull(previous))
+            {
+                measuredNanos += previous;
+                measuredUnits += e.getValue();
+            }
+        }
+
+        nanosPerUnit = (measuredUnits > 0) ? ((double) measuredNanos / measuredUnits) : 0.0;
+
+        final Map<Path, Long> costs = new ConcurrentHashMap<>(estimates.size());
+        estimates.forEach((path, estimate) -> {
+            final Long previous = previousTimings.get(normalize(path));
+
+            if (nonNull(previous))
+                costs.put(path, max(1, previous));
+            else
+                costs.put(path, isCalibrated() ? max(1, round(estimate * nanosPerUnit)) : estimate);
+        });
+
+        return costs;
+    }
+
+    /**
+     * @return True if the costs are measured in nanoseconds.
+     */
+    final boolean isCalibrated()
+    {
+        return nanosPerUnit > 0.0;
+    }
+
+    final void record(final Path path, final long nanos)
+    {
+        timings.put(normalize(path), nanos);
+    }
+
+    /**
+     * Persists the timings, measured during this run. Timings of the files, which weren't converted during this run
+     * (e.g. owned by another shard) are preserved.
+     *
+     * The file is re-read right before saving, so that timings, saved meanwhile by concurrent shards are kept, then
+     * replaced at once by renaming a temporary file, so that a reader never sees a partially written file.
+     */
+    final void save()
+    {
+        if (isNull(timingsFile) || timings.isEmpty())
+            return;
+
+        final Map<String, Long> merged = new TreeMap<>(readTimings(timingsFile));
+        merged.putAll(timings);
+
+        final Path temporary = timingsFile.resolveSibling(timingsFile.getFileName() + "." + randomUUID() + ".tmp");
+        try
+        {
+            write(temporary, merged.entrySet().stream()
+                .map(e -> e.getKey() + separator + e.getValue())
+                .collect(toList()), UTF_8);
+
+            try
+            {
+                move(temporary, timingsFile, ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                move(temporary, timingsFile, REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to save timings into {}: {}", timingsFile, e.toString());
+        }
+        finally
+        {
+            try
+            {
+                deleteIfExists(temporary);
+            }
+            catch (IOException e)
+            {
+                log.debug("Unable to delete {}: {}", temporary, e.toString());
+            }
+        }
+    }
+
+    private static Map<String, Long> readTimings(final Path timingsFile)
+    {
+        final Map<String, Long> read = new HashMap<>();
+        if (!isRegularFile(timingsFile))
+            return read;
+
+        try
+        {
+            for (final String line : readAllLines(timingsFile, UTF_8))
+            {
+                final int separatorIndex = line.lastIndexOf(separator);
+                if (separatorIndex > 0)
+                    read.put(line.substring(0, separatorIndex), parseLong(line.substring(separatorIndex + 1)));
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            // Timings are just a hint, it is safe to start from scratch
+            log.warn("Unable to read timings from {}, using estimates: {}", timingsFile, e.toString());
+            read.clear();
+        }
+
+        return read;
+    }
+
+    // Timings must be portable between Windows and Unix machines
+    private static String normalize(final Path path)
+    {
+        return path.toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.vizor.unreal.tree.CppType;
+import com.vizor.unreal.util.Graph;
+import com.vizor.unreal.util.JsonWriter;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static java.lang.Math.min;
+import static java.lang.System.lineSeparator;
+import static java.util.Collections.emptyList;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Collects the import graph of converted proto files and the type-reference graphs of their messages, to be exported
+ * for build tooling. Each node comes with its strongly connected component and sizes of its closures: the number of
+ * nodes it depends on and the number of nodes, depending on it (thus invalidated when it changes).
+ *
+ * In both graphs an edge leads from a node to a node it depends on: from a file to its import and from a message to
+ * a message of the same file, used by its fields.
+ */
+public class DependencyGraphs
+{
+    private static final Logger log = getLogger(DependencyGraphs.class);
+
+    private static final String typeSeparator = "#";
+
+    private static final class Summary
+    {
+        private final List<String> nodes;
+        private final Map<String, List<String>> edges = new HashMap<>();
+        private final Map<String, Integer> dependencies;
+        private final Map<String, Integer> dependents;
+        private final Map<String, Integer> components = new HashMap<>();
+        private final List<List<String>> cycles = new ArrayList<>();
+
+        Summary(final Graph<String> graph)
+        {
+            this.dependencies = graph.getClosureSizes();
+            this.dependents = graph.transpose().getClosureSizes();
+
+            graph.getEdges().forEach(e -> edges.computeIfAbsent(e.first(), n -> new ArrayList<>()).add(e.second()));
+
+            final List<List<String>> sccs = graph.getStronglyConnectedComponents();
+            for (int i = 0; i < sccs.size(); i++)
+            {
+                for (final String node : sccs.get(i))
+                    components.put(node, i);
+
+                if (sccs.get(i).size() > 1)
+                    cycles.add(sccs.get(i));
+            }
+
+            // The widest invalidation radius goes first
+            this.nodes = graph.getVertices().stream()
+                .sorted(comparing((String n) -> -dependents.get(n)).thenComparing(n -> n))
+                .collect(toList());
+        }
+
+        List<String> getEdges(final String node)
+        {
+            return edges.getOrDefault(node, emptyList());
+        }
+    }
+
+    // Files are sorted by their paths, so that the output doesn't depend on the order files were converted in
+    private final Map<String, List<String>> imports = new ConcurrentSkipListMap<>();
+    private final Map<String, Graph<String>> types = new ConcurrentSkipListMap<>();
+
+    /**
+     * Records imports of the converted files and, transitively, of their imports.
+     *
+     * @param registry Registry of the converted tree.
+     * @param paths Relative paths of the converted files.
+     */
+    final void addImports(final ProtoRegistry registry, final Collection<Path> paths)
+    {
+        final Set<Path> visited = new LinkedHashSet<>(paths);
+        final Deque<Path> queue = new ArrayDeque<>(paths);
+
+        while (!queue.isEmpty())
+        {
+            final Path path = queue.poll();
+            final List<Path> pathImports = registry.getImports(path);
+
+            imports.put(normalize(path), pathImports.stream().map(DependencyGraphs::normalize).collect(toList()));
+
+            pathImports.stream()
+                .filter(visited::add)
+                .forEach(queue::add);
+        }
+    }
+
+    /**
+     * Records the type-reference graph of messages of a single file. Modules share files, so a file is recorded
+     * only once.
+     *
+     * @param path Relative path of the file.
+     * @param inclusionGraph Graph, built by {@link com.vizor.unreal.util.MessageOrderResolver}, its edges lead from
+     *                       a type to types, depending on it.
+     */
+    final void addTypes(final Path path, final Graph<CppType> inclusionGraph)
+    {
+        final String proto = normalize(path);
+        final Graph<String> graph = new Graph<>(inclusionGraph.getVertices().stream()
+            .map(t -> typeId(proto, t))
+            .collect(toList()));
+
+        // A dependent refers to its dependency, not the other way around
+        inclusionGraph.getEdges().forEach(e -> graph.addEdge(typeId(proto, e.second()), typeId(proto, e.first())));
+
+        types.putIfAbsent(proto, graph);
+    }
+
+    /**
+     * Logs the numbers of nodes and cycles and the files with the widest invalidation radius.
+     *
+     * @param widest Number of the files to list.
+     */
+    public final void logSummary(final int widest)
+    {
+        final Summary importSummary = new Summary(getImportGraph());
+        final Summary typeSummary = new Summary(getTypeGraph());
+
+        log.info("Import graph: {} files, {} cycles; type-reference graph: {} messages, {} cycles",
+                importSummary.nodes.size(), importSummary.cycles.size(), typeSummary.nodes.size(),
+                typeSummary.cycles.size());
+
+        final int numWidest = min(widest, importSummary.nodes.size());
+        if (numWidest > 0)
+            log.info("{} proto files with the widest invalidation radius:", numWidest);
+
+        for (final String node : importSummary.nodes.subList(0, numWidest))
+        {
+            log.info("{} ({} dependent files, {} dependencies)", node, importSummary.dependents.get(node),
+                    importSummary.dependencies.get(node));
+        }
+    }
+
+    /**
+     * @return Both graphs with components and closure sizes of every node (the widest invalidation radius first) as
+     *         JSON.
+     */
+    public final String toJson()
+    {
+        final JsonWriter json = new JsonWriter(true).beginObject();
+
+        json.name("imports");
+        writeJson(json, new Summary(getImportGraph()));
+
+        json.name("types");
+        writeJson(json, new Summary(getTypeGraph()));
+
+        return json.endObject().toString();
+    }
+
+    /**
+     * @return Both graphs in Graphviz DOT format. Messages are clustered by their files, nodes within cycles are red.
+     */
+    public final String toDot()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("digraph dependencies {").append(lineSeparator());
+        sb.append("    rankdir=LR;").append(lineSeparator());
+        sb.append("    node [shape=box];").append(lineSeparator());
+
+        final Summary importSummary = new Summary(getImportGraph());
+
+        sb.append("    subgraph cluster_imports {").append(lineSeparator());
+        sb.append("        label=\"imports\";").append(lineSeparator());
+        writeDot(sb, importSummary, importSummary.nodes, "        ");
+        sb.append("    }").append(lineSeparator());
+
+        final Summary typeSummary = new Summary(getTypeGraph());
+        final Map<String, List<String>> byProto = new HashMap<>();
+        typeSummary.nodes.forEach(n -> byProto.computeIfAbsent(protoOf(n), p -> new ArrayList<>()).add(n));
+
+        sb.append("    subgraph cluster_types {").append(lineSeparator());
+        sb.append("        label=\"types\";").append(lineSeparator());
+
+        int counter = 0;
+        for (final String proto : types.keySet())
+        {
+            sb.append("        subgraph cluster_types_").append(counter++).append(" {").append(lineSeparator());
+            sb.append("            label=").append(quote(proto)).append(';').append(lineSeparator());
+            writeDot(sb, typeSummary, byProto.getOrDefault(proto, emptyList()), "            ");
+            sb.append("        }").append(lineSeparator());
+        }
+
+        sb.append("    }").append(lineSeparator());
+        sb.append('}').append(lineSeparator());
+
+        return sb.toString();
+    }
+
+    private Graph<String> getImportGraph()
+    {
+        final Graph<String> graph = new Graph<>(new ArrayList<>(imports.keySet()));
+        imports.forEach((path, pathImports) -> pathImports.forEach(i -> graph.addEdge(path, i)));
+
+        return graph;
+    }
+
+    private Graph<String> getTypeGraph()
+    {
+        final List<String> nodes = new ArrayList<>();
+        types.values().forEach(g -> nodes.addAll(g.getVertices()));
+
+        final Graph<String> graph = new Graph<>(nodes);
+        types.values().forEach(g -> g.getEdges().forEach(e -> graph.addEdge(e.first(), e.second())));
+
+        return graph;
+    }
+
+    private static void writeJson(final JsonWriter json, final Summary summary)
+    {
+        json.beginObject()
+            .name("nodes").value(summary.nodes.size())
+            .name("cycles").beginArray();
+
+        for (final List<String> cycle : summary.cycles)
+        {
+            json.beginArray();
+            cycle.stream().sorted().forEach(json::value);
+            json.endArray();
+        }
+
+        json.endArray().name("by_node").beginArray();
+
+        for (final String node : summary.nodes)
+        {
+            json.beginObject()
+                .name("id").value(node)
+                .name("scc").value(summary.components.get(node))
+                .name("dependencies").value(summary.dependencies.get(node))
+                .name("dependents").value(summary.dependents.get(node))
+                .name("edges").beginArray();
+
+            summary.getEdges(node).forEach(json::value);
+            json.endArray().endObject();
+        }
+
+        json.endArray().endObject();
+    }
+
+    private static void writeDot(final StringBuilder sb, final Summary summary, final List<String> nodes,
+                                 final String indent)
+    {
+        final Set<String> cyclic = new LinkedHashSet<>();
+        summary.cycles.forEach(cyclic::addAll);
+
+        for (final String node : nodes)
+        {
+            final String label = (node.contains(typeSeparator) ? node.substring(node.indexOf(typeSeparator) + 1) :
+                    node) + "\\n" + summary.dependents.get(node) + " dependents, " + summary.dependencies.get(node) +
+                    " dependencies";
+
+            sb.append(indent).append(quote(node)).append(" [label=").append(quote(label))
+                .append(cyclic.contains(node) ? ", color=red" : "").append("];").append(lineSeparator());
+        }
+
+        // Edges are written after the nodes, sorted, so the file is stable
+        nodes.stream()
+            .sorted()
+            .forEach(n -> summary.getEdges(n).stream()
+                .sorted()
+                .forEach(e -> sb.append(indent).append(quote(n)).append(" -> ").append(quote(e)).append(';')
+                    .append(lineSeparator())));
+    }
+
+    private static String typeId(final String proto, final CppType type)
+    {
+        return proto + typeSeparator + type.getName();
+    }
+
+    private static String protoOf(final String typeId)
+    {
+        return typeId.substring(0, typeId.indexOf(typeSeparator));
+    }
+
+    private static String quote(final String text)
+    {
+        return '"' + text.replace("\"", "\\\"") + '"';
+    }
+
+    private static String normalize(final Path path)
+    {
+        return path.toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.writer.OutputSink;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.System.lineSeparator;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Passes generated files of a single proto file through to another sink, remembering their paths. Afterwards writes
+ * a Make-style depfile, which lists the generated files as targets and their sources as prerequisites:
+ *
+ * Public/game/lobby/Lobby.h Private/game/lobby/Lobby.cpp ...: \
+ *   protos/game/lobby.proto \
+ *   protos/common/types.proto \
+ *   config.yml
+ *
+ * Not thread-safe, each file is generated by a single thread.
+ */
+class DepfileRecorder implements OutputSink
+{
+    private static final String depfileExtension = ".d";
+    private static final String protoExtension = ".proto";
+
+    private final OutputSink sink;
+    private final List<Path> outputs = new ArrayList<>();
+
+    DepfileRecorder(final OutputSink sink)
+    {
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(final Path path, final byte[] content)
+    {
+        outputs.add(path);
+        sink.write(path, content);
+    }
+
+    /**
+     * Writes the depfile into the private destination, e.g. 'game/lobby.proto' gets 'game/lobby.d'.
+     *
+     * @param dstPath Destination of the proto file.
+     * @param relativePath Path to the proto file, relative to the source root.
+     * @param prerequisites Files, the generated files depend on.
+     */
+    final void writeDepfile(final DestinationConfig dstPath, final Path relativePath, final List<Path> prerequisites)
+    {
+        final String name = relativePath.toString();
+        final String baseName = name.toLowerCase().endsWith(protoExtension) ?
+                name.substring(0, name.length() - protoExtension.length()) : name;
+
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < outputs.size(); i++)
+            sb.append(i > 0 ? " " : "").append(escape(outputs.get(i)));
+
+        sb.append(":");
+        prerequisites.forEach(p -> sb.append(" \\").append(lineSeparator()).append("  ").append(escape(p)));
+        sb.append(lineSeparator());
+
+        sink.write(dstPath.pathPrivate.resolve(baseName + depfileExtension), sb.toString().getBytes(UTF_8));
+    }
+
+    // Forward slashes are understood everywhere, while spaces, '#' and '$' have special meaning for make
+    private static String escape(final Path path)
+    {
+        return path.toString()
+            .replace('\\', '/')
+            .replace("$", "$$")
+            .replace("#", "\\#")
+            .replace(" ", "\\ ");
+    }
+}
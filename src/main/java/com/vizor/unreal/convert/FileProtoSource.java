@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.FileSystems.getDefault;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads proto files from any file system: the default one or, for example, a zip file system.
+ *
+ * A file is read into a single buffer and decoded once. Large files on the default file system are memory-mapped
+ * instead, so that they aren't copied into the heap before being decoded. Files must be UTF-8 encoded, malformed
+ * input is reported rather than replaced.
+ *
+ * Line endings are normalized to '\n', otherwise the parser would keep '\r' in the documentation of a file with
+ * Windows line endings, and generated comments would depend on the platform, the file was checked out on.
+ */
+public class FileProtoSource implements ProtoSource
+{
+    // Mapping has a fixed cost, which only pays off for large files
+    private static final long mappedThreshold = 1024 * 1024;
+
+    @Override
+    public String read(final Path path) throws IOException
+    {
+        final String content = decode(load(path));
+
+        // Most files don't have a single '\r', so the content is rarely copied once more
+        return (content.indexOf('\r') < 0) ? content : content.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    @Override
+    public long size(final Path path) throws IOException
+    {
+        return Files.size(path);
+    }
+
+    private static ByteBuffer load(final Path path) throws IOException
+    {
+        // Files within other file systems (e.g. archives) can't be mapped
+        if (path.getFileSystem() == getDefault())
+        {
+            try (final FileChannel channel = FileChannel.open(path, READ))
+            {
+                final long size = channel.size();
+                if (size >= mappedThreshold)
+                    return channel.map(READ_ONLY, 0, size);
+
+                final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining())
+                {
+                    // The file may have been truncated since its size was taken
+                    if (channel.read(buffer) < 0)
+                        break;
+                }
+
+                buffer.flip();
+                return buffer;
+            }
+        }
+
+        return ByteBuffer.wrap(readAllBytes(path));
+    }
+
+    private static String decode(final ByteBuffer bytes) throws IOException
+    {
+        // A new decoder reports malformed input by default, just like Files.readAllLines() does
+        return UTF_8.newDecoder().decode(bytes).toString();
+    }
+}
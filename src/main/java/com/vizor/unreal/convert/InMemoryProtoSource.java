@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.io.File.separator;
+import static java.nio.file.Paths.get;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.isNull;
+
+/**
+ * Proto files, held in memory. Files are placed under a virtual root, which is never accessed.
+ */
+public class InMemoryProtoSource implements ProtoSource
+{
+    private final Path root = get(separator);
+    private final Map<Path, String> contents = new TreeMap<>();
+
+    /**
+     * @param sources Contents of proto files by their relative paths, e.g. 'game/player.proto'.
+     */
+    public InMemoryProtoSource(final Map<String, String> sources)
+    {
+        sources.forEach((relativePath, content) -> {
+            final Path path = root.resolve(relativePath).normalize();
+            if (!path.startsWith(root) || path.equals(root))
+                throw new IllegalArgumentException("'" + relativePath + "' isn't a valid relative path");
+
+            contents.put(path, content);
+        });
+    }
+
+    /**
+     * @return The virtual root, all files reside within.
+     */
+    public final Path getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * @return Virtual absolute paths of all files, sorted by path.
+     */
+    public final List<Path> getPaths()
+    {
+        return unmodifiableList(new ArrayList<>(contents.keySet()));
+    }
+
+    @Override
+    public String read(final Path path) throws IOException
+    {
+        final String content = contents.get(path);
+        if (isNull(content))
+            throw new FileNotFoundException(path.toString());
+
+        return content;
+    }
+
+    @Override
+    public long size(final Path path) throws IOException
+    {
+        // Only used as an estimate, so characters are as good as bytes
+        return read(path).length();
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.util.Tuple;
+import com.vizor.unreal.writer.OutputSink;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.vizor.unreal.writer.HashingSink.digest;
+import static com.vizor.unreal.writer.HashingSink.newDigest;
+import static com.vizor.unreal.writer.HashingSink.toHex;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.delete;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.setLastModifiedTime;
+import static java.nio.file.Files.size;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.Comparator.comparing;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.UUID.randomUUID;
+import static java.util.regex.Pattern.MULTILINE;
+import static java.util.regex.Pattern.compile;
+import static java.util.stream.Collectors.toList;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * A content-addressed cache of generated files, which may be shared by several checkouts (e.g. of different
+ * branches) or even by several machines through a mounted volume.
+ *
+ * A key is a SHA-256 of the proto file, all the files it imports (transitively), the settings, affecting generated
+ * code, and the version of the converter. Imports are found by a plain text scan, so a cache hit doesn't need to
+ * parse anything at all. Generated files are stored relative to the destination paths, so a hit is restored into
+ * whatever the destination of the current run is.
+ *
+ * Each entry is a directory '{key[0..2]}/{key}' with a 'manifest', listing the files, and the files themselves.
+ * Entries are published by an atomic rename, so concurrent processes never see partially written entries. Last
+ * modification time of the manifest is the time of the last use, least recently used entries are evicted once the
+ * cache exceeds its size.
+ */
+class OutputCache
+{
+    private static final Logger log = getLogger(OutputCache.class);
+
+    // Bump whenever the layout of entries changes
+    private static final String formatVersion = "cornerstone-cache-1";
+
+    private static final Pattern importPattern = compile("^\\s*import\\s+(?:public\\s+|weak\\s+)?\"([^\"]+)\"\\s*;",
+            MULTILINE);
+
+    // Generated code depends on the converter itself, so the jar it runs from is a part of the key
+    private static final String generatorVersion = getGeneratorVersion();
+
+    private static final String manifestName = "manifest";
+    private static final String temporaryDirectoryName = "tmp";
+    private static final String publicPrefix = "public";
+    private static final String privatePrefix = "private";
+    private static final char separator = '\t';
+
+    private final Path directory;
+    private final long maxSize;
+    private final Path srcPath;
+    private final ProtoRegistry registry;
+    private final ProtoSource source;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param directory Root of the cache, created if it doesn't exist.
+     * @param maxSize Maximum total size of the cached files in bytes, zero means 'no limit'.
+     * @param srcPath Root of the proto tree.
+     * @param registry All proto files of the run.
+     * @param source Provides contents of the proto files.
+     */
+    OutputCache(final Path directory, final long maxSize, final Path srcPath, final ProtoRegistry registry,
+                final ProtoSource source)
+    {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("maxSize mustn't be negative, got " + maxSize + " instead");
+
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.srcPath = srcPath;
+        this.registry = registry;
+        this.source = source;
+    }
+
+    /**
+     * Computes a key of the files, generated from a proto file for a given context.
+     *
+     * @param relativePath Path to the proto file, relative to the source root.
+     * @param context Settings of the module.
+     * @return Hex-encoded key.
+     */
+    final String keyOf(final Path relativePath, final GenerationContext context)
+    {
+        final MessageDigest md = newDigest();
+
+        update(md, formatVersion);
+        update(md, generatorVersion);
+
+        update(md, context.getModuleName());
+        update(md, context.getWrappersPath());
+        update(md, context.getCompanyName());
+        update(md, context.getPrecompiledHeader());
+
+        for (final Path p : getImportClosure(relativePath))
+        {
+            update(md, p.toString().replace('\\', '/'));
+            update(md, read(p));
+        }
+
+        return toHex(md.digest());
+    }
+
+    /**
+     * Checks if an entry exists, without counting a hit or a miss.
+     *
+     * @param key Key of the entry.
+     * @return True if the entry was found, though it might still be evicted before it's restored.
+     */
+    final boolean contains(final String key)
+    {
+        return exists(entryOf(key).resolve(manifestName));
+    }
+
+    /**
+     * Writes the cached files of an entry into the sink.
+     *
+     * @param key Key of the entry.
+     * @param dstPath Destination of the files.
+     * @param sink Receives the files.
+     * @return True if the entry was found, false if the files have to be generated.
+     */
+    final boolean restore(final String key, final DestinationConfig dstPath, final OutputSink sink)
+    {
+        final Path entry = entryOf(key);
+        final Path manifest = entry.resolve(manifestName);
+
+        // Everything is read before anything is written, an entry might be evicted by another process meanwhile
+        final List<Tuple<Path, byte[]>> files = new ArrayList<>();
+        try
+        {
+            if (!exists(manifest))
+            {
+                misses.incrementAndGet();
+                return false;
+            }
+
+            final List<String> lines = readAllLines(manifest, UTF_8);
+            for (int i = 0; i < lines.size(); i++)
+                files.add(Tuple.of(resolve(dstPath, lines.get(i)), readAllBytes(entry.resolve(String.valueOf(i)))));
+
+            setLastModifiedTime(manifest, FileTime.fromMillis(currentTimeMillis()));
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to restore cache entry {}: {}", key, e.toString());
+            misses.incrementAndGet();
+
+            return false;
+        }
+
+        hits.incrementAndGet();
+        files.forEach(f -> sink.write(f.first(), f.second()));
+
+        return true;
+    }
+
+    /**
+     * Creates a sink, which passes the files through and stores them into the cache on {@link Entry#commit()}.
+     *
+     * @param key Key of the entry.
+     * @param dstPath Destination of the files.
+     * @param sink Receives the files.
+     * @return A new entry.
+     */
+    final Entry newEntry(final String key, final DestinationConfig dstPath, final OutputSink sink)
+    {
+        return new Entry(key, dstPath, sink);
+    }
+
+    /**
+     * Evicts least recently used entries, until the cache fits its size.
+     */
+    final void evict()
+    {
+        if (maxSize <= 0 || !isDirectory(directory))
+            return;
+
+        final List<Tuple<Path, Long>> entries = new ArrayList<>();
+        long totalSize = 0;
+
+        try (final DirectoryStream<Path> shards = newDirectoryStream(directory))
+        {
+            for (final Path shard : shards)
+            {
+                if (!isDirectory(shard) || shard.getFileName().toString().equals(temporaryDirectoryName))
+                    continue;
+
+                try (final DirectoryStream<Path> shardEntries = newDirectoryStream(shard))
+                {
+                    for (final Path entry : shardEntries)
+                    {
+                        final long entrySize = sizeOf(entry);
+
+                        entries.add(Tuple.of(entry, entrySize));
+                        totalSize += entrySize;
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to list the cache {}: {}", directory, e.toString());
+            return;
+        }
+
+        if (totalSize <= maxSize)
+            return;
+
+        entries.sort(comparing(e -> lastUsed(e.first())));
+
+        int evicted = 0;
+        for (final Tuple<Path, Long> e : entries)
+        {
+            if (totalSize <= maxSize)
+                break;
+
+            if (deleteEntry(e.first()))
+            {
+                totalSize -= e.second();
+                evicted++;
+            }
+        }
+
+        log.info("Output cache: evicted {} entries, {} bytes left (limit is {})", evicted, totalSize, maxSize);
+    }
+
+    final void logStatistics()
+    {
+        log.info("Output cache: {} hits, {} misses", hits.get(), misses.get());
+    }
+
+    /**
+     * Passes generated files through to a sink, keeping them to be stored into the cache.
+     */
+    final class Entry implements OutputSink
+    {
+        private final String key;
+        private final DestinationConfig dstPath;
+        private final OutputSink sink;
+
+        private final List<Tuple<String, byte[]>> files = new ArrayList<>();
+        private boolean cacheable = true;
+
+        private Entry(final String key, final DestinationConfig dstPath, final OutputSink sink)
+        {
+            this.key = key;
+            this.dstPath = dstPath;
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(final Path path, final byte[] content)
+        {
+            final String name = relativize(dstPath, path);
+
+            if (nonNull(name))
+                files.add(Tuple.of(name, content));
+            else
+                cacheable = false;
+
+            sink.write(path, content);
+        }
+
+        /**
+         * Stores the files into the cache. Failures are logged, the cache is just an optimization.
+         */
+        final void commit()
+        {
+            if (!cacheable)
+                return;
+
+            final Path entry = entryOf(key);
+            final Path temporary = directory.resolve(temporaryDirectoryName).resolve(key + '-' + randomUUID());
+
+            try
+            {
+                createDirectories(temporary);
+
+                final List<String> manifest = new ArrayList<>(files.size());
+                for (int i = 0; i < files.size(); i++)
+                {
+                    Files.write(temporary.resolve(String.valueOf(i)), files.get(i).second());
+                    manifest.add(files.get(i).first());
+                }
+
+                // The manifest goes last, an entry without one is never used. Files.write() is qualified, since
+                // it's shadowed by the sink's own write()
+                Files.write(temporary.resolve(manifestName), manifest, UTF_8);
+
+                createDirectories(entry.getParent());
+                move(temporary, entry, ATOMIC_MOVE);
+            }
+            catch (IOException e)
+            {
+                // Unless another process has stored the same files meanwhile
+                if (!exists(entry.resolve(manifestName)))
+                    log.warn("Unable to store cache entry {}: {}", key, e.toString());
+
+                deleteEntry(temporary);
+            }
+        }
+    }
+
+    private static String getGeneratorVersion()
+    {
+        final String version = String.valueOf(Converter.class.getPackage().getImplementationVersion());
+        final CodeSource codeSource = Converter.class.getProtectionDomain().getCodeSource();
+
+        try
+        {
+            if (nonNull(codeSource))
+            {
+                final Path jar = Paths.get(codeSource.getLocation().toURI());
+                if (isRegularFile(jar))
+                    return version + '-' + digest(readAllBytes(jar));
+            }
+        }
+        catch (URISyntaxException | IOException | RuntimeException e)
+        {
+            log.debug("Unable to hash the converter's jar: {}", e.toString());
+        }
+
+        return version;
+    }
+
+    private Path entryOf(final String key)
+    {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * @return The file and all the files it imports, sorted by path.
+     */
+    private List<Path> getImportClosure(final Path relativePath)
+    {
+        final Set<Path> visited = new HashSet<>();
+        final List<Path> pending = new ArrayList<>();
+        pending.add(relativePath);
+
+        while (!pending.isEmpty())
+        {
+            final Path p = pending.remove(pending.size() - 1);
+            if (!visited.add(p))
+                continue;
+
+            final Matcher matcher = importPattern.matcher(read(p));
+            while (matcher.find())
+            {
+                final Path imported = srcPath.getFileSystem().getPath(matcher.group(1));
+                if (registry.contains(imported) && !visited.contains(imported))
+                    pending.add(imported);
+            }
+        }
+
+        return visited.stream()
+            .sorted(comparing(p -> p.toString().replace('\\', '/')))
+            .collect(toList());
+    }
+
+    private String read(final Path relativePath)
+    {
+        try
+        {
+            return source.read(registry.getAbsolutePath(relativePath));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void update(final MessageDigest md, final String value)
+    {
+        md.update(value.getBytes(UTF_8));
+        md.update((byte) 0);
+    }
+
+    private static String relativize(final DestinationConfig dstPath, final Path path)
+    {
+        if (path.startsWith(dstPath.pathPublic))
+            return publicPrefix + separator + dstPath.pathPublic.relativize(path).toString().replace('\\', '/');
+
+        if (path.startsWith(dstPath.pathPrivate))
+            return privatePrefix + separator + dstPath.pathPrivate.relativize(path).toString().replace('\\', '/');
+
+        return null;
+    }
+
+    private static Path resolve(final DestinationConfig dstPath, final String line) throws IOException
+    {
+        final int separatorIndex = line.indexOf(separator);
+        if (separatorIndex < 0)
+            throw new IOException("Malformed manifest line '" + line + "'");
+
+        final String prefix = line.substring(0, separatorIndex);
+        final String name = line.substring(separatorIndex + 1);
+
+        if (prefix.equals(publicPrefix))
+            return dstPath.pathPublic.resolve(name);
+
+        if (prefix.equals(privatePrefix))
+            return dstPath.pathPrivate.resolve(name);
+
+        throw new IOException("Malformed manifest line '" + line + "'");
+    }
+
+    private static FileTime lastUsed(final Path entry)
+    {
+        try
+        {
+            return getLastModifiedTime(entry.resolve(manifestName));
+        }
+        catch (IOException e)
+        {
+            // Entries without a manifest are broken, evict them first
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long sizeOf(final Path entry) throws IOException
+    {
+        long entrySize = 0;
+        try (final DirectoryStream<Path> files = newDirectoryStream(entry))
+        {
+            for (final Path f : files)
+                entrySize += size(f);
+        }
+
+        return entrySize;
+    }
+
+    private static boolean deleteEntry(final Path entry)
+    {
+        try
+        {
+            if (isDirectory(entry))
+            {
+                try (final DirectoryStream<Path> files = newDirectoryStream(entry))
+                {
+                    for (final Path f : files)
+                        delete(f);
+                }
+            }
+
+            if (exists(entry))
+                delete(entry);
+
+            return true;
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to delete cache entry {}: {}", entry, e.toString());
+            return false;
+        }
+    }
+}
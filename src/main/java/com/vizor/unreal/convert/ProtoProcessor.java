@@ -23,8 +23,10 @@ import com.squareup.wire.schema.internal.parser.ProtoFileElement;
 import com.squareup.wire.schema.internal.parser.ServiceElement;
 import com.squareup.wire.schema.internal.parser.TypeElement;
 import com.squareup.wire.schema.internal.parser.OneOfElement;
-import com.vizor.unreal.config.Config;
 import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.profile.Phase;
+import com.vizor.unreal.profile.Profiler;
 import com.vizor.unreal.provider.ProtoTypesProvider;
 import com.vizor.unreal.provider.TypesProvider;
 import com.vizor.unreal.provider.UnrealTypesProvider;
@@ -42,12 +44,18 @@ import com.vizor.unreal.util.MessageOrderResolver;
 import com.vizor.unreal.util.Tuple;
 import com.vizor.unreal.writer.CppPrinter;
 import com.vizor.unreal.writer.CppPrinter.HeaderType;
+import com.vizor.unreal.writer.OutputSink;
 
 import org.apache.logging.log4j.Logger;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -66,9 +74,12 @@ import static com.vizor.unreal.util.Misc.snakeCaseToCamelCase;
 import static com.vizor.unreal.util.Misc.stringIsNullOrEmpty;
 import static com.vizor.unreal.util.Tuple.of;
 import static java.lang.String.join;
-import static java.nio.file.Paths.get;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toMap;
 import static org.apache.commons.io.FilenameUtils.removeExtension;
@@ -77,32 +88,48 @@ import static org.apache.logging.log4j.LogManager.getLogger;
 class ProtoProcessorArgs
 {
     ProtoProcessorArgs(final ProtoFileElement parse, final Path pathToProto,
-    final DestinationConfig pathToConverted2, final String moduleName)
+    final DestinationConfig pathToConverted2)
     {
         this.parse = requireNonNull(parse);
         this.pathToProto = requireNonNull(pathToProto);
         this.pathToConverted = requireNonNull(pathToConverted2);
-        this.moduleName = requireNonNull(moduleName);
 
-        this.wrapperName = removeExtension(pathToProto.toFile().getName());
+        this.wrapperName = removeExtension(pathToProto.getFileName().toString());
 
         this.className = snakeCaseToCamelCase(wrapperName);
 
 //        if (parse.packageName() == null)
 //            throw new RuntimeException("package filed in proto file is required for cornerstone");
 
-        this.packageNamespace = new CppNamespace(parse.packageName());
+        // Package 'game.lobby' is namespace 'game::lobby'
+        this.packageNamespaces = isNull(parse.packageName()) ? emptyList() :
+                Stream.of(parse.packageName().split("\\.")).map(CppNamespace::new).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns types, declared in the file with a given (unqualified) name. The index is built on the first call.
+     *
+     * @param name Name of the type.
+     * @return Declared types, empty if there are none.
+     */
+    final synchronized List<TypeElement> getDeclarations(final String name)
+    {
+        if (isNull(declarations))
+            declarations = parse.types().stream().collect(groupingBy(TypeElement::name));
+
+        return declarations.getOrDefault(name, emptyList());
     }
 
     final ProtoFileElement parse;
     final Path pathToProto;
     final DestinationConfig pathToConverted;
-    final String moduleName;
 
     final String wrapperName;
 
     final String className;
-    final CppNamespace packageNamespace;
+    final List<CppNamespace> packageNamespaces;
+
+    private Map<String, List<TypeElement>> declarations = null;
 }
 
 class ProtoProcessor implements Runnable
@@ -114,47 +141,152 @@ class ProtoProcessor implements Runnable
     private final TypesProvider ueProvider = new UnrealTypesProvider();
     private final TypesProvider protoProvider = new ProtoTypesProvider();
 
-    private final List<ProtoProcessorArgs> otherProcessorArgs;
+    private final ProtoRegistry registry;
+    private final GenerationContext context;
+    private final OutputSink sink;
+    private final Profiler profiler;
+    private final DependencyGraphs graphs;
 
     // to avoid any confusion when converting code on Windows,
     // force part separator to be forward slash
     private static final String pathSeparator = "/";
 
-    ProtoProcessor(ProtoProcessorArgs args, List<ProtoProcessorArgs> otherProcessorArgs) {
+    ProtoProcessor(ProtoProcessorArgs args, ProtoRegistry registry, GenerationContext context, OutputSink sink) {
+        this(args, registry, context, sink, Profiler.none);
+    }
+
+    ProtoProcessor(ProtoProcessorArgs args, ProtoRegistry registry, GenerationContext context, OutputSink sink,
+                   Profiler profiler) {
+        this(args, registry, context, sink, profiler, null);
+    }
+
+    /**
+     * @param graphs Receives the type-reference graph of the file's messages, null if it isn't needed.
+     */
+    ProtoProcessor(ProtoProcessorArgs args, ProtoRegistry registry, GenerationContext context, OutputSink sink,
+                   Profiler profiler, DependencyGraphs graphs) {
         this.args = args;
-        this.otherProcessorArgs = otherProcessorArgs;
+        this.registry = registry;
+        this.context = context;
+        this.profiler = profiler;
+        this.graphs = graphs;
+
+        // Files are written from within the printers, so writing is measured apart from printing
+        this.sink = !profiler.isEnabled() ? sink : (path, content) ->
+            profiler.time(args.pathToProto, Phase.Writing, () -> sink.write(path, content));
     }
     
-    private Stream<ProtoProcessorArgs> GatherImportedProtos(final ProtoProcessorArgs proto, final List<ProtoProcessorArgs> otherProtos)
+    private Stream<ProtoProcessorArgs> GatherImportedProtos(final ProtoProcessorArgs proto, final ProtoRegistry registry)
     {
-        return otherProtos.stream()
-            .filter(otherProto -> proto.parse.imports().stream().map(importPathString -> get(importPathString)).anyMatch(importPath -> importPath.equals(otherProto.pathToProto)));
+        return registry.getImports(proto.pathToProto).stream()
+            .flatMap(importPath -> registry.get(importPath).stream());
     }
 
-    private Stream<ProtoProcessorArgs> GatherImportedProtosDeep(final ProtoProcessorArgs proto, final List<ProtoProcessorArgs> otherProtos)
+    private Stream<ProtoProcessorArgs> GatherImportedProtosDeep(final ProtoProcessorArgs proto, final ProtoRegistry registry)
     {
-        final Stream<ProtoProcessorArgs> importedProtos = GatherImportedProtos(proto, otherProtos);
-        
-        final List<ProtoProcessorArgs> argss = importedProtos.collect(Collectors.toList());
+        // Evicted imports are re-parsed into new instances, so the distinction is made by path
+        final Set<Path> visited = new HashSet<>();
+        final List<ProtoProcessorArgs> closure = new ArrayList<>();
+
+        GatherImportedProtosDeep(proto, registry, visited, closure);
+        return closure.stream();
+    }
+
+    private void GatherImportedProtosDeep(final ProtoProcessorArgs proto, final ProtoRegistry registry,
+                                          final Set<Path> visited, final List<ProtoProcessorArgs> closure)
+    {
+        if (!visited.add(proto.pathToProto))
+            return;
 
-        return Stream.concat(Stream.of(proto), argss.stream().flatMap(importedProto->GatherImportedProtosDeep(importedProto, otherProtos))).distinct();
+        closure.add(proto);
+        GatherImportedProtos(proto, registry).forEach(importedProto ->
+            GatherImportedProtosDeep(importedProto, registry, visited, closure)
+        );
+    }
+
+    private void GatherTypes(final ProtoProcessorArgs proto, final ProtoRegistry registry, TypesProvider ueProvider, TypesProvider protoProvider)
+    {
+        // Types are created on the first use only, thus huge shared imports don't cost much if few types are used
+        final List<ProtoProcessorArgs> importedProtos = profiler.time(proto.pathToProto, Phase.Imports, () ->
+                GatherImportedProtosDeep(proto, registry).collect(Collectors.toList()));
+
+        ueProvider.setResolver(new DeclarationsResolver(importedProtos, (p, el) -> ueNamedType(p.className, el),
+                profiler, proto.pathToProto));
+        protoProvider.setResolver(new DeclarationsResolver(importedProtos, (p, el) -> cppNamedType(p.packageNamespaces, el),
+                profiler, proto.pathToProto));
     }
 
-    private void GatherTypes(final ProtoProcessorArgs proto, final List<ProtoProcessorArgs> otherProtos, TypesProvider ueProvider, TypesProvider protoProvider)
+    /**
+     * Resolves type names against declarations of the import closure. Declarations are looked up by name in
+     * each file's index, so the cost depends on the number of referenced types, not the number of declared ones.
+     *
+     * Types are resolved lazily, while the structs are being extracted, so the resolution is measured as type
+     * gathering apart from the extraction.
+     */
+    private static final class DeclarationsResolver implements TypesProvider.Resolver
     {
-        final Stream<ProtoProcessorArgs> importedProtos = GatherImportedProtosDeep(proto, otherProtos);
+        private final List<ProtoProcessorArgs> importedProtos;
+        private final BiFunction<ProtoProcessorArgs, TypeElement, CppType> factory;
 
-        importedProtos.forEach(
-            importedProto -> importedProto.parse.types().forEach(
-                typeElement ->
+        private final Profiler profiler;
+        private final Path file;
+
+        private final Map<String, Tuple<ProtoProcessorArgs, TypeElement>> found = new HashMap<>();
+
+        DeclarationsResolver(final List<ProtoProcessorArgs> importedProtos,
+                             final BiFunction<ProtoProcessorArgs, TypeElement, CppType> factory,
+                             final Profiler profiler, final Path file)
+        {
+            this.importedProtos = importedProtos;
+            this.factory = factory;
+            this.profiler = profiler;
+            this.file = file;
+        }
+
+        @Override
+        public List<String> find(final String typeName)
+        {
+            return profiler.time(file, Phase.Types, () -> findDeclarations(typeName));
+        }
+
+        private List<String> findDeclarations(final String typeName)
+        {
+            final String name = typeName.substring(typeName.lastIndexOf('.') + 1);
+            final List<String> fullTypeNames = new ArrayList<>();
+
+            for (final ProtoProcessorArgs importedProto : importedProtos)
+            {
+                for (final TypeElement typeElement : importedProto.getDeclarations(name))
                 {
                     final String fullTypeName = importedProto.parse.packageName() + "." + typeElement.name();
+                    if (!fullTypeName.equals(typeName) && !fullTypeName.endsWith("." + typeName))
+                        continue;
+
+                    final Tuple<ProtoProcessorArgs, TypeElement> previous = found.put(fullTypeName,
+                            of(importedProto, typeElement));
+
+                    if (fullTypeNames.contains(fullTypeName) ||
+                            (nonNull(previous) && !previous.first().pathToProto.equals(importedProto.pathToProto)))
+                    {
+                        throw new RuntimeException("Type association '" + fullTypeName + "' is already defined");
+                    }
 
-                    ueProvider.register(fullTypeName, ueNamedType(importedProto.className, typeElement));
-                    protoProvider.register(fullTypeName, cppNamedType(importedProto.packageNamespace, typeElement));
+                    fullTypeNames.add(fullTypeName);
                 }
-            )
-        );
+            }
+
+            return fullTypeNames;
+        }
+
+        @Override
+        public CppType create(final String fullTypeName)
+        {
+            final Tuple<ProtoProcessorArgs, TypeElement> declaration = found.get(fullTypeName);
+            if (isNull(declaration))
+                throw new RuntimeException("Unknown declaration: '" + fullTypeName + "'");
+
+            return profiler.time(file, Phase.Types, () -> factory.apply(declaration.first(), declaration.second()));
+        }
     }
 
     @Override
@@ -162,7 +294,7 @@ class ProtoProcessor implements Runnable
     {
         final List<ServiceElement> services = args.parse.services();
 
-        GatherTypes(args, otherProcessorArgs, ueProvider, protoProvider);
+        GatherTypes(args, registry, ueProvider, protoProvider);
         
 
         final List<Tuple<CppStruct, CppStruct>> castAssociations = new ArrayList<>();
@@ -170,73 +302,77 @@ class ProtoProcessor implements Runnable
 
         final List<CppEnum> ueEnums = new ArrayList<>();
 
-        // At this moment, we have all types registered in both type providers
-        for (final TypeElement s : args.parse.types())
+        profiler.time(args.pathToProto, Phase.Structs, () ->
         {
-            if (s instanceof MessageElement)
+            // At this moment, we have all types registered in both type providers
+            for (final TypeElement s : args.parse.types())
             {
-                final MessageElement messageElement = (MessageElement) s;
+                if (s instanceof MessageElement)
+                {
+                    final MessageElement messageElement = (MessageElement) s;
 
-                final CppStruct ueStruct = extractStruct(ueProvider, messageElement);
-                final CppStruct protoStruct = extractStruct(protoProvider, messageElement);
+                    final CppStruct ueStruct = extractStruct(ueProvider, messageElement);
+                    final CppStruct protoStruct = extractStruct(protoProvider, messageElement);
 
-                log.debug("Found type cast {} -> {}", ueStruct.getType(), protoStruct.getType());
+                    log.debug("Found type cast {} -> {}", ueStruct.getType(), protoStruct.getType());
 
-                castAssociations.add(of(protoStruct, ueStruct));
-                unrealStructures.add(ueStruct);
-            }
-            else if (s instanceof EnumElement)
-            {
-                ueEnums.add(extractEnum(ueProvider, (EnumElement) s));
-            }
-            else
-            {
-                throw new RuntimeException("Unknown type: '" + s.getClass().getName() + "'");
+                    castAssociations.add(of(protoStruct, ueStruct));
+                    unrealStructures.add(ueStruct);
+                }
+                else if (s instanceof EnumElement)
+                {
+                    ueEnums.add(extractEnum(ueProvider, (EnumElement) s));
+                }
+                else
+                {
+                    throw new RuntimeException("Unknown type: '" + s.getClass().getName() + "'");
+                }
             }
-        }
 
-        // Topologically sort structures
-        final MessageOrderResolver resolver = new MessageOrderResolver();
-        final int[] indices = resolver.sortByInclusion(unrealStructures);
+            // Topologically sort structures
+            final MessageOrderResolver resolver = new MessageOrderResolver();
+            final int[] indices = resolver.sortByInclusion(unrealStructures);
+
+            if (nonNull(graphs))
+                graphs.addTypes(args.pathToProto, resolver.getInclusionGraph(unrealStructures));
 
-        // Then reorder data types
-        reorder(unrealStructures, indices);
-        reorder(castAssociations, indices);
+            // Then reorder data types
+            reorder(unrealStructures, indices);
+            reorder(castAssociations, indices);
+        });
 
-        final CppNamespace casts = new CastGenerator().genCasts(castAssociations);
+        final CppNamespace casts = profiler.time(args.pathToProto, Phase.Casts, () ->
+                new CastGenerator().genCasts(castAssociations));
 
         log.debug("Found structures (sorted): {}", () ->
             unrealStructures.stream().map(s -> s.getType().getName()).collect(joining(", ", "[", "]")
         ));
 
-        // Generate RPC workers
-        final ClientWorkerGenerator clientWorkerGenerator = new ClientWorkerGenerator(services, ueProvider, args.parse);
-        final List<CppClass> workers = clientWorkerGenerator.genClientClass();
-
-        // Generate RPC clients
+        final List<CppClass> workers = new ArrayList<>(services.size());
         final List<CppClass> clients = new ArrayList<>(services.size());
         final List<CppDelegate> dispatchers = new ArrayList<>(services.size());
 
-        for (int i = 0; i < services.size(); i++)
+        profiler.time(args.pathToProto, Phase.Clients, () ->
         {
-            final ServiceElement service = services.get(i);
-            final CppClass worker = workers.get(i);
+            // Generate RPC workers
+            final ClientWorkerGenerator clientWorkerGenerator = new ClientWorkerGenerator(services, ueProvider, args.parse);
+            workers.addAll(clientWorkerGenerator.genClientClass());
 
-            final ClientGenerator cg = new ClientGenerator(service, ueProvider, worker.getType());
+            // Generate RPC clients
+            for (int i = 0; i < services.size(); i++)
+            {
+                final ServiceElement service = services.get(i);
+                final CppClass worker = workers.get(i);
 
-            clients.add(cg.genClientClass());
-            dispatchers.addAll(cg.getDelegates());
-        }
+                final ClientGenerator cg = new ClientGenerator(service, ueProvider, worker.getType(), context.getCompanyName());
 
-        final String pathToProtoStr = removeExtension(args.pathToProto.toString());
-        DestinationConfig dstPath = Config.get().getDstPath().append(pathToProtoStr);
+                clients.add(cg.genClientClass());
+                dispatchers.addAll(cg.getDelegates());
+            }
+        });
 
-        // Should create an output directories if does not exit.
-        @SuppressWarnings("unused")
-        final boolean ignorePublic = dstPath.pathPublic.toFile().mkdirs();
-        
-        @SuppressWarnings("unused")
-        final boolean ignorePrivate = dstPath.pathPrivate.toFile().mkdirs();
+        final String pathToProtoStr = removeExtension(args.pathToProto.toString());
+        DestinationConfig dstPath = context.getDstPath().append(pathToProtoStr);
 
         final List<CppInclude> headerIncludes = new ArrayList<>(asList(
             // header
@@ -251,11 +387,13 @@ class ProtoProcessor implements Runnable
             headerIncludes.add(new CppInclude(Header, "Misc/TVariant.h"));
         }
 
-        final List<String> importedProtoNames = GatherImportedProtos(args, otherProcessorArgs).map(
-            importedProto -> {
-                return getHeaderPath(importedProto);
-            }
-        ).collect(Collectors.toList());
+        final List<String> importedProtoNames = profiler.time(args.pathToProto, Phase.Imports, () ->
+            GatherImportedProtos(args, registry).map(
+                importedProto -> {
+                    return getHeaderPath(importedProto);
+                }
+            ).collect(Collectors.toList())
+        );
 
         headerIncludes.addAll(importedProtoNames.stream().map(path->new CppInclude(Header, path + ".h")).collect(Collectors.toList()));
 
@@ -266,10 +404,8 @@ class ProtoProcessor implements Runnable
             );
         }
         
-        final Config config = Config.get();
-
         // TODO: Fix paths
-        final String generatedIncludeName = join("/", config.getWrappersPath(),
+        final String generatedIncludeName = join("/", context.getWrappersPath(),
                 removeExtension(pathToProtoStr)).replace("\\", pathSeparator);//, args.wrapperName);
 
         final String generatedHeaderPath = getHeaderPath(args);
@@ -314,52 +450,58 @@ class ProtoProcessor implements Runnable
             .collect(Collectors.toList())
         );
 
-        if (!stringIsNullOrEmpty(config.getPrecompiledHeader()))
-            cppIncludes.add(0, new CppInclude(Cpp, config.getPrecompiledHeader(), false));
+        if (!stringIsNullOrEmpty(context.getPrecompiledHeader()))
+            cppIncludes.add(0, new CppInclude(Cpp, context.getPrecompiledHeader(), false));
 
         final DestinationConfig outFilePath = dstPath.append(args.className);
         final DestinationConfig outCastsFilePath = dstPath.append(args.className + "Casts");
         
-        try (final CppPrinter castsPrinter = new CppPrinter(outCastsFilePath, args.moduleName.toUpperCase(), HeaderType.Private))
+        profiler.time(args.pathToProto, Phase.Printing, () ->
         {
-            castsIncludes.forEach(i -> i.accept(castsPrinter));
-            castsPrinter.newLine();
+            try (final CppPrinter castsPrinter = new CppPrinter(outCastsFilePath, context.getModuleName().toUpperCase(), HeaderType.Private, sink))
+            {
+                castsIncludes.forEach(i -> i.accept(castsPrinter));
+                castsPrinter.newLine();
     
-            // Write casts to the CPP file
-            casts.accept(castsPrinter).newLine();
-        }
+                // Write casts to the CPP file
+                casts.accept(castsPrinter).newLine();
+            }
+        });
 
-        try (final CppPrinter p = new CppPrinter(outFilePath, args.moduleName.toUpperCase()))
+        profiler.time(args.pathToProto, Phase.Printing, () ->
         {
-            headerIncludes.forEach(i -> i.accept(p));
-            p.newLine();
+            try (final CppPrinter p = new CppPrinter(outFilePath, context.getModuleName().toUpperCase(), sink))
+            {
+                headerIncludes.forEach(i -> i.accept(p));
+                p.newLine();
 
-            cppIncludes.forEach(i -> i.accept(p));
-            p.newLine();
+                cppIncludes.forEach(i -> i.accept(p));
+                p.newLine();
 
-            // Write enums and structs
-            p.writeInlineComment("Enums:");
-            ueEnums.forEach(e -> e.accept(p).newLine());
+                // Write enums and structs
+                p.writeInlineComment("Enums:");
+                ueEnums.forEach(e -> e.accept(p).newLine());
 
-            p.writeInlineComment("Structures:");
-            unrealStructures.forEach(s -> s.accept(p).newLine());
+                p.writeInlineComment("Structures:");
+                unrealStructures.forEach(s -> s.accept(p).newLine());
 
-            p.writeInlineComment("Forward class definitions (for delegates)");
-            clients.forEach(c -> p.write("class ").write(c.getType().toString()).writeLine(";"));
-            p.newLine();
+                p.writeInlineComment("Forward class definitions (for delegates)");
+                clients.forEach(c -> p.write("class ").write(c.getType().toString()).writeLine(";"));
+                p.newLine();
 
-            p.writeInlineComment("Dispatcher delegates");
-            dispatchers.forEach(d -> d.accept(p).newLine());
-            p.newLine();
+                p.writeInlineComment("Dispatcher delegates");
+                dispatchers.forEach(d -> d.accept(p).newLine());
+                p.newLine();
 
-            // Write casts to the CPP file
-            // casts.accept(p).newLine();
+                // Write casts to the CPP file
+                // casts.accept(p).newLine();
 
-            // Workers are being written to the *.cpp file, have to write them before
-            workers.forEach(c -> c.accept(p).newLine());
+                // Workers are being written to the *.cpp file, have to write them before
+                workers.forEach(c -> c.accept(p).newLine());
 
-            clients.forEach(w -> w.accept(p).newLine());
-        }
+                clients.forEach(w -> w.accept(p).newLine());
+            }
+        });
     }
 
     private static String getHeaderPath(final ProtoProcessorArgs args)
@@ -411,11 +553,12 @@ class ProtoProcessor implements Runnable
 
         for(final OneOfElement onf : me.oneOfs())
         {
-            final CppType ueType = provider.get("oneof");
+            // Types are shared by the provider, so each oneof takes its own copies to keep own params and names
+            final CppType ueType = provider.get("oneof").makeValue();
 
             ueType.getVariantParams().addAll(onf.fields().stream().map(i ->
             {
-                CppType t = provider.get(i.type());
+                CppType t = provider.get(i.type()).makeValue();
                 t.setVariantName(provider.fixFieldName(i.name(), ueType.isA(boolean.class)));
                 return t;
             }).collect(Collectors.toList()));
@@ -474,13 +617,12 @@ class ProtoProcessor implements Runnable
 
 
 
-    private static CppType cppNamedType(CppNamespace packageNamespace, TypeElement el) {
+    private static CppType cppNamedType(List<CppNamespace> packageNamespaces, TypeElement el) {
         if (el instanceof MessageElement)
         {
             final CppType mt = plain(el.name(), Struct);
 
-            if (packageNamespace.hasName())
-                mt.setNamespaces(packageNamespace);
+            mt.setNamespaces(packageNamespaces);
 
             return mt;
         }
@@ -488,8 +630,7 @@ class ProtoProcessor implements Runnable
         {
             final CppType et = plain(el.name(), Enum);
 
-            if (packageNamespace.hasName())
-                et.setNamespaces(packageNamespace);
+            et.setNamespaces(packageNamespaces);
 
             return et;
         }
@@ -501,7 +642,7 @@ class ProtoProcessor implements Runnable
 
     private CppType cppNamedType(final TypeElement el)
     {
-        return cppNamedType(args.packageNamespace, el);
+        return cppNamedType(args.packageNamespaces, el);
     }
 
     private boolean isHaveVariantField(List<CppStruct> unrealStructures)
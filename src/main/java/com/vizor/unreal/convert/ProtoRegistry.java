@@ -0,0 +1,376 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.squareup.wire.schema.Location;
+import com.squareup.wire.schema.internal.parser.ProtoFileElement;
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.preprocess.NestedTypesRemover;
+import com.vizor.unreal.preprocess.Preprocessor;
+import com.vizor.unreal.profile.Phase;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.util.Tuple;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.squareup.wire.schema.internal.parser.ProtoParser.parse;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Comparator.comparingInt;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.stream.Collectors.toList;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Owns every proto file of a single run and hands out parsed {@link ProtoProcessorArgs} on demand. Parsed files
+ * don't depend on the module they're converted for, so they're shared by all modules of the run.
+ *
+ * Parsed files are kept in an LRU cache. When the cache is bounded, least recently used files are evicted and
+ * re-parsed whenever some other file imports them again, so the peak heap depends on the size of the working set
+ * (a file and its import closure) instead of the size of the whole tree. Imports of each file are remembered even
+ * after eviction, they are tiny compared to the parsed AST.
+ */
+class ProtoRegistry
+{
+    private static final Logger log = getLogger(ProtoRegistry.class);
+
+    @SuppressWarnings("ArraysAsListWithZeroOrOneArgument")
+    private static final List<Class<? extends Preprocessor>> preprocessorClasses = asList(
+        NestedTypesRemover.class
+
+        // Add new ones if you want to...
+    );
+
+    private final Path srcPath;
+    private final ProtoSource source;
+    private final int capacity;
+    private final Profiler profiler;
+
+    // Relative path -> (absolute path, destination), in the order of discovery
+    private final Map<Path, Tuple<Path, DestinationConfig>> sources = new LinkedHashMap<>();
+    private final Map<Path, Integer> indices = new ConcurrentHashMap<>();
+
+    private final Map<Path, List<Path>> imports = new ConcurrentHashMap<>();
+    private final Map<Path, List<ProtoProcessorArgs>> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param srcPath Root of the proto tree, all files are identified by paths relative to it.
+     * @param paths Absolute paths to the proto files paired with their destinations.
+     * @param source Provides contents of the files.
+     * @param capacity Maximum number of parsed files to be retained simultaneously, zero means 'no limit'.
+     */
+    ProtoRegistry(final Path srcPath, final List<Tuple<Path, DestinationConfig>> paths, final ProtoSource source,
+                  final int capacity)
+    {
+        this(srcPath, paths, source, capacity, Profiler.none);
+    }
+
+    /**
+     * @param srcPath Root of the proto tree, all files are identified by paths relative to it.
+     * @param paths Absolute paths to the proto files paired with their destinations.
+     * @param source Provides contents of the files.
+     * @param capacity Maximum number of parsed files to be retained simultaneously, zero means 'no limit'.
+     * @param profiler Measures reading, parsing and preprocessing of each file.
+     */
+    ProtoRegistry(final Path srcPath, final List<Tuple<Path, DestinationConfig>> paths, final ProtoSource source,
+                  final int capacity, final Profiler profiler)
+    {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity mustn't be negative, got " + capacity + " instead");
+
+        this.srcPath = srcPath;
+        this.source = source;
+        this.capacity = capacity;
+        this.profiler = profiler;
+
+        paths.forEach(p -> {
+            final Path relativePath = srcPath.relativize(p.first());
+
+            indices.put(relativePath, sources.size());
+            sources.put(relativePath, p);
+        });
+
+        // Access-ordered map, so that the eldest entry is always the least recently used one
+        cache = new LinkedHashMap<Path, List<ProtoProcessorArgs>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Path, List<ProtoProcessorArgs>> eldest)
+            {
+                final boolean evict = (ProtoRegistry.this.capacity > 0) && (size() > ProtoRegistry.this.capacity);
+                if (evict)
+                    evictions.incrementAndGet();
+
+                return evict;
+            }
+        };
+    }
+
+    final boolean isBounded()
+    {
+        return capacity > 0;
+    }
+
+    /**
+     * @return Relative paths of all known proto files, in the order of discovery.
+     */
+    final List<Path> getPaths()
+    {
+        return unmodifiableList(new ArrayList<>(sources.keySet()));
+    }
+
+    final Path getAbsolutePath(final Path relativePath)
+    {
+        final Tuple<Path, DestinationConfig> source = sources.get(relativePath);
+        if (isNull(source))
+            throw new RuntimeException("'" + relativePath + "' is not a part of " + srcPath);
+
+        return source.first();
+    }
+
+    /**
+     * @param relativePath Path to the file, relative to the source root.
+     * @return Size of the file, used as a cheap estimate of its conversion cost.
+     */
+    final long sizeOf(final Path relativePath)
+    {
+        try
+        {
+            return source.size(getAbsolutePath(relativePath));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    final boolean contains(final Path relativePath)
+    {
+        return sources.containsKey(relativePath);
+    }
+
+    /**
+     * Returns a position of the file in the order of discovery. Used to keep the generated code stable no matter in
+     * which order the files were actually parsed.
+     *
+     * @param relativePath Path to the file, relative to the source root.
+     * @return Index of the file.
+     */
+    final int indexOf(final Path relativePath)
+    {
+        final Integer index = indices.get(relativePath);
+        if (isNull(index))
+            throw new RuntimeException("'" + relativePath + "' is not a part of " + srcPath);
+
+        return index;
+    }
+
+    /**
+     * Returns parsed and preprocessed file, loading it if it isn't cached.
+     *
+     * @param relativePath Path to the file, relative to the source root.
+     * @return A list of processor arguments for each of ProtoFileElement's, produced by preprocessors.
+     */
+    final List<ProtoProcessorArgs> get(final Path relativePath)
+    {
+        synchronized (cache)
+        {
+            final List<ProtoProcessorArgs> cached = cache.get(relativePath);
+            if (nonNull(cached))
+            {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        // Parse outside of the lock, files are independent of each other. If two threads parse the same file
+        // simultaneously, the first one wins and the other one just uses its result.
+        misses.incrementAndGet();
+        final List<ProtoProcessorArgs> loaded = load(relativePath);
+
+        synchronized (cache)
+        {
+            final List<ProtoProcessorArgs> previous = cache.putIfAbsent(relativePath, loaded);
+            return nonNull(previous) ? previous : loaded;
+        }
+    }
+
+    /**
+     * Returns the files, imported by a given one (only those, which are known by the registry).
+     *
+     * @param relativePath Path to the file, relative to the source root.
+     * @return Relative paths to the imported files, in the order of discovery.
+     */
+    final List<Path> getImports(final Path relativePath)
+    {
+        final List<Path> known = imports.get(relativePath);
+        if (nonNull(known))
+            return known;
+
+        get(relativePath);
+        return imports.getOrDefault(relativePath, emptyList());
+    }
+
+    /**
+     * Returns the files, imported by a given one directly or through other imports.
+     *
+     * @param relativePath Path to the file, relative to the source root.
+     * @return Relative paths to the imported files (without the file itself), in the order of discovery.
+     */
+    final List<Path> getImportClosure(final Path relativePath)
+    {
+        final Set<Path> visited = new HashSet<>();
+        final List<Path> order = new ArrayList<>();
+
+        visitImportsFirst(relativePath, visited, order);
+        order.remove(relativePath);
+        order.sort(comparingInt(this::indexOf));
+
+        return order;
+    }
+
+    /**
+     * Orders the files so that each file goes right after its (not yet visited) imports. Thus files, sharing
+     * imports are being processed next to each other and the imports are likely to remain cached.
+     *
+     * @param targets Relative paths of files to be ordered. Only these files and their imports are loaded.
+     * @return Relative paths of the targets, in import-closure locality order.
+     */
+    final List<Path> getLocalityOrder(final Set<Path> targets)
+    {
+        final List<Path> order = new ArrayList<>(targets.size());
+        final Set<Path> visited = new HashSet<>(targets.size());
+
+        sources.keySet().stream()
+            .filter(targets::contains)
+            .forEach(p -> visitImportsFirst(p, visited, order));
+
+        return order.stream()
+            .filter(targets::contains)
+            .collect(toList());
+    }
+
+    private void visitImportsFirst(final Path path, final Set<Path> visited, final List<Path> order)
+    {
+        if (!visited.add(path))
+            return;
+
+        getImports(path).forEach(i -> visitImportsFirst(i, visited, order));
+        order.add(path);
+    }
+
+    final void logStatistics()
+    {
+        log.info("Proto cache: {} hits, {} misses, {} evictions (capacity is {})", hits.get(), misses.get(),
+            evictions.get(), isBounded() ? String.valueOf(capacity) : "unlimited");
+    }
+
+    private List<ProtoProcessorArgs> load(final Path relativePath)
+    {
+        final Tuple<Path, DestinationConfig> file = sources.get(relativePath);
+        if (isNull(file))
+            throw new RuntimeException("'" + relativePath + "' is not a part of " + srcPath);
+
+        final Path pathToProto = file.first();
+        final List<ProtoFileElement> parsed;
+
+        try
+        {
+            // Sources, which provide already linked files (e.g. protoc descriptors) bypass the parser
+            final ProtoFileElement linked = profiler.time(relativePath, Phase.Parse, () ->
+                    source.getParsed(pathToProto));
+
+            if (nonNull(linked))
+            {
+                parsed = singletonList(linked);
+            }
+            else
+            {
+                final String content = profiler.time(relativePath, Phase.Read, () -> source.read(pathToProto));
+
+                final ProtoFileElement element = profiler.time(relativePath, Phase.Parse, () ->
+                        parse(Location.get(pathToProto.toString()), content));
+
+                parsed = profiler.time(relativePath, Phase.Preprocess, () -> preProcess(element));
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new RuntimeException(ex);
+        }
+
+        final List<ProtoProcessorArgs> args = parsed.stream()
+            .map(protoFile -> new ProtoProcessorArgs(protoFile, relativePath, file.second()))
+            .collect(toList());
+
+        imports.computeIfAbsent(relativePath, p -> args.stream()
+            .flatMap(a -> a.parse.imports().stream())
+            .map(i -> srcPath.getFileSystem().getPath(i))
+            .filter(this::contains)
+            .distinct()
+            .sorted(comparingInt(this::indexOf))
+            .collect(toList())
+        );
+
+        return args;
+    }
+
+    private List<ProtoFileElement> preProcess(ProtoFileElement element)
+    {
+        final List<ProtoFileElement> elements = new ArrayList<>();
+        elements.add(element);
+
+        try
+        {
+            for (final Class<? extends Preprocessor> c : preprocessorClasses)
+            {
+                final Preprocessor p = c.cast(c.newInstance());
+
+                // note that each processor outputs a set of ProtoFileElements's
+                // which should be processed independent of each other.
+                final List<ProtoFileElement> processed = elements.stream()
+                    .peek(e -> log.debug("Processing '{}' with '{}'", e.packageName(), p.getClass().getSimpleName()))
+                    .map(p::process)
+                    .collect(toList());
+
+                elements.clear();
+                elements.addAll(processed);
+            }
+        }
+        catch (Throwable e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        return elements;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.squareup.wire.schema.internal.parser.ProtoFileElement;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Provides contents of proto files. Implementations must be thread-safe, files are read in parallel.
+ */
+public interface ProtoSource
+{
+    /**
+     * Reads proto files from the file system.
+     */
+    ProtoSource fileSystem = new FileProtoSource();
+
+    /**
+     * Reads a proto file.
+     *
+     * @param path Absolute path to the file.
+     * @return Content of the file.
+     * @throws IOException If the file couldn't be read.
+     */
+    String read(final Path path) throws IOException;
+
+    /**
+     * Returns a size of a proto file, used as a cheap estimate of its conversion cost.
+     *
+     * @param path Absolute path to the file.
+     * @return Size of the file, usually in bytes.
+     * @throws IOException If the file couldn't be accessed.
+     */
+    long size(final Path path) throws IOException;
+
+    /**
+     * Returns an already parsed proto file, if the source has one. Such files are neither parsed from the text nor
+     * preprocessed, so they must look exactly like the preprocessors' output.
+     *
+     * @param path Absolute path to the file.
+     * @return A parsed file, or null if the file must be parsed from its content.
+     * @throws IOException If the file couldn't be accessed.
+     */
+    default ProtoFileElement getParsed(final Path path) throws IOException
+    {
+        return null;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.lang.Integer.parseInt;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.write;
+import static java.util.Comparator.comparing;
+import static java.util.regex.Pattern.compile;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * One of N deterministic slices of a proto tree, used to split generation across several processes or machines.
+ *
+ * Every process, given the same tree and the same shard count, computes exactly the same partition, so each file is
+ * owned by exactly one shard. Files are balanced by an estimated cost: the most expensive file goes first into the
+ * least loaded shard (ties are broken by path and by the shard index, never by the order of discovery).
+ */
+public final class Shard
+{
+    private static final Pattern shardPattern = compile("^\\s*(\\d+)\\s*/\\s*(\\d+)\\s*$");
+    private static final String manifestPrefix = ".cornerstone-shard-";
+
+    private final int index;
+    private final int count;
+
+    /**
+     * @param index One-based index of the shard.
+     * @param count Total number of shards.
+     */
+    public Shard(final int index, final int count)
+    {
+        if (count < 1)
+            throw new IllegalArgumentException("Number of shards must be positive, got " + count + " instead");
+
+        if (index < 1 || index > count)
+            throw new IllegalArgumentException("Shard index must be within [1, " + count + "], got " + index +
+                    " instead");
+
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Parses a shard, defined as 'i/n', e.g. '2/5' is the second shard of five.
+     *
+     * @param shard A string to be parsed.
+     * @return A parsed shard.
+     */
+    public static Shard parse(final String shard)
+    {
+        final Matcher matcher = shardPattern.matcher(shard);
+
+        if (!matcher.matches())
+            throw new IllegalArgumentException("'" + shard + "' doesn't look like a valid shard, expected 'i/n'");
+
+        return new Shard(parseInt(matcher.group(1)), parseInt(matcher.group(2)));
+    }
+
+    public final int getIndex()
+    {
+        return index;
+    }
+
+    public final int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Selects items, owned by this shard.
+     *
+     * @param items All items to be distributed among the shards.
+     * @param key Unique and stable key of an item, used to break ties.
+     * @param cost Estimated cost of an item, the bigger - the more expensive.
+     * @param <T> Type of the items.
+     *
+     * @return Items, owned by this shard, in the same order as they were given.
+     */
+    public final <T> List<T> select(final List<T> items, final Function<T, String> key, final ToLongFunction<T> cost)
+    {
+        final int[] owners = partition(items, key, cost, count);
+        final List<T> owned = new ArrayList<>();
+
+        for (int i = 0; i < owners.length; i++)
+        {
+            if (owners[i] == index - 1)
+                owned.add(items.get(i));
+        }
+
+        return owned;
+    }
+
+    /**
+     * Writes a manifest, listing files, generated by this shard. Manifests are then used by {@link #verify} to
+     * ensure, that the shards have covered the whole tree.
+     *
+     * @param directory A directory to write the manifest into.
+     * @param files Relative paths of the generated files.
+     */
+    public final void writeManifest(final Path directory, final List<Path> files)
+    {
+        final List<String> lines = files.stream()
+            .map(Shard::normalize)
+            .sorted()
+            .collect(toList());
+
+        try
+        {
+            write(getManifestPath(directory, index, count), lines, UTF_8);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Checks, that the manifests of all shards together cover each of the given files exactly once.
+     *
+     * @param directory A directory where manifests of all shards are placed.
+     * @param count Total number of shards.
+     * @param files Relative paths of all files in the tree.
+     *
+     * @return A list of problems found, empty if the shards cover the tree correctly.
+     */
+    public static List<String> verify(final Path directory, final int count, final List<Path> files)
+    {
+        final List<String> problems = new ArrayList<>();
+        final Map<String, Integer> owners = new HashMap<>();
+
+        for (int i = 1; i <= count; i++)
+        {
+            final Path manifest = getManifestPath(directory, i, count);
+            if (!isRegularFile(manifest))
+            {
+                problems.add("Manifest of shard " + i + "/" + count + " is missing: " + manifest);
+                continue;
+            }
+
+            try
+            {
+                for (final String line : readAllLines(manifest, UTF_8))
+                {
+                    if (line.isEmpty())
+                        continue;
+
+                    final Integer previous = owners.put(line, i);
+                    if (previous != null)
+                        problems.add("'" + line + "' is generated by both shards " + previous + " and " + i);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        files.stream().map(Shard::normalize).sorted().forEach(f -> {
+            if (owners.remove(f) == null)
+                problems.add("'" + f + "' isn't generated by any shard");
+        });
+
+        owners.keySet().stream().sorted().forEach(f -> problems.add("'" + f + "' is generated, but it isn't a " +
+                "part of the tree"));
+
+        return problems;
+    }
+
+    static <T> int[] partition(final List<T> items, final Function<T, String> key, final ToLongFunction<T> cost,
+                               final int count)
+    {
+        final List<Integer> order = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++)
+            order.add(i);
+
+        // Most expensive first, then by key to be independent of the order of discovery
+        final Comparator<Integer> byCost = comparing(i -> cost.applyAsLong(items.get(i)));
+        order.sort(byCost.reversed().thenComparing(i -> key.apply(items.get(i))));
+
+        final long[] loads = new long[count];
+        final int[] owners = new int[items.size()];
+
+        for (final int i : order)
+        {
+            int leastLoaded = 0;
+            for (int s = 1; s < count; s++)
+            {
+                if (loads[s] < loads[leastLoaded])
+                    leastLoaded = s;
+            }
+
+            owners[i] = leastLoaded;
+            loads[leastLoaded] += Math.max(1, cost.applyAsLong(items.get(i)));
+        }
+
+        return owners;
+    }
+
+    private static Path getManifestPath(final Path directory, final int index, final int count)
+    {
+        return directory.resolve(manifestPrefix + index + "-of-" + count);
+    }
+
+    // Manifests must be comparable between Windows and Unix machines
+    private static String normalize(final Path path)
+    {
+        return path.toString().replace('\\', '/');
+    }
+
+    @Override
+    public String toString()
+    {
+        return index + "/" + count;
+    }
+}
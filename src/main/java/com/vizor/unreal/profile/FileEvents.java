@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.profile;
+
+import java.nio.file.Path;
+
+/**
+ * Emits phases of files as events of an external recorder. {@link Profiler} only knows this interface and loads its
+ * implementation by name, so that the recorder's API is never linked on a JRE which lacks it.
+ */
+interface FileEvents
+{
+    /**
+     * @return True if the recorder is running, so events are worth emitting.
+     */
+    boolean isRecording();
+
+    /**
+     * Begins an event of a phase of a file.
+     *
+     * @return The event to be passed to {@link #end(Object)}, null if the event isn't being recorded.
+     */
+    Object begin(final Path file, final Phase phase);
+
+    void end(final Object event);
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.profile;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+/**
+ * Emits phases of files as Java Flight Recorder events, so they are shown on the threads' timelines of a recording
+ * along with GC, I/O and lock events. The thread and duration are recorded by JFR itself.
+ *
+ * The class is only loaded by name by {@link Profiler} if JFR is available (JDK 11+ or 8u262+), so it mustn't be
+ * referenced by any other class.
+ */
+final class FlightEvents implements FileEvents
+{
+    @Category("Cornerstone")
+    @StackTrace(false)
+    public abstract static class FileEvent extends Event
+    {
+        @Label("Path")
+        @Description("Proto file, relative to the source root")
+        String path;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("com.vizor.unreal.Parse")
+    @Label("Parse")
+    @Description("Reading, parsing or preprocessing a proto file")
+    public static final class ParseEvent extends FileEvent
+    {
+    }
+
+    @Name("com.vizor.unreal.Process")
+    @Label("Process")
+    @Description("Generating C++ code of a proto file, from resolving its imports to printing")
+    public static final class ProcessEvent extends FileEvent
+    {
+    }
+
+    @Name("com.vizor.unreal.Write")
+    @Label("Write")
+    @Description("Writing a file, generated of a proto file, to the output")
+    public static final class WriteEvent extends FileEvent
+    {
+    }
+
+    /**
+     * @return True if the flight recorder has been started, e.g. with '-XX:StartFlightRecording'.
+     */
+    @Override
+    public boolean isRecording()
+    {
+        return FlightRecorder.isInitialized() && !FlightRecorder.getFlightRecorder().getRecordings().isEmpty();
+    }
+
+    @Override
+    public Object begin(final Path file, final Phase phase)
+    {
+        final FileEvent event = create(phase);
+        if (!event.isEnabled())
+            return null;
+
+        event.path = file.toString().replace('\\', '/');
+        event.phase = phase.getDisplayName();
+        event.begin();
+
+        return event;
+    }
+
+    @Override
+    public void end(final Object event)
+    {
+        // Also ends the event and drops it if it's shorter than the recording's threshold
+        ((FileEvent) event).commit();
+    }
+
+    private static FileEvent create(final Phase phase)
+    {
+        switch (phase)
+        {
+            case Read:
+            case Parse:
+            case Preprocess:
+                return new ParseEvent();
+            case Writing:
+                return new WriteEvent();
+            default:
+                return new ProcessEvent();
+        }
+    }
+}
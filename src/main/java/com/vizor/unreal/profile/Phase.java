@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.profile;
+
+/**
+ * Phases of the generation pipeline, in the order they happen to a single file.
+ */
+public enum Phase
+{
+    Discovery("discovery"),
+    Read("read"),
+    Parse("parse"),
+    Preprocess("preprocess"),
+    Imports("import resolution"),
+    Types("type gathering"),
+    Structs("struct extraction"),
+    Casts("casts"),
+    Clients("clients/workers"),
+    Printing("printing"),
+    Writing("writing");
+
+    private final String displayName;
+
+    Phase(final String displayName)
+    {
+        this.displayName = displayName;
+    }
+
+    public final String getDisplayName()
+    {
+        return displayName;
+    }
+
+    /**
+     * @return A name for reports, e.g. 'import_resolution'.
+     */
+    public final String getKey()
+    {
+        return displayName.replace(' ', '_').replace('/', '_');
+    }
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.profile;
+
+import com.vizor.unreal.util.JsonWriter;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.lang.management.ManagementFactory.getMemoryPoolMXBeans;
+import static java.lang.management.ManagementFactory.getThreadMXBean;
+import static java.lang.management.MemoryType.HEAP;
+import static java.util.Collections.emptyList;
+import static java.util.Comparator.comparing;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.stream.Collectors.toList;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Measures how much time each phase of the pipeline takes for each file and how many bytes it allocates, without
+ * attaching a profiler.
+ *
+ * Phases are measured by scopes, opened and closed on the same thread, usually by timing an action:
+ *
+ * final ProtoFileElement element = profiler.time(path, Phase.Parse, () -> parse(location, content));
+ *
+ * Scopes may nest, e.g. an import is parsed while the importing file resolves its imports. The time of a nested
+ * scope is attributed to its own file and phase only, so the times of all phases sum up to the time, spent by all
+ * threads, and nothing is counted twice. The same goes for allocated bytes, which are counted by the JVM for each
+ * thread (if the JVM supports that, see {@link #isAllocationMeasured()}).
+ *
+ * Scopes of files are also emitted as Java Flight Recorder events if JFR is available, and may be kept to be written
+ * as a Chrome trace (see {@link #toTrace()}), which shows how busy each thread was and what it was doing.
+ *
+ * A disabled profiler ({@link #none}) returns the same empty scope for every call and costs nothing.
+ */
+public class Profiler
+{
+    private static final Logger log = getLogger(Profiler.class);
+
+    private static final Phase[] phases = Phase.values();
+    private static final double[] percentiles = {0.5, 0.9, 0.99};
+
+    private static final FileEvents flightRecorder = loadFlightRecorder();
+    private static final com.sun.management.ThreadMXBean threadBean = getAllocationCounter();
+
+    public static final Profiler none = new Profiler(false, false);
+
+    /**
+     * A measured part of a phase. Must be closed on the thread, which has opened it.
+     */
+    public static class Scope implements AutoCloseable
+    {
+        private static final Scope empty = new Scope(null, null, null, null, null);
+
+        private final Profiler profiler;
+        private final Deque<Scope> stack;
+        private final AtomicLongArray target;
+        private final Path file;
+        private final Phase phase;
+
+        private final long started = nanoTime();
+        private final long startedBytes = getThreadAllocatedBytes();
+        private Object flightEvent;
+
+        // The scope's own time and allocations are only counted while no nested scope is open
+        private long resumed = started;
+        private long resumedBytes = startedBytes;
+
+        private Scope(final Profiler profiler, final Deque<Scope> stack, final AtomicLongArray target, final Path file,
+                      final Phase phase)
+        {
+            this.profiler = profiler;
+            this.stack = stack;
+            this.target = target;
+            this.file = file;
+            this.phase = phase;
+        }
+
+        private void pause(final long now, final long bytes)
+        {
+            target.addAndGet(phase.ordinal(), now - resumed);
+            target.addAndGet(phases.length + phase.ordinal(), bytes - resumedBytes);
+        }
+
+        @Override
+        public void close()
+        {
+            if (isNull(stack))
+                return;
+
+            final long now = nanoTime();
+            final long bytes = getThreadAllocatedBytes();
+            if (stack.peek() != this)
+                throw new RuntimeException("Scopes of " + phase.getDisplayName() + " are closed out of order");
+
+            stack.pop();
+            pause(now, bytes);
+
+            final Scope parent = stack.peek();
+            if (nonNull(parent))
+            {
+                parent.resumed = now;
+                parent.resumedBytes = bytes;
+            }
+
+            profiler.finish(this, now);
+        }
+    }
+
+    /**
+     * An action, measured by {@link #time(Path, Phase, Action)}, which returns a value.
+     */
+    @FunctionalInterface
+    public interface Action<T, E extends Exception>
+    {
+        T run() throws E;
+    }
+
+    /**
+     * An action, measured by {@link #time(Path, Phase, VoidAction)}.
+     */
+    @FunctionalInterface
+    public interface VoidAction<E extends Exception>
+    {
+        void run() throws E;
+    }
+
+    private static final class Span
+    {
+        private final Path file;
+        private final Phase phase;
+        private final Thread thread;
+        private final long started;
+        private final long finished;
+
+        Span(final Scope scope, final Thread thread, final long finished)
+        {
+            this.file = scope.file;
+            this.phase = scope.phase;
+            this.thread = thread;
+            this.started = scope.started;
+            this.finished = finished;
+        }
+    }
+
+    private final boolean enabled;
+
+    // Whether a flight recording was running when the profiler was created
+    private final boolean flightEvents;
+
+    // The run lasts from the creation of the profiler until the last scope is closed
+    private final long created = nanoTime();
+    private final LongAccumulator finished = new LongAccumulator(Math::max, created);
+
+    // Time of each phase in nanoseconds, followed by allocated bytes of each phase, by file. Phases of the whole run
+    // (e.g. discovery) have no file
+    private final Map<Path, AtomicLongArray> files = new ConcurrentHashMap<>();
+    private final AtomicLongArray run = new AtomicLongArray(phases.length * 2);
+
+    private final List<MemoryPoolMXBean> heapPools;
+
+    private final ThreadLocal<Deque<Scope>> stacks = ThreadLocal.withInitial(ArrayDeque::new);
+
+    // Every closed scope, only kept if a trace is requested
+    private final Queue<Span> spans;
+
+    /**
+     * Creates an enabled profiler, the wall time of the run is counted from this moment.
+     */
+    public Profiler()
+    {
+        this(true, false);
+    }
+
+    /**
+     * Creates an enabled profiler, the wall time of the run is counted from this moment.
+     *
+     * @param trace Keep every scope to be written as a trace.
+     */
+    public Profiler(final boolean trace)
+    {
+        this(true, trace);
+    }
+
+    private Profiler(final boolean enabled, final boolean trace)
+    {
+        this.enabled = enabled;
+        this.flightEvents = enabled && isFlightRecording();
+        this.spans = trace ? new ConcurrentLinkedQueue<>() : null;
+
+        // Peaks are reset to get the peak of this run only
+        this.heapPools = enabled ? getMemoryPoolMXBeans().stream().filter(p -> p.getType() == HEAP).collect(toList()) :
+                emptyList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    /**
+     * @return True if a flight recording is running, so the profiler has to be enabled to emit events.
+     */
+    public static boolean isFlightRecording()
+    {
+        return nonNull(flightRecorder) && flightRecorder.isRecording();
+    }
+
+    public final boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @return True if the JVM counts bytes, allocated by each thread. Otherwise no allocations are reported.
+     */
+    public static boolean isAllocationMeasured()
+    {
+        return nonNull(threadBean);
+    }
+
+    /**
+     * @return Bytes, allocated by the current thread since it has started, zero if allocations aren't measured.
+     */
+    public static long getThreadAllocatedBytes()
+    {
+        return nonNull(threadBean) ? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * @return Bytes, allocated by a phase of all files and of the whole run, excluding nested phases.
+     */
+    public final long getAllocatedBytes(final Phase phase)
+    {
+        return getTotals()[phases.length + phase.ordinal()];
+    }
+
+    /**
+     * @return Bytes, allocated by all phases of a file, zero if the file hasn't been measured.
+     */
+    public final long getAllocatedBytes(final Path file)
+    {
+        final AtomicLongArray values = files.get(file);
+        return nonNull(values) ? new FileTimes(file, values).allocated : 0;
+    }
+
+    /**
+     * @return Sum of peak usages of the heap's memory pools since the profiler has been created. Peaks of different
+     * pools may happen at different moments, so the sum is an upper bound.
+     */
+    public final long getPeakHeapBytes()
+    {
+        return heapPools.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+    }
+
+    /**
+     * Starts measuring a phase on the current thread.
+     *
+     * @param file A file, the phase belongs to (relative to the source root), null for phases of the whole run.
+     * @param phase The phase.
+     * @return A scope, which stops measuring being closed.
+     */
+    public final Scope start(final Path file, final Phase phase)
+    {
+        if (!enabled)
+            return Scope.empty;
+
+        final AtomicLongArray target = isNull(file) ? run :
+                files.computeIfAbsent(file, f -> new AtomicLongArray(phases.length * 2));
+
+        final Deque<Scope> stack = stacks.get();
+        final Scope scope = new Scope(this, stack, target, file, phase);
+
+        final Scope parent = stack.peek();
+        if (nonNull(parent))
+            parent.pause(scope.started, scope.startedBytes);
+
+        stack.push(scope);
+
+        if (flightEvents && nonNull(file))
+            scope.flightEvent = flightRecorder.begin(file, phase);
+
+        return scope;
+    }
+
+    /**
+     * Measures a phase of an action on the current thread.
+     *
+     * @param file A file, the phase belongs to (relative to the source root), null for phases of the whole run.
+     * @param phase The phase.
+     * @param action The action to run.
+     * @return Result of the action.
+     * @throws E Exception, thrown by the action.
+     */
+    public final <T, E extends Exception> T time(final Path file, final Phase phase, final Action<T, E> action)
+        throws E
+    {
+        final Scope scope = start(file, phase);
+        try
+        {
+            return action.run();
+        }
+        finally
+        {
+            scope.close();
+        }
+    }
+
+    /**
+     * Measures a phase of an action on the current thread.
+     *
+     * @param file A file, the phase belongs to (relative to the source root), null for phases of the whole run.
+     * @param phase The phase.
+     * @param action The action to run.
+     * @throws E Exception, thrown by the action.
+     */
+    public final <E extends Exception> void time(final Path file, final Phase phase, final VoidAction<E> action)
+        throws E
+    {
+        final Scope scope = start(file, phase);
+        try
+        {
+            action.run();
+        }
+        finally
+        {
+            scope.close();
+        }
+    }
+
+    private void finish(final Scope scope, final long now)
+    {
+        if (nonNull(scope.flightEvent))
+            flightRecorder.end(scope.flightEvent);
+
+        if (nonNull(spans))
+            spans.add(new Span(scope, Thread.currentThread(), now));
+
+        finished.accumulate(now);
+    }
+
+    /**
+     * Logs totals of each phase, percentiles of per-file times, the slowest and the most allocating files.
+     *
+     * @param slowest Number of the slowest (and the most allocating) files to list.
+     */
+    public final void logSummary(final int slowest)
+    {
+        final List<FileTimes> byTime = getFilesByTime();
+        final long[] totals = getTotals();
+        final long threadTime = sumOfPhases(totals);
+
+        log.info(format("Profile of %d files: %.1f ms of wall time, %.1f ms of thread time, %.1f MB allocated, " +
+                "%.1f MB of peak heap", byTime.size(), toMillis(getWallTime()), toMillis(threadTime),
+                toMegabytes(sumBytes(totals)), toMegabytes(getPeakHeapBytes())));
+        log.info(format("%-20s %10s %7s %11s %9s %9s %9s %9s", "phase", "total, ms", "share", "alloc, MB",
+                "p50, ms", "p90, ms", "p99, ms", "max, ms"));
+
+        for (final Phase phase : phases)
+        {
+            final long total = totals[phase.ordinal()];
+            final long[] perFile = getSorted(byTime, phase);
+
+            // Phases of the whole run have no per-file times
+            final String distribution = (perFile.length > 0) && (perFile[perFile.length - 1] > 0) ?
+                    format("%9.2f %9.2f %9.2f %9.2f", toMillis(percentile(perFile, 0.5)),
+                            toMillis(percentile(perFile, 0.9)), toMillis(percentile(perFile, 0.99)),
+                            toMillis(percentile(perFile, 1.0))) : "";
+
+            log.info(format("%-20s %10.1f %6.1f%% %11.1f %s", phase.getDisplayName(), toMillis(total),
+                    share(total, threadTime), toMegabytes(totals[phases.length + phase.ordinal()]), distribution));
+        }
+
+        final long[] perFile = byTime.stream().mapToLong(f -> f.total).sorted().toArray();
+        log.info(format("Per file: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                toMillis(percentile(perFile, 0.5)), toMillis(percentile(perFile, 0.9)),
+                toMillis(percentile(perFile, 0.99)), toMillis(percentile(perFile, 1.0))));
+
+        final int numSlowest = Math.min(slowest, byTime.size());
+        if (numSlowest > 0)
+            log.info("{} slowest files:", numSlowest);
+
+        for (final FileTimes f : byTime.subList(0, numSlowest))
+        {
+            final Phase dominant = f.getDominantPhase();
+            log.info(format("%10.2f ms %s (%.0f%% %s)", toMillis(f.total), f.file,
+                    share(f.times[dominant.ordinal()], f.total), dominant.getDisplayName()));
+        }
+
+        if (!isAllocationMeasured() || (numSlowest == 0))
+            return;
+
+        final List<FileTimes> byAllocated = new ArrayList<>(byTime);
+        byAllocated.sort(comparing((FileTimes f) -> -f.allocated).thenComparing(f -> f.file));
+
+        log.info("{} most allocating files:", numSlowest);
+        for (final FileTimes f : byAllocated.subList(0, numSlowest))
+            log.info(format("%10.2f MB %s", toMegabytes(f.allocated), f.file));
+    }
+
+    /**
+     * @return Totals and percentiles of each phase, times and allocations of every file (the slowest first) as JSON.
+     */
+    public final String toJson()
+    {
+        final List<FileTimes> byTime = getFilesByTime();
+        final long[] totals = getTotals();
+        final long threadTime = sumOfPhases(totals);
+
+        final JsonWriter json = new JsonWriter(true)
+            .beginObject()
+            .name("files").value(byTime.size())
+            .name("wall_ms").value(toMillis(getWallTime()))
+            .name("thread_ms").value(toMillis(threadTime))
+            .name("allocated_bytes").value(sumBytes(totals))
+            .name("peak_heap_bytes").value(getPeakHeapBytes())
+            .name("phases").beginObject();
+
+        for (final Phase phase : phases)
+        {
+            final long total = totals[phase.ordinal()];
+            final long[] perFile = getSorted(byTime, phase);
+
+            json.name(phase.getKey()).beginObject()
+                .name("total_ms").value(toMillis(total))
+                .name("share_percent").value(Math.round(share(total, threadTime) * 10.0) / 10.0)
+                .name("allocated_bytes").value(totals[phases.length + phase.ordinal()]);
+
+            if ((perFile.length > 0) && (perFile[perFile.length - 1] > 0))
+            {
+                for (final double p : percentiles)
+                    json.name("p" + Math.round(p * 100.0) + "_ms").value(toMillis(percentile(perFile, p)));
+
+                json.name("max_ms").value(toMillis(percentile(perFile, 1.0)));
+            }
+
+            json.endObject();
+        }
+
+        json.endObject().name("by_file").beginArray();
+        for (final FileTimes f : byTime)
+        {
+            json.beginObject()
+                .name("path").value(f.file.toString().replace('\\', '/'))
+                .name("total_ms").value(toMillis(f.total))
+                .name("allocated_bytes").value(f.allocated);
+
+            for (final Phase phase : phases)
+            {
+                if (f.times[phase.ordinal()] > 0)
+                    json.name(phase.getKey() + "_ms").value(toMillis(f.times[phase.ordinal()]));
+
+                if (f.bytes[phase.ordinal()] > 0)
+                    json.name(phase.getKey() + "_bytes").value(f.bytes[phase.ordinal()]);
+            }
+
+            json.endObject();
+        }
+
+        return json.endArray().endObject().toString();
+    }
+
+    /**
+     * Writes every scope in Chrome trace event format, to be opened by chrome://tracing or https://ui.perfetto.dev.
+     * Each thread gets its own track, nested scopes (e.g. parsing of an import) are shown within their parents.
+     *
+     * @return The trace as JSON.
+     */
+    public final String toTrace()
+    {
+        if (isNull(spans))
+            throw new RuntimeException("The profiler doesn't keep a trace");
+
+        final List<Span> sorted = new ArrayList<>(spans);
+
+        // A parent goes before its children, started at the same time
+        sorted.sort(comparing((Span span) -> span.started).thenComparing(span -> span.started - span.finished));
+
+        final JsonWriter json = new JsonWriter(false)
+            .beginObject()
+            .name("displayTimeUnit").value("ms")
+            .name("traceEvents").beginArray();
+
+        json.beginObject()
+            .name("name").value("process_name")
+            .name("ph").value("M")
+            .name("pid").value(1)
+            .name("args").beginObject().name("name").value("cornerstone").endObject()
+            .endObject();
+
+        final Map<Long, String> threads = new TreeMap<>();
+        sorted.forEach(span -> threads.put(span.thread.getId(), span.thread.getName()));
+        threads.forEach((id, name) -> json.beginObject()
+            .name("name").value("thread_name")
+            .name("ph").value("M")
+            .name("pid").value(1)
+            .name("tid").value(id)
+            .name("args").beginObject().name("name").value(name).endObject()
+            .endObject());
+
+        for (final Span span : sorted)
+        {
+            json.beginObject()
+                .name("name").value(span.phase.getDisplayName())
+                .name("cat").value(span.phase.getKey())
+                .name("ph").value("X")
+                .name("ts").value(toMicros(span.started - created))
+                .name("dur").value(toMicros(span.finished - span.started))
+                .name("pid").value(1)
+                .name("tid").value(span.thread.getId());
+
+            if (nonNull(span.file))
+                json.name("args").beginObject().name("file").value(span.file.toString().replace('\\', '/')).endObject();
+
+            json.endObject();
+        }
+
+        return json.endArray().endObject().toString();
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationCounter()
+    {
+        final ThreadMXBean bean = getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+
+        final com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+        return (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) ? counter : null;
+    }
+
+    /**
+     * @return Emitter of JFR events, null if the JRE has no Flight Recorder API. The emitter is loaded by name, so that
+     * this class never links the API itself and runs on any Java 8 JRE.
+     */
+    private static FileEvents loadFlightRecorder()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return (FileEvents) Class.forName(Profiler.class.getPackage().getName() + ".FlightEvents")
+                .getDeclaredConstructor().newInstance();
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return null;
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class FileTimes
+    {
+        private final Path file;
+        private final long[] times = new long[phases.length];
+        private final long[] bytes = new long[phases.length];
+        private final long total;
+        private final long allocated;
+
+        FileTimes(final Path file, final AtomicLongArray values)
+        {
+            this.file = file;
+            for (int i = 0; i < phases.length; i++)
+            {
+                this.times[i] = values.get(i);
+                this.bytes[i] = values.get(phases.length + i);
+            }
+
+            this.total = sumOfPhases(this.times);
+            this.allocated = sumOfPhases(this.bytes);
+        }
+
+        Phase getDominantPhase()
+        {
+            int dominant = 0;
+            for (int i = 1; i < times.length; i++)
+            {
+                if (times[i] > times[dominant])
+                    dominant = i;
+            }
+
+            return phases[dominant];
+        }
+    }
+
+    private long getWallTime()
+    {
+        return finished.get() - created;
+    }
+
+    private List<FileTimes> getFilesByTime()
+    {
+        final List<FileTimes> byTime = new ArrayList<>(files.size());
+        files.forEach((file, times) -> byTime.add(new FileTimes(file, times)));
+
+        // Ties are broken by path to keep reports stable
+        byTime.sort(comparing((FileTimes f) -> -f.total).thenComparing(f -> f.file));
+        return byTime;
+    }
+
+    /**
+     * @return Time of each phase, followed by allocated bytes of each phase, of all files and the whole run.
+     */
+    private long[] getTotals()
+    {
+        final long[] totals = new long[phases.length * 2];
+        for (int i = 0; i < totals.length; i++)
+            totals[i] = run.get(i);
+
+        files.values().forEach(values -> {
+            for (int i = 0; i < totals.length; i++)
+                totals[i] += values.get(i);
+        });
+
+        return totals;
+    }
+
+    private static long[] getSorted(final List<FileTimes> files, final Phase phase)
+    {
+        return files.stream().mapToLong(f -> f.times[phase.ordinal()]).sorted().toArray();
+    }
+
+    /**
+     * @return Nearest-rank percentile of sorted values, zero if there are none.
+     */
+    private static long percentile(final long[] sorted, final double p)
+    {
+        if (sorted.length == 0)
+            return 0;
+
+        return sorted[max(0, (int) ceil(p * sorted.length) - 1)];
+    }
+
+    // Sums up values of all phases, which go first: times of a file or totals of all files
+    private static long sumOfPhases(final long[] values)
+    {
+        long sum = 0;
+        for (int i = 0; i < phases.length; i++)
+            sum += values[i];
+
+        return sum;
+    }
+
+    private static long sumBytes(final long[] totals)
+    {
+        long sum = 0;
+        for (int i = phases.length; i < totals.length; i++)
+            sum += totals[i];
+
+        return sum;
+    }
+
+    private static double share(final long part, final long total)
+    {
+        return (total > 0) ? (100.0 * part / total) : 0.0;
+    }
+
+    private static double toMillis(final long nanos)
+    {
+        return Math.round(nanos / 1.0e4) / 100.0;
+    }
+
+    private static double toMegabytes(final long bytes)
+    {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static double toMicros(final long nanos)
+    {
+        return Math.round(nanos / 1.0e1) / 100.0;
+    }
+}
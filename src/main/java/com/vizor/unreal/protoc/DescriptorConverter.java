@@ -0,0 +1,443 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.protoc;
+
+import com.squareup.wire.schema.Field.Label;
+import com.squareup.wire.schema.Location;
+import com.squareup.wire.schema.ProtoFile.Syntax;
+import com.squareup.wire.schema.internal.parser.EnumConstantElement;
+import com.squareup.wire.schema.internal.parser.EnumElement;
+import com.squareup.wire.schema.internal.parser.FieldElement;
+import com.squareup.wire.schema.internal.parser.MessageElement;
+import com.squareup.wire.schema.internal.parser.OneOfElement;
+import com.squareup.wire.schema.internal.parser.ProtoFileElement;
+import com.squareup.wire.schema.internal.parser.RpcElement;
+import com.squareup.wire.schema.internal.parser.ServiceElement;
+import com.squareup.wire.schema.internal.parser.TypeElement;
+import com.vizor.unreal.protoc.Descriptors.EnumProto;
+import com.vizor.unreal.protoc.Descriptors.FieldProto;
+import com.vizor.unreal.protoc.Descriptors.FileProto;
+import com.vizor.unreal.protoc.Descriptors.MessageProto;
+import com.vizor.unreal.protoc.Descriptors.MethodProto;
+import com.vizor.unreal.protoc.Descriptors.ServiceProto;
+import com.vizor.unreal.protoc.Descriptors.SourceLocation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.ImmutableList.copyOf;
+import static com.vizor.unreal.protoc.Descriptors.labelRepeated;
+import static com.vizor.unreal.protoc.Descriptors.labelRequired;
+import static com.vizor.unreal.protoc.Descriptors.typeEnum;
+import static com.vizor.unreal.protoc.Descriptors.typeMessage;
+import static com.vizor.unreal.util.Misc.stringIsNullOrEmpty;
+import static java.util.Comparator.comparingInt;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Converts already linked descriptors into the same {@link ProtoFileElement}'s, the text parser and the
+ * preprocessors would produce for the same files.
+ *
+ * Nested types are flattened just like {@link com.vizor.unreal.preprocess.NestedTypesRemover} does (a nested type
+ * is named after its immediate parent, e.g. 'Outer_Inner'), so the generated code doesn't depend on the input
+ * format. Unlike in the text mode, every reference to a message or enum is written fully qualified, since protoc has
+ * already resolved it according to the scoping rules.
+ */
+final class DescriptorConverter
+{
+    // Indices of FieldDescriptorProto.Type, which are scalars
+    private static final Map<Integer, String> scalarTypes = new HashMap<>();
+    static
+    {
+        scalarTypes.put(1, "double");
+        scalarTypes.put(2, "float");
+        scalarTypes.put(3, "int64");
+        scalarTypes.put(4, "uint64");
+        scalarTypes.put(5, "int32");
+        scalarTypes.put(6, "fixed64");
+        scalarTypes.put(7, "fixed32");
+        scalarTypes.put(8, "bool");
+        scalarTypes.put(9, "string");
+        scalarTypes.put(12, "bytes");
+        scalarTypes.put(13, "uint32");
+        scalarTypes.put(15, "sfixed32");
+        scalarTypes.put(16, "sfixed64");
+        scalarTypes.put(17, "sint32");
+        scalarTypes.put(18, "sint64");
+    }
+
+    private static final String proto3 = "proto3";
+
+    // Fully qualified protoc name (with a leading dot) -> declaration
+    private final Map<String, Declaration> declarations = new HashMap<>();
+
+    private DescriptorConverter(final List<FileProto> files)
+    {
+        for (final FileProto file : files)
+        {
+            final String scope = stringIsNullOrEmpty(file.packageName) ? "" : "." + file.packageName;
+
+            file.messages.forEach(m -> indexMessage(file, scope, "", m));
+            file.enums.forEach(e -> declarations.put(scope + "." + e.name, new Declaration(file, e.name, null)));
+        }
+    }
+
+    /**
+     * Converts a set of linked files. All files, which are referenced by the files must be present in the set.
+     *
+     * @param files Files to be converted.
+     * @return Converted files by their names, in the same order.
+     */
+    static Map<String, ProtoFileElement> convert(final List<FileProto> files)
+    {
+        final DescriptorConverter converter = new DescriptorConverter(files);
+        final Map<String, ProtoFileElement> converted = new LinkedHashMap<>();
+
+        for (final FileProto file : files)
+        {
+            if (nonNull(converted.put(file.name, converter.convertFile(file))))
+                throw new RuntimeException("'" + file.name + "' is defined more than once");
+        }
+
+        return converted;
+    }
+
+    private void indexMessage(final FileProto file, final String scope, final String parentName,
+                              final MessageProto message)
+    {
+        final String fullName = scope + "." + message.name;
+        final String flatName = parentName.isEmpty() ? message.name : parentName + '_' + message.name;
+
+        declarations.put(fullName, new Declaration(file, flatName, message));
+
+        message.nestedTypes.forEach(n -> indexMessage(file, fullName, message.name, n));
+        message.enums.forEach(e -> declarations.put(fullName + "." + e.name,
+                new Declaration(file, message.name + '_' + e.name, null)));
+    }
+
+    private ProtoFileElement convertFile(final FileProto file)
+    {
+        final Location location = Location.get(file.name);
+        final boolean isProto3 = proto3.equals(file.syntax);
+
+        final List<TypeElement> types = new ArrayList<>();
+        final String scope = stringIsNullOrEmpty(file.packageName) ? "" : "." + file.packageName;
+        collectTypes(file, location, isProto3, scope, "", file.messages, file.enums, 4, 5, types);
+
+        final List<String> imports = new ArrayList<>();
+        final List<String> publicImports = new ArrayList<>();
+        for (int i = 0; i < file.dependencies.size(); i++)
+            (file.publicDependencies.contains(i) ? publicImports : imports).add(file.dependencies.get(i));
+
+        final List<ServiceElement> services = new ArrayList<>();
+        for (int i = 0; i < file.services.size(); i++)
+            services.add(convertService(file, location, file.services.get(i), child("", 6, i)));
+
+        return ProtoFileElement.builder(location)
+            .packageName(stringIsNullOrEmpty(file.packageName) ? null : file.packageName)
+            .syntax(isNull(file.syntax) ? null : Syntax.get(file.syntax))
+            .imports(copyOf(imports))
+            .publicImports(copyOf(publicImports))
+            .types(copyOf(types))
+            .services(copyOf(services))
+            .build();
+    }
+
+    /**
+     * Appends messages and enums of a scope to the list, each followed by its own nested types. Map entries are
+     * skipped, they're represented by 'map<K, V>' fields.
+     */
+    private void collectTypes(final FileProto file, final Location location, final boolean isProto3,
+                              final String scope, final String parentPath, final List<MessageProto> messages, final List<EnumProto> enums,
+                              final int messagesField, final int enumsField, final List<TypeElement> types)
+    {
+        final List<Nested> nested = new ArrayList<>();
+
+        for (int i = 0; i < messages.size(); i++)
+            nested.add(new Nested(messages.get(i), null, scope + "." + messages.get(i).name,
+                    child(parentPath, messagesField, i)));
+
+        for (int i = 0; i < enums.size(); i++)
+            nested.add(new Nested(null, enums.get(i), scope + "." + enums.get(i).name,
+                    child(parentPath, enumsField, i)));
+
+        // Descriptors keep messages and enums apart, restore the declaration order if the spans are known
+        nested.sort(comparingInt(n -> lineOf(file, n.path)));
+
+        for (final Nested n : nested)
+        {
+            if (nonNull(n.message))
+            {
+                if (n.message.mapEntry)
+                    continue;
+
+                types.add(convertMessage(file, location, isProto3, n.message, n.fullName, n.path));
+                collectTypes(file, location, isProto3, n.fullName, n.path, n.message.nestedTypes, n.message.enums,
+                        3, 4, types);
+            }
+            else
+            {
+                types.add(convertEnum(file, location, n.enumProto, n.fullName, n.path));
+            }
+        }
+    }
+
+    private TypeElement convertMessage(final FileProto file, final Location location, final boolean isProto3,
+                                       final MessageProto message, final String fullName, final String path)
+    {
+        final List<FieldElement> fields = new ArrayList<>();
+        final List<List<FieldElement>> oneOfFields = new ArrayList<>();
+        message.oneOfs.forEach(o -> oneOfFields.add(new ArrayList<>()));
+
+        for (int i = 0; i < message.fields.size(); i++)
+        {
+            final FieldProto field = message.fields.get(i);
+            final boolean inOneOf = (field.oneOfIndex >= 0) && !field.proto3Optional;
+
+            final FieldElement element = convertField(file, location, isProto3, inOneOf, field, child(path, 2, i));
+
+            if (inOneOf)
+                oneOfFields.get(field.oneOfIndex).add(element);
+            else
+                fields.add(element);
+        }
+
+        // Synthetic oneofs of proto3 'optional' fields have no members left, thus are skipped
+        final List<OneOfElement> oneOfs = new ArrayList<>();
+        for (int i = 0; i < message.oneOfs.size(); i++)
+        {
+            if (oneOfFields.get(i).isEmpty())
+                continue;
+
+            oneOfs.add(OneOfElement.builder()
+                .name(message.oneOfs.get(i))
+                .documentation(documentationOf(file, child(path, 8, i)))
+                .fields(copyOf(oneOfFields.get(i)))
+                .build());
+        }
+
+        return MessageElement.builder(location)
+            .name(declarations.get(fullName).flatName)
+            .documentation(documentationOf(file, path))
+            .fields(copyOf(fields))
+            .oneOfs(copyOf(oneOfs))
+            .build();
+    }
+
+    private FieldElement convertField(final FileProto file, final Location location, final boolean isProto3,
+                                      final boolean inOneOf, final FieldProto field, final String path)
+    {
+        final String type = typeOf(field);
+        final boolean isMap = type.startsWith("map<");
+
+        final Label label;
+        if (inOneOf || isMap)
+            label = null;
+        else if (field.label == labelRepeated)
+            label = Label.REPEATED;
+        else if (field.label == labelRequired)
+            label = Label.REQUIRED;
+        else
+            label = (isProto3 && !field.proto3Optional) ? null : Label.OPTIONAL;
+
+        return FieldElement.builder(location)
+            .label(label)
+            .type(type)
+            .name(field.name)
+            .tag(field.number)
+            .documentation(documentationOf(file, path))
+            .build();
+    }
+
+    private TypeElement convertEnum(final FileProto file, final Location location, final EnumProto enumProto,
+                                    final String fullName, final String path)
+    {
+        final List<EnumConstantElement> constants = new ArrayList<>();
+        for (int i = 0; i < enumProto.values.size(); i++)
+        {
+            constants.add(EnumConstantElement.builder(location)
+                .name(enumProto.values.get(i).name)
+                .tag(enumProto.values.get(i).number)
+                .documentation(documentationOf(file, child(path, 2, i)))
+                .build());
+        }
+
+        return EnumElement.builder(location)
+            .name(declarations.get(fullName).flatName)
+            .documentation(documentationOf(file, path))
+            .constants(copyOf(constants))
+            .build();
+    }
+
+    private ServiceElement convertService(final FileProto file, final Location location, final ServiceProto service,
+                                          final String path)
+    {
+        final List<RpcElement> rpcs = new ArrayList<>();
+        for (int i = 0; i < service.methods.size(); i++)
+        {
+            final MethodProto method = service.methods.get(i);
+
+            rpcs.add(RpcElement.builder(location)
+                .name(method.name)
+                .documentation(documentationOf(file, child(path, 2, i)))
+                .requestType(relativeReferenceTo(file, method.inputType))
+                .responseType(relativeReferenceTo(file, method.outputType))
+                .requestStreaming(method.clientStreaming)
+                .responseStreaming(method.serverStreaming)
+                .build());
+        }
+
+        return ServiceElement.builder(location)
+            .name(service.name)
+            .documentation(documentationOf(file, path))
+            .rpcs(copyOf(rpcs))
+            .build();
+    }
+
+    private String typeOf(final FieldProto field)
+    {
+        if ((field.type == typeMessage) || (field.type == typeEnum))
+        {
+            final Declaration declaration = declarationOf(field.typeName);
+
+            if (nonNull(declaration.message) && declaration.message.mapEntry)
+            {
+                final List<FieldProto> kv = declaration.message.fields;
+                if (kv.size() != 2)
+                    throw new RuntimeException("Map entry '" + field.typeName + "' must have exactly two fields");
+
+                return "map<" + typeOf(kv.get(0)) + ", " + typeOf(kv.get(1)) + ">";
+            }
+
+            return referenceTo(field.typeName);
+        }
+
+        final String scalar = scalarTypes.get(field.type);
+        if (isNull(scalar))
+            throw new RuntimeException("Field '" + field.name + "' has unsupported type " + field.type);
+
+        return scalar;
+    }
+
+    private String referenceTo(final String typeName)
+    {
+        final Declaration declaration = declarationOf(typeName);
+        final String packageName = declaration.file.packageName;
+
+        return stringIsNullOrEmpty(packageName) ? declaration.flatName : packageName + "." + declaration.flatName;
+    }
+
+    /**
+     * RPC types are printed into the generated code as they're written, so types of the same package are written
+     * without the package, just like they usually are in the sources.
+     */
+    private String relativeReferenceTo(final FileProto file, final String typeName)
+    {
+        final Declaration declaration = declarationOf(typeName);
+
+        if (!stringIsNullOrEmpty(file.packageName) && file.packageName.equals(declaration.file.packageName))
+            return declaration.flatName;
+
+        return referenceTo(typeName);
+    }
+
+    private Declaration declarationOf(final String typeName)
+    {
+        final Declaration declaration = declarations.get(typeName);
+        if (isNull(declaration))
+            throw new RuntimeException("Type '" + typeName + "' isn't declared by any of the descriptors");
+
+        return declaration;
+    }
+
+    private static int lineOf(final FileProto file, final String path)
+    {
+        final SourceLocation location = file.locations.get(path);
+        return nonNull(location) ? location.line : -1;
+    }
+
+    /**
+     * Formats comments like the text parser does: comment markers and a single space after them are stripped,
+     * a trailing comment goes on its own line after the leading ones.
+     */
+    private static String documentationOf(final FileProto file, final String path)
+    {
+        final SourceLocation location = file.locations.get(path);
+        if (isNull(location))
+            return "";
+
+        final List<String> lines = new ArrayList<>();
+        lines.addAll(commentLines(location.leadingComments));
+        lines.addAll(commentLines(location.trailingComments));
+
+        return String.join("\n", lines);
+    }
+
+    private static List<String> commentLines(final String comments)
+    {
+        if (stringIsNullOrEmpty(comments))
+            return new ArrayList<>();
+
+        final String trimmed = comments.endsWith("\n") ? comments.substring(0, comments.length() - 1) : comments;
+
+        final List<String> lines = new ArrayList<>();
+        for (final String line : trimmed.split("\n", -1))
+            lines.add(line.startsWith(" ") ? line.substring(1) : line);
+
+        return lines;
+    }
+
+    private static String child(final String parentPath, final int field, final int index)
+    {
+        return (parentPath.isEmpty() ? "" : parentPath + ",") + field + "," + index;
+    }
+
+    private static final class Declaration
+    {
+        final FileProto file;
+        final String flatName;
+
+        // Null for enums
+        final MessageProto message;
+
+        Declaration(final FileProto file, final String flatName, final MessageProto message)
+        {
+            this.file = file;
+            this.flatName = flatName;
+            this.message = message;
+        }
+    }
+
+    private static final class Nested
+    {
+        final MessageProto message;
+        final EnumProto enumProto;
+        final String fullName;
+        final String path;
+
+        Nested(final MessageProto message, final EnumProto enumProto, final String fullName, final String path)
+        {
+            this.message = message;
+            this.enumProto = enumProto;
+            this.fullName = fullName;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.protoc;
+
+import com.squareup.wire.schema.internal.parser.ProtoFileElement;
+import com.vizor.unreal.convert.ProtoSource;
+import com.vizor.unreal.protoc.Descriptors.FileProto;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.io.File.separator;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Paths.get;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.isNull;
+
+/**
+ * Proto files, compiled by protoc into descriptors. The files are already parsed and linked, thus are handed to
+ * the converter as is, bypassing the text parser and the preprocessors.
+ *
+ * Like {@link com.vizor.unreal.convert.InMemoryProtoSource}, files are placed under a virtual root and are
+ * identified by their protoc names, e.g. 'game/player.proto'.
+ */
+public class DescriptorSource implements ProtoSource
+{
+    private final Path root = get(separator);
+    private final Map<Path, ProtoFileElement> files = new TreeMap<>();
+
+    DescriptorSource(final List<FileProto> protos)
+    {
+        DescriptorConverter.convert(protos).forEach((name, file) -> files.put(root.resolve(name), file));
+    }
+
+    /**
+     * Loads a FileDescriptorSet, e.g. produced by 'protoc --include_imports --include_source_info
+     * --descriptor_set_out=...'. The set must contain all the imported files.
+     *
+     * @param descriptorSet A binary FileDescriptorSet.
+     * @return A new source.
+     */
+    public static DescriptorSource fromDescriptorSet(final byte[] descriptorSet)
+    {
+        return new DescriptorSource(Descriptors.readFileDescriptorSet(descriptorSet));
+    }
+
+    /**
+     * @param descriptorSet Path to a binary FileDescriptorSet.
+     * @return A new source.
+     */
+    public static DescriptorSource fromDescriptorSet(final Path descriptorSet)
+    {
+        try
+        {
+            return fromDescriptorSet(readAllBytes(descriptorSet));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The virtual root, all files reside within.
+     */
+    public final Path getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * @return Virtual absolute paths of all files, sorted by path.
+     */
+    public final List<Path> getPaths()
+    {
+        return unmodifiableList(new ArrayList<>(files.keySet()));
+    }
+
+    /**
+     * @param path Virtual absolute path to a file.
+     * @return Package of the file, or null if the file has no package.
+     * @throws FileNotFoundException If there's no such file.
+     */
+    public final String getPackageName(final Path path) throws FileNotFoundException
+    {
+        return getParsed(path).packageName();
+    }
+
+    @Override
+    public ProtoFileElement getParsed(final Path path) throws FileNotFoundException
+    {
+        final ProtoFileElement file = files.get(path);
+        if (isNull(file))
+            throw new FileNotFoundException(path.toString());
+
+        return file;
+    }
+
+    @Override
+    public String read(final Path path) throws IOException
+    {
+        return getParsed(path).toSchema();
+    }
+
+    @Override
+    public long size(final Path path) throws IOException
+    {
+        // Only used as an estimate, so characters of the schema are as good as bytes of the source
+        return read(path).length();
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.protoc;
+
+import com.squareup.wire.ProtoReader;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal decoder of 'google/protobuf/descriptor.proto' and 'google/protobuf/compiler/plugin.proto' messages.
+ *
+ * Only the fields, needed to generate code are decoded, everything else (options, extensions, spans) is skipped.
+ * Field numbers are taken from the descriptor.proto, which is stable across protobuf releases.
+ */
+final class Descriptors
+{
+    // FieldDescriptorProto.Label
+    static final int labelOptional = 1;
+    static final int labelRequired = 2;
+    static final int labelRepeated = 3;
+
+    // FieldDescriptorProto.Type
+    static final int typeMessage = 11;
+    static final int typeEnum = 14;
+
+    private Descriptors()
+    {
+    }
+
+    static final class CodeGeneratorRequest
+    {
+        final List<String> filesToGenerate = new ArrayList<>();
+        String parameter = "";
+        final List<FileProto> protoFiles = new ArrayList<>();
+    }
+
+    static final class FileProto
+    {
+        String name;
+        String packageName;
+        final List<String> dependencies = new ArrayList<>();
+        final List<Integer> publicDependencies = new ArrayList<>();
+        final List<MessageProto> messages = new ArrayList<>();
+        final List<EnumProto> enums = new ArrayList<>();
+        final List<ServiceProto> services = new ArrayList<>();
+        String syntax;
+
+        // Comma-separated SourceCodeInfo.Location.path -> location
+        final Map<String, SourceLocation> locations = new HashMap<>();
+    }
+
+    static final class MessageProto
+    {
+        String name;
+        final List<FieldProto> fields = new ArrayList<>();
+        final List<MessageProto> nestedTypes = new ArrayList<>();
+        final List<EnumProto> enums = new ArrayList<>();
+        final List<String> oneOfs = new ArrayList<>();
+        boolean mapEntry;
+    }
+
+    static final class FieldProto
+    {
+        String name;
+        int number;
+        int label = labelOptional;
+        int type;
+        String typeName;
+        int oneOfIndex = -1;
+        boolean proto3Optional;
+    }
+
+    static final class EnumProto
+    {
+        String name;
+        final List<EnumValueProto> values = new ArrayList<>();
+    }
+
+    static final class EnumValueProto
+    {
+        String name;
+        int number;
+    }
+
+    static final class ServiceProto
+    {
+        String name;
+        final List<MethodProto> methods = new ArrayList<>();
+    }
+
+    static final class MethodProto
+    {
+        String name;
+        String inputType;
+        String outputType;
+        boolean clientStreaming;
+        boolean serverStreaming;
+    }
+
+    static final class SourceLocation
+    {
+        // First line of the span, used to restore the declaration order of messages and enums
+        int line = -1;
+        String leadingComments;
+        String trailingComments;
+    }
+
+    static CodeGeneratorRequest readCodeGeneratorRequest(final byte[] bytes)
+    {
+        final CodeGeneratorRequest request = new CodeGeneratorRequest();
+
+        read(bytes, (reader, tag) -> {
+            switch (tag)
+            {
+                case 1: request.filesToGenerate.add(reader.readString()); return true;
+                case 2: request.parameter = reader.readString(); return true;
+                case 15: request.protoFiles.add(readFile(reader)); return true;
+                default: return false;
+            }
+        });
+
+        return request;
+    }
+
+    static List<FileProto> readFileDescriptorSet(final byte[] bytes)
+    {
+        final List<FileProto> files = new ArrayList<>();
+
+        read(bytes, (reader, tag) -> {
+            if (tag != 1)
+                return false;
+
+            files.add(readFile(reader));
+            return true;
+        });
+
+        return files;
+    }
+
+    private static FileProto readFile(final ProtoReader reader) throws IOException
+    {
+        final FileProto file = new FileProto();
+
+        readMessage(reader, tag -> {
+            switch (tag)
+            {
+                case 1: file.name = reader.readString(); return true;
+                case 2: file.packageName = reader.readString(); return true;
+                case 3: file.dependencies.add(reader.readString()); return true;
+                case 4: file.messages.add(readMessageProto(reader)); return true;
+                case 5: file.enums.add(readEnum(reader)); return true;
+                case 6: file.services.add(readService(reader)); return true;
+                case 9: readSourceCodeInfo(reader, file.locations); return true;
+                case 10: file.publicDependencies.add(reader.readVarint32()); return true;
+                case 12: file.syntax = reader.readString(); return true;
+                default: return false;
+            }
+        });
+
+        return file;
+    }
+
+    private static MessageProto readMessageProto(final ProtoReader reader) throws IOException
+    {
+        final MessageProto message = new MessageProto();
+
+        readMessage(reader, tag -> {
+            switch (tag)
+            {
+                case 1: message.name = reader.readString(); return true;
+                case 2: message.fields.add(readField(reader)); return true;
+                case 3: message.nestedTypes.add(readMessageProto(reader)); return true;
+                case 4: message.enums.add(readEnum(reader)); return true;
+                case 7:
+                    // MessageOptions.map_entry
+                    readMessage(reader, optionTag -> {
+                        if (optionTag != 7)
+                            return false;
+
+                        message.mapEntry = reader.readVarint32() != 0;
+                        return true;
+                    });
+                    return true;
+                case 8: message.oneOfs.add(readName(reader)); return true;
+                default: return false;
+            }
+        });
+
+        return message;
+    }
+
+    private static FieldProto readField(final ProtoReader reader) throws IOException
+    {
+        final FieldProto field = new FieldProto();
+
+        readMessage(reader, tag -> {
+            switch (tag)
+            {
+                case 1: field.name = reader.readString(); return true;
+                case 3: field.number = reader.readVarint32(); return true;
+                case 4: field.label = reader.readVarint32(); return true;
+                case 5: field.type = reader.readVarint32(); return true;
+                case 6: field.typeName = reader.readString(); return true;
+                case 9: field.oneOfIndex = reader.readVarint32(); return true;
+                case 17: field.proto3Optional = reader.readVarint32() != 0; return true;
+                default: return false;
+            }
+        });
+
+        return field;
+    }
+
+    private static EnumProto readEnum(final ProtoReader reader) throws IOException
+    {
+        final EnumProto enumProto = new EnumProto();
+
+        readMessage(reader, tag -> {
+            switch (tag)
+            {
+                case 1: enumProto.name = reader.readString(); return true;
+                case 2: enumProto.values.add(readEnumValue(reader)); return true;
+                default: return false;
+            }
+        });
+
+        return enumProto;
+    }
+
+    private static EnumValueProto readEnumValue(final ProtoReader reader) throws IOException
+    {
+        final EnumValueProto value = new EnumValueProto();
+
+        readMessage(reader, tag -> {
+            switch (tag)
+            {
+                case 1: value.name = reader.readString(); return true;
+                case 2: value.number = reader.readVarint32(); return true;
+                default: return false;
+            }
+        });
+
+        return value;
+    }
+
+    private static ServiceProto readService(final ProtoReader reader) throws IOException
+    {
+        final ServiceProto service = new ServiceProto();
+
+        readMessage(reader, tag -> {
+            switch (tag)
+            {
+                case 1: service.name = reader.readString(); return true;
+                case 2: service.methods.add(readMethod(reader)); return true;
+                default: return false;
+            }
+        });
+
+        return service;
+    }
+
+    private static MethodProto readMethod(final ProtoReader reader) throws IOException
+    {
+        final MethodProto method = new MethodProto();
+
+        readMessage(reader, tag -> {
+            switch (tag)
+            {
+                case 1: method.name = reader.readString(); return true;
+                case 2: method.inputType = reader.readString(); return true;
+                case 3: method.outputType = reader.readString(); return true;
+                case 5: method.clientStreaming = reader.readVarint32() != 0; return true;
+                case 6: method.serverStreaming = reader.readVarint32() != 0; return true;
+                default: return false;
+            }
+        });
+
+        return method;
+    }
+
+    private static String readName(final ProtoReader reader) throws IOException
+    {
+        final String[] name = {null};
+
+        readMessage(reader, tag -> {
+            if (tag != 1)
+                return false;
+
+            name[0] = reader.readString();
+            return true;
+        });
+
+        return name[0];
+    }
+
+    private static void readSourceCodeInfo(final ProtoReader reader, final Map<String, SourceLocation> locations)
+            throws IOException
+    {
+        readMessage(reader, tag -> {
+            if (tag != 1)
+                return false;
+
+            final StringBuilder path = new StringBuilder();
+            final List<Integer> span = new ArrayList<>(4);
+            final SourceLocation location = new SourceLocation();
+
+            readMessage(reader, locationTag -> {
+                switch (locationTag)
+                {
+                    case 1:
+                        // Packed or not, ProtoReader returns the elements one by one
+                        path.append(path.length() > 0 ? "," : "").append(reader.readVarint32());
+                        return true;
+                    case 2: span.add(reader.readVarint32()); return true;
+                    case 3: location.leadingComments = reader.readString(); return true;
+                    case 4: location.trailingComments = reader.readString(); return true;
+                    default: return false;
+                }
+            });
+
+            if (!span.isEmpty())
+                location.line = span.get(0);
+
+            locations.put(path.toString(), location);
+            return true;
+        });
+    }
+
+    @FunctionalInterface
+    private interface FieldReader
+    {
+        /**
+         * @param tag Number of a field to be read.
+         * @return True if the field was consumed, false to skip it.
+         */
+        boolean read(final int tag) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RootFieldReader
+    {
+        boolean read(final ProtoReader reader, final int tag) throws IOException;
+    }
+
+    private static void read(final byte[] bytes, final RootFieldReader fieldReader)
+    {
+        final ProtoReader reader = new ProtoReader(new Buffer().write(bytes));
+
+        try
+        {
+            readMessage(reader, tag -> fieldReader.read(reader, tag));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            throw new RuntimeException("Malformed descriptor: " + e.getMessage(), e);
+        }
+    }
+
+    private static void readMessage(final ProtoReader reader, final FieldReader fieldReader) throws IOException
+    {
+        final long token = reader.beginMessage();
+
+        for (int tag; (tag = reader.nextTag()) != -1; )
+        {
+            if (!fieldReader.read(tag))
+                reader.skip();
+        }
+
+        reader.endMessage(token);
+    }
+}
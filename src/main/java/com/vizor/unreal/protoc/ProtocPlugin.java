@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.protoc;
+
+import com.squareup.wire.FieldEncoding;
+import com.squareup.wire.ProtoWriter;
+import com.vizor.unreal.Main;
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.convert.Converter;
+import com.vizor.unreal.protoc.Descriptors.CodeGeneratorRequest;
+import com.vizor.unreal.util.Tuple;
+import com.vizor.unreal.writer.InMemorySink;
+import okio.Buffer;
+import okio.ByteString;
+import org.apache.logging.log4j.Level;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.Integer.parseInt;
+import static java.lang.System.exit;
+import static java.nio.file.Paths.get;
+import static java.util.Objects.nonNull;
+import static java.util.stream.Collectors.toList;
+import static okio.ByteString.encodeUtf8;
+import static org.apache.logging.log4j.core.config.Configurator.setLevel;
+
+/**
+ * Runs the converter as a protoc plugin: a CodeGeneratorRequest is read from stdin and a CodeGeneratorResponse is
+ * written to stdout. Install it as 'protoc-gen-cornerstone' and run:
+ *
+ * protoc --cornerstone_out=company_name=MyCompany,module_name=MyGame:OutDir game/lobby.proto
+ *
+ * Settings are passed as the plugin parameter, a comma-separated list of 'key=value' pairs with the same keys as in
+ * 'config.yml' ('company_name' is required). Destination paths must be relative, they're relative to 'OutDir'.
+ *
+ * Stdout belongs to protoc, so the class mustn't touch logging before {@link #main(String[])} has redirected it.
+ */
+public final class ProtocPlugin
+{
+    // CodeGeneratorResponse.Feature.FEATURE_PROTO3_OPTIONAL
+    private static final long featureProto3Optional = 1;
+
+    private ProtocPlugin()
+    {
+    }
+
+    public static void main(final String[] args)
+    {
+        final PrintStream stdout = System.out;
+        System.setOut(System.err);
+
+        // Protoc shows plugin's stderr to the user, so only the problems are worth printing
+        setLevel(Main.class.getPackage().getName(), Level.WARN);
+
+        byte[] response;
+        try
+        {
+            response = generate(readAll(System.in));
+        }
+        catch (RuntimeException | IOException e)
+        {
+            // Protoc reports the error and fails, the plugin itself has to exit successfully
+            response = error(e.toString());
+        }
+
+        stdout.write(response, 0, response.length);
+        stdout.flush();
+
+        if (stdout.checkError())
+            exit(1);
+    }
+
+    /**
+     * Handles a single request.
+     *
+     * @param requestBytes A binary CodeGeneratorRequest.
+     * @return A binary CodeGeneratorResponse.
+     */
+    static byte[] generate(final byte[] requestBytes)
+    {
+        final CodeGeneratorRequest request = Descriptors.readCodeGeneratorRequest(requestBytes);
+        final GenerationContext context = parseParameter(request.parameter);
+
+        final DescriptorSource source = new DescriptorSource(request.protoFiles);
+        final Path root = source.getRoot();
+        final DestinationConfig dstPath = context.getDstPath();
+
+        if (dstPath.pathPublic.isAbsolute() || dstPath.pathPrivate.isAbsolute())
+            throw new RuntimeException("Destination paths of a protoc plugin must be relative, got " + dstPath);
+
+        final List<Tuple<Path, DestinationConfig>> paths = source.getPaths().stream()
+            .map(p -> Tuple.of(p, dstPath))
+            .collect(toList());
+
+        // All the files are used to resolve types, but only the requested ones are generated
+        final List<Tuple<Path, DestinationConfig>> targets = paths.stream()
+            .filter(p -> request.filesToGenerate.contains(root.relativize(p.first()).toString().replace('\\', '/')))
+            .collect(toList());
+
+        final InMemorySink sink = new InMemorySink();
+        new Converter(context, source, sink).convert(root, paths, targets);
+
+        return response(sink.getContents(), null);
+    }
+
+    static GenerationContext parseParameter(final String parameter)
+    {
+        final GenerationContext.Builder builder = GenerationContext.builder();
+        final DestinationConfig dstPath = new DestinationConfig(get("Public"), get("Private"));
+
+        for (final String pair : parameter.split(","))
+        {
+            if (pair.trim().isEmpty())
+                continue;
+
+            final int separatorIndex = pair.indexOf('=');
+            if (separatorIndex < 0)
+                throw new RuntimeException("Plugin parameter must be 'key=value', got '" + pair + "' instead");
+
+            final String key = pair.substring(0, separatorIndex).trim();
+            final String value = pair.substring(separatorIndex + 1).trim();
+
+            switch (key)
+            {
+                case "module_name": builder.setModuleName(value); break;
+                case "company_name": builder.setCompanyName(value); break;
+                case "wrappers_path": builder.setWrappersPath(value); break;
+                case "precompiled_header": builder.setPrecompiledHeader(value); break;
+                case "dst_public_path": dstPath.pathPublic = get(value); break;
+                case "dst_private_path": dstPath.pathPrivate = get(value); break;
+                case "threads": builder.setThreads(parseInt(value)); break;
+                default:
+                    throw new RuntimeException("Unknown plugin parameter '" + key + "'");
+            }
+        }
+
+        return builder.setDstPath(dstPath).build();
+    }
+
+    private static byte[] error(final String message)
+    {
+        return response(null, message);
+    }
+
+    private static byte[] response(final Map<String, String> files, final String error)
+    {
+        final Buffer buffer = new Buffer();
+        final ProtoWriter writer = new ProtoWriter(buffer);
+
+        try
+        {
+            if (nonNull(error))
+                writeBytes(writer, 1, encodeUtf8(error));
+
+            writer.writeTag(2, FieldEncoding.VARINT);
+            writer.writeVarint64(featureProto3Optional);
+
+            if (nonNull(files))
+            {
+                for (final Map.Entry<String, String> f : files.entrySet())
+                {
+                    final Buffer file = new Buffer();
+                    final ProtoWriter fileWriter = new ProtoWriter(file);
+
+                    writeBytes(fileWriter, 1, encodeUtf8(f.getKey()));
+                    writeBytes(fileWriter, 15, encodeUtf8(f.getValue()));
+
+                    writeBytes(writer, 15, file.readByteString());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        return buffer.readByteArray();
+    }
+
+    private static void writeBytes(final ProtoWriter writer, final int tag, final ByteString bytes) throws IOException
+    {
+        writer.writeTag(tag, FieldEncoding.LENGTH_DELIMITED);
+        writer.writeVarint32(bytes.size());
+        writer.writeBytes(bytes);
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+
+        for (int read; (read = in.read(chunk)) != -1; )
+            out.write(chunk, 0, read);
+
+        return out.toByteArray();
+    }
+}
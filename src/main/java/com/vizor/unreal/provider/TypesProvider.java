@@ -19,14 +19,16 @@ import com.vizor.unreal.tree.CppType;
 import com.vizor.unreal.util.Misc;
 
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import static com.vizor.unreal.util.Misc.splitGeneric;
 import static java.text.MessageFormat.format;
+import static java.util.Collections.emptyList;
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
@@ -42,6 +44,31 @@ public abstract class TypesProvider
 
     private final CppType arrayType;
 
+    private Resolver resolver = null;
+
+    /**
+     * Resolves types, which aren't registered yet. Allows to create types on demand, e.g. only those declarations of
+     * the imported files, which are actually referenced.
+     */
+    public interface Resolver
+    {
+        /**
+         * Finds declarations, which may be referred by a given name.
+         *
+         * @param typeName Type name, either fully or partially qualified.
+         * @return Full names of all declarations, equal to the type name or ending with '.' + type name.
+         */
+        List<String> find(final String typeName);
+
+        /**
+         * Creates a type for a declaration.
+         *
+         * @param fullTypeName Full name of the declaration, one of returned by {@link #find(String)}.
+         * @return A type for the declaration.
+         */
+        CppType create(final String fullTypeName);
+    }
+
     TypesProvider()
     {
         arrayType = requireNonNull(initArrayType(), "An array type should be initialized, but method "
@@ -105,24 +132,41 @@ public abstract class TypesProvider
             }
         }
 
+        final List<String> declarations = nonNull(resolver) ? resolver.find(typeName) : emptyList();
+        if (declarations.contains(typeName))
+            return materialize(typeName);
+
         final Pattern typePattern = compile("^(.*\\.)?" + typeName);
 
-        List<Map.Entry<String, CppType>> possibleTypeEntries = types.entrySet()
-            .stream()
-            .filter(entry->typePattern.matcher(entry.getKey()).matches())
-            .collect(Collectors.toList());
+        // Types, which were already created on demand, are returned by the resolver again
+        final Set<String> possibleTypeNames = new LinkedHashSet<>();
+        types.keySet().stream()
+            .filter(name -> typePattern.matcher(name).matches())
+            .forEach(possibleTypeNames::add);
+        possibleTypeNames.addAll(declarations);
 
-        if (possibleTypeEntries.size() > 1)
+        if (possibleTypeNames.size() > 1)
         {
-            throw new RuntimeException(format("Cannot determine best possible type for {} out of {} options", typeName, possibleTypeEntries.size()));
+            throw new RuntimeException(format("Cannot determine best possible type for {0} out of {1} options: {2}",
+                    typeName, possibleTypeNames.size(), possibleTypeNames));
         }
 
-        if (possibleTypeEntries.size() == 0)
+        if (possibleTypeNames.size() == 0)
         {
             return null;
         }
 
-        return possibleTypeEntries.get(0).getValue();
+        final String bestTypeName = possibleTypeNames.iterator().next();
+        return types.containsKey(bestTypeName) ? types.get(bestTypeName) : materialize(bestTypeName);
+    }
+
+    private CppType materialize(final String fullTypeName)
+    {
+        final CppType cppType = requireNonNull(resolver.create(fullTypeName), "Resolver of " +
+                getClass().getSimpleName() + " returned null for " + fullTypeName);
+
+        register(fullTypeName, cppType);
+        return cppType;
     }
 
     private CppType getPlainType(final String typeName)
@@ -155,6 +199,15 @@ public abstract class TypesProvider
             cppType.markAsNative(nativeType);
     }
 
+    /**
+     * Sets a resolver, used to create types, which aren't registered explicitly, on their first use.
+     * @param resolver A resolver, or null to use only the registered types.
+     */
+    public final void setResolver(final Resolver resolver)
+    {
+        this.resolver = resolver;
+    }
+
     final void registerAlias(final String protoType, final String cppTypeName)
     {
         if (isNull(protoType) || isNull(cppTypeName))
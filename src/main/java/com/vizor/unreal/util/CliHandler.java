@@ -23,15 +23,17 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
 
 import java.io.PrintWriter;
+import java.util.List;
 
 import static com.vizor.unreal.util.Misc.getLowercaseLog4jLevels;
+import static java.lang.Integer.parseInt;
 import static java.lang.System.exit;
 import static java.lang.System.lineSeparator;
 import static java.util.Arrays.asList;
+import static java.util.Objects.isNull;
 
 public final class CliHandler
 {
-    // Being used in reflection, thus can not be deleted.
     @SuppressWarnings("unused")
     public static class Parse
     {
@@ -39,6 +41,104 @@ public final class CliHandler
         private String dstPath;
         private String moduleName;
         private String logLevel;
+        private String shard;
+        private String verifyShards;
+        private String outputArchive;
+        private String descriptorSet;
+        private boolean check;
+        private boolean profile;
+        private String profileJson;
+        private String slowest;
+        private String trace;
+        private String sizeReport;
+        private String graphs;
+        private String top;
+        private List<String> targets;
+
+        public String getSrcPath()
+        {
+            return srcPath;
+        }
+
+        public String getDstPath()
+        {
+            return dstPath;
+        }
+
+        public String getModuleName()
+        {
+            return moduleName;
+        }
+
+        public String getLogLevel()
+        {
+            return logLevel;
+        }
+
+        public String getShard()
+        {
+            return shard;
+        }
+
+        public String getVerifyShards()
+        {
+            return verifyShards;
+        }
+
+        public String getOutputArchive()
+        {
+            return outputArchive;
+        }
+
+        public String getDescriptorSet()
+        {
+            return descriptorSet;
+        }
+
+        public boolean isCheck()
+        {
+            return check;
+        }
+
+        public boolean isProfile()
+        {
+            return profile || (profileJson != null);
+        }
+
+        public String getProfileJson()
+        {
+            return profileJson;
+        }
+
+        public String getSlowest()
+        {
+            return slowest;
+        }
+
+        public String getTrace()
+        {
+            return trace;
+        }
+
+        public String getSizeReport()
+        {
+            return sizeReport;
+        }
+
+        public String getTop()
+        {
+            return top;
+        }
+
+        public String getGraphs()
+        {
+            return graphs;
+        }
+
+        public List<String> getTargets()
+        {
+            return targets;
+        }
     }
 
     private static Option srcOption = new Option("s", "src_path", true, "Proto files root folder");
@@ -46,6 +146,31 @@ public final class CliHandler
     private static Option moduleNameOption = new Option("m", "module_name", true, "UE 4 API/Plugin name");
     private static Option logLevelOption = new Option("l", "log_level", true, "Override log level. Available options are: " +
         getLowercaseLog4jLevels().toString());
+    private static Option shardOption = new Option("shard", true, "Generate only i-th of n deterministic " +
+        "slices of the tree, e.g. '2/4'");
+    private static Option verifyShardsOption = new Option("verify_shards", true, "Verify that manifests of n shards " +
+        "cover each proto file exactly once, then exit");
+    private static Option outputArchiveOption = new Option("output_archive", true, "Pack generated files into a " +
+        "single zip archive instead of writing them to the destination folders");
+    private static Option descriptorSetOption = new Option("descriptor_set", true, "Read a FileDescriptorSet, " +
+        "produced by 'protoc --include_imports --descriptor_set_out' instead of parsing proto files");
+    private static Option checkOption = new Option("check", false, "Verify that generated files on disk are " +
+        "up to date without writing anything, exit with a non-zero code if some of them are stale");
+    private static Option profileOption = new Option("profile", false, "Measure each phase of each file, then " +
+        "print totals, percentiles and the slowest files");
+    private static Option profileJsonOption = new Option("profile_json", true, "Measure each phase of each file " +
+        "and also write the results to a given JSON file");
+    private static Option slowestOption = new Option("slowest", true, "Number of the slowest files to print " +
+        "when profiling, 10 by default");
+    private static Option traceOption = new Option("trace", true, "Write phases of each file on each thread to a " +
+        "given file in Chrome trace event format");
+    private static Option sizeReportOption = new Option("size_report", true, "Write sizes, members, includes and " +
+        "include fan-out of generated code of each proto file to a given JSON file, the heaviest first");
+    private static Option topOption = new Option("top", true, "Number of the heaviest proto files to log with " +
+        "--size_report and of those with the widest invalidation radius to log with --graphs, 10 by default");
+    private static Option graphsOption = new Option("graphs", true, "Write the import graph and type-reference " +
+        "graphs of messages with components and closure sizes of every node to a given file, DOT if it ends with " +
+        "'.dot', JSON otherwise");
     private static Option helpOption = new Option("h", "help", false, "Print this help message");
     private static Option creditsOption = new Option("credits", false, "Print the creators of Cornerstone");
 
@@ -58,6 +183,18 @@ public final class CliHandler
                .addOption(dstOption)
                .addOption(moduleNameOption)
                .addOption(logLevelOption)
+               .addOption(shardOption)
+               .addOption(verifyShardsOption)
+               .addOption(outputArchiveOption)
+               .addOption(descriptorSetOption)
+               .addOption(checkOption)
+               .addOption(profileOption)
+               .addOption(profileJsonOption)
+               .addOption(slowestOption)
+               .addOption(traceOption)
+               .addOption(sizeReportOption)
+               .addOption(topOption)
+               .addOption(graphsOption)
                .addOption(helpOption)
                .addOption(creditsOption);
         try
@@ -70,6 +207,21 @@ public final class CliHandler
                 parse.dstPath = cmd.getOptionValue(dstOption.getOpt());
                 parse.moduleName = cmd.getOptionValue(moduleNameOption.getOpt());
                 parse.logLevel = cmd.getOptionValue(logLevelOption.getOpt());
+                parse.shard = cmd.getOptionValue(shardOption.getOpt());
+                parse.verifyShards = getIntegerValue(cmd, verifyShardsOption, 1);
+                parse.outputArchive = cmd.getOptionValue(outputArchiveOption.getOpt());
+                parse.descriptorSet = cmd.getOptionValue(descriptorSetOption.getOpt());
+                parse.check = cmd.hasOption(checkOption.getOpt());
+                parse.profile = cmd.hasOption(profileOption.getOpt());
+                parse.profileJson = cmd.getOptionValue(profileJsonOption.getOpt());
+                parse.slowest = getIntegerValue(cmd, slowestOption, 0);
+                parse.trace = cmd.getOptionValue(traceOption.getOpt());
+                parse.sizeReport = cmd.getOptionValue(sizeReportOption.getOpt());
+                parse.top = getIntegerValue(cmd, topOption, 0);
+                parse.graphs = cmd.getOptionValue(graphsOption.getOpt());
+
+                // Everything, that isn't an option is a target: a proto file or a package
+                parse.targets = asList(cmd.getArgs());
             }
 
             if (cmd.hasOption(helpOption.getOpt()))
@@ -99,9 +251,34 @@ public final class CliHandler
         }
     }
 
+    /**
+     * @return Value of a numeric option, null if the option isn't given.
+     * @throws ParseException If the value isn't an integer or is less than a given minimum.
+     */
+    private static String getIntegerValue(final CommandLine cmd, final Option option, final int min)
+        throws ParseException
+    {
+        final String value = cmd.getOptionValue(option.getOpt());
+        if (isNull(value))
+            return null;
+
+        try
+        {
+            if (parseInt(value.trim()) >= min)
+                return value.trim();
+        }
+        catch (NumberFormatException ignored)
+        {
+            // Reported below, as well as values out of range
+        }
+
+        throw new ParseException("Option '" + option.getOpt() + "' requires an integer, not less than " + min +
+            ", but got '" + value + "'");
+    }
+
     private void printHelp(Options options, String extra)
     {
-        final String commandLineSyntax = "java -jar cornerstone.jar";
+        final String commandLineSyntax = "java -jar cornerstone.jar [options] [target.proto | package ...]";
         final PrintWriter writer = new PrintWriter(System.err);
         final HelpFormatter helpFormatter = new HelpFormatter();
 
@@ -0,0 +1,551 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.util;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static java.lang.Double.parseDouble;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.Math.min;
+import static java.lang.System.exit;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Paths.get;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Generates a synthetic, but realistic tree of proto files for scale testing. The same settings and seed always
+ * give the same tree.
+ *
+ * Files form an import DAG: a file only imports files, generated before it. A few 'hub' files (like common types
+ * of a real project) are imported by many others, and a file may also import an import of its import, forming a
+ * diamond. Messages reference messages and enums of the same file and of the imported files, so the type
+ * resolution crosses packages just like it does in a real tree.
+ *
+ * May be run from the command line to write a tree to disk:
+ *
+ * java -cp cornerstone.jar com.vizor.unreal.util.CorpusGenerator -out protos -files 10000 -seed 42
+ *
+ * Run it without options to list all of them.
+ */
+public final class CorpusGenerator
+{
+    private static final List<String> scalarTypes = asList("int32", "int64", "uint32", "uint64", "float", "bool",
+            "string", "bytes");
+
+    private static final List<String> mapKeyTypes = asList("int32", "int64", "string");
+
+    private static final String rootPackage = "corpus";
+
+    private final int files;
+    private final int packageDepth;
+    private final int packagesPerLevel;
+    private final int hubs;
+    private final int fanOut;
+    private final double diamondRate;
+    private final int messagesPerFile;
+    private final int fieldsPerMessage;
+    private final int nestedTypes;
+    private final int enumsPerFile;
+    private final double mapRate;
+    private final double oneofRate;
+    private final double repeatedRate;
+    private final double messageFieldRate;
+    private final int servicesPerFile;
+    private final int rpcsPerService;
+    private final long seed;
+
+    private CorpusGenerator(final Builder builder)
+    {
+        this.files = builder.files;
+        this.packageDepth = builder.packageDepth;
+        this.packagesPerLevel = builder.packagesPerLevel;
+        this.hubs = builder.hubs;
+        this.fanOut = builder.fanOut;
+        this.diamondRate = builder.diamondRate;
+        this.messagesPerFile = builder.messagesPerFile;
+        this.fieldsPerMessage = builder.fieldsPerMessage;
+        this.nestedTypes = builder.nestedTypes;
+        this.enumsPerFile = builder.enumsPerFile;
+        this.mapRate = builder.mapRate;
+        this.oneofRate = builder.oneofRate;
+        this.repeatedRate = builder.repeatedRate;
+        this.messageFieldRate = builder.messageFieldRate;
+        this.servicesPerFile = builder.servicesPerFile;
+        this.rpcsPerService = builder.rpcsPerService;
+        this.seed = builder.seed;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static void main(final String[] args)
+    {
+        final Option outOption = new Option("out", true, "A directory to write the tree into (required)");
+        final Options options = new Options()
+            .addOption(outOption)
+            .addOption("files", true, "Number of files")
+            .addOption("package_depth", true, "Number of package levels below 'corpus'")
+            .addOption("packages_per_level", true, "Number of distinct packages at each level")
+            .addOption("hubs", true, "Number of files, most of the other files import")
+            .addOption("fan_out", true, "Number of imports of each file")
+            .addOption("diamond_rate", true, "Probability of importing an import of an import as well")
+            .addOption("messages", true, "Number of messages per file")
+            .addOption("fields", true, "Number of fields per message")
+            .addOption("nested", true, "Number of nested messages per message")
+            .addOption("enums", true, "Number of enums per file")
+            .addOption("map_rate", true, "Probability of a field to be a map")
+            .addOption("oneof_rate", true, "Probability of a field to start a oneof of two fields")
+            .addOption("repeated_rate", true, "Probability of a field to be repeated")
+            .addOption("message_field_rate", true, "Probability of a field to have a message or an enum type")
+            .addOption("services", true, "Number of services per file")
+            .addOption("rpcs", true, "Number of rpcs per service")
+            .addOption("seed", true, "Seed of the random generator");
+
+        try
+        {
+            final CommandLine cmd = new PosixParser().parse(options, args);
+            if (!cmd.hasOption(outOption.getOpt()))
+                throw new ParseException("Missing option: " + outOption.getOpt());
+
+            final Builder builder = builder();
+            for (final Option o : cmd.getOptions())
+            {
+                final String value = o.getValue();
+                switch (o.getOpt())
+                {
+                    case "files": builder.setFiles(parseInt(value)); break;
+                    case "package_depth": builder.setPackageDepth(parseInt(value)); break;
+                    case "packages_per_level": builder.setPackagesPerLevel(parseInt(value)); break;
+                    case "hubs": builder.setHubs(parseInt(value)); break;
+                    case "fan_out": builder.setFanOut(parseInt(value)); break;
+                    case "diamond_rate": builder.setDiamondRate(parseDouble(value)); break;
+                    case "messages": builder.setMessagesPerFile(parseInt(value)); break;
+                    case "fields": builder.setFieldsPerMessage(parseInt(value)); break;
+                    case "nested": builder.setNestedTypes(parseInt(value)); break;
+                    case "enums": builder.setEnumsPerFile(parseInt(value)); break;
+                    case "map_rate": builder.setMapRate(parseDouble(value)); break;
+                    case "oneof_rate": builder.setOneofRate(parseDouble(value)); break;
+                    case "repeated_rate": builder.setRepeatedRate(parseDouble(value)); break;
+                    case "message_field_rate": builder.setMessageFieldRate(parseDouble(value)); break;
+                    case "services": builder.setServicesPerFile(parseInt(value)); break;
+                    case "rpcs": builder.setRpcsPerService(parseInt(value)); break;
+                    case "seed": builder.setSeed(parseLong(value)); break;
+                    default: break;
+                }
+            }
+
+            builder.build().write(get(cmd.getOptionValue(outOption.getOpt())));
+        }
+        catch (ParseException | NumberFormatException e)
+        {
+            new HelpFormatter().printHelp("java -cp cornerstone.jar " + CorpusGenerator.class.getName() + " [options]",
+                    e.getMessage(), options, "");
+            exit(1);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Generates the tree.
+     *
+     * @return Contents of proto files by their relative paths (with forward slashes), sorted by path.
+     */
+    public final Map<String, String> generate()
+    {
+        final Random random = new Random(seed);
+        final List<ProtoFile> generated = new ArrayList<>(files);
+
+        for (int i = 0; i < files; i++)
+            generated.add(newFile(i, generated, random));
+
+        final Map<String, String> sources = new TreeMap<>();
+        generated.forEach(f -> sources.put(f.path, f.print(random)));
+
+        return unmodifiableMap(sources);
+    }
+
+    /**
+     * Generates the tree and writes it to disk.
+     *
+     * @param root A directory to write the files into, created if needed.
+     * @throws IOException If a file couldn't be written.
+     */
+    public final void write(final Path root) throws IOException
+    {
+        for (final Map.Entry<String, String> e : generate().entrySet())
+        {
+            final Path path = root.resolve(e.getKey());
+
+            createDirectories(path.getParent());
+            // Qualified, since the static import would be shadowed by write(Path)
+            Files.write(path, e.getValue().getBytes(UTF_8));
+        }
+    }
+
+    private ProtoFile newFile(final int index, final List<ProtoFile> previous, final Random random)
+    {
+        final StringBuilder packageName = new StringBuilder(rootPackage);
+        for (int level = 0; level < packageDepth; level++)
+            packageName.append(".p").append(random.nextInt(packagesPerLevel));
+
+        final ProtoFile file = new ProtoFile(index, packageName.toString());
+
+        // Hubs import nothing but each other, everyone else imports hubs more often than the rest
+        final int numImports = min(fanOut, index);
+        while (file.imports.size() < numImports)
+        {
+            final int bound = (index > hubs && random.nextBoolean()) ? min(hubs, index) : index;
+            final ProtoFile imported = previous.get(random.nextInt(bound));
+
+            file.imports.add(imported);
+
+            // Import an import of the import as well, so that both paths lead to the same file
+            if (!imported.imports.isEmpty() && (random.nextDouble() < diamondRate) &&
+                    (file.imports.size() < numImports))
+            {
+                file.imports.add(pick(new ArrayList<>(imported.imports), random));
+            }
+        }
+
+        for (int i = 0; i < enumsPerFile; i++)
+            file.enums.add("E" + index + "_" + i);
+
+        for (int i = 0; i < messagesPerFile; i++)
+            file.messages.add("M" + index + "_" + i);
+
+        return file;
+    }
+
+    private static <T> T pick(final List<T> list, final Random random)
+    {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private final class ProtoFile
+    {
+        private final int index;
+        private final String packageName;
+        private final String path;
+
+        private final Set<ProtoFile> imports = new LinkedHashSet<>();
+        private final List<String> enums = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+
+        ProtoFile(final int index, final String packageName)
+        {
+            this.index = index;
+            this.packageName = packageName;
+            this.path = packageName.replace('.', '/') + "/f" + index + ".proto";
+        }
+
+        String print(final Random random)
+        {
+            final StringBuilder sb = new StringBuilder();
+
+            sb.append("syntax = \"proto3\";\n\n");
+            sb.append("package ").append(packageName).append(";\n\n");
+
+            imports.forEach(i -> sb.append("import \"").append(i.path).append("\";\n"));
+            if (!imports.isEmpty())
+                sb.append('\n');
+
+            for (final String e : enums)
+            {
+                sb.append("enum ").append(e).append(" {\n");
+                for (int v = 0; v < 4; v++)
+                    sb.append("    ").append(e.toUpperCase()).append("_V").append(v).append(" = ").append(v).append(";\n");
+                sb.append("}\n\n");
+            }
+
+            for (int m = 0; m < messages.size(); m++)
+                printMessage(sb, messages.get(m), messages.subList(0, m), random);
+
+            for (int s = 0; (s < servicesPerFile) && !messages.isEmpty(); s++)
+            {
+                sb.append("service S").append(index).append('_').append(s).append(" {\n");
+                for (int r = 0; r < rpcsPerService; r++)
+                {
+                    sb.append("    rpc Call").append(r)
+                        .append(" (").append(pick(messages, random))
+                        .append(") returns (").append(pick(messages, random)).append(");\n");
+                }
+                sb.append("}\n\n");
+            }
+
+            return sb.toString();
+        }
+
+        private void printMessage(final StringBuilder sb, final String name, final List<String> earlier,
+                                  final Random random)
+        {
+            sb.append("// ").append(name).append(" of ").append(path).append('\n');
+            sb.append("message ").append(name).append(" {\n");
+
+            final List<String> nested = new ArrayList<>();
+            for (int n = 0; n < nestedTypes; n++)
+            {
+                // Nested types are renamed by their simple names, so the names must be unique within the file
+                final String nestedName = "N" + earlier.size() + "_" + n;
+                sb.append("    message ").append(nestedName).append(" {\n");
+                sb.append("        int32 id = 1;\n");
+                sb.append("        string label = 2;\n");
+                sb.append("    }\n");
+
+                nested.add(nestedName);
+            }
+
+            int number = 1;
+            int field = 0;
+            while (field < fieldsPerMessage)
+            {
+                if ((random.nextDouble() < oneofRate) && (fieldsPerMessage - field >= 2))
+                {
+                    sb.append("    oneof choice_").append(number).append(" {\n");
+                    for (int i = 0; i < 2; i++, field++, number++)
+                    {
+                        sb.append("        ").append(pickValueType(earlier, emptyList(), random))
+                            .append(" field_").append(number).append(" = ").append(number).append(";\n");
+                    }
+                    sb.append("    }\n");
+                }
+                else
+                {
+                    sb.append("    ");
+
+                    final double kind = random.nextDouble();
+                    if (kind < mapRate)
+                        sb.append("map<").append(pick(mapKeyTypes, random)).append(", ")
+                            .append(pickValueType(earlier, emptyList(), random)).append('>');
+                    else if (kind < mapRate + repeatedRate)
+                        sb.append("repeated ").append(pickValueType(earlier, nested, random));
+                    else
+                        sb.append(pickValueType(earlier, nested, random));
+
+                    sb.append(" field_").append(number).append(" = ").append(number).append(";\n");
+
+                    field++;
+                    number++;
+                }
+            }
+
+            sb.append("}\n\n");
+        }
+
+        // A scalar, an enum or a message of this file, a nested message or a message of an imported file. Nested
+        // messages are only renamed in plain and repeated fields, so oneofs and maps don't get any
+        private String pickValueType(final List<String> earlier, final List<String> nested, final Random random)
+        {
+            if (random.nextDouble() >= messageFieldRate)
+                return pick(scalarTypes, random);
+
+            final int choice = random.nextInt(4);
+            if ((choice == 0) && !enums.isEmpty())
+                return pick(enums, random);
+
+            if ((choice == 1) && !earlier.isEmpty())
+                return pick(earlier, random);
+
+            if ((choice == 2) && !nested.isEmpty())
+                return pick(nested, random);
+
+            if (!imports.isEmpty())
+            {
+                final ProtoFile imported = pick(new ArrayList<>(imports), random);
+                if (!imported.messages.isEmpty())
+                    return imported.packageName + "." + pick(imported.messages, random);
+            }
+
+            return pick(scalarTypes, random);
+        }
+    }
+
+    public static final class Builder
+    {
+        private int files = 100;
+        private int packageDepth = 2;
+        private int packagesPerLevel = 4;
+        private int hubs = 5;
+        private int fanOut = 3;
+        private double diamondRate = 0.3;
+        private int messagesPerFile = 5;
+        private int fieldsPerMessage = 8;
+        private int nestedTypes = 0;
+        private int enumsPerFile = 1;
+        private double mapRate = 0.1;
+        private double oneofRate = 0.05;
+        private double repeatedRate = 0.2;
+        private double messageFieldRate = 0.3;
+        private int servicesPerFile = 0;
+        private int rpcsPerService = 4;
+        private long seed = 0;
+
+        private Builder()
+        {
+        }
+
+        public final Builder setFiles(final int files)
+        {
+            this.files = files;
+            return this;
+        }
+
+        public final Builder setPackageDepth(final int packageDepth)
+        {
+            this.packageDepth = packageDepth;
+            return this;
+        }
+
+        public final Builder setPackagesPerLevel(final int packagesPerLevel)
+        {
+            this.packagesPerLevel = packagesPerLevel;
+            return this;
+        }
+
+        public final Builder setHubs(final int hubs)
+        {
+            this.hubs = hubs;
+            return this;
+        }
+
+        public final Builder setFanOut(final int fanOut)
+        {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        public final Builder setDiamondRate(final double diamondRate)
+        {
+            this.diamondRate = diamondRate;
+            return this;
+        }
+
+        public final Builder setMessagesPerFile(final int messagesPerFile)
+        {
+            this.messagesPerFile = messagesPerFile;
+            return this;
+        }
+
+        public final Builder setFieldsPerMessage(final int fieldsPerMessage)
+        {
+            this.fieldsPerMessage = fieldsPerMessage;
+            return this;
+        }
+
+        public final Builder setNestedTypes(final int nestedTypes)
+        {
+            this.nestedTypes = nestedTypes;
+            return this;
+        }
+
+        public final Builder setEnumsPerFile(final int enumsPerFile)
+        {
+            this.enumsPerFile = enumsPerFile;
+            return this;
+        }
+
+        public final Builder setMapRate(final double mapRate)
+        {
+            this.mapRate = mapRate;
+            return this;
+        }
+
+        public final Builder setOneofRate(final double oneofRate)
+        {
+            this.oneofRate = oneofRate;
+            return this;
+        }
+
+        public final Builder setRepeatedRate(final double repeatedRate)
+        {
+            this.repeatedRate = repeatedRate;
+            return this;
+        }
+
+        public final Builder setMessageFieldRate(final double messageFieldRate)
+        {
+            this.messageFieldRate = messageFieldRate;
+            return this;
+        }
+
+        public final Builder setServicesPerFile(final int servicesPerFile)
+        {
+            this.servicesPerFile = servicesPerFile;
+            return this;
+        }
+
+        public final Builder setRpcsPerService(final int rpcsPerService)
+        {
+            this.rpcsPerService = rpcsPerService;
+            return this;
+        }
+
+        public final Builder setSeed(final long seed)
+        {
+            this.seed = seed;
+            return this;
+        }
+
+        public final CorpusGenerator build()
+        {
+            if (files < 0 || packageDepth < 0 || hubs < 0 || fanOut < 0 || messagesPerFile < 0 ||
+                    fieldsPerMessage < 0 || nestedTypes < 0 || enumsPerFile < 0 || servicesPerFile < 0 ||
+                    rpcsPerService < 0)
+            {
+                throw new RuntimeException("Numbers of files, packages, imports, types, fields and rpcs mustn't " +
+                        "be negative");
+            }
+
+            if (packagesPerLevel <= 0)
+                throw new RuntimeException("packagesPerLevel, which is " + packagesPerLevel + " must be positive");
+
+            if (mapRate + repeatedRate > 1.0)
+                throw new RuntimeException("mapRate and repeatedRate must sum up to 1 at most");
+
+            for (final double rate : new double[] {diamondRate, mapRate, oneofRate, repeatedRate, messageFieldRate})
+            {
+                if (rate < 0.0 || rate > 1.0)
+                    throw new RuntimeException("Rates must be within [0, 1], got " + rate);
+            }
+
+            return new CorpusGenerator(this);
+        }
+    }
+}
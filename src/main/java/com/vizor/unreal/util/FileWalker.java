@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.Comparator.comparing;
+import static java.util.concurrent.ForkJoinPool.commonPool;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Finds files by extension, filtering them with include and exclude globs.
+ *
+ * Globs are matched against paths relative to the root, e.g. 'third_party/**'. Excluded directories are pruned
+ * during the walk, so their contents are never even listed. Subdirectories are listed in parallel
+ * within the common ForkJoinPool, which matters on networked file systems with high latency of each listing.
+ */
+public final class FileWalker
+{
+    private static final String globPrefix = "glob:";
+    private static final String anySubpathSuffix = "/**";
+
+    private final Path root;
+    private final String extension;
+
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final List<PathMatcher> excludedDirectories;
+
+    /**
+     * @param root A directory to walk.
+     * @param extension Extension of the files to be found (without a dot), case insensitive.
+     * @param includes Globs, files must match at least one of. Empty to include every file.
+     * @param excludes Globs of files and directories to be skipped.
+     */
+    public FileWalker(final Path root, final String extension, final List<String> includes,
+                      final List<String> excludes)
+    {
+        this.root = root;
+        this.extension = extension;
+
+        this.includes = includes.stream().map(this::toMatcher).collect(toList());
+        this.excludes = excludes.stream().map(this::toMatcher).collect(toList());
+
+        // 'foo/**' excludes everything inside 'foo', thus 'foo' itself can be pruned
+        this.excludedDirectories = excludes.stream()
+            .filter(g -> g.endsWith(anySubpathSuffix))
+            .map(g -> g.substring(0, g.length() - anySubpathSuffix.length()))
+            .filter(g -> !g.isEmpty())
+            .map(this::toMatcher)
+            .collect(toList());
+    }
+
+    /**
+     * Walks the directory.
+     *
+     * @return Absolute paths to the found files, sorted by path to be independent of the file system order.
+     */
+    public final List<Path> walk()
+    {
+        try
+        {
+            final List<Path> found = commonPool().invoke(new WalkTask(root));
+            found.sort(comparing(p -> root.relativize(p).toString()));
+
+            return found;
+        }
+        catch (UncheckedIOException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private PathMatcher toMatcher(final String glob)
+    {
+        return root.getFileSystem().getPathMatcher(globPrefix + glob);
+    }
+
+    private static boolean anyMatches(final List<PathMatcher> matchers, final Path relativePath)
+    {
+        for (final PathMatcher m : matchers)
+        {
+            if (m.matches(relativePath))
+                return true;
+        }
+
+        return false;
+    }
+
+    private boolean isExcludedDirectory(final Path directory)
+    {
+        final Path relativePath = root.relativize(directory);
+        return anyMatches(excludes, relativePath) || anyMatches(excludedDirectories, relativePath);
+    }
+
+    private boolean isAccepted(final Path file)
+    {
+        final String name = file.getFileName().toString();
+        final int suffixLength = extension.length();
+
+        if (!name.regionMatches(true, name.length() - suffixLength, extension, 0, suffixLength))
+            return false;
+
+        final Path relativePath = root.relativize(file);
+        if (!includes.isEmpty() && !anyMatches(includes, relativePath))
+            return false;
+
+        return !anyMatches(excludes, relativePath);
+    }
+
+    private final class WalkTask extends RecursiveTask<List<Path>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        WalkTask(final Path directory)
+        {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<Path> compute()
+        {
+            final List<Path> found = new ArrayList<>();
+            final List<WalkTask> subtasks = new ArrayList<>();
+
+            try (final DirectoryStream<Path> stream = newDirectoryStream(directory))
+            {
+                for (final Path p : stream)
+                {
+                    // Like Files.walk(), doesn't follow symbolic links to directories, but does to files
+                    final BasicFileAttributes attributes = readAttributes(p, BasicFileAttributes.class, NOFOLLOW_LINKS);
+
+                    if (attributes.isDirectory())
+                    {
+                        if (!isExcludedDirectory(p))
+                            subtasks.add(new WalkTask(p));
+                    }
+                    else if ((attributes.isRegularFile() || (attributes.isSymbolicLink() && isRegularFile(p))) &&
+                            isAccepted(p))
+                    {
+                        found.add(p);
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+
+            invokeAll(subtasks);
+            subtasks.forEach(t -> found.addAll(t.join()));
+
+            return found;
+        }
+    }
+}
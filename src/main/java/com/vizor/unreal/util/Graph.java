@@ -15,9 +15,12 @@
  */
 package com.vizor.unreal.util;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -28,8 +31,10 @@ import java.util.Queue;
 
 import static com.vizor.unreal.util.Misc.TAB;
 import static com.vizor.unreal.util.Misc.reorder;
+import static java.lang.Math.min;
 import static java.lang.String.valueOf;
 import static java.lang.System.lineSeparator;
+import static java.util.Arrays.fill;
 import static java.util.Collections.emptyList;
 import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
@@ -101,6 +106,106 @@ public final class Graph<T>
         return list;
     }
 
+    /**
+     * Returns edges of this graph, each one once, in order of their source vertices.
+     * @return Pairs of vertices (from, to).
+     */
+    public final List<Tuple<T, T>> getEdges()
+    {
+        final List<T> vk = getVertices();
+        final List<Tuple<T, T>> edges = new ArrayList<>();
+
+        for (int i = 0; i < adjaency.size(); i++)
+        {
+            final T from = vk.get(i);
+            adjaency.get(i).stream().distinct().forEach(to -> edges.add(Tuple.of(from, vk.get(to))));
+        }
+
+        return edges;
+    }
+
+    /**
+     * Returns a graph with the same vertices and all edges reversed.
+     * @return A new graph.
+     */
+    public final Graph<T> transpose()
+    {
+        final Graph<T> transposed = new Graph<>(getVertices());
+
+        for (int i = 0; i < adjaency.size(); i++)
+        {
+            for (final int node : adjaency.get(i))
+                transposed.adjaency.get(node).add(i);
+        }
+
+        return transposed;
+    }
+
+    /**
+     * Returns strongly connected components of this graph: sets of vertices, which reach each other. A vertex,
+     * which isn't a part of any cycle is a component itself.
+     *
+     * @return Components in reverse topological order: no edge leads from a component to one, following it.
+     */
+    public final List<List<T>> getStronglyConnectedComponents()
+    {
+        final int[] components = getComponents();
+        final List<T> vk = getVertices();
+        final List<List<T>> list = new ArrayList<>();
+
+        for (int i = 0; i < components.length; i++)
+        {
+            while (list.size() <= components[i])
+                list.add(new ArrayList<>());
+
+            list.get(components[i]).add(vk.get(i));
+        }
+
+        return list;
+    }
+
+    /**
+     * Counts vertices, reachable from each vertex, not counting the vertex itself.
+     * @return Sizes of the transitive closures by vertices.
+     */
+    public final Map<T, Integer> getClosureSizes()
+    {
+        final int[] components = getComponents();
+        final int numComponents = Arrays.stream(components).max().orElse(-1) + 1;
+
+        final List<List<Integer>> members = new ArrayList<>(numComponents);
+        for (int c = 0; c < numComponents; c++)
+            members.add(new ArrayList<>());
+
+        for (int i = 0; i < components.length; i++)
+            members.get(components[i]).add(i);
+
+        // Edges lead to preceding components only, so their closures are already known
+        final BitSet[] reachable = new BitSet[numComponents];
+        for (int c = 0; c < numComponents; c++)
+        {
+            final BitSet closure = new BitSet(components.length);
+
+            for (final int vertex : members.get(c))
+            {
+                closure.set(vertex);
+
+                for (final int node : adjaency.get(vertex))
+                {
+                    if (components[node] != c)
+                        closure.or(reachable[components[node]]);
+                }
+            }
+
+            reachable[c] = closure;
+        }
+
+        final Map<T, Integer> sizes = new HashMap<>(vertices.size());
+        vertices.forEach((item, index) -> sizes.put(item, reachable[components[index]].cardinality() - 1));
+
+        return sizes;
+    }
+
     public final void removeUnreachableNodes()
     {
         removeUnreachableNodes(emptyList());
@@ -207,6 +312,91 @@ public final class Graph<T>
         return topOrder.stream().mapToInt(Integer::intValue).toArray();
     }
 
+    /**
+     * Finds strongly connected components with Tarjan's algorithm. Long chains (of imports, for instance) would
+     * overflow the stack, so the recursion is unrolled.
+     *
+     * @return Index of the component of each vertex. Components are numbered in reverse topological order.
+     */
+    int[] getComponents()
+    {
+        final int numVertices = adjaency.size();
+
+        final int[] components = new int[numVertices];
+        final int[] indices = new int[numVertices];
+        final int[] lowLinks = new int[numVertices];
+        final boolean[] onStack = new boolean[numVertices];
+        fill(indices, -1);
+
+        final Deque<Integer> stack = new ArrayDeque<>();
+
+        // Each call is a vertex and the number of its edges, visited so far
+        final Deque<int[]> calls = new ArrayDeque<>();
+
+        int counter = 0;
+        int numComponents = 0;
+
+        for (int root = 0; root < numVertices; root++)
+        {
+            if (indices[root] >= 0)
+                continue;
+
+            indices[root] = lowLinks[root] = counter++;
+            stack.push(root);
+            onStack[root] = true;
+            calls.push(new int[] {root, 0});
+
+            while (!calls.isEmpty())
+            {
+                final int[] call = calls.peek();
+                final int u = call[0];
+                final List<Integer> edges = adjaency.get(u);
+
+                if (call[1] < edges.size())
+                {
+                    final int node = edges.get(call[1]++);
+
+                    if (indices[node] < 0)
+                    {
+                        indices[node] = lowLinks[node] = counter++;
+                        stack.push(node);
+                        onStack[node] = true;
+                        calls.push(new int[] {node, 0});
+                    }
+                    else if (onStack[node])
+                    {
+                        lowLinks[u] = min(lowLinks[u], indices[node]);
+                    }
+
+                    continue;
+                }
+
+                calls.pop();
+                if (!calls.isEmpty())
+                {
+                    final int caller = calls.peek()[0];
+                    lowLinks[caller] = min(lowLinks[caller], lowLinks[u]);
+                }
+
+                if (lowLinks[u] == indices[u])
+                {
+                    int node;
+                    do
+                    {
+                        node = stack.pop();
+                        onStack[node] = false;
+                        components[node] = numComponents;
+                    }
+                    while (node != u);
+
+                    numComponents++;
+                }
+            }
+        }
+
+        return components;
+    }
+
     private void add(T item)
     {
         vertices.put(item, vertices.size());
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static java.lang.Double.isFinite;
+
+/**
+ * A minimal streaming JSON writer for reports, nothing is parsed. Names and values are appended in order, commas and
+ * (optional) indentation are placed automatically:
+ *
+ * new JsonWriter(true).beginObject().name("files").value(42).endObject().toString()
+ *
+ * Misuse, such as a value without a name within an object, is reported with a RuntimeException.
+ */
+public final class JsonWriter
+{
+    private static final String indent = "  ";
+
+    private final StringBuilder sb = new StringBuilder();
+    private final boolean pretty;
+
+    // True for objects, false for arrays
+    private final Deque<Boolean> scopes = new ArrayDeque<>();
+
+    private boolean empty = true;
+    private boolean named = false;
+
+    public JsonWriter(final boolean pretty)
+    {
+        this.pretty = pretty;
+    }
+
+    public final JsonWriter beginObject()
+    {
+        beforeValue();
+        sb.append('{');
+        scopes.push(true);
+        empty = true;
+        return this;
+    }
+
+    public final JsonWriter endObject()
+    {
+        return end(true, '}');
+    }
+
+    public final JsonWriter beginArray()
+    {
+        beforeValue();
+        sb.append('[');
+        scopes.push(false);
+        empty = true;
+        return this;
+    }
+
+    public final JsonWriter endArray()
+    {
+        return end(false, ']');
+    }
+
+    public final JsonWriter name(final String name)
+    {
+        if (scopes.isEmpty() || !scopes.peek() || named)
+            throw new RuntimeException("A name '" + name + "' is only allowed before a value within an object");
+
+        separate();
+        appendString(name);
+        sb.append(pretty ? ": " : ":");
+
+        named = true;
+        return this;
+    }
+
+    public final JsonWriter value(final String value)
+    {
+        beforeValue();
+        if (value == null)
+            sb.append("null");
+        else
+            appendString(value);
+        return this;
+    }
+
+    public final JsonWriter value(final long value)
+    {
+        beforeValue();
+        sb.append(value);
+        return this;
+    }
+
+    public final JsonWriter value(final double value)
+    {
+        if (!isFinite(value))
+            throw new RuntimeException("JSON has no representation for " + value);
+
+        beforeValue();
+        sb.append(value);
+        return this;
+    }
+
+    public final JsonWriter value(final boolean value)
+    {
+        beforeValue();
+        sb.append(value);
+        return this;
+    }
+
+    /**
+     * @return The written JSON, all objects and arrays must be closed.
+     */
+    @Override
+    public final String toString()
+    {
+        if (!scopes.isEmpty())
+            throw new RuntimeException("There are " + scopes.size() + " unclosed objects or arrays");
+
+        return sb.toString();
+    }
+
+    private JsonWriter end(final boolean object, final char bracket)
+    {
+        if (scopes.isEmpty() || (scopes.peek() != object) || named)
+            throw new RuntimeException("Unexpected '" + bracket + "'");
+
+        scopes.pop();
+        if (!empty)
+            newLine();
+
+        sb.append(bracket);
+        empty = false;
+        return this;
+    }
+
+    private void beforeValue()
+    {
+        if (scopes.isEmpty())
+        {
+            if (sb.length() > 0)
+                throw new RuntimeException("Only one top level value is allowed");
+        }
+        else if (scopes.peek())
+        {
+            if (!named)
+                throw new RuntimeException("A value within an object must have a name");
+            named = false;
+        }
+        else
+        {
+            separate();
+        }
+
+        empty = false;
+    }
+
+    private void separate()
+    {
+        if (!empty)
+            sb.append(',');
+        newLine();
+    }
+
+    private void newLine()
+    {
+        if (pretty)
+        {
+            sb.append('\n');
+            for (int i = 0; i < scopes.size(); i++)
+                sb.append(indent);
+        }
+    }
+
+    private void appendString(final String s)
+    {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            final char c = s.charAt(i);
+            switch (c)
+            {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
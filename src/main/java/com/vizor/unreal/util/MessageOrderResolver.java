@@ -28,6 +28,25 @@ import java.util.Set;
 public class MessageOrderResolver
 {
     public int[] sortByInclusion(final List<CppStruct> structures)
+    {
+        try
+        {
+            return getInclusionGraph(structures).getOrder();
+        }
+        catch (GraphHasCyclesException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Builds a graph of the structures, where an edge leads from a type of a field (or of its generic or variant
+     * argument) to a structure, containing the field. Thus the edges point from a type to its dependents.
+     *
+     * @param structures Structures of a single file, types of other files are ignored.
+     * @return The graph, its vertices are types of the structures in the given order.
+     */
+    public Graph<CppType> getInclusionGraph(final List<CppStruct> structures)
     {
         final Set<CppType> cache = new HashSet<>(structures.size());
         final List<CppType> list = new ArrayList<>(structures.size());
@@ -60,13 +79,6 @@ public class MessageOrderResolver
             }
         }
 
-        try
-        {
-            return graph.getOrder();
-        }
-        catch (GraphHasCyclesException e)
-        {
-            throw new RuntimeException(e);
-        }
+        return graph;
     }
 }
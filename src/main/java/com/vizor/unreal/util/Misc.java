@@ -37,6 +37,7 @@ import static java.lang.Character.toUpperCase;
 import static java.nio.file.Files.walk;
 import static java.nio.file.Paths.get;
 import static java.util.Arrays.stream;
+import static java.util.Collections.emptyList;
 import static java.util.Objects.isNull;
 import static java.util.stream.Collectors.toList;
 
@@ -426,28 +427,32 @@ public class Misc
 
     public static List<Tuple<Path, DestinationConfig>> findFilesRecursively(final Path src, final DestinationConfig dst, final String extension)
     {
-        final Predicate<String> endsWithIgnoreCase = str -> {
-            final int sufLen = extension.length();
-            return str.regionMatches(true, str.length() - sufLen, extension, 0, sufLen);
-        };
-
-        try {
-            return walk(src)
-                .filter(Files::isRegularFile)
-                .filter(p -> endsWithIgnoreCase.test(p.toString()))
-                .map(p -> { 
-                    final Path relativeSourceFilePath = src.relativize(p.getParent());
+        return findFilesRecursively(src, dst, extension, emptyList(), emptyList());
+    }
 
-					final DestinationConfig relativeDestinationConfig = 
-						dst.append(relativeSourceFilePath);
+    /**
+     * Finds files by extension, pairing each of them with its destination.
+     * @param src A directory to search in.
+     * @param dst A root destination, files' destinations mirror their relative paths.
+     * @param extension Extension of files to be found.
+     * @param includes Globs (relative to src), files must match at least one of. Empty to include every file.
+     * @param excludes Globs (relative to src) of files and directories to be skipped.
+     *
+     * @return A list of found files, paired with their destinations, sorted by path.
+     */
+    public static List<Tuple<Path, DestinationConfig>> findFilesRecursively(final Path src, final DestinationConfig dst,
+                                                                           final String extension,
+                                                                           final List<String> includes,
+                                                                           final List<String> excludes)
+    {
+        return new FileWalker(src, extension, includes, excludes).walk().stream()
+            .map(p -> {
+                final Path relativeSourceFilePath = src.relativize(p.getParent());
+                final DestinationConfig relativeDestinationConfig = dst.append(relativeSourceFilePath);
 
-                    return Tuple.of(p, relativeDestinationConfig);
-                })
-                .collect(toList());
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+                return Tuple.of(p, relativeDestinationConfig);
+            })
+            .collect(toList());
     }
 
     /**
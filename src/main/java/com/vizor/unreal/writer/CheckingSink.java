@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.writer;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.size;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Compares generated files with the ones on disk instead of writing them. Files are compared as soon as they're
+ * generated, so the comparison runs on the same worker threads as the generation itself. A file is only read if
+ * its size matches, otherwise it's stale anyway, and then compared byte by byte.
+ */
+public class CheckingSink extends HashingSink
+{
+    private final Map<Path, String> stale = new ConcurrentHashMap<>();
+
+    @Override
+    public void write(final Path path, final byte[] content)
+    {
+        super.write(path, content);
+
+        try
+        {
+            if (size(path) != content.length)
+                stale.put(path, "size differs");
+            else if (!Arrays.equals(readAllBytes(path), content))
+                stale.put(path, "content differs");
+        }
+        catch (NoSuchFileException e)
+        {
+            stale.put(path, "missing");
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return Generated files, which are missing on disk or differ from the ones on disk, sorted by path.
+     */
+    public final List<Path> getStale()
+    {
+        return stale.keySet().stream()
+            .sorted(comparing(Path::toString))
+            .collect(toList());
+    }
+
+    /**
+     * @param path A stale file.
+     * @return Why the file is stale, e.g. 'missing'.
+     */
+    public final String getReason(final Path path)
+    {
+        return stale.get(path);
+    }
+}
@@ -17,8 +17,6 @@ package com.vizor.unreal.writer;
 
 import com.vizor.unreal.util.Misc;
 
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,6 +24,7 @@ import static java.lang.Character.isWhitespace;
 import static java.lang.Math.max;
 import static java.lang.String.join;
 import static java.lang.System.lineSeparator;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 final class ContentWriter
 {
@@ -94,17 +93,21 @@ final class ContentWriter
             lines.remove(lines.size() - 1);
     }
 
-    void writeToFile(final String fileName)
+    /**
+     * Encodes the content in UTF-8 rather than the default charset, so that sinks, hashes and cached files don't
+     * depend on the platform.
+     *
+     * @return UTF-8 encoded content, each line (the current one too) is terminated with a line separator.
+     */
+    byte[] toBytes()
     {
-        try (final PrintWriter pw = new PrintWriter(fileName))
-        {
-            lines.forEach(pw::println);
-            pw.println(currentLine.toString());
-        }
-        catch (IOException ex)
-        {
-            throw new RuntimeException(ex);
-        }
+        final String separator = lineSeparator();
+        final StringBuilder sb = new StringBuilder();
+
+        lines.forEach(l -> sb.append(l).append(separator));
+        sb.append(currentLine).append(separator);
+
+        return sb.toString().getBytes(UTF_8);
     }
 
     private static void trimTrailingSpaces(final StringBuilder sb)
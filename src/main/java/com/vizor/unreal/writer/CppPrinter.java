@@ -42,6 +42,7 @@ import java.util.function.Supplier;
 
 import static com.vizor.unreal.tree.CppRecord.Residence.Header;
 import static java.lang.String.valueOf;
+import static java.nio.file.Paths.get;
 import static java.text.MessageFormat.format;
 import static java.util.Arrays.asList;
 import static java.util.Comparator.comparingInt;
@@ -79,12 +80,14 @@ public class CppPrinter implements AutoCloseable
 
     private final DestinationConfig absPathToFile;
     private final DummyDecoratorWriter decoratorWriter;
+    private final OutputSink sink;
 
     private final HeaderType headerType;
 
-    public CppPrinter(DestinationConfig absPathToFile, String apiName, HeaderType headerType) 
+    public CppPrinter(DestinationConfig absPathToFile, String apiName, HeaderType headerType, OutputSink sink)
     {
         this.headerType = headerType;
+        this.sink = requireNonNull(sink);
 
         this.absPathToFile = absPathToFile;
         this.decoratorWriter = new UEDecoratorWriter(apiName);
@@ -103,6 +106,16 @@ public class CppPrinter implements AutoCloseable
         newLine();
     }
 
+    public CppPrinter(DestinationConfig absPathToFile, String apiName, HeaderType headerType)
+    {
+        this(absPathToFile, apiName, headerType, new FileSystemSink());
+    }
+
+    public CppPrinter(DestinationConfig absPathToFile, String apiName, OutputSink sink)
+    {
+        this(absPathToFile, apiName, HeaderType.Public, sink);
+    }
+
     public CppPrinter(DestinationConfig absPathToFile, String apiName)
     {
         this(absPathToFile, apiName, HeaderType.Public);
@@ -114,8 +127,8 @@ public class CppPrinter implements AutoCloseable
         final String absoluteHeaderPath = (headerType == HeaderType.Public ? absPathToFile.pathPublic : absPathToFile.pathPrivate) + headerExtension;
         final String absoluteCodePath = absPathToFile.pathPrivate + codeExtension;
 
-        header.writeToFile(absoluteHeaderPath);
-        codeFile.writeToFile(absoluteCodePath);
+        sink.write(get(absoluteHeaderPath), header.toBytes());
+        sink.write(get(absoluteCodePath), codeFile.toBytes());
     }
 
     public final CppPrinter writeInlineComment(String comment)
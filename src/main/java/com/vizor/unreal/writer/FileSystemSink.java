@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.writer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.Files.createDirectories;
+import static java.util.Objects.nonNull;
+
+/**
+ * Writes generated files to the file system, creating missing directories.
+ */
+public class FileSystemSink implements OutputSink
+{
+    @Override
+    public void write(final Path path, final byte[] content)
+    {
+        try
+        {
+            final Path parent = path.toAbsolutePath().getParent();
+            if (nonNull(parent))
+                createDirectories(parent);
+
+            Files.write(path, content);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
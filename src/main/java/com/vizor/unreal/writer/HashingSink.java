@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.writer;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.nonNull;
+
+/**
+ * Keeps only SHA-256 digests of generated files. Used to verify generated code or to measure the generation
+ * throughput, neither the disk nor the heap are involved.
+ */
+public class HashingSink implements OutputSink
+{
+    private static final String algorithm = "SHA-256";
+    private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+    private final Map<Path, String> digests = new ConcurrentHashMap<>();
+
+    @Override
+    public void write(final Path path, final byte[] content)
+    {
+        if (nonNull(digests.putIfAbsent(path, digest(content))))
+            throw new RuntimeException("'" + path + "' has already been generated");
+    }
+
+    /**
+     * @return Hex-encoded digests of the generated files by their paths (with forward slashes), sorted by path.
+     */
+    public final Map<String, String> getDigests()
+    {
+        final Map<String, String> sorted = new TreeMap<>();
+        digests.forEach((path, digest) -> sorted.put(normalize(path), digest));
+
+        return unmodifiableMap(sorted);
+    }
+
+    /**
+     * @return A single digest of all generated files, their paths and contents. Doesn't depend on the order of
+     *         generation.
+     */
+    public final String getDigest()
+    {
+        final MessageDigest md = newDigest();
+        getDigests().forEach((path, digest) -> {
+            md.update(path.getBytes(UTF_8));
+            md.update((byte) 0);
+            md.update(digest.getBytes(UTF_8));
+            md.update((byte) '\n');
+        });
+
+        return toHex(md.digest());
+    }
+
+    /**
+     * @param content Content to be hashed.
+     * @return Hex-encoded SHA-256 digest of the content.
+     */
+    public static String digest(final byte[] content)
+    {
+        return toHex(newDigest().digest(content));
+    }
+
+    /**
+     * @return A new SHA-256 digest.
+     */
+    public static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every JVM is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param bytes Bytes to be encoded, e.g. a digest.
+     * @return Lowercase hex representation of the bytes.
+     */
+    public static String toHex(final byte[] bytes)
+    {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            chars[2 * i] = hexDigits[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = hexDigits[bytes[i] & 0xF];
+        }
+
+        return new String(chars);
+    }
+
+    private static String normalize(final Path path)
+    {
+        return path.toString().replace('\\', '/');
+    }
+}
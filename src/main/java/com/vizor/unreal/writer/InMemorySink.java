@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.writer;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.nonNull;
+
+/**
+ * Keeps generated files in memory, e.g. to hand them over to a caller, embedding the converter.
+ */
+public class InMemorySink implements OutputSink
+{
+    private final Map<Path, byte[]> files = new ConcurrentHashMap<>();
+
+    @Override
+    public void write(final Path path, final byte[] content)
+    {
+        if (nonNull(files.putIfAbsent(path, content)))
+            throw new RuntimeException("'" + path + "' has already been generated");
+    }
+
+    /**
+     * @return Contents of the generated files by their paths (with forward slashes), sorted by path.
+     */
+    public final Map<String, byte[]> getFiles()
+    {
+        final Map<String, byte[]> sorted = new TreeMap<>();
+        files.forEach((path, content) -> sorted.put(normalize(path), content));
+
+        return unmodifiableMap(sorted);
+    }
+
+    /**
+     * @return Decoded contents of the generated files by their paths (with forward slashes), sorted by path.
+     */
+    public final Map<String, String> getContents()
+    {
+        final Map<String, String> sorted = new TreeMap<>();
+        files.forEach((path, content) -> sorted.put(normalize(path), new String(content, UTF_8)));
+
+        return unmodifiableMap(sorted);
+    }
+
+    private static String normalize(final Path path)
+    {
+        return path.toString().replace('\\', '/');
+    }
+}
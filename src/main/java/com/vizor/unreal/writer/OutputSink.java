@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.writer;
+
+import java.nio.file.Path;
+
+/**
+ * Receives generated files. Implementations must be thread-safe, files are generated in parallel.
+ *
+ * Sinks, which buffer files (e.g. into an archive), flush them on {@link #close()}.
+ */
+public interface OutputSink extends AutoCloseable
+{
+    /**
+     * Accepts a generated file.
+     *
+     * @param path Path of the file, as it would be written to the file system.
+     * @param content Content of the file (UTF-8 encoded).
+     */
+    void write(final Path path, final byte[] content);
+
+    /**
+     * Called once all files are generated.
+     */
+    @Override
+    default void close()
+    {
+    }
+}
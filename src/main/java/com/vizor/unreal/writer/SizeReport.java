@@ -0,0 +1,365 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.writer;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.util.JsonWriter;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparing;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Measures generated code of each proto file, to find out what makes the module expensive to compile: sizes of the
+ * header, the source and the casts, numbers of members, processed by Unreal Header Tool, of casts and of includes,
+ * and generated headers, pulled in by the proto file's headers transitively.
+ *
+ * Passes every file on to another sink and keeps only the numbers. Files of a proto file 'game/lobby.proto' are
+ * generated into 'game/lobby/' of the public (the header) and the private (the rest) destinations.
+ */
+public class SizeReport implements OutputSink
+{
+    private static final Logger log = getLogger(SizeReport.class);
+
+    private static final Pattern include = Pattern.compile("^#include \"([^\"]+)\"", Pattern.MULTILINE);
+
+    private static final String headerExtension = ".h";
+    private static final String sourceExtension = ".cpp";
+
+    private static final class FileSize
+    {
+        private final String name;
+        private final long bytes;
+        private final long lines;
+        private final List<String> includes = new ArrayList<>();
+        private final int uproperties;
+        private final int ufunctions;
+        private final int delegates;
+        private final int casts;
+
+        FileSize(final String name, final byte[] content)
+        {
+            final String text = new String(content, UTF_8);
+
+            this.name = name;
+            this.bytes = content.length;
+            this.lines = text.chars().filter(c -> c == '\n').count();
+
+            final Matcher matcher = include.matcher(text);
+            while (matcher.find())
+                includes.add(matcher.group(1));
+
+            this.uproperties = count(text, "UPROPERTY(");
+            this.ufunctions = count(text, "UFUNCTION(");
+            this.delegates = count(text, "DECLARE_DYNAMIC_MULTICAST_DELEGATE");
+            this.casts = count(text, "template <>");
+        }
+    }
+
+    private static final class ProtoSize
+    {
+        private final String proto;
+        private FileSize header;
+        private FileSize source;
+        private FileSize castsHeader;
+        private FileSize castsSource;
+
+        // Generated headers of other proto files, included by the headers of this one, directly or not
+        private int fanOut;
+        private long fanOutBytes;
+
+        // Number of other proto files, which include a header of this one, directly or not
+        private int fanIn;
+
+        ProtoSize(final String proto)
+        {
+            this.proto = proto;
+        }
+
+        long getOwnBytes()
+        {
+            return bytesOf(header) + bytesOf(source) + bytesOf(castsHeader) + bytesOf(castsSource);
+        }
+
+        /**
+         * @return Bytes of generated code, compiled for the proto file: its own files and all generated headers,
+         *         they include.
+         */
+        long getWeight()
+        {
+            return getOwnBytes() + fanOutBytes;
+        }
+    }
+
+    private final OutputSink sink;
+    private final Path publicRoot;
+    private final Path privateRoot;
+
+    // Generated files by their paths, relative to their destination
+    private final Map<String, FileSize> publicFiles = new ConcurrentHashMap<>();
+    private final Map<String, FileSize> privateFiles = new ConcurrentHashMap<>();
+
+    /**
+     * @param sink A sink to pass generated files on to.
+     * @param dstPath Destination of the generated files.
+     */
+    public SizeReport(final OutputSink sink, final DestinationConfig dstPath)
+    {
+        this.sink = requireNonNull(sink);
+        this.publicRoot = dstPath.pathPublic.toAbsolutePath().normalize();
+        this.privateRoot = dstPath.pathPrivate.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void write(final Path path, final byte[] content)
+    {
+        sink.write(path, content);
+
+        final String name = path.getFileName().toString();
+        if (!name.endsWith(headerExtension) && !name.endsWith(sourceExtension))
+            return;
+
+        final Path absolute = path.toAbsolutePath().normalize();
+        if (absolute.startsWith(publicRoot))
+            publicFiles.put(normalize(publicRoot.relativize(absolute)), new FileSize(name, content));
+        else if (absolute.startsWith(privateRoot))
+            privateFiles.put(normalize(privateRoot.relativize(absolute)), new FileSize(name, content));
+    }
+
+    @Override
+    public void close()
+    {
+        sink.close();
+    }
+
+    /**
+     * Logs the totals and the heaviest proto files.
+     *
+     * @param heaviest Number of the heaviest proto files to list.
+     */
+    public final void logSummary(final int heaviest)
+    {
+        final List<ProtoSize> protos = getProtos();
+
+        final long bytes = protos.stream().mapToLong(ProtoSize::getOwnBytes).sum();
+        final long lines = protos.stream()
+            .mapToLong(p -> linesOf(p.header) + linesOf(p.source) + linesOf(p.castsHeader) + linesOf(p.castsSource))
+            .sum();
+
+        log.info(format("Generated code of %d proto files: %.1f KB, %d lines", protos.size(), bytes / 1024.0, lines));
+
+        final int numHeaviest = Math.min(heaviest, protos.size());
+        if (numHeaviest > 0)
+            log.info("{} heaviest proto files (own code + included generated headers):", numHeaviest);
+
+        for (final ProtoSize p : protos.subList(0, numHeaviest))
+        {
+            log.info(format("%10.1f KB %s (%.1f KB own, %d headers of %.1f KB included, included by %d)",
+                    p.getWeight() / 1024.0, p.proto, p.getOwnBytes() / 1024.0, p.fanOut, p.fanOutBytes / 1024.0,
+                    p.fanIn));
+        }
+    }
+
+    /**
+     * @return Numbers of each proto file (the heaviest first) as JSON.
+     */
+    public final String toJson()
+    {
+        final List<ProtoSize> protos = getProtos();
+
+        final JsonWriter json = new JsonWriter(true)
+            .beginObject()
+            .name("protos").value(protos.size())
+            .name("bytes").value(protos.stream().mapToLong(ProtoSize::getOwnBytes).sum())
+            .name("by_proto").beginArray();
+
+        for (final ProtoSize p : protos)
+        {
+            json.beginObject()
+                .name("proto").value(p.proto)
+                .name("weight_bytes").value(p.getWeight())
+                .name("own_bytes").value(p.getOwnBytes())
+                .name("fan_out").value(p.fanOut)
+                .name("fan_out_bytes").value(p.fanOutBytes)
+                .name("fan_in").value(p.fanIn)
+                .name("uproperties").value(nonNull(p.header) ? p.header.uproperties : 0)
+                .name("ufunctions").value(nonNull(p.header) ? p.header.ufunctions : 0)
+                .name("delegates").value(nonNull(p.header) ? p.header.delegates : 0)
+                .name("casts").value(nonNull(p.castsHeader) ? p.castsHeader.casts : 0)
+                .name("header_includes").value(nonNull(p.header) ? p.header.includes.size() : 0)
+                .name("casts_includes").value(nonNull(p.castsHeader) ? p.castsHeader.includes.size() : 0);
+
+            writeFile(json, "header", p.header);
+            writeFile(json, "source", p.source);
+            writeFile(json, "casts_header", p.castsHeader);
+            writeFile(json, "casts_source", p.castsSource);
+
+            json.endObject();
+        }
+
+        return json.endArray().endObject().toString();
+    }
+
+    private static void writeFile(final JsonWriter json, final String name, final FileSize file)
+    {
+        if (isNull(file))
+            return;
+
+        json.name(name).beginObject()
+            .name("file").value(file.name)
+            .name("bytes").value(file.bytes)
+            .name("lines").value(file.lines)
+            .name("includes").value(file.includes.size())
+            .endObject();
+    }
+
+    /**
+     * Groups generated files by proto files and computes include closures of their headers.
+     *
+     * @return Proto files, the heaviest first.
+     */
+    private List<ProtoSize> getProtos()
+    {
+        final Map<String, ProtoSize> byDirectory = new TreeMap<>();
+
+        publicFiles.forEach((path, file) -> {
+            if (file.name.endsWith(headerExtension))
+                protoOf(byDirectory, path).header = file;
+        });
+
+        // Private files of a proto are 'Name.cpp', 'NameCasts.h' and 'NameCasts.cpp'
+        privateFiles.forEach((path, file) -> {
+            if (file.name.endsWith(headerExtension))
+                protoOf(byDirectory, path).castsHeader = file;
+        });
+
+        privateFiles.forEach((path, file) -> {
+            if (!file.name.endsWith(sourceExtension))
+                return;
+
+            final ProtoSize proto = protoOf(byDirectory, path);
+            final String castsHeader = nonNull(proto.castsHeader) ? proto.castsHeader.name : null;
+            final String castsSource = nonNull(castsHeader) ?
+                    castsHeader.substring(0, castsHeader.length() - headerExtension.length()) + sourceExtension : null;
+
+            if (file.name.equals(castsSource))
+                proto.castsSource = file;
+            else
+                proto.source = file;
+        });
+
+        // Includes are relative to either of destinations
+        final Map<String, ProtoSize> owners = new HashMap<>();
+        byDirectory.forEach((directory, proto) -> {
+            if (nonNull(proto.header))
+                owners.put(directory + '/' + proto.header.name, proto);
+            if (nonNull(proto.castsHeader))
+                owners.put(directory + '/' + proto.castsHeader.name, proto);
+        });
+
+        for (final ProtoSize proto : byDirectory.values())
+        {
+            final Set<String> visited = new HashSet<>();
+            final Deque<FileSize> queue = new ArrayDeque<>();
+
+            if (nonNull(proto.header))
+                queue.add(proto.header);
+            if (nonNull(proto.castsHeader))
+                queue.add(proto.castsHeader);
+
+            final Set<ProtoSize> included = new HashSet<>();
+            while (!queue.isEmpty())
+            {
+                for (final String i : queue.poll().includes)
+                {
+                    final FileSize file = publicFiles.containsKey(i) ? publicFiles.get(i) : privateFiles.get(i);
+                    if (isNull(file) || !visited.add(i))
+                        continue;
+
+                    queue.add(file);
+
+                    final ProtoSize owner = owners.get(i);
+                    if (owner != proto)
+                    {
+                        proto.fanOut++;
+                        proto.fanOutBytes += file.bytes;
+
+                        if (nonNull(owner))
+                            included.add(owner);
+                    }
+                }
+            }
+
+            included.forEach(p -> p.fanIn++);
+        }
+
+        final List<ProtoSize> protos = new ArrayList<>(byDirectory.values());
+        protos.sort(comparing((ProtoSize p) -> -p.getWeight()).thenComparing(p -> p.proto));
+
+        return protos;
+    }
+
+    private static ProtoSize protoOf(final Map<String, ProtoSize> byDirectory, final String path)
+    {
+        final int slash = path.lastIndexOf('/');
+        final String directory = (slash >= 0) ? path.substring(0, slash) : "";
+
+        return byDirectory.computeIfAbsent(directory, d -> new ProtoSize(d + ".proto"));
+    }
+
+    private static int count(final String text, final String substring)
+    {
+        int count = 0;
+        for (int i = text.indexOf(substring); i >= 0; i = text.indexOf(substring, i + substring.length()))
+            count++;
+
+        return count;
+    }
+
+    private static long bytesOf(final FileSize file)
+    {
+        return nonNull(file) ? file.bytes : 0;
+    }
+
+    private static long linesOf(final FileSize file)
+    {
+        return nonNull(file) ? file.lines : 0;
+    }
+
+    private static String normalize(final Path path)
+    {
+        return path.toString().replace('\\', '/');
+    }
+}
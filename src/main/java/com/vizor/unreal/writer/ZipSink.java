@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.newOutputStream;
+import static java.util.Objects.nonNull;
+
+/**
+ * Packs generated files into a single zip archive instead of thousands of small files.
+ *
+ * Files are generated in parallel, thus they're buffered in memory and written sorted by path on {@link #close()}:
+ * the same input always produces a byte-identical archive.
+ */
+public class ZipSink implements OutputSink
+{
+    // Entries are timestamped with a fixed time, so that the archive doesn't depend on the time of generation
+    private static final long entryTime = 946684800000L; // 2000-01-01 00:00:00 UTC
+
+    private final Path archive;
+    private final Path root;
+
+    private final Map<String, byte[]> entries = new TreeMap<>();
+
+    /**
+     * @param archive Path to the archive to be created (overwritten if exists).
+     * @param root Paths of the entries are relative to this directory.
+     */
+    public ZipSink(final Path archive, final Path root)
+    {
+        this.archive = archive;
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void write(final Path path, final byte[] content)
+    {
+        final Path absolutePath = path.toAbsolutePath().normalize();
+        if (!absolutePath.startsWith(root))
+            throw new RuntimeException("'" + path + "' is outside of the archive root '" + root + "'");
+
+        final String name = root.relativize(absolutePath).toString().replace('\\', '/');
+
+        synchronized (entries)
+        {
+            if (nonNull(entries.putIfAbsent(name, content)))
+                throw new RuntimeException("'" + name + "' has already been generated");
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            final Path parent = archive.toAbsolutePath().getParent();
+            if (nonNull(parent))
+                createDirectories(parent);
+
+            try (final ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(newOutputStream(archive))))
+            {
+                synchronized (entries)
+                {
+                    for (final Map.Entry<String, byte[]> e : entries.entrySet())
+                    {
+                        final ZipEntry entry = new ZipEntry(e.getKey());
+                        entry.setTime(entryTime);
+
+                        zos.putNextEntry(entry);
+                        zos.write(e.getValue());
+                        zos.closeEntry();
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
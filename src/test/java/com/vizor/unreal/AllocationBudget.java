@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.profile.Phase;
+import com.vizor.unreal.profile.Profiler;
+
+import static java.lang.String.format;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Assertions on bytes, allocated by a piece of code, to catch allocation blowups on representative inputs before
+ * they run small heaps out of memory:
+ *
+ * AllocationBudget.assertAllocatesAtMost("10000 lines", 4 * MB, () -> writeLines(10000));
+ *
+ * Bytes are counted by the JVM for the current thread, so the code under test mustn't hand its work over to other
+ * threads (use 'threads: 1' for conversions). Tests are skipped if the JVM doesn't count allocations.
+ */
+public final class AllocationBudget
+{
+    public static final long KB = 1024;
+    public static final long MB = 1024 * KB;
+
+    private AllocationBudget()
+    {
+    }
+
+    /**
+     * Runs the task twice and counts bytes, allocated by the second run only, so lazy initialization, class loading
+     * and caches, filled by the first run, don't count.
+     *
+     * @param task The task.
+     * @return Bytes, allocated by the task on the current thread.
+     */
+    public static long measure(final Runnable task)
+    {
+        assumeTrue(Profiler.isAllocationMeasured());
+
+        task.run();
+
+        final long before = Profiler.getThreadAllocatedBytes();
+        task.run();
+        return Profiler.getThreadAllocatedBytes() - before;
+    }
+
+    /**
+     * Fails if the task allocates more than the budget.
+     *
+     * @param what What the task does, to be shown in the message.
+     * @param budget Maximum number of bytes.
+     * @param task The task.
+     */
+    public static void assertAllocatesAtMost(final String what, final long budget, final Runnable task)
+    {
+        check(what, budget, measure(task));
+    }
+
+    /**
+     * Fails if a phase of a profiled run has allocated more than the budget (all files together).
+     *
+     * @param profiler A profiler of the run.
+     * @param phase The phase.
+     * @param budget Maximum number of bytes.
+     */
+    public static void assertAllocatesAtMost(final Profiler profiler, final Phase phase, final long budget)
+    {
+        assumeTrue(Profiler.isAllocationMeasured());
+        check(phase.getDisplayName(), budget, profiler.getAllocatedBytes(phase));
+    }
+
+    private static void check(final String what, final long budget, final long allocated)
+    {
+        if (allocated > budget)
+        {
+            fail(format("%s has allocated %.2f MB, which is over the budget of %.2f MB", what,
+                    allocated / (double) MB, budget / (double) MB));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.profile.Phase;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.provider.TypesProvider;
+import com.vizor.unreal.provider.UnrealTypesProvider;
+import com.vizor.unreal.tree.CppField;
+import com.vizor.unreal.tree.CppStruct;
+import com.vizor.unreal.tree.CppType;
+import com.vizor.unreal.util.CorpusGenerator;
+import com.vizor.unreal.writer.CppPrinter;
+import com.vizor.unreal.writer.InMemorySink;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.vizor.unreal.AllocationBudget.MB;
+import static com.vizor.unreal.AllocationBudget.assertAllocatesAtMost;
+import static com.vizor.unreal.tree.CppType.Kind.Struct;
+import static com.vizor.unreal.tree.CppType.plain;
+import static com.vizor.unreal.tree.CppType.wildcardGeneric;
+import static java.nio.file.Paths.get;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Allocation budgets of the hot paths on representative inputs. Budgets leave a few times of headroom over what
+ * is allocated now, so they fail on blowups (e.g. quadratic copying), not on small changes.
+ */
+public class AllocationTest
+{
+    @Test
+    public void testTypes()
+    {
+        assertAllocatesAtMost("Hashing 1000 nested types", 8 * MB, () -> {
+            final Set<CppType> types = new HashSet<>();
+            for (int i = 0; i < 1000; i++)
+            {
+                final CppType array = wildcardGeneric("TArray", Struct, 1).makeGeneric(plain("FMessage" + i, Struct));
+                types.add(wildcardGeneric("TMap", Struct, 2).makeGeneric(plain("FString", Struct), array));
+            }
+
+            assertEquals(1000, types.size());
+        });
+    }
+
+    @Test
+    public void testTypesProvider()
+    {
+        assertAllocatesAtMost("Looking up 1000 types", 48 * MB, () -> {
+            final TypesProvider provider = new UnrealTypesProvider();
+            for (int i = 0; i < 1000; i++)
+                provider.register("game.lobby.Message" + i, plain("FGame_Lobby_Message" + i, Struct));
+
+            for (int i = 0; i < 1000; i++)
+            {
+                provider.get("game.lobby.Message" + i);
+                provider.get("map<string, int32>");
+            }
+
+            // Short names are matched against every registered type
+            for (int i = 0; i < 100; i++)
+                provider.get("Message" + i);
+        });
+    }
+
+    @Test
+    public void testPrinter()
+    {
+        final List<CppField> fields = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            fields.add(new CppField(plain("int32", Struct), "Field" + i));
+
+        final CppStruct struct = new CppStruct(plain("FGame_Lobby_Message", Struct), fields);
+        final DestinationConfig dst = new DestinationConfig(get("Public", "Message"), get("Private", "Message"));
+
+        assertAllocatesAtMost("Printing a struct of 1000 fields", 4 * MB, () -> {
+            try (final CppPrinter printer = new CppPrinter(dst, "TEST_API", new InMemorySink()))
+            {
+                struct.accept(printer);
+            }
+        });
+    }
+
+    @Test
+    public void testConversion()
+    {
+        final GenerationContext context = GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setThreads(1)
+            .build();
+
+        final Map<String, String> corpus = CorpusGenerator.builder()
+            .setFiles(50)
+            .setServicesPerFile(1)
+            .build()
+            .generate();
+
+        // The first run loads classes and fills caches
+        Conversions.convert(context, corpus, new InMemorySink(), Profiler.none);
+
+        final Profiler profiler = new Profiler();
+        Conversions.convert(context, corpus, new InMemorySink(), profiler);
+
+        assertAllocatesAtMost(profiler, Phase.Parse, 4 * MB);
+        assertAllocatesAtMost(profiler, Phase.Types, 6 * MB);
+        assertAllocatesAtMost(profiler, Phase.Structs, 40 * MB);
+        assertAllocatesAtMost(profiler, Phase.Casts, 64 * MB);
+        assertAllocatesAtMost(profiler, Phase.Clients, 40 * MB);
+        assertAllocatesAtMost(profiler, Phase.Printing, 48 * MB);
+    }
+}
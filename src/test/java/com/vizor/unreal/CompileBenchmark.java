@@ -0,0 +1,565 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.util.CorpusGenerator;
+import com.vizor.unreal.util.JsonWriter;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.System.exit;
+import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.write;
+import static java.nio.file.Paths.get;
+import static java.util.Arrays.asList;
+import static java.util.Comparator.comparingDouble;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.io.FilenameUtils.removeExtension;
+import static org.apache.logging.log4j.LogManager.getLogger;
+import static org.apache.logging.log4j.core.config.Configurator.setLevel;
+
+/**
+ * Measures the cost of compiling generated code: converts a synthetic tree (see {@link CorpusGenerator}) and compiles
+ * every generated file on its own with the local clang or gcc in '-fsyntax-only' mode, against stubs of Unreal
+ * Engine, Infraworld, protobuf and gRPC headers ('compile-stubs' in test resources and {@link ProtoStubWriter}).
+ * Reports wall time of the compiler, time of the front end and of template instantiation of each file as JSON,
+ * so changes to the generators can be judged on the compile time they cause downstream.
+ *
+ * The front end and instantiation times are taken from clang's '-ftime-trace' ('Total Frontend', 'Total
+ * InstantiateClass' and 'Total InstantiateFunction') or from gcc's '-ftime-report' ('TOTAL' and 'template
+ * instantiation', the latter has the resolution of 10 ms). Parse time is the front end time less instantiation. Run
+ * it with 'mvn -P compile-benchmark verify', see the profile in pom.xml.
+ *
+ * Stubs follow the real APIs, so generated code, which doesn't compile in Unreal, doesn't compile against them
+ * either: errors are counted and reported along with the times.
+ */
+public final class CompileBenchmark
+{
+    private static final Logger log = getLogger(CompileBenchmark.class);
+
+    private static final String moduleName = "Corpus";
+    private static final String stubsResource = "/compile-stubs";
+
+    // Includes all stub headers, to tell their cost from the cost of generated code
+    private static final String stubsUnit = "Include/Stubs.cpp";
+
+    private static final Pattern gccTimeVar = Pattern.compile("^\\s*(TOTAL|template instantiation)\\s*:(.*)$",
+            Pattern.MULTILINE);
+    private static final Pattern error = Pattern.compile("^.*\\b(fatal )?error:.*$", Pattern.MULTILINE);
+
+    private enum Kind
+    {
+        Header,
+        CastsHeader,
+        Source,
+        CastsSource,
+        Stubs
+    }
+
+    private static final class Unit
+    {
+        private final String file;
+        private final String proto;
+        private final Kind kind;
+
+        Unit(final String file)
+        {
+            final int slash = file.lastIndexOf('/');
+            final String name = file.substring(slash + 1);
+
+            this.file = file;
+
+            // 'Public/game/lobby/Lobby.h' -> 'game/lobby.proto'
+            final String directory = file.substring(file.indexOf('/') + 1, Math.max(slash, file.indexOf('/') + 1));
+            this.proto = directory + ".proto";
+
+            if (file.equals(stubsUnit))
+                this.kind = Kind.Stubs;
+            else if (file.startsWith("Public/"))
+                this.kind = Kind.Header;
+            else if (name.endsWith("Casts.h"))
+                this.kind = Kind.CastsHeader;
+            else if (name.endsWith("Casts.cpp"))
+                this.kind = Kind.CastsSource;
+            else
+                this.kind = Kind.Source;
+        }
+    }
+
+    private static final class Result
+    {
+        private Unit unit;
+
+        private double wallMs;
+        private double frontendMs;
+        private double instantiationMs;
+
+        private int errors;
+        private String firstError;
+
+        double getParseMs()
+        {
+            return Math.max(0.0, frontendMs - instantiationMs);
+        }
+    }
+
+    private final String compiler;
+    private final boolean clang;
+    private final String version;
+
+    private final Path workPath;
+    private final Path stubsPath;
+    private final List<String> extraFlags;
+
+    private Result stubs;
+
+    private CompileBenchmark(final String compiler, final Path workPath, final Path stubsPath,
+                             final List<String> extraFlags)
+    {
+        this.compiler = compiler;
+        this.workPath = workPath;
+        this.stubsPath = stubsPath;
+        this.extraFlags = extraFlags;
+
+        this.version = run(workPath, compiler, "--version").split("\n")[0].trim();
+        this.clang = version.contains("clang");
+    }
+
+    public static void main(String[] args)
+    {
+        final Options options = new Options()
+            .addOption("files", true, "Number of proto files to convert and compile (default 10)")
+            .addOption("seed", true, "Seed of the generated tree (default 42)")
+            .addOption("compiler", true, "C++ compiler, clang++ or g++ (default: the first found of clang++, g++, " +
+                    "c++)")
+            .addOption("flags", true, "Space separated flags to be passed to the compiler, besides the default " +
+                    "'-std=c++14 -fsyntax-only -w'")
+            .addOption("iterations", true, "Number of compilations of each file, medians are reported (default 3)")
+            .addOption("work", true, "A directory to write the generated code and stubs into (default: a temporary " +
+                    "directory)")
+            .addOption("stubs", true, "A directory of stub headers (default: 'compile-stubs' of the classpath)")
+            .addOption("report", true, "Path to write the JSON report to")
+            .addOption("slowest", true, "Number of the slowest files to be logged (default 10)");
+
+        try
+        {
+            final CommandLine cmd = new PosixParser().parse(options, args);
+
+            final int files = parseInt(cmd.getOptionValue("files", "10"));
+            final long seed = parseLong(cmd.getOptionValue("seed", "42"));
+            final int iterations = parseInt(cmd.getOptionValue("iterations", "3"));
+            final int slowest = parseInt(cmd.getOptionValue("slowest", "10"));
+
+            if ((files < 1) || (iterations < 1) || (slowest < 0))
+                throw new ParseException("Files and iterations must be positive");
+
+            final String compilerOption = cmd.getOptionValue("compiler", "auto");
+            final String compiler = "auto".equals(compilerOption) ? findCompiler() : compilerOption;
+
+            final Path workPath = cmd.hasOption("work") ? get(cmd.getOptionValue("work")).toAbsolutePath() :
+                    Files.createTempDirectory("compile-benchmark");
+            final Path stubsPath = cmd.hasOption("stubs") ? get(cmd.getOptionValue("stubs")).toAbsolutePath() :
+                    getStubsResource();
+
+            final List<String> flags = Arrays.stream(cmd.getOptionValue("flags", "").split(" "))
+                .filter(f -> !f.isEmpty())
+                .collect(toList());
+
+            // Converter logs every file, which isn't a part of the measurement
+            setLevel(Main.class.getPackage().getName(), Level.WARN);
+            setLevel(CompileBenchmark.class.getName(), Level.INFO);
+
+            createDirectories(workPath);
+            final CompileBenchmark benchmark = new CompileBenchmark(compiler, workPath, stubsPath, flags);
+
+            final List<Result> results = benchmark.run(files, seed, iterations);
+            benchmark.logSummary(results, slowest);
+
+            if (cmd.hasOption("report"))
+            {
+                final Path reportPath = get(cmd.getOptionValue("report")).toAbsolutePath();
+                createDirectories(reportPath.getParent());
+                write(reportPath, benchmark.toJson(results, files, iterations).getBytes(UTF_8));
+                log.info("Report is written to {}", reportPath);
+            }
+        }
+        catch (ParseException | NumberFormatException e)
+        {
+            new HelpFormatter().printHelp("java -cp <test classpath> " + CompileBenchmark.class.getName() +
+                    " [options]", e.getMessage(), options, "");
+            exit(1);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<Result> run(final int files, final long seed, final int iterations) throws IOException
+    {
+        final Map<String, String> corpus = CorpusGenerator.builder()
+            .setFiles(files)
+            .setServicesPerFile(1)
+            .setNestedTypes(1)
+            .setSeed(seed)
+            .build()
+            .generate();
+
+        final GenerationContext context = GenerationContext.builder()
+            .setModuleName(moduleName)
+            .setCompanyName("Vizor")
+            .build();
+
+        // Generated files are written by their paths, starting with 'Public/' and 'Private/'
+        final Map<String, String> generated = Cornerstone.generate(context, corpus);
+        generated.forEach((path, content) -> writeFile(workPath.resolve(path), content));
+
+        // Stubs of protoc's output and of Unreal Header Tool's '*.generated.h' files
+        final Path includePath = workPath.resolve("Include");
+        new ProtoStubWriter(corpus).write().forEach((path, content) -> writeFile(includePath.resolve(path), content));
+
+        final List<Unit> units = generated.keySet().stream()
+            .filter(p -> p.endsWith(".h") || p.endsWith(".cpp"))
+            .map(Unit::new)
+            .collect(toList());
+
+        units.stream()
+            .filter(u -> u.kind == Kind.Header)
+            .map(u -> removeExtension(u.file.substring(u.file.lastIndexOf('/') + 1)) + ".generated.h")
+            .forEach(name -> writeFile(includePath.resolve(name), "#pragma once\n"));
+
+        writeFile(workPath.resolve(stubsUnit), Stream.of("CoreMinimal.h", "Misc/TVariant.h", "Conduit.h",
+                "GenUtils.h", "RpcClientWorker.h", "WorkerUtils.h", "ChannelProvider.h", "grpc/support/log.h")
+            .map(h -> "#include \"" + h + "\"\n")
+            .collect(joining()));
+
+        log.info("Compiling {} files of {} proto files with {}, {} times each", units.size(), files, version,
+                iterations);
+
+        stubs = measure(new Unit(stubsUnit), includePath, iterations);
+
+        final List<Result> results = new ArrayList<>(units.size());
+        for (final Unit unit : units)
+            results.add(measure(unit, includePath, iterations));
+
+        results.sort(comparingDouble((Result r) -> -r.frontendMs).thenComparing(r -> r.unit.file));
+        return results;
+    }
+
+    private Result measure(final Unit unit, final Path includePath, final int iterations) throws IOException
+    {
+        final List<Result> measured = new ArrayList<>(iterations);
+        for (int i = 0; i < iterations; i++)
+            measured.add(compile(unit, includePath));
+
+        final Result result = measured.get(0);
+        result.wallMs = median(measured, r -> r.wallMs);
+        result.frontendMs = median(measured, r -> r.frontendMs);
+        result.instantiationMs = median(measured, r -> r.instantiationMs);
+
+        return result;
+    }
+
+    private Result compile(final Unit unit, final Path includePath) throws IOException
+    {
+        final Path tracePath = workPath.resolve("Traces");
+        createDirectories(tracePath);
+
+        final List<String> command = new ArrayList<>(asList(compiler, "-std=c++14", "-fsyntax-only", "-w",
+                "-x", "c++",
+                "-I" + workPath.resolve("Public"),
+                "-I" + workPath.resolve("Private"),
+                "-I" + includePath,
+                "-I" + stubsPath,
+                "-D" + moduleName.toUpperCase() + "_API="));
+
+        if (clang)
+        {
+            // The trace is named after the output file
+            command.addAll(asList("-ferror-limit=10", "-ftime-trace", "-o", tracePath.resolve("unit.o").toString()));
+            try (final Stream<Path> traces = Files.list(tracePath))
+            {
+                for (final Path trace : traces.collect(toList()))
+                    Files.delete(trace);
+            }
+        }
+        else
+        {
+            command.addAll(asList("-fmax-errors=10", "-ftime-report"));
+        }
+
+        command.addAll(extraFlags);
+        command.add(workPath.resolve(unit.file).toString());
+
+        final long start = nanoTime();
+        final String output = run(tracePath, command.toArray(new String[0]));
+
+        final Result result = new Result();
+        result.unit = unit;
+        result.wallMs = (nanoTime() - start) / 1.0e6;
+
+        final Matcher errors = error.matcher(output);
+        while (errors.find())
+        {
+            if (result.errors++ == 0)
+                result.firstError = errors.group().trim();
+        }
+
+        if (clang)
+            readTrace(result, tracePath);
+        else
+            readTimeReport(result, output);
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void readTrace(final Result result, final Path tracePath) throws IOException
+    {
+        final List<Path> traces;
+        try (final Stream<Path> files = Files.list(tracePath))
+        {
+            traces = files.filter(p -> p.toString().endsWith(".json")).collect(toList());
+        }
+
+        if (traces.isEmpty())
+            throw new RuntimeException("The compiler hasn't written a time trace into " + tracePath);
+
+        // JSON is a subset of YAML
+        final Map<String, Object> trace;
+        try (final InputStream stream = Files.newInputStream(traces.get(0)))
+        {
+            trace = (Map<String, Object>) new Yaml(new SafeConstructor()).load(stream);
+        }
+
+        for (final Map<String, Object> event : (List<Map<String, Object>>) trace.get("traceEvents"))
+        {
+            final Object name = event.get("name");
+            final Object duration = event.get("dur");
+            if (isNull(duration))
+                continue;
+
+            final double ms = ((Number) duration).doubleValue() / 1000.0;
+            if ("Total Frontend".equals(name))
+                result.frontendMs = ms;
+            else if ("Total InstantiateClass".equals(name) || "Total InstantiateFunction".equals(name))
+                result.instantiationMs += ms;
+        }
+    }
+
+    private static void readTimeReport(final Result result, final String output)
+    {
+        // ' template instantiation :   0.01 ( 25%)   0.00 (  0%)   0.02 ( 28%)  2346k ( 15%)' - usr, sys, wall
+        final Matcher matcher = gccTimeVar.matcher(output);
+        while (matcher.find())
+        {
+            final String[] times = matcher.group(2).replaceAll("\\([^)]*\\)", " ").trim().split("\\s+");
+            if (times.length < 3)
+                continue;
+
+            final double ms = Double.parseDouble(times[2]) * 1000.0;
+            if ("TOTAL".equals(matcher.group(1)))
+                result.frontendMs = ms;
+            else
+                result.instantiationMs = ms;
+        }
+    }
+
+    private void logSummary(final List<Result> results, final int slowest)
+    {
+        log.info(format("Stub headers alone: %.1f ms front end (%.1f ms parsing, %.1f ms instantiation)",
+                stubs.frontendMs, stubs.getParseMs(), stubs.instantiationMs));
+        if (stubs.errors > 0)
+            log.warn("Stub headers have failed to compile: {}", stubs.firstError);
+
+        log.info(format("Total: %.1f ms wall, %.1f ms front end, %.1f ms parsing, %.1f ms instantiation",
+                sum(results, r -> r.wallMs), sum(results, r -> r.frontendMs), sum(results, Result::getParseMs),
+                sum(results, r -> r.instantiationMs)));
+
+        final int numSlowest = Math.min(slowest, results.size());
+        if (numSlowest > 0)
+            log.info("{} slowest files (by the front end time):", numSlowest);
+
+        for (final Result r : results.subList(0, numSlowest))
+        {
+            log.info(format("%10.1f ms %s (%.1f ms parsing, %.1f ms instantiation)", r.frontendMs, r.unit.file,
+                    r.getParseMs(), r.instantiationMs));
+        }
+
+        final List<Result> failed = results.stream().filter(r -> r.errors > 0).collect(toList());
+        if (!failed.isEmpty())
+        {
+            log.warn("{} of {} files have failed to compile, their times are incomplete:", failed.size(),
+                    results.size());
+            failed.forEach(r -> log.warn("{}: {}", r.unit.file, r.firstError));
+        }
+    }
+
+    private String toJson(final List<Result> results, final int files, final int iterations)
+    {
+        final JsonWriter json = new JsonWriter(true)
+            .beginObject()
+            .name("compiler").value(version)
+            .name("protos").value(files)
+            .name("iterations").value(iterations)
+            .name("stubs_frontend_ms").value(round(stubs.frontendMs))
+            .name("stubs_instantiation_ms").value(round(stubs.instantiationMs))
+            .name("wall_ms").value(round(sum(results, r -> r.wallMs)))
+            .name("frontend_ms").value(round(sum(results, r -> r.frontendMs)))
+            .name("parse_ms").value(round(sum(results, Result::getParseMs)))
+            .name("instantiation_ms").value(round(sum(results, r -> r.instantiationMs)))
+            .name("failed").value(results.stream().filter(r -> r.errors > 0).count())
+            .name("by_file").beginArray();
+
+        for (final Result r : results)
+        {
+            json.beginObject()
+                .name("file").value(r.unit.file)
+                .name("proto").value(r.unit.proto)
+                .name("kind").value(r.unit.kind.toString())
+                .name("wall_ms").value(round(r.wallMs))
+                .name("frontend_ms").value(round(r.frontendMs))
+                .name("parse_ms").value(round(r.getParseMs()))
+                .name("instantiation_ms").value(round(r.instantiationMs))
+                .name("errors").value(r.errors);
+
+            if (nonNull(r.firstError))
+                json.name("first_error").value(r.firstError);
+
+            json.endObject();
+        }
+
+        return json.endArray().endObject().toString();
+    }
+
+    /**
+     * Runs a process and waits for it.
+     *
+     * @return Standard output and error of the process.
+     */
+    private static String run(final Path directory, final String... command)
+    {
+        try
+        {
+            final Process process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .start();
+
+            final String output = IOUtils.toString(process.getInputStream(), UTF_8);
+            process.waitFor();
+
+            return output;
+        }
+        catch (IOException | InterruptedException e)
+        {
+            throw new RuntimeException("Failed to run '" + command[0] + "'", e);
+        }
+    }
+
+    private static String findCompiler() throws ParseException
+    {
+        final String[] directories = System.getenv().getOrDefault("PATH", "").split(File.pathSeparator);
+        for (final String compiler : new String[] {"clang++", "g++", "c++"})
+        {
+            for (final String directory : directories)
+            {
+                if (Files.isExecutable(get(directory, compiler)))
+                    return compiler;
+            }
+        }
+
+        throw new ParseException("Neither of clang++, g++ or c++ is found, specify a compiler with -compiler");
+    }
+
+    private static Path getStubsResource()
+    {
+        final URL url = CompileBenchmark.class.getResource(stubsResource);
+        if (isNull(url) || !"file".equals(url.getProtocol()))
+            throw new RuntimeException("Stub headers aren't found on the classpath, specify them with -stubs");
+
+        try
+        {
+            return get(url.toURI());
+        }
+        catch (URISyntaxException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeFile(final Path path, final String content)
+    {
+        try
+        {
+            createDirectories(path.getParent());
+            write(path, content.getBytes(UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static double median(final List<Result> results, final ToDoubleFunction<Result> metric)
+    {
+        final double[] values = results.stream().mapToDouble(metric).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static double sum(final List<Result> results, final ToDoubleFunction<Result> metric)
+    {
+        return results.stream().mapToDouble(metric).sum();
+    }
+
+    private static double round(final double ms)
+    {
+        return Math.round(ms * 10.0) / 10.0;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.convert.Converter;
+import com.vizor.unreal.convert.DependencyGraphs;
+import com.vizor.unreal.convert.InMemoryProtoSource;
+import com.vizor.unreal.convert.ProtoSource;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.protoc.DescriptorSource;
+import com.vizor.unreal.util.Tuple;
+import com.vizor.unreal.writer.OutputSink;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Converts every file of an in-memory tree, where {@link Cornerstone#generate} doesn't fit: with a profiler, with
+ * dependency graphs, from protoc descriptors or from a source, built in advance.
+ *
+ * Conversions.convert(context, CorpusGenerator.builder().build().generate(), new InMemorySink(), profiler);
+ */
+public final class Conversions
+{
+    private Conversions()
+    {
+    }
+
+    /**
+     * @param context Settings of the conversion.
+     * @param sources Contents of proto files by their relative paths, e.g. 'game/player.proto'.
+     * @param sink Receives the generated files.
+     * @param profiler Measures the conversion, {@link Profiler#none} if nothing is measured.
+     */
+    public static void convert(final GenerationContext context, final Map<String, String> sources,
+                               final OutputSink sink, final Profiler profiler)
+    {
+        convert(context, new InMemoryProtoSource(sources), sink, profiler);
+    }
+
+    /**
+     * @param context Settings of the conversion.
+     * @param sources Contents of proto files by their relative paths, e.g. 'game/player.proto'.
+     * @param sink Receives the generated files.
+     * @param graphs Receives the import graph and type-reference graphs of the files.
+     */
+    public static void convert(final GenerationContext context, final Map<String, String> sources,
+                               final OutputSink sink, final DependencyGraphs graphs)
+    {
+        final InMemoryProtoSource source = new InMemoryProtoSource(sources);
+        convert(context, source, source.getRoot(), source.getPaths(), sink, Profiler.none, graphs);
+    }
+
+    /**
+     * @param context Settings of the conversion.
+     * @param source Proto files.
+     * @param sink Receives the generated files.
+     * @param profiler Measures the conversion, {@link Profiler#none} if nothing is measured.
+     */
+    public static void convert(final GenerationContext context, final InMemoryProtoSource source,
+                               final OutputSink sink, final Profiler profiler)
+    {
+        convert(context, source, source.getRoot(), source.getPaths(), sink, profiler, null);
+    }
+
+    /**
+     * @param context Settings of the conversion.
+     * @param source Linked files of a descriptor set.
+     * @param sink Receives the generated files.
+     * @param profiler Measures the conversion, {@link Profiler#none} if nothing is measured.
+     */
+    public static void convert(final GenerationContext context, final DescriptorSource source,
+                               final OutputSink sink, final Profiler profiler)
+    {
+        convert(context, source, source.getRoot(), source.getPaths(), sink, profiler, null);
+    }
+
+    private static void convert(final GenerationContext context, final ProtoSource source, final Path root,
+                                final List<Path> files, final OutputSink sink, final Profiler profiler,
+                                final DependencyGraphs graphs)
+    {
+        final List<Tuple<Path, DestinationConfig>> paths = files.stream()
+            .map(p -> Tuple.of(p, context.getDstPath()))
+            .collect(toList());
+
+        new Converter(singletonList(context), source, sink, profiler, graphs).convert(root, paths);
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.convert.Converter;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.util.Tuple;
+import com.vizor.unreal.writer.CheckingSink;
+import com.vizor.unreal.writer.FileSystemSink;
+import com.vizor.unreal.writer.HashingSink;
+import com.vizor.unreal.writer.InMemorySink;
+import com.vizor.unreal.writer.SizeReport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.walk;
+import static java.nio.file.Files.write;
+import static java.nio.file.Paths.get;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CornerstoneTest
+{
+    private static final GenerationContext context = GenerationContext.builder()
+        .setModuleName("Test")
+        .setCompanyName("Vizor")
+        .setThreads(2)
+        .build();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Map<String, String> getSources()
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("common/types.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package common;",
+            "message Point { int32 x = 1; int32 y = 2; }"
+        ));
+
+        sources.put("game/locator.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "import \"common/types.proto\";",
+            "message Request { string name = 1; }",
+            "service Locator { rpc Locate (Request) returns (common.Point); }"
+        ));
+
+        return sources;
+    }
+
+    @Test
+    public void testGenerateInMemory()
+    {
+        final Map<String, String> files = Cornerstone.generate(context, getSources());
+
+        assertEquals(asList(
+            "Private/common/types/Types.cpp",
+            "Private/common/types/TypesCasts.cpp",
+            "Private/common/types/TypesCasts.h",
+            "Private/game/locator/Locator.cpp",
+            "Private/game/locator/LocatorCasts.cpp",
+            "Private/game/locator/LocatorCasts.h",
+            "Public/common/types/Types.h",
+            "Public/game/locator/Locator.h"
+        ), asList(files.keySet().toArray()));
+
+        assertTrue(files.get("Public/game/locator/Locator.h").contains("FTypes_Point"));
+        assertTrue(files.get("Public/game/locator/Locator.h").contains("Vizor|RPC Requests|Locator"));
+    }
+
+    @Test
+    public void testPackageNamespaces()
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("game/lobby.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game.lobby;",
+            "message Player { string name = 1; }",
+            "message Room { Player owner = 1; repeated Player players = 2; }",
+            "service Rooms { rpc Join (Player) returns (Room); }"
+        ));
+
+        sources.put("loose.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "message Loose { int32 x = 1; }"
+        ));
+
+        final Map<String, String> files = Cornerstone.generate(context, sources);
+
+        // Package 'game.lobby' is namespace 'game::lobby' in both types and stubs
+        final String casts = files.get("Private/game/lobby/LobbyCasts.h");
+        assertTrue(casts.contains("game::lobby::Room Proto_Cast(const FLobby_Room& InItem)"));
+        assertTrue(casts.contains("Proto_PtrArrayCast<game::lobby::Player>(InItem.Players)"));
+
+        final String source = files.get("Private/game/lobby/Lobby.cpp");
+        assertTrue(source.contains("TStubbedRpcWorker<game::lobby::Rooms::Stub>"));
+        assertTrue(source.contains("AsyncRequest<FLobby_Player, game::lobby::Player, FLobby_Room, game::lobby::Room>"));
+        assertTrue(source.contains("Stub = game::lobby::Rooms::NewStub(Channel);"));
+
+        files.forEach((path, content) -> assertFalse(path, content.contains("game.lobby")));
+
+        // Types of a file without a package aren't qualified at all
+        final String looseCasts = files.get("Private/loose/LooseCasts.h");
+        assertTrue(looseCasts.contains("FLoose_Loose Proto_Cast(const Loose& InItem)"));
+        assertTrue(looseCasts.contains("Loose OutItem;"));
+        assertFalse(looseCasts.contains("::Loose"));
+    }
+
+    @Test
+    public void testOneofsKeepOwnAlternatives()
+    {
+        final Map<String, String> sources = new HashMap<>();
+        sources.put("game/shop.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "message Coins { int32 amount = 1; }",
+            "message Offer {",
+            "    oneof price { int32 gems = 1; Coins coins = 2; }",
+            "    oneof reward { string item = 3; bool badge = 4; }",
+            "}",
+            "message Deal { oneof bonus { float discount = 1; int64 points = 2; } }"
+        ));
+
+        final Map<String, String> files = Cornerstone.generate(context, sources);
+
+        // Each variant lists only alternatives of its own oneof, be it in the same message or in another one
+        final String header = files.get("Public/game/shop/Shop.h");
+        assertTrue(header.contains("TVariant<int32, FShop_Coins> Price;"));
+        assertTrue(header.contains("TVariant<FString, bool> Reward;"));
+        assertTrue(header.contains("TVariant<float, int64> Bonus;"));
+
+        final String casts = files.get("Private/game/shop/ShopCasts.h");
+        assertTrue(casts.contains("case game::Offer::PriceCase::kCoins:"));
+        assertTrue(casts.contains("case game::Offer::RewardCase::kItem:"));
+        assertTrue(casts.contains("OutItem.set_gems(Proto_Cast<google::protobuf::int32>(InItem.Price.Get<int32>()));"));
+        assertTrue(casts.contains("OutItem.set_item(Proto_Cast<std::string>(InItem.Reward.Get<FString>()));"));
+
+        // Variant names of other oneofs must not leak in either
+        for (final String alien : asList("PriceCase::kItem", "PriceCase::kDiscount", "RewardCase::kGems",
+                "RewardCase::kPoints", "BonusCase::kCoins", "BonusCase::kBadge", "InItem.Reward.Get<int32>",
+                "InItem.Bonus.Get<FString>"))
+        {
+            assertFalse(alien, casts.contains(alien));
+        }
+    }
+
+    @Test
+    public void testGenerateIsRepeatable()
+    {
+        assertEquals(Cornerstone.generate(context, getSources()), Cornerstone.generate(context, getSources()));
+    }
+
+    @Test
+    public void testHashingSink()
+    {
+        final HashingSink sink = new HashingSink();
+        Cornerstone.generate(context, getSources(), emptyList(), sink);
+
+        final Map<String, String> files = Cornerstone.generate(context, getSources());
+        assertEquals(files.keySet(), sink.getDigests().keySet());
+
+        files.forEach((path, content) ->
+            assertEquals(HashingSink.digest(content.getBytes(UTF_8)), sink.getDigests().get(path))
+        );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSizeReport()
+    {
+        final InMemorySink files = new InMemorySink();
+        final SizeReport sizes = new SizeReport(files, context.getDstPath());
+        Cornerstone.generate(context, getSources(), emptyList(), sizes);
+
+        final Map<String, Object> report = (Map<String, Object>) new Yaml(new SafeConstructor()).load(sizes.toJson());
+        assertEquals(2, report.get("protos"));
+
+        final long bytes = files.getFiles().values().stream().mapToLong(c -> c.length).sum();
+        assertEquals(bytes, ((Number) report.get("bytes")).longValue());
+
+        // The locator includes headers of the types, so it's heavier
+        final List<Map<String, Object>> byProto = (List<Map<String, Object>>) report.get("by_proto");
+        final Map<String, Object> locator = byProto.get(0);
+        final Map<String, Object> types = byProto.get(1);
+
+        assertEquals("game/locator.proto", locator.get("proto"));
+        assertEquals(2, locator.get("fan_out"));
+        assertEquals(0, locator.get("fan_in"));
+        assertEquals(1, locator.get("delegates"));
+        assertEquals("Locator.h", ((Map<String, Object>) locator.get("header")).get("file"));
+        assertEquals("LocatorCasts.cpp", ((Map<String, Object>) locator.get("casts_source")).get("file"));
+
+        assertEquals("common/types.proto", types.get("proto"));
+        assertEquals(0, types.get("fan_out"));
+        assertEquals(1, types.get("fan_in"));
+        assertEquals(2, types.get("uproperties"));
+        assertEquals(2, types.get("casts"));
+    }
+
+    @Test
+    public void testSeveralModules()
+    {
+        final GenerationContext other = GenerationContext.builder()
+            .setModuleName("Other")
+            .setCompanyName("Acme")
+            .setDstPath(new DestinationConfig(get("Other", "Public"), get("Other", "Private")))
+            .build();
+
+        final Map<String, String> both = Cornerstone.generate(asList(context, other), getSources());
+        final Map<String, String> single = Cornerstone.generate(context, getSources());
+
+        assertEquals(16, both.size());
+        single.forEach((path, content) -> assertEquals(content, both.get(path)));
+
+        final String otherHeader = both.get("Other/Public/game/locator/Locator.h");
+        assertTrue(otherHeader.contains("OTHER_API"));
+        assertTrue(otherHeader.contains("Acme|RPC Requests|Locator"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownTarget()
+    {
+        Cornerstone.generate(context, getSources(), asList("missing.proto"), (path, content) -> {});
+    }
+
+    @Test
+    public void testTargetsOfUnnormalizedRoot()
+    {
+        // Walker yields paths as they were given, e.g. './protos/game/a.proto'
+        final Path srcPath = get("./protos");
+        final List<Tuple<Path, DestinationConfig>> paths = Stream.of("game/a.proto", "game/b.proto")
+            .map(p -> Tuple.of(srcPath.resolve(p), context.getDstPath()))
+            .collect(toList());
+
+        final List<Tuple<Path, DestinationConfig>> relative = Converter.selectTargets(srcPath, paths,
+                singletonList("game/a.proto"), p -> "");
+        assertEquals(singletonList(paths.get(0)), relative);
+
+        final String absolute = get("protos/game/b.proto").toAbsolutePath().toString();
+        final List<Tuple<Path, DestinationConfig>> selected = Converter.selectTargets(srcPath, paths,
+                singletonList(absolute), p -> "");
+        assertEquals(singletonList(paths.get(1)), selected);
+    }
+
+    @Test
+    public void testDepfiles()
+    {
+        final GenerationContext withDepfiles = GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setDepfiles(true)
+            .setDependencies(singletonList(get("config.yml")))
+            .build();
+
+        final Map<String, String> files = Cornerstone.generate(withDepfiles, getSources());
+        final Map<String, String> plain = Cornerstone.generate(context, getSources());
+
+        assertEquals(plain.size() + 2, files.size());
+        plain.forEach((path, content) -> assertEquals(content, files.get(path)));
+
+        final String[] lines = files.get("Private/game/locator.d").split("\\R");
+        assertEquals(4, lines.length);
+
+        final List<String> targets = asList(lines[0].substring(0, lines[0].length() - 3).split(" "));
+        assertEquals(4, targets.size());
+        assertTrue(targets.contains("Public/game/locator/Locator.h"));
+        assertTrue(targets.contains("Private/game/locator/Locator.cpp"));
+
+        assertTrue(lines[1].trim().endsWith("game/locator.proto \\"));
+        assertTrue(lines[2].trim().endsWith("common/types.proto \\"));
+        assertEquals("config.yml", lines[3].trim());
+    }
+
+    @Test
+    public void testOutputCache() throws IOException
+    {
+        final Path cacheDir = temporaryFolder.newFolder("cornerstone-cache").toPath();
+        final GenerationContext cached = GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setCacheDir(cacheDir)
+            .build();
+
+        final Map<String, String> plain = Cornerstone.generate(context, getSources());
+        assertEquals(plain, Cornerstone.generate(cached, getSources()));
+        assertEquals(plain, Cornerstone.generate(cached, getSources()));
+
+        // Tamper with every cached file to make sure that the files are actually restored from the cache
+        final List<Path> cachedFiles;
+        try (final Stream<Path> files = walk(cacheDir))
+        {
+            cachedFiles = files.filter(p -> p.getFileName().toString().matches("\\d+")).collect(toList());
+        }
+
+        assertEquals(plain.size(), cachedFiles.size());
+        for (final Path f : cachedFiles)
+            write(f, "// cached".getBytes(UTF_8));
+
+        Cornerstone.generate(cached, getSources()).values().forEach(c -> assertEquals("// cached", c));
+
+        // A change of a file invalidates the files, which import it
+        final Map<String, String> changed = getSources();
+        changed.put("common/types.proto", changed.get("common/types.proto") + "\nmessage Size { int32 w = 1; }");
+
+        Cornerstone.generate(cached, changed).values().forEach(c -> assertTrue(!c.equals("// cached")));
+
+        // Everything is evicted, once the cache is over its size
+        Cornerstone.generate(GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setCacheDir(cacheDir)
+            .setCacheSize(1)
+            .build(), getSources());
+
+        try (final Stream<Path> files = walk(cacheDir))
+        {
+            assertEquals(0, files.filter(p -> p.getFileName().toString().equals("manifest")).count());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCachedFilesAreNotParsed() throws IOException
+    {
+        final GenerationContext cached = GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setCacheDir(temporaryFolder.newFolder("cornerstone-parsed").toPath())
+            .build();
+
+        Cornerstone.generate(cached, getSources());
+
+        final Profiler profiler = new Profiler();
+        final InMemorySink sink = new InMemorySink();
+        Conversions.convert(cached, getSources(), sink, profiler);
+
+        assertEquals(Cornerstone.generate(context, getSources()), sink.getContents());
+
+        // Costs of files, restored from the cache aren't estimated, so no file is even read by the registry
+        final Map<String, Object> profile = (Map<String, Object>) new Yaml(new SafeConstructor())
+            .load(profiler.toJson());
+
+        assertEquals(0, profile.get("files"));
+    }
+
+    @Test
+    public void testOutputIsUtf8() throws IOException
+    {
+        final Path dst = temporaryFolder.newFolder("cornerstone-utf8").toPath();
+        final GenerationContext onDisk = GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setDstPath(new DestinationConfig(dst.resolve("Public"), dst.resolve("Private")))
+            .build();
+
+        final Map<String, String> sources = new HashMap<>();
+        sources.put("game/shop.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "message Price {",
+            "    // Amount in \u20ac, gr\u00f6\u00dfer als null",
+            "    int32 amount = 1;",
+            "}"
+        ));
+
+        Cornerstone.generate(onDisk, sources, emptyList(), new FileSystemSink());
+
+        // Whatever the default charset is
+        final byte[] header = readAllBytes(dst.resolve("Public/game/shop/Shop.h"));
+        assertTrue(new String(header, UTF_8).contains("Amount in \u20ac, gr\u00f6\u00dfer als null"));
+    }
+
+    @Test
+    public void testCheckingSink() throws IOException
+    {
+        final Path dst = temporaryFolder.newFolder("cornerstone-check").toPath();
+        final GenerationContext onDisk = GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setDstPath(new DestinationConfig(dst.resolve("Public"), dst.resolve("Private")))
+            .build();
+
+        Cornerstone.generate(onDisk, getSources(), emptyList(), new FileSystemSink());
+
+        final CheckingSink upToDate = new CheckingSink();
+        Cornerstone.generate(onDisk, getSources(), emptyList(), upToDate);
+
+        assertTrue(upToDate.getStale().isEmpty());
+        assertEquals(8, upToDate.getDigests().size());
+
+        final Path header = dst.resolve("Public/game/locator/Locator.h");
+        write(header, "// edited".getBytes(UTF_8));
+
+        final CheckingSink edited = new CheckingSink();
+        Cornerstone.generate(onDisk, getSources(), emptyList(), edited);
+
+        assertEquals(singletonList(header), edited.getStale());
+        assertEquals("size differs", edited.getReason(header));
+        assertEquals("// edited", new String(readAllBytes(header), UTF_8));
+
+        // An edit, which keeps the size, is found too
+        Cornerstone.generate(onDisk, getSources(), emptyList(), new FileSystemSink());
+
+        final byte[] restored = readAllBytes(header);
+        restored[restored.length / 2] ^= 1;
+        write(header, restored);
+
+        final CheckingSink sameSize = new CheckingSink();
+        Cornerstone.generate(onDisk, getSources(), emptyList(), sameSize);
+
+        assertEquals(singletonList(header), sameSize.getStale());
+        assertEquals("content differs", sameSize.getReason(header));
+    }
+}
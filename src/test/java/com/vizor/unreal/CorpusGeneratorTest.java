@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.util.CorpusGenerator;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CorpusGeneratorTest
+{
+    private static final GenerationContext context = GenerationContext.builder()
+        .setModuleName("Corpus")
+        .setCompanyName("Vizor")
+        .setThreads(2)
+        .build();
+
+    private static CorpusGenerator.Builder everything()
+    {
+        return CorpusGenerator.builder()
+            .setFiles(40)
+            .setHubs(3)
+            .setFanOut(4)
+            .setDiamondRate(0.5)
+            .setMessagesPerFile(4)
+            .setFieldsPerMessage(10)
+            .setNestedTypes(1)
+            .setEnumsPerFile(2)
+            .setMapRate(0.2)
+            .setOneofRate(0.1)
+            .setRepeatedRate(0.2)
+            .setMessageFieldRate(0.5)
+            .setServicesPerFile(1)
+            .setRpcsPerService(3);
+    }
+
+    @Test
+    public void testReproducible()
+    {
+        assertEquals(everything().setSeed(7).build().generate(), everything().setSeed(7).build().generate());
+        assertFalse(everything().setSeed(7).build().generate().equals(everything().setSeed(8).build().generate()));
+    }
+
+    @Test
+    public void testConvertible()
+    {
+        final Map<String, String> sources = everything().setSeed(42).build().generate();
+        assertEquals(40, sources.size());
+
+        assertTrue(sources.values().stream().anyMatch(s -> s.contains("map<")));
+        assertTrue(sources.values().stream().anyMatch(s -> s.contains("oneof ")));
+        assertTrue(sources.values().stream().anyMatch(s -> s.contains("import \"corpus/")));
+
+        // Each file gets a header, a source, casts and a client, since every file has a service
+        final Map<String, String> generated = Cornerstone.generate(context, sources);
+        assertTrue(generated.size() >= 4 * sources.size());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.convert.DependencyGraphs;
+import com.vizor.unreal.writer.InMemorySink;
+import org.junit.Before;
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyGraphsTest
+{
+    private static final GenerationContext context = GenerationContext.builder()
+        .setModuleName("Test")
+        .setCompanyName("Vizor")
+        .setThreads(2)
+        .build();
+
+    private final DependencyGraphs graphs = new DependencyGraphs();
+
+    @Before
+    public void setUp()
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        // A diamond: 'top' imports 'base' through both 'left' and 'right'
+        sources.put("diamond/base.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package diamond;",
+            "message Id { int64 value = 1; }"
+        ));
+
+        sources.put("diamond/left.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package diamond;",
+            "import \"diamond/base.proto\";",
+            "message Left { Id id = 1; }"
+        ));
+
+        sources.put("diamond/right.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package diamond;",
+            "import \"diamond/base.proto\";",
+            "message Right { Id id = 1; }"
+        ));
+
+        sources.put("diamond/top.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package diamond;",
+            "import \"diamond/left.proto\";",
+            "import \"diamond/right.proto\";",
+            "message Leaf { int32 x = 1; }",
+            "message Branch { Leaf leaf = 1; }",
+            "message Top { Left left = 1; Right right = 2; Branch branch = 3; }"
+        ));
+
+        // A cycle of imports
+        sources.put("cycle/ping.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package cycle;",
+            "import \"cycle/pong.proto\";",
+            "message Ping { Pong pong = 1; }"
+        ));
+
+        sources.put("cycle/pong.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package cycle;",
+            "import \"cycle/ping.proto\";",
+            "message Pong { int32 x = 1; }"
+        ));
+
+        Conversions.convert(context, sources, new InMemorySink(), graphs);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testJson()
+    {
+        final Map<String, Object> json = (Map<String, Object>) new Yaml(new SafeConstructor()).load(graphs.toJson());
+
+        final Map<String, Object> imports = (Map<String, Object>) json.get("imports");
+        assertEquals(6, imports.get("nodes"));
+        assertEquals(singletonList(asList("cycle/ping.proto", "cycle/pong.proto")), imports.get("cycles"));
+
+        // The widest invalidation radius goes first
+        final List<Map<String, Object>> importNodes = (List<Map<String, Object>>) imports.get("by_node");
+        assertEquals("diamond/base.proto", importNodes.get(0).get("id"));
+
+        // Edges lead from a file to its imports, the shared import is counted once
+        final Map<String, Map<String, Object>> files = byId(importNodes);
+        assertNode(files.get("diamond/base.proto"), 0, 3, emptyList());
+        assertNode(files.get("diamond/left.proto"), 1, 1, singletonList("diamond/base.proto"));
+        assertNode(files.get("diamond/right.proto"), 1, 1, singletonList("diamond/base.proto"));
+        assertNode(files.get("diamond/top.proto"), 3, 0, asList("diamond/left.proto", "diamond/right.proto"));
+        assertNode(files.get("cycle/ping.proto"), 1, 1, singletonList("cycle/pong.proto"));
+        assertNode(files.get("cycle/pong.proto"), 1, 1, singletonList("cycle/ping.proto"));
+
+        // Files of a cycle share a component, others have their own
+        assertEquals(files.get("cycle/ping.proto").get("scc"), files.get("cycle/pong.proto").get("scc"));
+        assertEquals(5L, importNodes.stream().map(n -> n.get("scc")).distinct().count());
+        assertNotEquals(files.get("diamond/left.proto").get("scc"), files.get("diamond/right.proto").get("scc"));
+
+        // Edges lead from a message to messages of the same file, used by its fields
+        final Map<String, Object> types = (Map<String, Object>) json.get("types");
+        assertEquals(8, types.get("nodes"));
+        assertEquals(emptyList(), types.get("cycles"));
+
+        final Map<String, Map<String, Object>> messages = byId((List<Map<String, Object>>) types.get("by_node"));
+        assertNode(messages.get("diamond/top.proto#FTop_Top"), 2, 0, singletonList("diamond/top.proto#FTop_Branch"));
+        assertNode(messages.get("diamond/top.proto#FTop_Branch"), 1, 1, singletonList("diamond/top.proto#FTop_Leaf"));
+        assertNode(messages.get("diamond/top.proto#FTop_Leaf"), 0, 2, emptyList());
+        assertNode(messages.get("cycle/ping.proto#FPing_Ping"), 0, 0, emptyList());
+        assertNode(messages.get("diamond/base.proto#FBase_Id"), 0, 0, emptyList());
+    }
+
+    @Test
+    public void testDot()
+    {
+        final List<String> lines = asList(graphs.toDot().split("\\R"));
+        final List<String> trimmed = lines.stream().map(String::trim).collect(toList());
+
+        assertEquals("digraph dependencies {", lines.get(0));
+        assertEquals("}", lines.get(lines.size() - 1));
+
+        // Edges lead from a file to its imports
+        assertTrue(trimmed.contains("\"diamond/top.proto\" -> \"diamond/left.proto\";"));
+        assertTrue(trimmed.contains("\"diamond/top.proto\" -> \"diamond/right.proto\";"));
+        assertTrue(trimmed.contains("\"diamond/left.proto\" -> \"diamond/base.proto\";"));
+        assertTrue(trimmed.contains("\"cycle/ping.proto\" -> \"cycle/pong.proto\";"));
+        assertTrue(trimmed.contains("\"cycle/pong.proto\" -> \"cycle/ping.proto\";"));
+        assertFalse(trimmed.contains("\"diamond/base.proto\" -> \"diamond/left.proto\";"));
+        assertTrue(trimmed.contains("\"diamond/top.proto#FTop_Top\" -> \"diamond/top.proto#FTop_Branch\";"));
+
+        // Only nodes of a cycle are red
+        for (final String line : trimmed)
+        {
+            if (line.contains(" [label="))
+                assertEquals(line, line.startsWith("\"cycle/ping.proto\"") || line.startsWith("\"cycle/pong.proto\""),
+                        line.contains("color=red"));
+        }
+
+        assertTrue(trimmed.contains("\"diamond/base.proto\" [label=\"diamond/base.proto\\n3 dependents, " +
+                "0 dependencies\"];"));
+
+        // Imports have a cluster of their own, messages are clustered by their files
+        assertTrue(trimmed.contains("subgraph cluster_imports {"));
+        assertTrue(trimmed.contains("subgraph cluster_types {"));
+        assertEquals(6, trimmed.stream().filter(l -> l.matches("subgraph cluster_types_\\d+ \\{")).count());
+
+        final int top = trimmed.indexOf("label=\"diamond/top.proto\";");
+        assertTrue(top > 0);
+        assertEquals(asList(
+            "\"diamond/top.proto#FTop_Leaf\" [label=\"FTop_Leaf\\n2 dependents, 0 dependencies\"];",
+            "\"diamond/top.proto#FTop_Branch\" [label=\"FTop_Branch\\n1 dependents, 1 dependencies\"];",
+            "\"diamond/top.proto#FTop_Top\" [label=\"FTop_Top\\n0 dependents, 2 dependencies\"];"
+        ), trimmed.subList(top + 1, top + 4));
+    }
+
+    private static Map<String, Map<String, Object>> byId(final List<Map<String, Object>> nodes)
+    {
+        return nodes.stream().collect(toMap(n -> (String) n.get("id"), n -> n));
+    }
+
+    private static void assertNode(final Map<String, Object> node, final int dependencies, final int dependents,
+                                   final List<String> edges)
+    {
+        assertEquals(node.get("id").toString(), dependencies, node.get("dependencies"));
+        assertEquals(node.get("id").toString(), dependents, node.get("dependents"));
+        assertEquals(node.get("id").toString(), edges, node.get("edges"));
+    }
+}
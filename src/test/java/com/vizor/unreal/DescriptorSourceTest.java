@@ -0,0 +1,216 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.squareup.wire.FieldEncoding;
+import com.squareup.wire.ProtoWriter;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.protoc.DescriptorSource;
+import com.vizor.unreal.writer.InMemorySink;
+import okio.Buffer;
+import okio.ByteString;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static okio.ByteString.encodeUtf8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DescriptorSourceTest
+{
+    private static final GenerationContext context = GenerationContext.builder()
+        .setModuleName("Test")
+        .setCompanyName("Vizor")
+        .setThreads(1)
+        .build();
+
+    // FieldDescriptorProto.Type and Label
+    private static final int int32 = 5;
+    private static final int string = 9;
+    private static final int message = 11;
+    private static final int optional = 1;
+    private static final int repeated = 3;
+
+    private static Map<String, String> getSources()
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("common/types.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package common;",
+            "message Point { int32 x = 1; int32 y = 2; }",
+            "message Outer { message Inner { int32 v = 1; } Inner inner = 1; }",
+            "message Route { repeated Point points = 1; map<string, int32> tags = 2; }"
+        ));
+
+        sources.put("game/locator.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "import \"common/types.proto\";",
+            "message Request { string name = 1; }",
+            "service Locator { rpc Locate (Request) returns (common.Point); }"
+        ));
+
+        return sources;
+    }
+
+    // The same files, as 'protoc --include_imports --descriptor_set_out' would produce them
+    private static byte[] getDescriptorSet()
+    {
+        final ByteString types = new Proto()
+            .string(1, "common/types.proto")
+            .string(2, "common")
+            .message(4, new Proto()
+                .string(1, "Point")
+                .message(2, field("x", 1, optional, int32, null))
+                .message(2, field("y", 2, optional, int32, null)))
+            .message(4, new Proto()
+                .string(1, "Outer")
+                .message(2, field("inner", 1, optional, message, ".common.Outer.Inner"))
+                .message(3, new Proto()
+                    .string(1, "Inner")
+                    .message(2, field("v", 1, optional, int32, null))))
+            .message(4, new Proto()
+                .string(1, "Route")
+                .message(2, field("points", 1, repeated, message, ".common.Point"))
+                .message(2, field("tags", 2, repeated, message, ".common.Route.TagsEntry"))
+                .message(3, new Proto()
+                    .string(1, "TagsEntry")
+                    .message(2, field("key", 1, optional, string, null))
+                    .message(2, field("value", 2, optional, int32, null))
+                    .message(7, new Proto().varint(7, 1))))
+            .string(12, "proto3")
+            .build();
+
+        final ByteString locator = new Proto()
+            .string(1, "game/locator.proto")
+            .string(2, "game")
+            .string(3, "common/types.proto")
+            .message(4, new Proto()
+                .string(1, "Request")
+                .message(2, field("name", 1, optional, string, null)))
+            .message(6, new Proto()
+                .string(1, "Locator")
+                .message(2, new Proto()
+                    .string(1, "Locate")
+                    .string(2, ".game.Request")
+                    .string(3, ".common.Point")))
+            .string(12, "proto3")
+            .build();
+
+        return new Proto().bytes(1, types).bytes(1, locator).build().toByteArray();
+    }
+
+    private static Proto field(final String name, final int number, final int label, final int type,
+                               final String typeName)
+    {
+        final Proto field = new Proto()
+            .string(1, name)
+            .varint(3, number)
+            .varint(4, label)
+            .varint(5, type);
+
+        return (typeName != null) ? field.string(6, typeName) : field;
+    }
+
+    private static Map<String, String> generate(final DescriptorSource source)
+    {
+        final InMemorySink sink = new InMemorySink();
+        Conversions.convert(context, source, sink, Profiler.none);
+
+        return sink.getContents();
+    }
+
+    @Test
+    public void testSameAsText()
+    {
+        final Map<String, String> fromText = Cornerstone.generate(context, getSources());
+        final Map<String, String> fromDescriptors = generate(DescriptorSource.fromDescriptorSet(getDescriptorSet()));
+
+        assertEquals(fromText.keySet(), fromDescriptors.keySet());
+        fromText.forEach((path, content) -> assertEquals(path, content, fromDescriptors.get(path)));
+
+        final String types = fromDescriptors.get("Public/common/types/Types.h");
+        assertTrue(types.contains("FTypes_Outer_Inner"));
+        assertTrue(types.contains("TMap<FString, int32>"));
+    }
+
+    @Test
+    public void testPackageNames() throws IOException
+    {
+        final DescriptorSource source = DescriptorSource.fromDescriptorSet(getDescriptorSet());
+
+        assertEquals(2, source.getPaths().size());
+        assertEquals("common", source.getPackageName(source.getRoot().resolve("common/types.proto")));
+        assertEquals("game", source.getPackageName(source.getRoot().resolve("game/locator.proto")));
+    }
+
+    private static final class Proto
+    {
+        private final Buffer buffer = new Buffer();
+        private final ProtoWriter writer = new ProtoWriter(buffer);
+
+        Proto string(final int tag, final String value)
+        {
+            return bytes(tag, encodeUtf8(value));
+        }
+
+        Proto message(final int tag, final Proto value)
+        {
+            return bytes(tag, value.build());
+        }
+
+        Proto bytes(final int tag, final ByteString value)
+        {
+            try
+            {
+                writer.writeTag(tag, FieldEncoding.LENGTH_DELIMITED);
+                writer.writeVarint32(value.size());
+                writer.writeBytes(value);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            return this;
+        }
+
+        Proto varint(final int tag, final int value)
+        {
+            try
+            {
+                writer.writeTag(tag, FieldEncoding.VARINT);
+                writer.writeVarint32(value);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            return this;
+        }
+
+        ByteString build()
+        {
+            return buffer.readByteString();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.Config;
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.util.CorpusGenerator;
+import com.vizor.unreal.writer.InMemorySink;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Paths.get;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Output must not depend on the number of threads, on the order files are finished in, or on the run, otherwise
+ * neither the cache nor 'check' mode could rely on it. Every run is compared with a serial one byte by byte.
+ */
+public class DeterminismTest
+{
+    private static Map<String, String> corpus;
+    private static Map<String, byte[]> serial;
+
+    @BeforeClass
+    public static void setUp()
+    {
+        // Clients of many RPCs, whose conduits and delegates are generated separately
+        corpus = CorpusGenerator.builder()
+            .setFiles(200)
+            .setServicesPerFile(2)
+            .setRpcsPerService(6)
+            .setSeed(7)
+            .build()
+            .generate();
+
+        serial = convert(context(1, 0));
+        assertFalse(serial.isEmpty());
+    }
+
+    @Test
+    public void testNoFork()
+    {
+        final Config config = Config.read(new ByteArrayInputStream(("module_name: 'Test'\n" +
+                "company_name: 'Vizor'\n" +
+                "dst_public_path: 'Public'\n" +
+                "dst_private_path: 'Private'\n" +
+                "wrappers_path: 'Wrappers'\n" +
+                "threads: 4\n" +
+                "no_fork: true\n").getBytes(UTF_8)));
+
+        final GenerationContext noFork = GenerationContext.fromConfig(config);
+        assertEquals(1, noFork.getThreads());
+
+        config.setNoFork(false);
+        final GenerationContext fork = GenerationContext.fromConfig(config);
+        assertEquals(4, fork.getThreads());
+
+        assertEqualOutput(convert(noFork), convert(fork));
+    }
+
+    @Test
+    public void testThreads()
+    {
+        for (final int threads : new int[] {2, 3, 8})
+            assertEqualOutput(serial, convert(context(threads, 0)));
+    }
+
+    @Test
+    public void testRepeatedRuns()
+    {
+        for (int i = 0; i < 3; i++)
+            assertEqualOutput(serial, convert(context(8, 0)));
+    }
+
+    @Test
+    public void testBoundedCache()
+    {
+        // Evicted files are parsed again and files are scheduled in a different order
+        assertEqualOutput(serial, convert(context(4, 16)));
+    }
+
+    @Test
+    public void testConduitsPairedWithDelegates()
+    {
+        // Responses of each conduit must be broadcast by the event of the same RPC
+        final Pattern dequeue = Pattern.compile(
+                "while \\((\\w+)Conduit\\.Dequeue\\(\\w+\\)\\)\\s+Event(\\w+)\\.Broadcast");
+
+        int numPairs = 0;
+        for (final Map.Entry<String, byte[]> file : serial.entrySet())
+        {
+            final Matcher matcher = dequeue.matcher(new String(file.getValue(), UTF_8));
+            while (matcher.find())
+            {
+                assertEquals(file.getKey(), matcher.group(1), matcher.group(2));
+                numPairs++;
+            }
+        }
+
+        assertTrue(numPairs > 0);
+    }
+
+    private static GenerationContext context(final int threads, final int protoCacheSize)
+    {
+        return GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setDstPath(new DestinationConfig(get("Public"), get("Private")))
+            .setThreads(threads)
+            .setProtoCacheSize(protoCacheSize)
+            .build();
+    }
+
+    private static Map<String, byte[]> convert(final GenerationContext context)
+    {
+        final InMemorySink sink = new InMemorySink();
+        Conversions.convert(context, corpus, sink, Profiler.none);
+
+        return sink.getFiles();
+    }
+
+    private static void assertEqualOutput(final Map<String, byte[]> expected, final Map<String, byte[]> actual)
+    {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((path, contents) -> assertArrayEquals(path, contents, actual.get(path)));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.util.FileWalker;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.isReadable;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.walk;
+import static java.nio.file.Files.write;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class FileWalkerTest
+{
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        root = temporaryFolder.newFolder("protos").toPath();
+
+        for (final String file : asList(
+            "common/types.proto",
+            "game/lobby.proto",
+            "game/lobby_test.proto",
+            "game/readme.txt",
+            "game/match/rules.PROTO",
+            "game/internal/secret.proto",
+            "third_party/google/any.proto",
+            "tools/gen.proto"))
+        {
+            create(file);
+        }
+    }
+
+    @Test
+    public void testIncludesAndExcludes()
+    {
+        final FileWalker walker = new FileWalker(root, "proto", asList("game/**", "common/*.proto"),
+                asList("game/internal/**", "**/*_test.proto"));
+
+        assertEquals(asList(
+            "common/types.proto",
+            "game/lobby.proto",
+            "game/match/rules.PROTO"
+        ), relativize(walker.walk()));
+    }
+
+    @Test
+    public void testExtension()
+    {
+        // Case of the extension doesn't matter, other files are skipped
+        assertEquals(asList(
+            "common/types.proto",
+            "game/internal/secret.proto",
+            "game/lobby.proto",
+            "game/lobby_test.proto",
+            "game/match/rules.PROTO",
+            "third_party/google/any.proto",
+            "tools/gen.proto"
+        ), relativize(new FileWalker(root, "proto", emptyList(), emptyList()).walk()));
+
+        assertEquals(asList("game/readme.txt"),
+                relativize(new FileWalker(root, "txt", emptyList(), emptyList()).walk()));
+    }
+
+    @Test
+    public void testExcludedDirectoriesArentListed() throws IOException
+    {
+        final Path thirdParty = root.resolve("third_party");
+        assumeTrue(thirdParty.toFile().setReadable(false) && !isReadable(thirdParty));
+
+        try
+        {
+            // The directory can't be listed, so it's found only if the walker tries to
+            try
+            {
+                new FileWalker(root, "proto", emptyList(), emptyList()).walk();
+                fail("An unreadable directory must fail the walk");
+            }
+            catch (RuntimeException expected)
+            {
+                // The setup works as intended
+            }
+
+            final List<String> found = relativize(new FileWalker(root, "proto", emptyList(),
+                    asList("third_party/**")).walk());
+
+            assertEquals(6, found.size());
+        }
+        finally
+        {
+            thirdParty.toFile().setReadable(true);
+        }
+    }
+
+    @Test
+    public void testSameAsSerialWalk() throws IOException
+    {
+        // Wide and deep enough to be split between workers
+        for (int i = 0; i < 16; i++)
+        {
+            for (int j = 0; j < 8; j++)
+            {
+                create("wide/d" + i + "/s" + j + "/m" + j + ".proto");
+                create("wide/d" + i + "/s" + j + "/excluded/m" + j + ".proto");
+                create("wide/d" + i + "/f" + j + ".proto");
+            }
+        }
+
+        final List<String> includes = asList("wide/**", "game/**");
+        final List<String> excludes = asList("**/excluded/**", "**/f7.proto");
+
+        final List<String> parallel = relativize(new FileWalker(root, "proto", includes, excludes).walk());
+        final List<String> serial = walkSerially(includes, excludes);
+
+        assertEquals(16 * 15 + 4, parallel.size());
+        assertEquals(serial, parallel);
+    }
+
+    private void create(final String file) throws IOException
+    {
+        final Path path = root.resolve(file);
+
+        createDirectories(path.getParent());
+        write(path, "syntax = \"proto3\";".getBytes(UTF_8));
+    }
+
+    private List<String> relativize(final List<Path> paths)
+    {
+        return paths.stream()
+            .map(p -> root.relativize(p).toString().replace('\\', '/'))
+            .collect(toList());
+    }
+
+    private List<String> walkSerially(final List<String> includes, final List<String> excludes) throws IOException
+    {
+        final List<PathMatcher> includeMatchers = toMatchers(includes);
+        final List<PathMatcher> excludeMatchers = toMatchers(excludes);
+
+        try (final Stream<Path> files = walk(root))
+        {
+            return files
+                .filter(p -> isRegularFile(p) && p.getFileName().toString().toLowerCase().endsWith("proto"))
+                .map(root::relativize)
+                .filter(p -> includeMatchers.stream().anyMatch(m -> m.matches(p)))
+                .filter(p -> excludeMatchers.stream().noneMatch(m -> m.matches(p)))
+                .map(p -> p.toString().replace('\\', '/'))
+                .sorted()
+                .collect(toList());
+        }
+    }
+
+    private List<PathMatcher> toMatchers(final List<String> globs)
+    {
+        return globs.stream()
+            .map(g -> root.getFileSystem().getPathMatcher("glob:" + g))
+            .collect(toList());
+    }
+}
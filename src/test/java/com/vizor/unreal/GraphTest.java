@@ -20,10 +20,14 @@ import com.vizor.unreal.util.Graph.GraphHasCyclesException;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.shuffle;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -86,4 +90,37 @@ public class GraphTest
         // Should throw a GraphHasCyclesException exception
         graph.topologySort();
     }
+
+    @Test
+    public void testComponentsAndClosures()
+    {
+        final Graph<Integer> graph = new Graph<>(1, 2, 3, 4, 5, 6);
+
+        // 2, 3 and 4 form a cycle, reachable from 1 and leading to 5, while 6 is on its own
+        graph.addEdge(1, 2);
+        graph.addEdge(2, 3);
+        graph.addEdge(3, 4);
+        graph.addEdge(4, 2);
+        graph.addEdge(4, 5);
+        graph.addEdge(4, 5);
+
+        final List<List<Integer>> components = graph.getStronglyConnectedComponents();
+        assertEquals(4, components.size());
+
+        // Components go in reverse topological order
+        assertEquals(singletonList(5), components.get(0));
+        assertEquals(asList(2, 3, 4), components.get(1).stream().sorted().collect(toList()));
+        assertEquals(singletonList(1), components.get(2));
+        assertEquals(singletonList(6), components.get(3));
+
+        final Map<Integer, Integer> closures = graph.getClosureSizes();
+        assertEquals(asList(4, 3, 3, 3, 0, 0), asList(1, 2, 3, 4, 5, 6).stream().map(closures::get).collect(toList()));
+
+        final Map<Integer, Integer> reverseClosures = graph.transpose().getClosureSizes();
+        assertEquals(asList(0, 3, 3, 3, 4, 0),
+                asList(1, 2, 3, 4, 5, 6).stream().map(reverseClosures::get).collect(toList()));
+
+        // Duplicate edges are listed once
+        assertEquals(5, graph.getEdges().size());
+    }
 }
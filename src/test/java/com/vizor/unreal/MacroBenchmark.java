@@ -0,0 +1,546 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.convert.InMemoryProtoSource;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.util.CorpusGenerator;
+import com.vizor.unreal.util.JsonWriter;
+import com.vizor.unreal.writer.OutputSink;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+import static com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION;
+import static com.vizor.unreal.util.Misc.stringIsNullOrEmpty;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Double.parseDouble;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.exit;
+import static java.lang.System.nanoTime;
+import static java.lang.management.ManagementFactory.getGarbageCollectorMXBeans;
+import static java.lang.management.ManagementFactory.getMemoryPoolMXBeans;
+import static java.lang.management.ManagementFactory.getOperatingSystemMXBean;
+import static java.lang.management.MemoryType.HEAP;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.write;
+import static java.nio.file.Paths.get;
+import static java.util.stream.Collectors.toList;
+import static org.apache.logging.log4j.LogManager.getLogger;
+import static org.apache.logging.log4j.core.config.Configurator.setLevel;
+
+/**
+ * An end-to-end benchmark: converts synthetic trees (see {@link CorpusGenerator}) of several sizes, both serially and
+ * in parallel, and reports wall time, CPU time of the process, peak heap and allocated bytes of each run as JSON.
+ *
+ * Given a baseline (a report of an earlier run on the same machine), fails with a non-zero exit code if any run has
+ * regressed past the thresholds. A baseline, recorded with another JVM, number of processors or heap size can't be
+ * compared with, so it fails the run as well. Without a baseline the run fails too, unless it's explicitly recording
+ * one. Run it with 'mvn -P macro-benchmark verify', see the profile in pom.xml.
+ *
+ * Allocated bytes are taken from the garbage collector: bytes freed by every collection during the run plus the
+ * growth of the heap. Unlike per-thread counters, this also covers the worker threads, which are gone by the end of
+ * the run.
+ */
+public final class MacroBenchmark
+{
+    private static final Logger log = getLogger(MacroBenchmark.class);
+
+    private static final String serial = "serial";
+    private static final String parallel = "parallel";
+
+    private static final class Result
+    {
+        private int files;
+        private String mode;
+        private int threads;
+        private int outputs;
+
+        private long wallNanos;
+        private long cpuNanos;
+        private long peakHeapBytes;
+        private long allocatedBytes;
+    }
+
+    private static final class Thresholds
+    {
+        private double maxTimeRegression;
+        private double maxMemoryRegression;
+        private double minTimeDeltaMs;
+    }
+
+    /**
+     * Counts generated files and drops their content, so that the outputs don't pile up in the heap.
+     */
+    private static final class CountingSink implements OutputSink
+    {
+        private final AtomicLong files = new AtomicLong();
+
+        @Override
+        public void write(final Path path, final byte[] content)
+        {
+            files.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sums bytes, freed by garbage collections. Notifications arrive asynchronously, so the results are read only
+     * after all collections are accounted.
+     */
+    private static final class GcAccounting
+    {
+        private final List<GarbageCollectorMXBean> collectors = getGarbageCollectorMXBeans();
+        private final long baseCount = countCollections();
+
+        private final AtomicLong notified = new AtomicLong();
+        private final AtomicLong freedBytes = new AtomicLong();
+
+        GcAccounting()
+        {
+            final NotificationListener listener = (notification, handback) -> {
+                if (!GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+                    return;
+
+                final GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+
+                // Net change over all pools: objects, promoted from one pool to another, aren't freed
+                final Map<String, MemoryUsage> before = info.getGcInfo().getMemoryUsageBeforeGc();
+                final Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+
+                long freed = 0;
+                for (final Map.Entry<String, MemoryUsage> e : before.entrySet())
+                    freed += e.getValue().getUsed() - after.get(e.getKey()).getUsed();
+
+                freedBytes.addAndGet(freed);
+                notified.incrementAndGet();
+            };
+
+            collectors.forEach(c -> ((NotificationEmitter) c).addNotificationListener(listener, null, null));
+        }
+
+        /**
+         * @return Bytes, freed by all collections since the last call.
+         */
+        long takeFreedBytes()
+        {
+            final long deadline = currentTimeMillis() + 10_000;
+            while ((notified.get() < countCollections() - baseCount) && (currentTimeMillis() < deadline))
+                sleep();
+
+            return freedBytes.getAndSet(0);
+        }
+
+        private long countCollections()
+        {
+            return collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        }
+
+        private static void sleep()
+        {
+            try
+            {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private final List<MemoryPoolMXBean> heapPools = getMemoryPoolMXBeans().stream()
+        .filter(p -> p.getType() == HEAP)
+        .collect(toList());
+
+    private final GcAccounting gcAccounting = new GcAccounting();
+
+    public static void main(String[] args)
+    {
+        final Options options = new Options()
+            .addOption("sizes", true, "Comma separated numbers of proto files to convert (default 200,1000,3000)")
+            .addOption("threads", true, "Number of threads of the parallel runs (default 4)")
+            .addOption("warmups", true, "Number of unmeasured runs of each size and mode (default 2)")
+            .addOption("iterations", true, "Number of measured runs of each size and mode, medians are reported " +
+                    "(default 3)")
+            .addOption("seed", true, "Seed of the generated trees (default 42)")
+            .addOption("report", true, "Path to write the JSON report to")
+            .addOption("baseline", true, "Path to a report to compare against, required unless -record is true")
+            .addOption("record", true, "If true, only writes the report to be used as a baseline, nothing is " +
+                    "compared (default false)")
+            .addOption("max_time_regression", true, "Allowed relative growth of wall and CPU time (default 0.25)")
+            .addOption("max_memory_regression", true, "Allowed relative growth of peak heap and allocated bytes " +
+                    "(default 0.15)")
+            .addOption("min_time_delta", true, "Time growth in milliseconds, which is considered to be noise " +
+                    "(default 50)");
+
+        try
+        {
+            final CommandLine cmd = new PosixParser().parse(options, args);
+
+            final int[] sizes = Arrays.stream(cmd.getOptionValue("sizes", "200,1000,3000").split(","))
+                .mapToInt(s -> parseInt(s.trim()))
+                .toArray();
+            final int threads = parseInt(cmd.getOptionValue("threads", "4"));
+            final int warmups = parseInt(cmd.getOptionValue("warmups", "2"));
+            final int iterations = parseInt(cmd.getOptionValue("iterations", "3"));
+            final long seed = parseLong(cmd.getOptionValue("seed", "42"));
+
+            if ((threads < 2) || (warmups < 0) || (iterations < 1) || Arrays.stream(sizes).anyMatch(s -> s < 1))
+                throw new ParseException("Sizes, iterations must be positive, threads must be at least 2");
+
+            // The profile passes an empty path unless a baseline is given. A run, which compares nothing, can't fail
+            // the build, so it's only allowed when a baseline is being recorded on purpose.
+            final String baselinePath = cmd.getOptionValue("baseline");
+            final boolean record = parseBoolean(cmd.getOptionValue("record", "false"));
+
+            if (stringIsNullOrEmpty(baselinePath) == !record)
+            {
+                throw new ParseException(record ? "A baseline is being recorded, thus can't be given" :
+                        "A baseline is required. Record one on this machine with -record true and pass it with " +
+                        "-baseline");
+            }
+
+            if (record && !cmd.hasOption("report"))
+                throw new ParseException("A baseline is being recorded, thus a report path is required");
+
+            final Thresholds thresholds = new Thresholds();
+            thresholds.maxTimeRegression = parseDouble(cmd.getOptionValue("max_time_regression", "0.25"));
+            thresholds.maxMemoryRegression = parseDouble(cmd.getOptionValue("max_memory_regression", "0.15"));
+            thresholds.minTimeDeltaMs = parseDouble(cmd.getOptionValue("min_time_delta", "50"));
+
+            // Converter logs every file, which isn't a part of the measurement
+            setLevel(Main.class.getPackage().getName(), Level.WARN);
+            setLevel(MacroBenchmark.class.getName(), Level.INFO);
+
+            final List<Result> results = new MacroBenchmark().run(sizes, threads, warmups, iterations, seed);
+            final String report = toJson(results);
+
+            if (cmd.hasOption("report"))
+            {
+                final Path reportPath = get(cmd.getOptionValue("report")).toAbsolutePath();
+                createDirectories(reportPath.getParent());
+                write(reportPath, report.getBytes(UTF_8));
+                log.info("Report is written to {}", reportPath);
+            }
+
+            if (!record)
+            {
+                final Map<String, Object> baseline = readBaseline(get(baselinePath));
+
+                // Timings of another machine or JVM say nothing about this one, passing or failing would be accidental
+                if (!checkEnvironment(baseline))
+                {
+                    log.error("Baseline {} can't be compared with", baselinePath);
+                    exit(1);
+                }
+
+                if (!compare(results, baseline, thresholds))
+                {
+                    log.error("Performance has regressed against {}", baselinePath);
+                    exit(1);
+                }
+            }
+            else
+            {
+                log.info("The report is recorded as a baseline, nothing is compared");
+            }
+        }
+        catch (ParseException | NumberFormatException e)
+        {
+            new HelpFormatter().printHelp("java -cp <test classpath> " + MacroBenchmark.class.getName() +
+                    " [options]", e.getMessage(), options, "");
+            exit(1);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<Result> run(final int[] sizes, final int threads, final int warmups, final int iterations,
+                             final long seed)
+    {
+        final List<Result> results = new ArrayList<>();
+
+        for (final int size : sizes)
+        {
+            final InMemoryProtoSource source = new InMemoryProtoSource(CorpusGenerator.builder()
+                .setFiles(size)
+                .setServicesPerFile(1)
+                .setSeed(seed)
+                .build()
+                .generate());
+
+            for (final String mode : new String[] {serial, parallel})
+            {
+                final int numThreads = serial.equals(mode) ? 1 : threads;
+                final GenerationContext context = GenerationContext.builder()
+                    .setModuleName("Corpus")
+                    .setCompanyName("Vizor")
+                    .setThreads(numThreads)
+                    .build();
+
+                for (int i = 0; i < warmups; i++)
+                    measure(context, source);
+
+                final List<Result> measured = new ArrayList<>(iterations);
+                for (int i = 0; i < iterations; i++)
+                    measured.add(measure(context, source));
+
+                final Result result = new Result();
+                result.files = size;
+                result.mode = mode;
+                result.threads = numThreads;
+                result.outputs = measured.get(0).outputs;
+                result.wallNanos = median(measured, r -> r.wallNanos);
+                result.cpuNanos = median(measured, r -> r.cpuNanos);
+                result.peakHeapBytes = median(measured, r -> r.peakHeapBytes);
+                result.allocatedBytes = median(measured, r -> r.allocatedBytes);
+
+                log.info("{} files, {} ({} threads): {} ms wall, {} ms CPU, {} MB peak heap, {} MB allocated",
+                        size, mode, numThreads, toMillis(result.wallNanos), toMillis(result.cpuNanos),
+                        toMegabytes(result.peakHeapBytes), toMegabytes(result.allocatedBytes));
+
+                results.add(result);
+            }
+        }
+
+        return results;
+    }
+
+    private Result measure(final GenerationContext context, final InMemoryProtoSource source)
+    {
+        // Start from a clean heap, garbage of the previous run doesn't count
+        System.gc();
+        gcAccounting.takeFreedBytes();
+
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        final long heapBefore = getUsedHeap();
+
+        final CountingSink sink = new CountingSink();
+        final long cpuStart = getProcessCpuTime();
+        final long wallStart = nanoTime();
+
+        Conversions.convert(context, source, sink, Profiler.none);
+
+        final Result result = new Result();
+        result.wallNanos = nanoTime() - wallStart;
+        result.cpuNanos = getProcessCpuTime() - cpuStart;
+        result.peakHeapBytes = heapPools.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+        result.outputs = (int) sink.files.get();
+
+        // Collect the garbage of this run to account it as freed
+        System.gc();
+        result.allocatedBytes = gcAccounting.takeFreedBytes() + getUsedHeap() - heapBefore;
+
+        return result;
+    }
+
+    private long getUsedHeap()
+    {
+        return heapPools.stream().mapToLong(p -> p.getUsage().getUsed()).sum();
+    }
+
+    private static long getProcessCpuTime()
+    {
+        final OperatingSystemMXBean os = getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+
+        return 0;
+    }
+
+    private static long median(final List<Result> results, final ToLongFunction<Result> metric)
+    {
+        final long[] values = results.stream().mapToLong(metric).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static String toJson(final List<Result> results)
+    {
+        final JsonWriter json = new JsonWriter(true)
+            .beginObject()
+            .name("java").value(System.getProperty("java.version"))
+            .name("processors").value(Runtime.getRuntime().availableProcessors())
+            .name("max_heap_bytes").value(Runtime.getRuntime().maxMemory())
+            .name("runs").beginArray();
+
+        for (final Result r : results)
+        {
+            json.beginObject()
+                .name("files").value(r.files)
+                .name("mode").value(r.mode)
+                .name("threads").value(r.threads)
+                .name("outputs").value(r.outputs)
+                .name("wall_ms").value(toMillis(r.wallNanos))
+                .name("cpu_ms").value(toMillis(r.cpuNanos))
+                .name("peak_heap_bytes").value(r.peakHeapBytes)
+                .name("allocated_bytes").value(r.allocatedBytes)
+                .endObject();
+        }
+
+        return json.endArray().endObject().toString();
+    }
+
+    /**
+     * Compares the results with a baseline report, runs of other sizes or modes are ignored.
+     *
+     * @return True if no run has regressed.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean compare(final List<Result> results, final Map<String, Object> baseline,
+                                   final Thresholds thresholds)
+    {
+        final Map<String, Map<String, Object>> baselineRuns = new HashMap<>();
+        for (final Map<String, Object> run : (List<Map<String, Object>>) baseline.get("runs"))
+            baselineRuns.put(getKey(((Number) run.get("files")).intValue(), (String) run.get("mode")), run);
+
+        boolean passed = true;
+        for (final Result r : results)
+        {
+            final String key = getKey(r.files, r.mode);
+            final Map<String, Object> base = baselineRuns.get(key);
+            if (base == null)
+            {
+                log.warn("Baseline has no run of {}", key);
+                continue;
+            }
+
+            if (((Number) base.get("threads")).intValue() != r.threads)
+                log.warn("Baseline run of {} used {} threads, not {}", key, base.get("threads"), r.threads);
+
+            passed &= checkTime(key, "wall time", toMillis(r.wallNanos), base.get("wall_ms"), thresholds);
+            passed &= checkTime(key, "CPU time", toMillis(r.cpuNanos), base.get("cpu_ms"), thresholds);
+            passed &= checkMemory(key, "peak heap", r.peakHeapBytes, base.get("peak_heap_bytes"), thresholds);
+            passed &= checkMemory(key, "allocated bytes", r.allocatedBytes, base.get("allocated_bytes"), thresholds);
+        }
+
+        return passed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readBaseline(final Path path) throws IOException
+    {
+        // JSON is a subset of YAML
+        return (Map<String, Object>) new Yaml(new SafeConstructor()).load(new String(readAllBytes(path), UTF_8));
+    }
+
+    /**
+     * @return True if the baseline was recorded with the same Java version, number of processors and heap size.
+     */
+    private static boolean checkEnvironment(final Map<String, Object> baseline)
+    {
+        final String java = System.getProperty("java.version");
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final long maxHeap = Runtime.getRuntime().maxMemory();
+
+        final Object baseJava = baseline.get("java");
+        final Object baseProcessors = baseline.get("processors");
+        final Object baseMaxHeap = baseline.get("max_heap_bytes");
+
+        if (java.equals(String.valueOf(baseJava)) && (baseProcessors instanceof Number) &&
+                ((Number) baseProcessors).intValue() == processors && (baseMaxHeap instanceof Number) &&
+                ((Number) baseMaxHeap).longValue() == maxHeap)
+        {
+            return true;
+        }
+
+        log.error("Baseline was recorded with java {} on {} processors with {} bytes of heap, this run is java {} on " +
+                "{} processors with {} bytes of heap. Record a baseline on this machine with the same settings",
+                baseJava, baseProcessors, baseMaxHeap, java, processors, maxHeap);
+
+        return false;
+    }
+
+    private static boolean checkTime(final String key, final String metric, final double current,
+                                     final Object baseline, final Thresholds thresholds)
+    {
+        final double base = ((Number) baseline).doubleValue();
+        final boolean regressed = (current > base * (1.0 + thresholds.maxTimeRegression)) &&
+                (current - base > thresholds.minTimeDeltaMs);
+
+        return report(key, metric, format("%.1f ms", current), format("%.1f ms", base), current, base, regressed);
+    }
+
+    private static boolean checkMemory(final String key, final String metric, final long current,
+                                       final Object baseline, final Thresholds thresholds)
+    {
+        final double base = ((Number) baseline).doubleValue();
+        final boolean regressed = current > base * (1.0 + thresholds.maxMemoryRegression);
+
+        return report(key, metric, format("%.1f MB", current / 1048576.0), format("%.1f MB", base / 1048576.0),
+                current, base, regressed);
+    }
+
+    private static boolean report(final String key, final String metric, final String currentText,
+                                  final String baseText, final double current, final double base,
+                                  final boolean regressed)
+    {
+        final String change = (base > 0) ? format("%+.1f%%", (current - base) / base * 100.0) : "n/a";
+        if (regressed)
+            log.error("{}: {} has regressed, {} against {} ({})", key, metric, currentText, baseText, change);
+        else
+            log.info("{}: {} {} against {} ({})", key, metric, currentText, baseText, change);
+
+        return !regressed;
+    }
+
+    private static String getKey(final int files, final String mode)
+    {
+        return files + " files, " + mode;
+    }
+
+    private static double toMillis(final long nanos)
+    {
+        return Math.round(nanos / 1.0e5) / 10.0;
+    }
+
+    private static long toMegabytes(final long bytes)
+    {
+        return bytes >> 20;
+    }
+}
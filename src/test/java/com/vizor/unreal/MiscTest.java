@@ -15,6 +15,7 @@
  */
 package com.vizor.unreal;
 
+import com.vizor.unreal.util.JsonWriter;
 import com.vizor.unreal.util.Misc;
 import org.junit.Test;
 
@@ -231,4 +232,30 @@ public class MiscTest
             assertEquals(nTabs, sb.toString());
         }
     }
+
+    @Test
+    public void testJsonWriter()
+    {
+        final String compact = new JsonWriter(false)
+            .beginObject()
+            .name("name").value("a \"quoted\"\n\u0001")
+            .name("numbers").beginArray().value(1).value(2.5).endArray()
+            .name("empty").beginObject().endObject()
+            .name("flag").value(true)
+            .endObject()
+            .toString();
+
+        assertEquals("{\"name\":\"a \\\"quoted\\\"\\n\\u0001\",\"numbers\":[1,2.5],\"empty\":{}," +
+                "\"flag\":true}", compact);
+
+        final String pretty = new JsonWriter(true).beginArray().value("x").beginObject().name("y").value(0)
+            .endObject().endArray().toString();
+        assertEquals("[\n  \"x\",\n  {\n    \"y\": 0\n  }\n]", pretty);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testJsonWriterMisuse()
+    {
+        new JsonWriter(false).beginObject().value(1);
+    }
 }
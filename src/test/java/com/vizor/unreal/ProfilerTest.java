@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.profile.Phase;
+import com.vizor.unreal.profile.Profiler;
+import com.vizor.unreal.util.CorpusGenerator;
+import com.vizor.unreal.writer.InMemorySink;
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProfilerTest
+{
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPhases()
+    {
+        final GenerationContext context = GenerationContext.builder()
+            .setModuleName("Test")
+            .setCompanyName("Vizor")
+            .setThreads(1)
+            .build();
+
+        final Profiler profiler = new Profiler();
+        final Map<String, String> corpus = profiler.time(null, Phase.Discovery, () -> CorpusGenerator.builder()
+            .setFiles(20)
+            .setServicesPerFile(1)
+            .build()
+            .generate());
+
+        Conversions.convert(context, corpus, new InMemorySink(), profiler);
+
+        final Map<String, Object> profile = (Map<String, Object>) new Yaml(new SafeConstructor())
+            .load(profiler.toJson());
+
+        assertEquals(20, profile.get("files"));
+
+        // Nested phases (e.g. imports, parsed while resolving) aren't counted twice, so a single thread can't
+        // spend more time than has passed
+        final double wall = ((Number) profile.get("wall_ms")).doubleValue();
+        final double thread = ((Number) profile.get("thread_ms")).doubleValue();
+        assertTrue(thread + " ms of thread time within " + wall + " ms", thread <= wall + 0.01);
+
+        if (Profiler.isAllocationMeasured())
+            assertTrue(((Number) profile.get("allocated_bytes")).longValue() > 0);
+
+        // Every phase is reported, even if it's too short to be seen in milliseconds, as discovery here
+        final Map<String, Map<String, Object>> phases = (Map<String, Map<String, Object>>) profile.get("phases");
+        for (final Phase phase : Phase.values())
+        {
+            assertTrue(phase.getKey(), phases.containsKey(phase.getKey()));
+            assertTrue(phase.getKey(), ((Number) phases.get(phase.getKey()).get("total_ms")).doubleValue() >= 0);
+        }
+
+        assertTrue(thread > 0);
+
+        // Discovery isn't a phase of any file
+        assertFalse(phases.get(Phase.Discovery.getKey()).containsKey("p50_ms"));
+
+        final List<Map<String, Object>> byFile = (List<Map<String, Object>>) profile.get("by_file");
+        for (int i = 1; i < byFile.size(); i++)
+        {
+            assertTrue(((Number) byFile.get(i - 1).get("total_ms")).doubleValue() >=
+                    ((Number) byFile.get(i).get("total_ms")).doubleValue());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTrace()
+    {
+        final Profiler profiler = new Profiler(true);
+        final Path file = Paths.get("game", "lobby.proto");
+
+        profiler.time(file, Phase.Imports, () -> profiler.start(Paths.get("common.proto"), Phase.Parse).close());
+
+        final Map<String, Object> trace = (Map<String, Object>) new Yaml(new SafeConstructor())
+            .load(profiler.toTrace());
+
+        final List<Map<String, Object>> spans = ((List<Map<String, Object>>) trace.get("traceEvents")).stream()
+            .filter(e -> "X".equals(e.get("ph")))
+            .collect(toList());
+
+        assertEquals(2, spans.size());
+
+        // The parent goes first and contains the nested scope
+        final Map<String, Object> parent = spans.get(0);
+        final Map<String, Object> nested = spans.get(1);
+        assertEquals(Phase.Imports.getDisplayName(), parent.get("name"));
+        assertEquals("game/lobby.proto", ((Map<String, Object>) parent.get("args")).get("file"));
+        assertEquals(parent.get("tid"), nested.get("tid"));
+
+        final double start = ((Number) parent.get("ts")).doubleValue();
+        final double nestedStart = ((Number) nested.get("ts")).doubleValue();
+        assertTrue(start <= nestedStart);
+        assertTrue(nestedStart + ((Number) nested.get("dur")).doubleValue() <=
+                start + ((Number) parent.get("dur")).doubleValue());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testScopesOutOfOrder()
+    {
+        final Profiler profiler = new Profiler();
+
+        final Profiler.Scope outer = profiler.start(null, Phase.Discovery);
+        profiler.start(null, Phase.Read);
+
+        outer.close();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.convert.ArchiveProtoSource;
+import com.vizor.unreal.convert.Converter;
+import com.vizor.unreal.convert.ProtoSource;
+import com.vizor.unreal.util.Tuple;
+import com.vizor.unreal.writer.InMemorySink;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.vizor.unreal.util.Misc.findFilesRecursively;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.Files.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProtoSourceTest
+{
+    private static final GenerationContext context = GenerationContext.builder()
+        .setModuleName("Test")
+        .setCompanyName("Vizor")
+        .setThreads(1)
+        .build();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Map<String, String> getSources(final String lineSeparator)
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("common/types.proto", String.join(lineSeparator,
+            "syntax = \"proto3\";",
+            "package common;",
+            "// A point",
+            "// on a plane",
+            "message Point { int32 x = 1; int32 y = 2; }"
+        ));
+
+        sources.put("game/locator.proto", String.join(lineSeparator,
+            "syntax = \"proto3\";",
+            "package game;",
+            "import \"common/types.proto\";",
+            "message Request { string name = 1; }",
+            "service Locator { rpc Locate (Request) returns (common.Point); }"
+        ));
+
+        return sources;
+    }
+
+    @Test
+    public void testLineEndings() throws IOException
+    {
+        final Path file = temporaryFolder.newFolder("cornerstone-source").toPath().resolve("windows.proto");
+        write(file, "// A point\r\n// on a plane\r\nmessage Point {}\r\n".getBytes(UTF_8));
+
+        assertEquals("// A point\n// on a plane\nmessage Point {}\n", ProtoSource.fileSystem.read(file));
+    }
+
+    @Test
+    public void testArchive() throws IOException
+    {
+        final Path archive = temporaryFolder.newFolder("cornerstone-source").toPath().resolve("protos.jar");
+        try (final ZipOutputStream zip = new ZipOutputStream(newOutputStream(archive)))
+        {
+            for (final Map.Entry<String, String> e : getSources("\r\n").entrySet())
+            {
+                zip.putNextEntry(new ZipEntry("proto/" + e.getKey()));
+                zip.write(e.getValue().getBytes(UTF_8));
+                zip.closeEntry();
+            }
+        }
+
+        assertTrue(ArchiveProtoSource.isArchive(archive.toString()));
+        assertTrue(ArchiveProtoSource.isArchive(archive + "!/proto"));
+        assertFalse(ArchiveProtoSource.isArchive(archive.getParent().toString()));
+
+        final Map<String, String> fromArchive;
+        try (final ArchiveProtoSource source = ArchiveProtoSource.open(archive + "!/proto"))
+        {
+            final List<Tuple<Path, DestinationConfig>> paths = findFilesRecursively(source.getRoot(),
+                    context.getDstPath(), "proto");
+            assertEquals(2, paths.size());
+
+            final InMemorySink sink = new InMemorySink();
+            new Converter(context, source, sink).convert(source.getRoot(), paths);
+
+            fromArchive = sink.getContents();
+        }
+
+        // Windows line endings within the archive make no difference
+        assertEquals(Cornerstone.generate(context, getSources("\n")), fromArchive);
+        assertFalse(fromArchive.values().stream().anyMatch(c -> c.contains("plane\r")));
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.squareup.wire.schema.Location;
+import com.squareup.wire.schema.internal.parser.EnumConstantElement;
+import com.squareup.wire.schema.internal.parser.EnumElement;
+import com.squareup.wire.schema.internal.parser.FieldElement;
+import com.squareup.wire.schema.internal.parser.MessageElement;
+import com.squareup.wire.schema.internal.parser.OneOfElement;
+import com.squareup.wire.schema.internal.parser.ProtoFileElement;
+import com.squareup.wire.schema.internal.parser.RpcElement;
+import com.squareup.wire.schema.internal.parser.ServiceElement;
+import com.squareup.wire.schema.internal.parser.TypeElement;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.squareup.wire.schema.Field.Label.REPEATED;
+import static com.squareup.wire.schema.internal.parser.ProtoParser.parse;
+import static com.vizor.unreal.util.Misc.snakeCaseToCamelCase;
+import static java.util.Objects.isNull;
+import static org.apache.commons.io.FilenameUtils.removeExtension;
+
+/**
+ * Writes stubs of the headers protoc and its gRPC plugin generate of proto files, so that code, generated by
+ * Cornerstone, compiles without protobuf and gRPC. Of 'game/lobby.proto' it writes 'Wrappers/game/lobby.pb.h',
+ * 'Wrappers/game/lobby.grpc.pb.h' and the '.hpp' wrappers, including them.
+ *
+ * Only the API, generated code uses, is declared: accessors of fields, oneof cases, enums and stubs of services. It
+ * follows protoc's conventions, so generated code, which wouldn't compile against real headers, doesn't compile
+ * against the stubs either. Functions are declared, but not defined.
+ */
+final class ProtoStubWriter
+{
+    private static final Pattern mapType = Pattern.compile("map\\s*<\\s*([\\w.]+)\\s*,\\s*([\\w.]+)\\s*>");
+
+    private static final Map<String, String> scalarTypes = new HashMap<>();
+    static
+    {
+        scalarTypes.put("double", "double");
+        scalarTypes.put("float", "float");
+        scalarTypes.put("bool", "bool");
+        scalarTypes.put("string", "std::string");
+        scalarTypes.put("bytes", "std::string");
+
+        for (final String type : new String[] {"int32", "sint32", "sfixed32"})
+            scalarTypes.put(type, "::google::protobuf::int32");
+        for (final String type : new String[] {"int64", "sint64", "sfixed64"})
+            scalarTypes.put(type, "::google::protobuf::int64");
+        for (final String type : new String[] {"uint32", "fixed32"})
+            scalarTypes.put(type, "::google::protobuf::uint32");
+        for (final String type : new String[] {"uint64", "fixed64"})
+            scalarTypes.put(type, "::google::protobuf::uint64");
+    }
+
+    private final Map<String, ProtoFileElement> files = new TreeMap<>();
+
+    // C++ names of messages and enums by their full proto names, e.g. 'game.Lobby.Slot' -> '::game::Lobby_Slot'
+    private final Map<String, String> cppNames = new HashMap<>();
+    private final Set<String> enums = new HashSet<>();
+
+    /**
+     * @param sources Contents of proto files by their relative paths, e.g. 'game/lobby.proto'.
+     */
+    ProtoStubWriter(final Map<String, String> sources)
+    {
+        sources.forEach((path, content) -> {
+            final ProtoFileElement file = parse(Location.get(path), content);
+            files.put(path, file);
+
+            final String packageName = isNull(file.packageName()) ? "" : file.packageName();
+            final String cppPrefix = packageName.isEmpty() ? "::" : "::" + packageName.replace(".", "::") + "::";
+
+            file.types().forEach(t -> index(packageName, cppPrefix, t));
+        });
+    }
+
+    /**
+     * @return Contents of the stubs by their paths, relative to an include directory.
+     */
+    Map<String, String> write()
+    {
+        final Map<String, String> stubs = new TreeMap<>();
+
+        files.forEach((path, file) -> {
+            final String stem = "Wrappers/" + removeExtension(path);
+
+            stubs.put(stem + ".pb.h", writeMessages(path, file));
+            stubs.put(stem + ".grpc.pb.h", writeServices(path, file));
+            stubs.put(stem + ".pb.hpp", header(path) + "#include \"" + stem + ".pb.h\"\n");
+            stubs.put(stem + ".grpc.pb.hpp", header(path) + "#include \"" + stem + ".grpc.pb.h\"\n");
+        });
+
+        return stubs;
+    }
+
+    private void index(final String scope, final String cppPrefix, final TypeElement type)
+    {
+        final String name = scope.isEmpty() ? type.name() : scope + '.' + type.name();
+        cppNames.put(name, cppPrefix + type.name());
+
+        if (type instanceof EnumElement)
+            enums.add(name);
+
+        type.nestedTypes().forEach(t -> index(name, cppPrefix + type.name() + '_', t));
+    }
+
+    private String writeMessages(final String path, final ProtoFileElement file)
+    {
+        final StringBuilder sb = new StringBuilder(header(path));
+
+        sb.append("#include <google/protobuf/message.h>\n");
+        file.imports().forEach(i -> sb.append("#include \"Wrappers/").append(removeExtension(i)).append(".pb.h\"\n"));
+        sb.append('\n');
+
+        final String packageName = isNull(file.packageName()) ? "" : file.packageName();
+        openNamespaces(sb, packageName);
+
+        // Messages refer to each other in any order
+        file.types().forEach(t -> declare(sb, packageName, t, false));
+        sb.append('\n');
+
+        file.types().forEach(t -> define(sb, packageName, t));
+
+        closeNamespaces(sb, packageName);
+        return sb.toString();
+    }
+
+    private String writeServices(final String path, final ProtoFileElement file)
+    {
+        final StringBuilder sb = new StringBuilder(header(path));
+
+        sb.append("#include \"Wrappers/").append(removeExtension(path)).append(".pb.h\"\n");
+        sb.append("#include <grpc++/channel.h>\n\n");
+
+        final String packageName = isNull(file.packageName()) ? "" : file.packageName();
+        openNamespaces(sb, packageName);
+
+        for (final ServiceElement service : file.services())
+        {
+            sb.append("class ").append(service.name()).append(" final\n{\npublic:\n");
+            sb.append("    class Stub final\n    {\n    public:\n");
+
+            for (final RpcElement rpc : service.rpcs())
+            {
+                sb.append("        std::unique_ptr< ::grpc::ClientAsyncResponseReader<")
+                    .append(resolve(rpc.responseType(), packageName)).append(">> Async").append(rpc.name())
+                    .append("(::grpc::ClientContext* context, const ").append(resolve(rpc.requestType(), packageName))
+                    .append("& request, ::grpc::CompletionQueue* cq);\n");
+            }
+
+            sb.append("    };\n\n");
+            sb.append("    static std::unique_ptr<Stub> NewStub(")
+                .append("const std::shared_ptr< ::grpc::ChannelInterface>& channel);\n");
+            sb.append("};\n\n");
+        }
+
+        closeNamespaces(sb, packageName);
+        return sb.toString();
+    }
+
+    private void declare(final StringBuilder sb, final String scope, final TypeElement type, final boolean nested)
+    {
+        final String name = scope.isEmpty() ? type.name() : scope + '.' + type.name();
+        final String cppName = localName(name);
+
+        if (type instanceof EnumElement)
+        {
+            // Constants of nested enums are prefixed with the enum's name
+            final String prefix = nested ? cppName + '_' : "";
+
+            sb.append("enum ").append(cppName).append(" : int\n{\n");
+            for (final EnumConstantElement constant : ((EnumElement) type).constants())
+            {
+                sb.append("    ").append(prefix).append(constant.name()).append(" = ").append(constant.tag())
+                    .append(",\n");
+            }
+            sb.append("};\n\n");
+        }
+        else
+        {
+            sb.append("class ").append(cppName).append(";\n");
+        }
+
+        type.nestedTypes().forEach(t -> declare(sb, name, t, true));
+    }
+
+    private void define(final StringBuilder sb, final String scope, final TypeElement type)
+    {
+        final String name = scope.isEmpty() ? type.name() : scope + '.' + type.name();
+        type.nestedTypes().forEach(t -> define(sb, name, t));
+
+        if (!(type instanceof MessageElement))
+            return;
+
+        final MessageElement message = (MessageElement) type;
+        sb.append("class ").append(localName(name)).append(" : public ::google::protobuf::Message\n{\npublic:\n");
+
+        for (final TypeElement nested : message.nestedTypes())
+            sb.append("    typedef ").append(localName(name + '.' + nested.name())).append(' ')
+                .append(nested.name()).append(";\n");
+
+        for (final FieldElement field : message.fields())
+            declareAccessors(sb, name, field);
+
+        for (final OneOfElement oneOf : message.oneOfs())
+        {
+            final String caseName = snakeCaseToCamelCase(oneOf.name()) + "Case";
+
+            sb.append("\n    enum ").append(caseName).append("\n    {\n");
+            for (final FieldElement field : oneOf.fields())
+            {
+                sb.append("        k").append(snakeCaseToCamelCase(field.name())).append(" = ").append(field.tag())
+                    .append(",\n");
+            }
+            sb.append("        ").append(oneOf.name().toUpperCase()).append("_NOT_SET = 0,\n    };\n");
+            accessor(sb, caseName, oneOf.name().toLowerCase() + "_case", "() const");
+
+            for (final FieldElement field : oneOf.fields())
+                declareAccessors(sb, name, field);
+        }
+
+        sb.append("};\n\n");
+    }
+
+    private void declareAccessors(final StringBuilder sb, final String scope, final FieldElement field)
+    {
+        final String name = field.name().toLowerCase();
+        final Matcher map = mapType.matcher(field.type());
+
+        sb.append('\n');
+        if (map.matches())
+        {
+            final String type = "::google::protobuf::Map<" + resolve(map.group(1), scope) + ", " +
+                    resolve(map.group(2), scope) + ">";
+
+            accessor(sb, "const " + type + "&", name, "() const");
+            accessor(sb, type + "*", "mutable_" + name, "()");
+            accessor(sb, "int", name + "_size", "() const");
+        }
+        else if (field.label() == REPEATED)
+        {
+            // Enums are held as ints
+            final String elementType = isEnum(field.type(), scope) ? "int" : resolve(field.type(), scope);
+            final String container = isPointer(field.type(), scope) ? "::google::protobuf::RepeatedPtrField<" :
+                    "::google::protobuf::RepeatedField<";
+
+            accessor(sb, "const " + container + elementType + ">&", name, "() const");
+            accessor(sb, container + elementType + ">*", "mutable_" + name, "()");
+            accessor(sb, "int", name + "_size", "() const");
+        }
+        else if (isPointer(field.type(), scope))
+        {
+            // Strings and messages are held by pointers
+            final String type = resolve(field.type(), scope);
+
+            accessor(sb, "const " + type + "&", name, "() const");
+            accessor(sb, type + "*", "mutable_" + name, "()");
+            accessor(sb, "void", "set_allocated_" + name, "(" + type + "* value)");
+
+            if (scalarTypes.containsKey(field.type()))
+                accessor(sb, "void", "set_" + name, "(const " + type + "& value)");
+            else
+                accessor(sb, "bool", "has_" + name, "() const");
+        }
+        else
+        {
+            final String type = resolve(field.type(), scope);
+
+            accessor(sb, type, name, "() const");
+            accessor(sb, "void", "set_" + name, "(" + type + " value)");
+        }
+    }
+
+    private static void accessor(final StringBuilder sb, final String type, final String name, final String rest)
+    {
+        sb.append("    ").append(type).append(' ').append(name).append(rest).append(";\n");
+    }
+
+    private boolean isEnum(final String type, final String scope)
+    {
+        return !scalarTypes.containsKey(type) && enums.contains(fullName(type, scope));
+    }
+
+    private boolean isPointer(final String type, final String scope)
+    {
+        return type.equals("string") || type.equals("bytes") || (!scalarTypes.containsKey(type) &&
+                !enums.contains(fullName(type, scope)));
+    }
+
+    private String resolve(final String type, final String scope)
+    {
+        final String scalar = scalarTypes.get(type);
+        return (scalar != null) ? scalar : cppNames.get(fullName(type, scope));
+    }
+
+    /**
+     * Looks a type name up the way protoc does: in the scope first, then in the enclosing scopes.
+     */
+    private String fullName(final String type, final String scope)
+    {
+        if (type.startsWith("."))
+            return type.substring(1);
+
+        for (String s = scope; !s.isEmpty(); s = s.contains(".") ? s.substring(0, s.lastIndexOf('.')) : "")
+        {
+            if (cppNames.containsKey(s + '.' + type))
+                return s + '.' + type;
+        }
+
+        if (cppNames.containsKey(type))
+            return type;
+
+        throw new RuntimeException("Unknown type '" + type + "' in '" + scope + "'");
+    }
+
+    private String localName(final String fullName)
+    {
+        final String cppName = cppNames.get(fullName);
+        return cppName.substring(cppName.lastIndexOf("::") + 2);
+    }
+
+    private static String header(final String path)
+    {
+        return "//\n// A stub of the header, generated by protoc of " + path + "\n//\n\n#pragma once\n\n";
+    }
+
+    private static void openNamespaces(final StringBuilder sb, final String packageName)
+    {
+        if (!packageName.isEmpty())
+        {
+            for (final String namespace : packageName.split("\\."))
+                sb.append("namespace ").append(namespace).append(" {\n");
+            sb.append('\n');
+        }
+    }
+
+    private static void closeNamespaces(final StringBuilder sb, final String packageName)
+    {
+        if (!packageName.isEmpty())
+        {
+            for (final String namespace : packageName.split("\\."))
+                sb.append("} // namespace ").append(namespace).append('\n');
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.config.GenerationContext;
+import com.vizor.unreal.provider.ProtoTypesProvider;
+import com.vizor.unreal.provider.TypesProvider;
+import com.vizor.unreal.tree.CppType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.vizor.unreal.tree.CppType.Kind.Struct;
+import static com.vizor.unreal.tree.CppType.plain;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResolverTest
+{
+    private static final GenerationContext context = GenerationContext.builder()
+        .setModuleName("Test")
+        .setCompanyName("Vizor")
+        .setThreads(2)
+        .build();
+
+    /**
+     * Resolves a fixed list of declarations and counts created types.
+     */
+    private static final class ListResolver implements TypesProvider.Resolver
+    {
+        private final List<String> declarations;
+        private final List<String> created = new ArrayList<>();
+
+        ListResolver(final String... declarations)
+        {
+            this.declarations = asList(declarations);
+        }
+
+        @Override
+        public List<String> find(final String typeName)
+        {
+            return declarations.stream()
+                .filter(d -> d.equals(typeName) || d.endsWith("." + typeName))
+                .collect(toList());
+        }
+
+        @Override
+        public CppType create(final String fullTypeName)
+        {
+            created.add(fullTypeName);
+            return plain(fullTypeName.replace('.', '_'), Struct);
+        }
+    }
+
+    @Test
+    public void testTypesAreCreatedOnce()
+    {
+        final ListResolver resolver = new ListResolver("common.Point", "game.Player");
+        final TypesProvider provider = new ProtoTypesProvider();
+        provider.setResolver(resolver);
+
+        // A short name finds the declaration, a full name finds the type it was created for
+        final CppType point = provider.get("Point");
+        assertEquals("common_Point", point.getName());
+        assertSame(point, provider.get("common.Point"));
+        assertSame(point, provider.get("Point"));
+
+        // Only referenced declarations are created
+        assertEquals(asList("common.Point"), resolver.created);
+
+        // Registered types take precedence over the resolver
+        assertEquals("string", provider.get("string").getName());
+        assertEquals(asList("common.Point"), resolver.created);
+    }
+
+    @Test
+    public void testMiss()
+    {
+        final TypesProvider provider = new ProtoTypesProvider();
+        provider.setResolver(new ListResolver("common.Point"));
+
+        assertFails(() -> provider.get("Missing"), "Can't get a corresponding C++ type for Missing");
+
+        // A partially qualified name must match whole name components
+        assertFails(() -> provider.get("mon.Point"), "Can't get a corresponding C++ type for mon.Point");
+    }
+
+    @Test
+    public void testAmbiguousShortName()
+    {
+        final ListResolver resolver = new ListResolver("common.Item", "game.Item");
+        final TypesProvider provider = new ProtoTypesProvider();
+        provider.setResolver(resolver);
+
+        assertFails(() -> provider.get("Item"), "Cannot determine best possible type for Item");
+
+        // Qualified names are still unambiguous
+        assertEquals("game_Item", provider.get("game.Item").getName());
+        assertEquals("common_Item", provider.get("common.Item").getName());
+    }
+
+    @Test
+    public void testShortNameThroughImportClosure()
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("common/types.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package common;",
+            "message Point { int32 x = 1; int32 y = 2; }",
+            "message Unused { int32 z = 1; }"
+        ));
+
+        sources.put("game/units.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "import \"common/types.proto\";",
+            "message Unit { Point position = 1; }"
+        ));
+
+        // Imports 'common/types.proto' only transitively, but uses both its types and the short name
+        sources.put("game/squad.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "import \"game/units.proto\";",
+            "message Squad { repeated Unit units = 1; Point target = 2; common.Point rally = 3; }"
+        ));
+
+        final Map<String, String> files = Cornerstone.generate(context, sources);
+
+        final String header = files.get("Public/game/squad/Squad.h");
+        assertTrue(header.contains("TArray<FUnits_Unit> Units;"));
+        assertTrue(header.contains("FTypes_Point Target;"));
+        assertTrue(header.contains("FTypes_Point Rally;"));
+
+        final String casts = files.get("Private/game/squad/SquadCasts.h");
+        assertTrue(casts.contains("Proto_Cast<common::Point>(InItem.Target)"));
+    }
+
+    @Test
+    public void testMissThroughImportClosure()
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("common/types.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package common;",
+            "message Point { int32 x = 1; int32 y = 2; }"
+        ));
+
+        // Declares 'Point', but isn't imported
+        sources.put("game/units.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "import \"common/types.proto\";",
+            "message Unit { common.Point position = 1; }"
+        ));
+
+        sources.put("game/squad.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "message Squad { Point target = 1; }"
+        ));
+
+        assertFails(() -> Cornerstone.generate(context, sources), "Can't get a corresponding C++ type for Point");
+    }
+
+    @Test
+    public void testDuplicateDeclarations()
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("common/types.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package common;",
+            "message Point { int32 x = 1; int32 y = 2; }",
+            "message Size { int32 width = 1; int32 height = 2; }"
+        ));
+
+        // Redeclares 'common.Point' in another file
+        sources.put("common/legacy.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package common;",
+            "message Point { float x = 1; float y = 2; }"
+        ));
+
+        sources.put("game/board.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "import \"common/types.proto\";",
+            "import \"common/legacy.proto\";",
+            "message Board { common.Size size = 1; }"
+        ));
+
+        // The duplicate isn't referenced, so it isn't an error
+        assertTrue(Cornerstone.generate(context, sources).containsKey("Public/game/board/Board.h"));
+
+        sources.put("game/board.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package game;",
+            "import \"common/types.proto\";",
+            "import \"common/legacy.proto\";",
+            "message Board { common.Size size = 1; Point origin = 2; }"
+        ));
+
+        assertFails(() -> Cornerstone.generate(context, sources), "Type association 'common.Point' is already defined");
+    }
+
+    private static void assertFails(final Runnable action, final String message)
+    {
+        try
+        {
+            action.run();
+        }
+        catch (RuntimeException e)
+        {
+            for (Throwable cause = e; cause != null; cause = cause.getCause())
+            {
+                if (String.valueOf(cause.getMessage()).contains(message))
+                    return;
+            }
+
+            throw new AssertionError("Expected '" + message + "', got " + e, e);
+        }
+
+        fail("Expected '" + message + "'");
+    }
+}
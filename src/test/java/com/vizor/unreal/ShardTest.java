@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal;
+
+import com.vizor.unreal.convert.Shard;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static java.util.Collections.shuffle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardTest
+{
+    @Test
+    public void testParse()
+    {
+        final Shard shard = Shard.parse(" 2 / 5 ");
+
+        assertEquals(shard.getIndex(), 2);
+        assertEquals(shard.getCount(), 5);
+        assertEquals(shard.toString(), "2/5");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseOutOfRange()
+    {
+        Shard.parse("0/5");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMalformed()
+    {
+        Shard.parse("2-5");
+    }
+
+    @Test
+    public void testCoverage()
+    {
+        final Random random = new Random(42);
+        final List<String> items = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++)
+            items.add("file_" + i + ".proto");
+
+        final int numShards = 7;
+
+        final Set<String> covered = new HashSet<>();
+        int numCovered = 0;
+
+        for (int i = 1; i <= numShards; i++)
+        {
+            // The order of discovery mustn't matter
+            final List<String> shuffled = new ArrayList<>(items);
+            shuffle(shuffled, random);
+
+            final List<String> owned = new Shard(i, numShards).select(shuffled, s -> s, String::length);
+
+            covered.addAll(owned);
+            numCovered += owned.size();
+        }
+
+        // Each item is owned by exactly one shard
+        assertEquals(numCovered, items.size());
+        assertEquals(covered, new HashSet<>(items));
+    }
+
+    @Test
+    public void testBalance()
+    {
+        final List<Long> costs = new ArrayList<>();
+        costs.add(100L);
+
+        for (int i = 0; i < 50; i++)
+            costs.add(10L);
+
+        long first = 0;
+        long second = 0;
+
+        for (final long c : new Shard(1, 2).select(costs, String::valueOf, Long::longValue))
+            first += c;
+
+        for (final long c : new Shard(2, 2).select(costs, String::valueOf, Long::longValue))
+            second += c;
+
+        // The biggest item goes alone, then the rest is distributed to even the load
+        assertEquals(first + second, 600L);
+        assertTrue(Math.abs(first - second) <= 10L);
+    }
+}
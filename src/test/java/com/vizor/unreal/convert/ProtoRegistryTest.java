@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018 Vizor Games LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vizor.unreal.convert;
+
+import com.vizor.unreal.config.DestinationConfig;
+import com.vizor.unreal.util.Tuple;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.Paths.get;
+import static java.util.Arrays.asList;
+import static java.util.Collections.reverse;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ProtoRegistryTest
+{
+    private static final Path base = get("zeta/base.proto");
+    private static final Path shared = get("zeta/shared.proto");
+    private static final Path main = get("alpha/main.proto");
+    private static final Path other = get("beta/other.proto");
+    private static final Path user = get("gamma/user.proto");
+
+    /**
+     * Counts reads of each file, so that reloads are visible.
+     */
+    private static final class CountingSource extends InMemoryProtoSource
+    {
+        private final Map<Path, Integer> reads = new HashMap<>();
+
+        CountingSource(final Map<String, String> sources)
+        {
+            super(sources);
+        }
+
+        @Override
+        public synchronized String read(final Path path) throws IOException
+        {
+            reads.merge(getRoot().relativize(path), 1, Integer::sum);
+            return super.read(path);
+        }
+
+        synchronized int getReads(final Path relativePath)
+        {
+            return reads.getOrDefault(relativePath, 0);
+        }
+    }
+
+    private static Map<String, String> getSources()
+    {
+        final Map<String, String> sources = new HashMap<>();
+
+        sources.put("zeta/base.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package zeta;",
+            "message Id { int64 value = 1; }"
+        ));
+
+        sources.put("zeta/shared.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package zeta;",
+            "import \"zeta/base.proto\";",
+            "message Entity { Id id = 1; message Tag { string name = 1; } repeated Tag tags = 2; }"
+        ));
+
+        sources.put("alpha/main.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package alpha;",
+            "import \"zeta/shared.proto\";",
+            "message Main { zeta.Entity entity = 1; }"
+        ));
+
+        sources.put("beta/other.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package beta;",
+            "message Other { int32 x = 1; }"
+        ));
+
+        sources.put("gamma/user.proto", String.join("\n",
+            "syntax = \"proto3\";",
+            "package gamma;",
+            "import \"zeta/shared.proto\";",
+            "import \"zeta/base.proto\";",
+            "message User { zeta.Entity entity = 1; zeta.Id owner = 2; }"
+        ));
+
+        return sources;
+    }
+
+    private static ProtoRegistry newRegistry(final InMemoryProtoSource source, final int capacity)
+    {
+        final DestinationConfig destination = new DestinationConfig(get("Public"), get("Private"));
+        final List<Tuple<Path, DestinationConfig>> paths = source.getPaths().stream()
+            .map(p -> Tuple.of(p, destination))
+            .collect(toList());
+
+        return new ProtoRegistry(source.getRoot(), paths, source, capacity);
+    }
+
+    @Test
+    public void testEvictedFilesAreReloaded()
+    {
+        final CountingSource source = new CountingSource(getSources());
+        final ProtoRegistry registry = newRegistry(source, 1);
+
+        final List<ProtoProcessorArgs> first = registry.get(base);
+        assertSame(first, registry.get(base));
+        assertEquals(1, source.getReads(base));
+
+        // Evicts 'zeta/base.proto'
+        registry.get(other);
+
+        final List<ProtoProcessorArgs> reloaded = registry.get(base);
+        assertEquals(2, source.getReads(base));
+        assertNotSame(first, reloaded);
+        assertEquals(describe(first), describe(reloaded));
+
+        // Imports outlive the parsed file, so they don't make it reload
+        assertEquals(asList(base), registry.getImports(shared));
+        registry.get(other);
+
+        assertEquals(asList(base), registry.getImports(shared));
+        assertEquals(asList(base, shared), registry.getImports(user));
+        assertEquals(1, source.getReads(shared));
+    }
+
+    @Test
+    public void testTinyCacheMatchesUnlimited()
+    {
+        final ProtoRegistry unlimited = newRegistry(new CountingSource(getSources()), 0);
+        final CountingSource source = new CountingSource(getSources());
+        final ProtoRegistry tiny = newRegistry(source, 1);
+
+        // Ordering loads every file once
+        final List<Path> order = tiny.getLocalityOrder(new HashSet<>(tiny.getPaths()));
+        assertEquals(1, source.getReads(main));
+
+        // Every file goes through the cache twice, preprocessed nested types included
+        final List<Path> twice = new ArrayList<>(order);
+        reverse(twice);
+        twice.addAll(0, order);
+
+        for (final Path path : twice)
+        {
+            assertEquals(path.toString(), describe(unlimited.get(path)), describe(tiny.get(path)));
+            assertEquals(path.toString(), unlimited.getImports(path), tiny.getImports(path));
+            assertEquals(path.toString(), unlimited.getImportClosure(path), tiny.getImportClosure(path));
+        }
+
+        assertEquals(3, source.getReads(main));
+    }
+
+    @Test
+    public void testLocalityOrder()
+    {
+        final Set<Path> all = new HashSet<>(asList(base, shared, main, other, user));
+        final Set<Path> targets = new HashSet<>(asList(main, other, shared));
+
+        // Imports go right before the first file, importing them
+        final List<Path> expectedAll = asList(base, shared, main, other, user);
+        final List<Path> expectedTargets = asList(shared, main, other);
+
+        for (final int capacity : new int[] {0, 1, 2})
+        {
+            final ProtoRegistry registry = newRegistry(new CountingSource(getSources()), capacity);
+
+            // Neither the cache nor the order files were loaded in matters
+            registry.get(user);
+            assertEquals(expectedTargets, registry.getLocalityOrder(targets));
+            assertEquals(expectedAll, registry.getLocalityOrder(all));
+
+            registry.get(other);
+            assertEquals(expectedTargets, registry.getLocalityOrder(targets));
+            assertEquals(expectedAll, registry.getLocalityOrder(all));
+        }
+    }
+
+    private static List<String> describe(final List<ProtoProcessorArgs> args)
+    {
+        return args.stream()
+            .map(a -> a.pathToProto + ": " + a.parse.toSchema())
+            .collect(toList());
+    }
+}
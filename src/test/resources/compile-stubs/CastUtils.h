@@ -0,0 +1,117 @@
+//
+// A stub of Infraworld's CastUtils.h for CompileBenchmark: casts between Unreal and protobuf types. Casts of
+// messages are specialized by generated '*Casts.h' files.
+//
+
+#pragma once
+
+#include "CoreMinimal.h"
+#include "GenUtils.h"
+#include <google/protobuf/message.h>
+
+namespace casts
+{
+    template <typename OutType, typename InType>
+    FORCEINLINE OutType Proto_Cast(const InType& Item)
+    {
+        return static_cast<OutType>(Item);
+    }
+
+    template <>
+    FORCEINLINE FString Proto_Cast(const std::string& Item)
+    {
+        return FString(Item.c_str());
+    }
+
+    template <>
+    FORCEINLINE std::string Proto_Cast(const FString& Item)
+    {
+        return std::string(*Item);
+    }
+
+    template <>
+    FORCEINLINE FByteArray Proto_Cast(const std::string& Item)
+    {
+        FByteArray Bytes;
+        for (const char Byte : Item)
+            Bytes.Bytes.Add(static_cast<uint8>(Byte));
+
+        return Bytes;
+    }
+
+    template <>
+    FORCEINLINE std::string Proto_Cast(const FByteArray& Item)
+    {
+        std::string Bytes;
+        for (const uint8 Byte : Item.Bytes)
+            Bytes.push_back(static_cast<char>(Byte));
+
+        return Bytes;
+    }
+
+    template <typename OutType, typename InType>
+    FORCEINLINE OutType Proto_EnumCast(const InType& Item)
+    {
+        return static_cast<OutType>(Item);
+    }
+
+    template <typename OutType, typename InType>
+    TArray<OutType> Proto_ArrayCast(const google::protobuf::RepeatedField<InType>& Items)
+    {
+        TArray<OutType> Out;
+        for (const InType& Item : Items)
+            Out.Add(Proto_Cast<OutType>(Item));
+
+        return Out;
+    }
+
+    template <typename OutType, typename InType>
+    google::protobuf::RepeatedField<OutType> Proto_ArrayCast(const TArray<InType>& Items)
+    {
+        google::protobuf::RepeatedField<OutType> Out;
+        for (const InType& Item : Items)
+            Out.Add(Proto_Cast<OutType>(Item));
+
+        return Out;
+    }
+
+    template <typename OutType, typename InType>
+    TArray<OutType> Proto_PtrArrayCast(const google::protobuf::RepeatedPtrField<InType>& Items)
+    {
+        TArray<OutType> Out;
+        for (const InType& Item : Items)
+            Out.Add(Proto_Cast<OutType>(Item));
+
+        return Out;
+    }
+
+    template <typename OutType, typename InType>
+    google::protobuf::RepeatedPtrField<OutType> Proto_PtrArrayCast(const TArray<InType>& Items)
+    {
+        google::protobuf::RepeatedPtrField<OutType> Out;
+        for (const InType& Item : Items)
+            *Out.Add() = Proto_Cast<OutType>(Item);
+
+        return Out;
+    }
+
+    template <typename OutKey, typename OutValue, typename InKey, typename InValue>
+    TMap<OutKey, OutValue> Proto_MapCast(const google::protobuf::Map<InKey, InValue>& Items)
+    {
+        TMap<OutKey, OutValue> Out;
+        for (const auto& Item : Items)
+            Out.Add(Proto_Cast<OutKey>(Item.first), Proto_Cast<OutValue>(Item.second));
+
+        return Out;
+    }
+
+    template <typename OutKey, typename OutValue, typename InKey, typename InValue>
+    google::protobuf::Map<OutKey, OutValue> Proto_MapCast(const TMap<InKey, InValue>& Items)
+    {
+        google::protobuf::Map<OutKey, OutValue> Out;
+        for (const auto& Item : Items)
+            Out[Proto_Cast<OutKey>(Item.Key)] = Proto_Cast<OutValue>(Item.Value);
+
+        return Out;
+    }
+}
@@ -0,0 +1,14 @@
+//
+// A stub of Infraworld's ChannelProvider.h for CompileBenchmark.
+//
+
+#pragma once
+
+#include <grpc++/channel.h>
+
+class RpcClientWorker;
+
+namespace channel
+{
+    std::shared_ptr<grpc::Channel> CreateChannel(RpcClientWorker* Worker);
+}
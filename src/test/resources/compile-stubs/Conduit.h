@@ -0,0 +1,23 @@
+//
+// A stub of Infraworld's Conduit.h for CompileBenchmark: a pair of queues between a client and its worker.
+//
+
+#pragma once
+
+#include "CoreMinimal.h"
+
+template <typename RequestType, typename ResponseType>
+class TConduit
+{
+public:
+    void AcquireRequestsProducer() {}
+    void AcquireResponsesProducer() {}
+
+    bool IsEmpty() const { return true; }
+
+    bool Enqueue(const RequestType& Request) { return true; }
+    bool Enqueue(const ResponseType& Response) { return true; }
+
+    bool Dequeue(RequestType& OutRequest) { return false; }
+    bool Dequeue(ResponseType& OutResponse) { return false; }
+};
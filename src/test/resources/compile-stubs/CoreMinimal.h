@@ -0,0 +1,115 @@
+//
+// A stub of Unreal Engine's CoreMinimal.h for CompileBenchmark: declares just enough of the engine for generated
+// code to compile with -fsyntax-only. Reflection macros expand to nothing, as if Unreal Header Tool had run.
+//
+
+#pragma once
+
+#include <cstddef>
+#include <cstdint>
+#include <memory>
+#include <string>
+#include <type_traits>
+#include <utility>
+#include <vector>
+
+typedef std::int8_t int8;
+typedef std::int16_t int16;
+typedef std::int32_t int32;
+typedef std::int64_t int64;
+typedef std::uint8_t uint8;
+typedef std::uint16_t uint16;
+typedef std::uint32_t uint32;
+typedef std::uint64_t uint64;
+typedef std::size_t SIZE_T;
+
+#define FORCEINLINE inline
+
+#define USTRUCT(...)
+#define UENUM(...)
+#define UCLASS(...)
+#define UPROPERTY(...)
+#define UFUNCTION(...)
+#define UMETA(...)
+#define GENERATED_BODY()
+#define GENERATED_USTRUCT_BODY()
+
+template <typename... ParamTypes>
+class TMulticastDelegate
+{
+public:
+    void Broadcast(ParamTypes... Params) const
+    {
+    }
+};
+
+#define DECLARE_DYNAMIC_MULTICAST_DELEGATE(Name) \
+    class Name : public TMulticastDelegate<> {};
+#define DECLARE_DYNAMIC_MULTICAST_DELEGATE_OneParam(Name, T1, P1) \
+    class Name : public TMulticastDelegate<T1> {};
+#define DECLARE_DYNAMIC_MULTICAST_DELEGATE_TwoParams(Name, T1, P1, T2, P2) \
+    class Name : public TMulticastDelegate<T1, T2> {};
+#define DECLARE_DYNAMIC_MULTICAST_DELEGATE_ThreeParams(Name, T1, P1, T2, P2, T3, P3) \
+    class Name : public TMulticastDelegate<T1, T2, T3> {};
+
+class FString
+{
+public:
+    FString() = default;
+    FString(const char* Chars) : Data(Chars) {}
+
+    const char* operator*() const { return Data.c_str(); }
+    bool operator==(const FString& Other) const { return Data == Other.Data; }
+    int32 Len() const { return static_cast<int32>(Data.size()); }
+
+private:
+    std::string Data;
+};
+
+template <typename ElementType>
+class TArray
+{
+public:
+    int32 Num() const { return static_cast<int32>(Data.size()); }
+    void Reserve(const int32 Number) { Data.reserve(Number); }
+    int32 Add(const ElementType& Item) { Data.push_back(Item); return Num() - 1; }
+
+    ElementType& operator[](const int32 Index) { return Data[Index]; }
+    const ElementType& operator[](const int32 Index) const { return Data[Index]; }
+
+    typename std::vector<ElementType>::const_iterator begin() const { return Data.begin(); }
+    typename std::vector<ElementType>::const_iterator end() const { return Data.end(); }
+
+private:
+    std::vector<ElementType> Data;
+};
+
+template <typename KeyType, typename ValueType>
+struct TPair
+{
+    KeyType Key;
+    ValueType Value;
+};
+
+template <typename KeyType, typename ValueType>
+class TMap
+{
+public:
+    int32 Num() const { return Pairs.Num(); }
+    void Add(const KeyType& Key, const ValueType& Value) { Pairs.Add(TPair<KeyType, ValueType>{Key, Value}); }
+
+    typename std::vector<TPair<KeyType, ValueType>>::const_iterator begin() const { return Pairs.begin(); }
+    typename std::vector<TPair<KeyType, ValueType>>::const_iterator end() const { return Pairs.end(); }
+
+private:
+    TArray<TPair<KeyType, ValueType>> Pairs;
+};
+
+template <typename T>
+using TUniquePtr = std::unique_ptr<T>;
+
+class UObject
+{
+public:
+    virtual ~UObject() = default;
+};
@@ -0,0 +1,16 @@
+//
+// A stub of Infraworld's GenUtils.h for CompileBenchmark.
+//
+
+#pragma once
+
+#include "CoreMinimal.h"
+
+USTRUCT(BlueprintType)
+struct FByteArray
+{
+    GENERATED_USTRUCT_BODY()
+
+    UPROPERTY(BlueprintReadWrite)
+    TArray<uint8> Bytes;
+};
@@ -0,0 +1,4 @@
+//
+// A stub of Infraworld's GrpcIncludesBegin.h for CompileBenchmark. The original disables engine's warnings and
+// macros, which conflict with gRPC headers, stub headers don't conflict.
+//
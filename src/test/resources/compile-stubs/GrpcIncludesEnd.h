@@ -0,0 +1,3 @@
+//
+// A stub of Infraworld's GrpcIncludesEnd.h for CompileBenchmark.
+//
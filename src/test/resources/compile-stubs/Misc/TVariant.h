@@ -0,0 +1,56 @@
+//
+// A stub of Unreal Engine's TVariant for CompileBenchmark.
+//
+
+#pragma once
+
+#include "CoreMinimal.h"
+
+template <typename T, typename... Types>
+struct TVariantIndexOf;
+
+// The first of equal alternatives is taken, as oneofs may have several fields of the same type
+template <typename T, typename... Types>
+struct TVariantIndexOf<T, T, Types...>
+{
+    static constexpr SIZE_T Value = 0;
+};
+
+template <typename T, typename U, typename... Types>
+struct TVariantIndexOf<T, U, Types...>
+{
+    static constexpr SIZE_T Value = 1 + TVariantIndexOf<T, Types...>::Value;
+};
+
+template <typename... Types>
+class TVariant
+{
+public:
+    template <typename T>
+    void Set(const T& Value)
+    {
+        Index = TVariantIndexOf<T, Types...>::Value;
+        Storage = std::make_shared<T>(Value);
+    }
+
+    template <typename T>
+    T& Get() const
+    {
+        return *static_cast<T*>(Storage.get());
+    }
+
+    template <typename T>
+    bool IsType() const
+    {
+        return Index == TVariantIndexOf<T, Types...>::Value;
+    }
+
+    SIZE_T GetIndex() const
+    {
+        return Index;
+    }
+
+private:
+    SIZE_T Index = 0;
+    std::shared_ptr<void> Storage;
+};
@@ -0,0 +1,64 @@
+//
+// A stub of Infraworld's RpcClient.h for CompileBenchmark.
+//
+
+#pragma once
+
+#include "CoreMinimal.h"
+
+USTRUCT(BlueprintType)
+struct FGrpcClientContext
+{
+    GENERATED_USTRUCT_BODY()
+
+    UPROPERTY(BlueprintReadWrite)
+    TMap<FString, FString> Metadata;
+};
+
+USTRUCT(BlueprintType)
+struct FGrpcStatus
+{
+    GENERATED_USTRUCT_BODY()
+
+    UPROPERTY(BlueprintReadWrite)
+    int32 ErrorCode = 0;
+
+    UPROPERTY(BlueprintReadWrite)
+    FString ErrorMessage;
+};
+
+template <typename T>
+struct TRequestWithContext
+{
+    T Request;
+    FGrpcClientContext Context;
+};
+
+template <typename T>
+struct TResponseWithStatus
+{
+    T Response;
+    FGrpcStatus Status;
+};
+
+#define TRequestWithContext$New(Request, Context) \
+    (TRequestWithContext<typename std::decay<decltype(Request)>::type>{Request, Context})
+
+class RpcClientWorker;
+
+UCLASS(Abstract)
+class URpcClient : public UObject
+{
+    GENERATED_BODY()
+
+public:
+    virtual ~URpcClient();
+
+    virtual void HierarchicalInit() {}
+    virtual void HierarchicalUpdate() {}
+
+    bool CanSendRequests() const;
+
+protected:
+    TUniquePtr<RpcClientWorker> InnerWorker;
+};
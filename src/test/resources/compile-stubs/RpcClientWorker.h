@@ -0,0 +1,47 @@
+//
+// A stub of Infraworld's RpcClientWorker.h for CompileBenchmark: workers call RPCs and cast requests and responses.
+//
+
+#pragma once
+
+#include "RpcClient.h"
+#include "CastUtils.h"
+#include <grpc++/channel.h>
+
+class RpcClientWorker
+{
+public:
+    virtual ~RpcClientWorker() = default;
+
+    virtual bool HierarchicalInit() = 0;
+    virtual void HierarchicalUpdate() = 0;
+};
+
+template <typename StubType>
+class TStubbedRpcWorker : public RpcClientWorker
+{
+protected:
+    std::unique_ptr<StubType> Stub;
+
+    template <typename UnrealRequest, typename ProtoRequest, typename UnrealResponse, typename ProtoResponse>
+    TResponseWithStatus<UnrealResponse> AsyncRequest(const UnrealRequest& Request, const FGrpcClientContext& Context,
+        std::unique_ptr<grpc::ClientAsyncResponseReader<ProtoResponse>> (StubType::*Call)(grpc::ClientContext*,
+            const ProtoRequest&, grpc::CompletionQueue*))
+    {
+        grpc::ClientContext ClientContext;
+        grpc::CompletionQueue Queue;
+
+        const ProtoRequest Proto = casts::Proto_Cast<ProtoRequest>(Request);
+        std::unique_ptr<grpc::ClientAsyncResponseReader<ProtoResponse>> Reader =
+            ((*Stub).*Call)(&ClientContext, Proto, &Queue);
+
+        ProtoResponse Response;
+        grpc::Status Status;
+        Reader->Finish(&Response, &Status, nullptr);
+
+        FGrpcStatus GrpcStatus;
+        GrpcStatus.ErrorCode = Status.error_code();
+
+        return TResponseWithStatus<UnrealResponse>{casts::Proto_Cast<UnrealResponse>(Response), GrpcStatus};
+    }
+};
@@ -0,0 +1,7 @@
+//
+// A stub of Infraworld's WorkerUtils.h for CompileBenchmark.
+//
+
+#pragma once
+
+#include "RpcClientWorker.h"
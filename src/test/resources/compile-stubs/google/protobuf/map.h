@@ -0,0 +1,33 @@
+//
+// A stub of protobuf's google/protobuf/map.h for CompileBenchmark.
+//
+
+#pragma once
+
+#include <google/protobuf/stubs/common.h>
+#include <map>
+
+namespace google
+{
+namespace protobuf
+{
+    template <typename Key, typename T>
+    class Map
+    {
+    public:
+        typedef typename std::map<Key, T>::const_iterator const_iterator;
+
+        int size() const { return static_cast<int>(Elements.size()); }
+        T& operator[](const Key& K) { return Elements[K]; }
+
+        template <typename InputIt>
+        void insert(InputIt First, InputIt Last) { Elements.insert(First, Last); }
+
+        const_iterator begin() const { return Elements.begin(); }
+        const_iterator end() const { return Elements.end(); }
+
+    private:
+        std::map<Key, T> Elements;
+    };
+}
+}
@@ -0,0 +1,26 @@
+//
+// A stub of protobuf's google/protobuf/message.h for CompileBenchmark.
+//
+
+#pragma once
+
+#include <google/protobuf/stubs/common.h>
+#include <google/protobuf/repeated_field.h>
+#include <google/protobuf/map.h>
+
+namespace google
+{
+namespace protobuf
+{
+    class Message
+    {
+    public:
+        virtual ~Message() = default;
+
+        void Clear();
+        int ByteSize() const;
+        bool SerializeToString(std::string* Output) const;
+        bool ParseFromString(const std::string& Data);
+    };
+}
+}
@@ -0,0 +1,54 @@
+//
+// A stub of protobuf's google/protobuf/repeated_field.h for CompileBenchmark.
+//
+
+#pragma once
+
+#include <google/protobuf/stubs/common.h>
+#include <vector>
+
+namespace google
+{
+namespace protobuf
+{
+    // Scalars and enums
+    template <typename Element>
+    class RepeatedField
+    {
+    public:
+        typedef typename std::vector<Element>::const_iterator const_iterator;
+
+        int size() const { return static_cast<int>(Elements.size()); }
+        void Reserve(const int Size) { Elements.reserve(Size); }
+        const Element& Get(const int Index) const { return Elements[Index]; }
+        void Add(const Element& Value) { Elements.push_back(Value); }
+        void CopyFrom(const RepeatedField& Other) { Elements = Other.Elements; }
+
+        const_iterator begin() const { return Elements.begin(); }
+        const_iterator end() const { return Elements.end(); }
+
+    private:
+        std::vector<Element> Elements;
+    };
+
+    // Strings and messages
+    template <typename Element>
+    class RepeatedPtrField
+    {
+    public:
+        typedef typename std::vector<Element>::const_iterator const_iterator;
+
+        int size() const { return static_cast<int>(Elements.size()); }
+        void Reserve(const int Size) { Elements.reserve(Size); }
+        const Element& Get(const int Index) const { return Elements[Index]; }
+        Element* Add() { Elements.emplace_back(); return &Elements.back(); }
+        void CopyFrom(const RepeatedPtrField& Other) { Elements = Other.Elements; }
+
+        const_iterator begin() const { return Elements.begin(); }
+        const_iterator end() const { return Elements.end(); }
+
+    private:
+        std::vector<Element> Elements;
+    };
+}
+}
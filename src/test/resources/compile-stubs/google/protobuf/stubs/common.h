@@ -0,0 +1,19 @@
+//
+// A stub of protobuf's google/protobuf/stubs/common.h for CompileBenchmark.
+//
+
+#pragma once
+
+#include <cstdint>
+#include <string>
+
+namespace google
+{
+namespace protobuf
+{
+    typedef std::int32_t int32;
+    typedef std::int64_t int64;
+    typedef std::uint32_t uint32;
+    typedef std::uint64_t uint64;
+}
+}
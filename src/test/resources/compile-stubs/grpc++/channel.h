@@ -0,0 +1,44 @@
+//
+// A stub of gRPC's grpc++/channel.h for CompileBenchmark, also declares what generated stubs of services use.
+//
+
+#pragma once
+
+#include <memory>
+#include <string>
+
+namespace grpc
+{
+    class ChannelInterface
+    {
+    public:
+        virtual ~ChannelInterface() = default;
+    };
+
+    class Channel : public ChannelInterface
+    {
+    };
+
+    class ClientContext
+    {
+    };
+
+    class CompletionQueue
+    {
+    };
+
+    class Status
+    {
+    public:
+        bool ok() const;
+        int error_code() const;
+        std::string error_message() const;
+    };
+
+    template <typename R>
+    class ClientAsyncResponseReader
+    {
+    public:
+        void Finish(R* Message, Status* OutStatus, void* Tag);
+    };
+}
@@ -0,0 +1,7 @@
+//
+// A stub of gRPC's grpc/support/log.h for CompileBenchmark.
+//
+
+#pragma once
+
+void gpr_log(const char* File, int Line, int Severity, const char* Format, ...);